@@ -35,7 +35,8 @@ export class Producto implements OnInit {
     categoriaId: 0,
     activo: true,
     stockDisponible: 0,
-    stockMinimo: 5
+    stockMinimo: 5,
+    version: 0
   };
 
   constructor(
@@ -86,7 +87,15 @@ export class Producto implements OnInit {
     );
   }
 
-  openEditModal(producto: ProductoModel) {
+  openEditModal(resumen: ProductoModel) {
+    // El listado no trae descripción ni características: se carga el detalle completo
+    this.productoService.obtenerPorId(resumen.id).subscribe({
+      next: (producto) => this.abrirEdicion(producto),
+      error: (err) => console.error('Error al cargar producto', err)
+    });
+  }
+
+  private abrirEdicion(producto: ProductoModel) {
     this.showEditModal = true;
     this.editProducto = {
       id: producto.id,
@@ -102,7 +111,8 @@ export class Producto implements OnInit {
       categoriaId: producto.categoriaId,
       activo: producto.activo,
       stockDisponible: producto.stockDisponible || 0,
-      stockMinimo: producto.stockMinimo || 5
+      stockMinimo: producto.stockMinimo || 5,
+      version: producto.version ?? 0
     };
   }
 
@@ -124,6 +134,13 @@ export class Producto implements OnInit {
       },
       error: (err) => {
         console.error('Error al actualizar producto', err);
+        if (err.status === 409) {
+          // Hubo ventas u otra edición desde que se abrió el formulario
+          alert('El producto cambió mientras lo editaba. Se recargaron los datos, vuelva a intentarlo.');
+          this.closeEditModal();
+          this.loadProductos();
+          return;
+        }
         alert('Error al actualizar producto: ' + (err.error?.message || 'Verifique los datos'));
       }
     });
@@ -1,7 +1,8 @@
-import { Component, OnInit, inject } from '@angular/core';
+import { Component, OnDestroy, OnInit, inject } from '@angular/core';
 import { CommonModule } from '@angular/common';
 import { FormsModule } from '@angular/forms';
-import { PedidoService, Pedido, EstadisticasPedidos } from '../../compartido/servicios/pedido.service';
+import { Subject, Subscription, debounceTime } from 'rxjs';
+import { PedidoService, Pedido, EstadisticasPedidos, FiltrosPedidos } from '../../compartido/servicios/pedido.service';
 
 @Component({
     selector: 'app-pedidos',
@@ -10,11 +11,12 @@ import { PedidoService, Pedido, EstadisticasPedidos } from '../../compartido/ser
     templateUrl: './pedidos.html',
     styleUrl: './pedidos.scss',
 })
-export class Pedidos implements OnInit {
+export class Pedidos implements OnInit, OnDestroy {
     private pedidoService = inject(PedidoService);
 
     pedidos: Pedido[] = [];
     filteredPedidos: Pedido[] = [];
+    siguienteCursor: string | null = null;
     estadisticas: EstadisticasPedidos = {
         totalPedidos: 0,
         pendientes: 0,
@@ -29,17 +31,39 @@ export class Pedidos implements OnInit {
     showDetalleModal: boolean = false;
     pedidoSeleccionado: Pedido | null = null;
 
+    private busqueda = new Subject<void>();
+    private suscripciones = new Subscription();
+    private peticion?: Subscription;
+
     ngOnInit() {
+        // La búsqueda por texto espera a que se deje de escribir antes de consultar
+        this.suscripciones.add(this.busqueda.pipe(debounceTime(300)).subscribe(() => this.cargarPedidos()));
         this.cargarPedidos();
         this.cargarEstadisticas();
     }
 
+    ngOnDestroy() {
+        this.suscripciones.unsubscribe();
+        this.peticion?.unsubscribe();
+    }
+
+    // Estado y texto se filtran en el servidor, así abarcan todos los pedidos y no solo las páginas cargadas
+    private filtros(): FiltrosPedidos {
+        return {
+            estado: this.filtroActivo !== 'TODOS' ? this.filtroActivo : undefined,
+            texto: this.searchTerm.trim() || undefined
+        };
+    }
+
+    // Primera página con los filtros actuales; descarta la respuesta pendiente de filtros anteriores
     cargarPedidos() {
         this.loading = true;
-        this.pedidoService.listarTodosPedidos().subscribe({
-            next: (pedidos) => {
-                this.pedidos = pedidos;
-                this.aplicarFiltros();
+        this.peticion?.unsubscribe();
+        this.peticion = this.pedidoService.listarPagina(this.filtros()).subscribe({
+            next: (pagina) => {
+                this.pedidos = pagina.pedidos;
+                this.filteredPedidos = this.pedidos;
+                this.siguienteCursor = pagina.siguienteCursor;
                 this.loading = false;
             },
             error: (error) => {
@@ -49,6 +73,21 @@ export class Pedidos implements OnInit {
         });
     }
 
+    // Agrega la página siguiente a los pedidos ya cargados
+    cargarMas() {
+        if (!this.siguienteCursor) {
+            return;
+        }
+        this.peticion = this.pedidoService.listarPagina(this.filtros(), this.siguienteCursor).subscribe({
+            next: (pagina) => {
+                this.pedidos = [...this.pedidos, ...pagina.pedidos];
+                this.filteredPedidos = this.pedidos;
+                this.siguienteCursor = pagina.siguienteCursor;
+            },
+            error: (error) => console.error('Error al cargar más pedidos:', error)
+        });
+    }
+
     cargarEstadisticas() {
         this.pedidoService.obtenerEstadisticas().subscribe({
             next: (stats) => {
@@ -60,34 +99,13 @@ export class Pedidos implements OnInit {
         });
     }
 
-    aplicarFiltros() {
-        let pedidosFiltrados = [...this.pedidos];
-
-        // Filtrar por estado
-        if (this.filtroActivo !== 'TODOS') {
-            pedidosFiltrados = pedidosFiltrados.filter(p => p.estado === this.filtroActivo);
-        }
-
-        // Filtrar por búsqueda
-        if (this.searchTerm) {
-            const term = this.searchTerm.toLowerCase();
-            pedidosFiltrados = pedidosFiltrados.filter(p =>
-                p.numeroPedido.toLowerCase().includes(term) ||
-                (p.usuarioNombre && p.usuarioNombre.toLowerCase().includes(term)) ||
-                (p.usuarioEmail && p.usuarioEmail.toLowerCase().includes(term))
-            );
-        }
-
-        this.filteredPedidos = pedidosFiltrados;
-    }
-
     cambiarFiltro(filtro: string) {
         this.filtroActivo = filtro;
-        this.aplicarFiltros();
+        this.cargarPedidos();
     }
 
     buscar() {
-        this.aplicarFiltros();
+        this.busqueda.next();
     }
 
     verDetalle(pedido: Pedido) {
@@ -112,7 +130,11 @@ export class Pedidos implements OnInit {
                 if (index !== -1) {
                     this.pedidos[index] = pedidoActualizado;
                 }
-                this.aplicarFiltros();
+                // Con un estado filtrado, el pedido puede dejar de pertenecer al listado
+                if (this.filtroActivo !== 'TODOS' && pedidoActualizado.estado !== this.filtroActivo) {
+                    this.pedidos = this.pedidos.filter(p => p.id !== pedidoId);
+                }
+                this.filteredPedidos = this.pedidos;
                 this.cargarEstadisticas();
                 alert('Estado actualizado correctamente');
             },
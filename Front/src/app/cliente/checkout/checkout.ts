@@ -61,6 +61,8 @@ export class Checkout implements OnInit, OnDestroy {
   // Resumen
   acceptTerms = false;
   processingPayment = false;
+  // Se mantiene entre reintentos del mismo pago y se renueva al crear el pedido
+  private claveIdempotencia = crypto.randomUUID();
 
   private carritoSubscription?: Subscription;
 
@@ -291,8 +293,9 @@ export class Checkout implements OnInit, OnDestroy {
           }
         }
 
-        this.pedidoService.crearPedido(formData).subscribe({
+        this.pedidoService.crearPedido(formData, this.claveIdempotencia).subscribe({
           next: (pedido) => {
+            this.claveIdempotencia = crypto.randomUUID();
             this.toastService.success('Pedido creado exitosamente');
             this.carritoService.vaciarCarrito().subscribe(); // Limpiar carrito (aunque backend ya debería hacerlo al crear pedido)
             this.processingPayment = false;
@@ -1,12 +1,14 @@
-import { Component, OnInit } from '@angular/core';
+import { Component, OnDestroy, OnInit } from '@angular/core';
 import { CommonModule } from '@angular/common';
 import { Router } from '@angular/router';
+import { Subject, Subscription, debounceTime } from 'rxjs';
 import { FormsModule } from '@angular/forms';
 import { PaginacionComponent } from '../../compartido/componentes/paginacion/paginacion';
 import { EstadoVacioComponent } from '../../compartido/componentes/estado-vacio/estado-vacio';
 import { StorageService } from '../../compartido/servicios/storage.service';
 import { ToastService } from '../../compartido/servicios/toast.service';
-import { ProductoService, Producto } from '../../compartido/servicios/producto.service';
+import { ProductoService, Producto, FiltrosCatalogo } from '../../compartido/servicios/producto.service';
+import { CategoriaService } from '../../compartido/servicios/categoria.service';
 import { CarritoService } from '../../compartido/servicios/carrito.service';
 import { AuthService } from '../../compartido/servicios/auth.service';
 
@@ -17,7 +19,7 @@ import { AuthService } from '../../compartido/servicios/auth.service';
   templateUrl: './productos.html',
   styleUrl: './productos.scss'
 })
-export class Productos implements OnInit {
+export class Productos implements OnInit, OnDestroy {
   // Búsqueda y filtros
   searchTerm: string = '';
   selectedCategoria: string = 'Todas';
@@ -31,9 +33,7 @@ export class Productos implements OnInit {
   totalItems: number = 0;
   totalPages: number = 0;
 
-  // Productos
-  todosLosProductos: Producto[] = [];
-  productosFiltrados: Producto[] = [];
+  // Productos de la página actual (filtrados, ordenados y paginados en el servidor)
   productosPaginados: Producto[] = [];
 
   // Estado de carga
@@ -50,128 +50,122 @@ export class Productos implements OnInit {
     { label: 'Más de S/100', min: 100, max: Infinity }
   ];
 
+  private idsCategorias = new Map<string, number>();
+  private busqueda = new Subject<void>();
+  private suscripciones = new Subscription();
+  private peticion?: Subscription;
+
   constructor(
     private router: Router,
     private storageService: StorageService,
     private toastService: ToastService,
     private productoService: ProductoService,
+    private categoriaService: CategoriaService,
     private carritoService: CarritoService,
     private authService: AuthService
   ) { }
 
   ngOnInit() {
-    this.cargarProductos();
+    this.cargarOpcionesFiltros();
+    // La búsqueda por texto espera a que se deje de escribir antes de consultar
+    this.suscripciones.add(this.busqueda.pipe(debounceTime(300)).subscribe(() => this.aplicarFiltros()));
+    this.cargarPagina();
   }
 
-  cargarProductos() {
-    this.loading = true;
-    this.productoService.listar().subscribe({
-      next: (productos) => {
-        this.todosLosProductos = productos.filter(p => p.activo);
-        
-        // Extraer categorías únicas
-        const categoriasSet = new Set<string>();
-        productos.forEach(p => {
-          if (p.categoriaNombre) {
-            categoriasSet.add(p.categoriaNombre);
-          }
-        });
-        this.categorias = ['Todas', ...Array.from(categoriasSet).sort()];
-
-        // Extraer razas únicas
-        const razasSet = new Set<string>();
-        productos.forEach(p => {
-          if (p.raza && p.raza.trim() !== '') {
-            razasSet.add(p.raza);
-          }
-        });
-        this.razas = ['Todas', ...Array.from(razasSet).sort()];
-
-        this.loading = false;
-        this.aplicarFiltros();
+  ngOnDestroy() {
+    this.suscripciones.unsubscribe();
+    this.peticion?.unsubscribe();
+  }
+
+  cargarOpcionesFiltros() {
+    this.categoriaService.listar().subscribe({
+      next: (categorias) => {
+        this.idsCategorias = new Map(categorias.map(c => [c.nombre, c.id]));
+        this.categorias = ['Todas', ...categorias.map(c => c.nombre).sort()];
       },
-      error: (err) => {
-        console.error('Error cargando productos', err);
-        this.toastService.error('Error al cargar el catálogo de productos');
-        this.loading = false;
-      }
+      error: (err) => console.error('Error cargando categorías', err)
+    });
+    this.productoService.listarRazas().subscribe({
+      next: (razas) => this.razas = ['Todas', ...razas],
+      error: (err) => console.error('Error cargando razas', err)
     });
   }
 
-  aplicarFiltros() {
-    let resultados = [...this.todosLosProductos];
+  onBusquedaChange() {
+    this.busqueda.next();
+  }
 
-    // Filtro de búsqueda
+  aplicarFiltros() {
     if (this.searchTerm.trim()) {
-      const termLower = this.searchTerm.toLowerCase().trim();
-      resultados = resultados.filter(p =>
-        p.nombre.toLowerCase().includes(termLower) ||
-        (p.descripcion && p.descripcion.toLowerCase().includes(termLower)) ||
-        (p.tipo && p.tipo.toLowerCase().includes(termLower)) ||
-        (p.raza && p.raza.toLowerCase().includes(termLower))
-      );
-
       // Guardar en historial de búsqueda
       this.storageService.addToSearchHistory(this.searchTerm.trim());
     }
 
-    // Filtro de categoría
+    // Resetear a página 1 al filtrar
+    this.currentPage = 1;
+    this.cargarPagina();
+  }
+
+  private construirFiltros(): FiltrosCatalogo {
+    const filtros: FiltrosCatalogo = { activo: true, orden: this.ordenSeleccionado() };
+
+    if (this.searchTerm.trim()) {
+      filtros.query = this.searchTerm.trim();
+    }
     if (this.selectedCategoria !== 'Todas') {
-      resultados = resultados.filter(p => p.categoriaNombre === this.selectedCategoria);
+      filtros.categoriaId = this.idsCategorias.get(this.selectedCategoria);
     }
-
-    // Filtro de raza
     if (this.selectedRaza !== 'Todas') {
-      resultados = resultados.filter(p => p.raza === this.selectedRaza);
+      filtros.raza = this.selectedRaza;
     }
-
-    // Filtro de precio
     if (this.selectedPrecio !== 'Todos') {
       const rango = this.rangosPrecios.find(r => r.label === this.selectedPrecio);
       if (rango) {
-        resultados = resultados.filter(p => {
-          const precio = Number(p.precio);
-          return precio >= rango.min && precio < rango.max;
-        });
+        filtros.precioMin = rango.min > 0 ? rango.min : undefined;
+        filtros.precioMax = Number.isFinite(rango.max) ? rango.max : undefined;
       }
     }
-
-    // Ordenamiento
-    resultados = this.ordenarProductos(resultados);
-
-    // Actualizar productos filtrados
-    this.productosFiltrados = resultados;
-    this.totalItems = resultados.length;
-    this.totalPages = Math.ceil(this.totalItems / this.itemsPerPage);
-
-    // Resetear a página 1 al filtrar
-    this.currentPage = 1;
-    this.actualizarPaginacion();
+    return filtros;
   }
 
-  ordenarProductos(productos: Producto[]): Producto[] {
+  private ordenSeleccionado(): string | undefined {
     switch (this.selectedOrden) {
       case 'precio-asc':
-        return productos.sort((a, b) => Number(a.precio) - Number(b.precio));
+        return 'precio,asc';
       case 'precio-desc':
-        return productos.sort((a, b) => Number(b.precio) - Number(a.precio));
+        return 'precio,desc';
       case 'nombre':
-        return productos.sort((a, b) => a.nombre.localeCompare(b.nombre));
+        return 'nombre,asc';
       case 'destacado':
       default:
-        return productos;
+        return undefined;
     }
   }
 
-  actualizarPaginacion() {
-    const startIndex = (this.currentPage - 1) * this.itemsPerPage;
-    const endIndex = startIndex + this.itemsPerPage;
-    this.productosPaginados = this.productosFiltrados.slice(startIndex, endIndex);
+  cargarPagina() {
+    // Una respuesta lenta de un filtro anterior no debe pisar la del filtro actual
+    this.peticion?.unsubscribe();
+    this.loading = true;
+    this.peticion = this.productoService
+      .listarPagina(this.construirFiltros(), this.currentPage - 1, this.itemsPerPage)
+      .subscribe({
+        next: (pagina) => {
+          this.productosPaginados = pagina.productos;
+          this.totalItems = pagina.totalElementos;
+          this.totalPages = pagina.totalPaginas;
+          this.loading = false;
+        },
+        error: (err) => {
+          console.error('Error cargando productos', err);
+          this.toastService.error('Error al cargar el catálogo de productos');
+          this.loading = false;
+        }
+      });
   }
 
   onPageChange(page: number) {
     this.currentPage = page;
-    this.actualizarPaginacion();
+    this.cargarPagina();
     window.scrollTo({ top: 300, behavior: 'smooth' });
   }
 
@@ -3,6 +3,7 @@ import { HttpClient } from '@angular/common/http';
 import { BehaviorSubject, Observable, tap } from 'rxjs';
 import { Router } from '@angular/router';
 import { environment } from '../../../environments/environment';
+import { CARRITO_INVITADO_KEY } from './carrito.service';
 
 export interface AuthResponse {
     token: string;
@@ -71,7 +72,9 @@ export class AuthService {
     }
 
     login(credentials: any): Observable<AuthResponse | RoleSelectionResponse> {
-        return this.http.post<AuthResponse | RoleSelectionResponse>(`${this.apiUrl}/login`, credentials).pipe(
+        // El backend fusiona el carrito invitado con el del usuario al validar las credenciales
+        const request = { ...credentials, tokenCarritoInvitado: localStorage.getItem(CARRITO_INVITADO_KEY) };
+        return this.http.post<AuthResponse | RoleSelectionResponse>(`${this.apiUrl}/login`, request).pipe(
             tap(response => {
                 // Si es AuthResponse directo (tiene token)
                 if ('token' in response && response.token) {
@@ -91,7 +94,8 @@ export class AuthService {
     }
 
     register(userData: any): Observable<AuthResponse> {
-        return this.http.post<AuthResponse>(`${this.apiUrl}/register`, userData).pipe(
+        const request = { ...userData, tokenCarritoInvitado: localStorage.getItem(CARRITO_INVITADO_KEY) };
+        return this.http.post<AuthResponse>(`${this.apiUrl}/register`, request).pipe(
             tap(response => {
                 if (response.token) {
                     this.handleAuthResponse(response);
@@ -119,7 +123,7 @@ export class AuthService {
             localStorage.setItem('user', JSON.stringify(user));
             this.currentUserSubject.next(user);
             
-            // Sincronizar carrito local con el servidor
+            // Cargar el carrito del servidor (ya incluye lo del carrito invitado)
             if (this.onLoginCallback) {
                 this.onLoginCallback();
             }
@@ -1,6 +1,6 @@
 import { Injectable, inject } from '@angular/core';
-import { HttpClient } from '@angular/common/http';
-import { BehaviorSubject, Observable, tap, of, catchError, throwError } from 'rxjs';
+import { HttpClient, HttpHeaders, HttpResponse } from '@angular/common/http';
+import { BehaviorSubject, Observable, tap, of, catchError, map } from 'rxjs';
 import { environment } from '../../../environments/environment';
 import { Producto } from './producto.service';
 
@@ -22,22 +22,29 @@ export interface Carrito {
     total: number;
 }
 
-interface CarritoLocal {
-    items: { productoId: number; cantidad: number }[];
+// Operación del PATCH /carrito; los items se identifican por producto
+export interface OperacionCarrito {
+    tipo: 'AGREGAR' | 'ACTUALIZAR' | 'ELIMINAR' | 'VACIAR';
+    productoId?: number;
+    cantidad?: number;
 }
 
+// Token del carrito invitado (visitante sin sesión); el backend lo fusiona al iniciar sesión
+export const CARRITO_INVITADO_KEY = 'carrito_invitado';
+const CABECERA_CARRITO_INVITADO = 'X-Carrito-Invitado';
+
 @Injectable({
     providedIn: 'root'
 })
 export class CarritoService {
     private http = inject(HttpClient);
     private apiUrl = `${environment.apiUrl}/carrito`;
-    private readonly CARRITO_LOCAL_KEY = 'carrito_local';
+    private invitadoUrl = `${environment.apiUrl}/carrito/invitado`;
 
     private carritoSubject = new BehaviorSubject<Carrito | null>(null);
     public carrito$ = this.carritoSubject.asObservable();
     
-    // Subject para notificar cambios en el carrito local
+    // Subject para notificar cambios en el carrito invitado (cantidad de unidades)
     private carritoLocalCambioSubject = new BehaviorSubject<number>(0);
     public carritoLocalCambio$ = this.carritoLocalCambioSubject.asObservable();
 
@@ -45,87 +52,62 @@ export class CarritoService {
         this.cargarCarrito();
     }
 
-    private getCarritoLocal(): CarritoLocal {
-        const carritoStr = localStorage.getItem(this.CARRITO_LOCAL_KEY);
-        return carritoStr ? JSON.parse(carritoStr) : { items: [] };
+    // Cabecera con el token del carrito invitado, si ya existe
+    private cabecerasInvitado(): HttpHeaders {
+        const token = localStorage.getItem(CARRITO_INVITADO_KEY);
+        return token ? new HttpHeaders({ [CABECERA_CARRITO_INVITADO]: token }) : new HttpHeaders();
     }
 
-    private guardarCarritoLocal(carrito: CarritoLocal) {
-        localStorage.setItem(this.CARRITO_LOCAL_KEY, JSON.stringify(carrito));
-        // Emitir cambio en el carrito local
-        const cantidad = carrito.items.reduce((acc, item) => acc + item.cantidad, 0);
-        this.carritoLocalCambioSubject.next(cantidad);
+    // Guarda el token renovado que devuelve el servidor y avisa la nueva cantidad
+    private procesarRespuestaInvitado(response: HttpResponse<Carrito>): Carrito {
+        const token = response.headers.get(CABECERA_CARRITO_INVITADO);
+        if (token) {
+            localStorage.setItem(CARRITO_INVITADO_KEY, token);
+        }
+        const carrito = response.body as Carrito;
+        this.carritoLocalCambioSubject.next(this.contarUnidades(carrito));
+        return carrito;
     }
 
-    private limpiarCarritoLocal() {
-        localStorage.removeItem(this.CARRITO_LOCAL_KEY);
-        // Emitir cambio en el carrito local
+    private limpiarCarritoInvitado() {
+        localStorage.removeItem(CARRITO_INVITADO_KEY);
         this.carritoLocalCambioSubject.next(0);
     }
 
+    private contarUnidades(carrito: Carrito | null): number {
+        return carrito?.items.reduce((acc, item) => acc + item.cantidad, 0) || 0;
+    }
+
     cargarCarrito() {
         const token = localStorage.getItem('token');
         
         if (token) {
             // Usuario logueado: cargar carrito del servidor
-            this.http.get<Carrito>(this.apiUrl).pipe(
-                catchError(() => {
-                    // Si hay error, intentar cargar el carrito local
-                    this.cargarCarritoLocalAlServidor();
-                    return of(null);
-                })
-            ).subscribe({
+            this.http.get<Carrito>(this.apiUrl).subscribe({
                 next: (carrito) => this.carritoSubject.next(carrito),
                 error: () => this.carritoSubject.next(null)
             });
         } else {
-            // Usuario NO logueado: usar carrito local (simulado)
+            // Usuario NO logueado: carrito invitado del servidor (solo si ya tiene token)
             this.carritoSubject.next(null);
+            if (localStorage.getItem(CARRITO_INVITADO_KEY)) {
+                this.obtenerCarritoInvitado().subscribe({ error: () => this.limpiarCarritoInvitado() });
+            }
         }
     }
 
-    // Sincronizar carrito local con el servidor al hacer login
+    // Al hacer login el backend ya fusionó el carrito invitado: solo se descarta el token
     sincronizarCarritoLocal(): Observable<Carrito | null> {
-        const carritoLocal = this.getCarritoLocal();
-        
-        if (carritoLocal.items.length === 0) {
-            return this.http.get<Carrito>(this.apiUrl).pipe(
-                tap(carrito => this.carritoSubject.next(carrito))
-            );
-        }
-
-        return this.cargarCarritoLocalAlServidor();
+        this.limpiarCarritoInvitado();
+        return this.http.get<Carrito>(this.apiUrl).pipe(
+            tap(carrito => this.carritoSubject.next(carrito))
+        );
     }
 
-    private cargarCarritoLocalAlServidor(): Observable<Carrito | null> {
-        const carritoLocal = this.getCarritoLocal();
-        
-        if (carritoLocal.items.length === 0) {
-            return of(null);
-        }
-
-        // Agregar todos los items del carrito local al servidor
-        const requests = carritoLocal.items.map(item => 
-            this.http.post<Carrito>(`${this.apiUrl}/items`, { 
-                productoId: item.productoId, 
-                cantidad: item.cantidad 
-            }).pipe(catchError(() => of(null)))
+    private obtenerCarritoInvitado(): Observable<Carrito> {
+        return this.http.get<Carrito>(this.invitadoUrl, { headers: this.cabecerasInvitado(), observe: 'response' }).pipe(
+            map(response => this.procesarRespuestaInvitado(response))
         );
-
-        // Ejecutar todas las peticiones
-        return new Observable(observer => {
-            Promise.all(requests.map(req => req.toPromise())).then((results) => {
-                const ultimoCarrito = results.filter(r => r !== null).pop();
-                this.limpiarCarritoLocal();
-                if (ultimoCarrito) {
-                    this.carritoSubject.next(ultimoCarrito);
-                    observer.next(ultimoCarrito);
-                } else {
-                    observer.next(null);
-                }
-                observer.complete();
-            });
-        });
     }
 
     agregarProducto(productoId: number, cantidad: number = 1): Observable<Carrito> {
@@ -134,44 +116,18 @@ export class CarritoService {
         if (token) {
             // Usuario logueado: agregar al servidor
             return this.http.post<Carrito>(`${this.apiUrl}/items`, { productoId, cantidad }).pipe(
-                tap(carrito => this.carritoSubject.next(carrito)),
-                catchError(error => {
-                    // Si hay error, agregar al carrito local como fallback
-                    const carritoLocal = this.getCarritoLocal();
-                    const itemExistente = carritoLocal.items.find(i => i.productoId === productoId);
-                    
-                    if (itemExistente) {
-                        itemExistente.cantidad += cantidad;
-                    } else {
-                        carritoLocal.items.push({ productoId, cantidad });
-                    }
-                    
-                    this.guardarCarritoLocal(carritoLocal);
-                    return throwError(() => error);
-                })
+                tap(carrito => this.carritoSubject.next(carrito))
             );
         } else {
-            // Usuario NO logueado: agregar al carrito local
-            const carritoLocal = this.getCarritoLocal();
-            const itemExistente = carritoLocal.items.find(i => i.productoId === productoId);
-            
-            if (itemExistente) {
-                itemExistente.cantidad += cantidad;
-            } else {
-                carritoLocal.items.push({ productoId, cantidad });
-            }
-            
-            this.guardarCarritoLocal(carritoLocal);
-            
-            // Retornar observable simulado exitoso
-            return of({
-                id: 0,
-                items: [],
-                total: 0
-            });
+            // Usuario NO logueado: agregar al carrito invitado
+            return this.http.post<Carrito>(`${this.invitadoUrl}/items`, { productoId, cantidad },
+                { headers: this.cabecerasInvitado(), observe: 'response' }).pipe(
+                map(response => this.procesarRespuestaInvitado(response))
+            );
         }
     }
 
+    // En el carrito invitado el id del item es el id del producto
     removerProducto(itemId: number): Observable<Carrito> {
         const token = localStorage.getItem('token');
         
@@ -181,16 +137,11 @@ export class CarritoService {
                 tap(carrito => this.carritoSubject.next(carrito))
             );
         } else {
-            // Usuario NO logueado: remover del carrito local
-            const carritoLocal = this.getCarritoLocal();
-            carritoLocal.items = carritoLocal.items.filter((_, index) => index !== itemId);
-            this.guardarCarritoLocal(carritoLocal);
-            
-            return of({
-                id: 0,
-                items: [],
-                total: 0
-            });
+            // Usuario NO logueado: remover del carrito invitado
+            return this.http.delete<Carrito>(`${this.invitadoUrl}/items/${itemId}`,
+                { headers: this.cabecerasInvitado(), observe: 'response' }).pipe(
+                map(response => this.procesarRespuestaInvitado(response))
+            );
         }
     }
 
@@ -203,9 +154,10 @@ export class CarritoService {
                 tap(() => this.carritoSubject.next(null))
             );
         } else {
-            // Usuario NO logueado: vaciar carrito local
-            this.limpiarCarritoLocal();
-            return of(void 0);
+            // Usuario NO logueado: vaciar carrito invitado
+            return this.http.delete<void>(this.invitadoUrl, { headers: this.cabecerasInvitado() }).pipe(
+                tap(() => this.limpiarCarritoInvitado())
+            );
         }
     }
 
@@ -218,90 +170,34 @@ export class CarritoService {
                 tap(carrito => this.carritoSubject.next(carrito))
             );
         } else {
-            // Usuario NO logueado: actualizar en carrito local
-            const carritoLocal = this.getCarritoLocal();
-            if (carritoLocal.items[itemId]) {
-                carritoLocal.items[itemId].cantidad = cantidad;
-                this.guardarCarritoLocal(carritoLocal);
-            }
-            
-            return of({
-                id: 0,
-                items: [],
-                total: 0
-            });
+            // Usuario NO logueado: actualizar en el carrito invitado
+            return this.http.put<Carrito>(`${this.invitadoUrl}/items/${itemId}`, { cantidad },
+                { headers: this.cabecerasInvitado(), observe: 'response' }).pipe(
+                map(response => this.procesarRespuestaInvitado(response))
+            );
         }
     }
 
+    // Varias operaciones en una sola petición (usuario logueado): se aplican todas o ninguna
+    aplicarOperaciones(operaciones: OperacionCarrito[]): Observable<Carrito> {
+        return this.http.patch<Carrito>(this.apiUrl, { operaciones }).pipe(
+            tap(carrito => this.carritoSubject.next(carrito))
+        );
+    }
+
     getCantidadItems(): number {
         const token = localStorage.getItem('token');
         
         if (token) {
             // Usuario logueado: obtener del observable
-            const carrito = this.carritoSubject.value;
-            return carrito?.items.reduce((acc, item) => acc + item.cantidad, 0) || 0;
+            return this.contarUnidades(this.carritoSubject.value);
         } else {
-            // Usuario NO logueado: contar items del carrito local
-            const carritoLocal = this.getCarritoLocal();
-            return carritoLocal.items.reduce((acc, item) => acc + item.cantidad, 0);
+            // Usuario NO logueado: última cantidad conocida del carrito invitado
+            return this.carritoLocalCambioSubject.value;
         }
     }
 
-    // Obtener carrito local con detalles de productos para mostrar en UI
-    obtenerCarritoLocalConDetalles(): Observable<ItemCarrito[]> {
-        const carritoLocal = this.getCarritoLocal();
-        
-        if (carritoLocal.items.length === 0) {
-            return of([]);
-        }
-
-        // Obtener detalles de cada producto
-        const requests = carritoLocal.items.map((item, index) => 
-            this.http.get<Producto>(`${environment.apiUrl}/productos/${item.productoId}`).pipe(
-                catchError(() => of(null)),
-                tap(producto => {
-                    if (producto) {
-                        // Crear ItemCarrito con los datos del producto
-                        const itemCarrito: ItemCarrito = {
-                            id: index, // Usar índice como ID temporal
-                            producto: producto,
-                            productoId: producto.id,
-                            cantidad: item.cantidad,
-                            subtotal: producto.precio * item.cantidad,
-                            productoNombre: producto.nombre,
-                            precioUnitario: producto.precio
-                        };
-                        return itemCarrito;
-                    }
-                    return null;
-                })
-            )
-        );
-
-        return new Observable(observer => {
-            Promise.all(requests.map(req => req.toPromise())).then((productos) => {
-                const items: ItemCarrito[] = [];
-                productos.forEach((producto, index) => {
-                    if (producto) {
-                        const item = carritoLocal.items[index];
-                        items.push({
-                            id: index,
-                            producto: producto,
-                            productoId: producto.id,
-                            cantidad: item.cantidad,
-                            subtotal: producto.precio * item.cantidad,
-                            productoNombre: producto.nombre,
-                            precioUnitario: producto.precio
-                        });
-                    }
-                });
-                observer.next(items);
-                observer.complete();
-            });
-        });
-    }
-
-    // Obtener items del carrito (local o servidor según autenticación)
+    // Obtener items del carrito (invitado o servidor según autenticación)
     obtenerItemsCarrito(): Observable<ItemCarrito[]> {
         const token = localStorage.getItem('token');
         
@@ -310,8 +206,14 @@ export class CarritoService {
             const carrito = this.carritoSubject.value;
             return of(carrito?.items || []);
         } else {
-            // Usuario NO logueado: obtener carrito local con detalles
-            return this.obtenerCarritoLocalConDetalles();
+            // Usuario NO logueado: carrito invitado (un solo GET con los productos incluidos)
+            if (!localStorage.getItem(CARRITO_INVITADO_KEY)) {
+                return of([]);
+            }
+            return this.obtenerCarritoInvitado().pipe(
+                map(carrito => carrito.items),
+                catchError(() => of([]))
+            );
         }
     }
 }
@@ -1,6 +1,6 @@
 import { Injectable, inject } from '@angular/core';
-import { HttpClient } from '@angular/common/http';
-import { Observable } from 'rxjs';
+import { HttpClient, HttpHeaders } from '@angular/common/http';
+import { EMPTY, Observable, expand, map, reduce } from 'rxjs';
 import { environment } from '../../../environments/environment';
 
 export interface PedidoRequest {
@@ -39,6 +39,23 @@ export interface Pedido {
     tieneComprobante?: boolean;
 }
 
+// Página del listado del personal; siguienteCursor es null en la última
+export interface PaginaPedidos {
+    pedidos: Pedido[];
+    siguienteCursor: string | null;
+}
+
+export interface FiltrosPedidos {
+    estado?: string;
+    estadoPago?: string;
+    desde?: string;  // yyyy-MM-dd
+    hasta?: string;  // yyyy-MM-dd, incluido
+    texto?: string;  // número de pedido, nombre o correo del cliente
+}
+
+// Cantidad de pedidos por estado (todos los estados, con 0 si no hay)
+export type ConteosPedidos = Record<string, number>;
+
 export interface EstadisticasPedidos {
     totalPedidos: number;
     pendientes: number;
@@ -53,10 +70,13 @@ export interface EstadisticasPedidos {
 export class PedidoService {
     private http = inject(HttpClient);
     private apiUrl = `${environment.apiUrl}/pedidos`;
+    private static readonly TAMANO_RECORRIDO = 100;
 
     // Métodos para clientes
-    crearPedido(request: PedidoRequest | FormData): Observable<Pedido> {
-        return this.http.post<Pedido>(this.apiUrl, request);
+    // La clave de idempotencia hace que un reintento devuelva el pedido ya creado en vez de duplicarlo
+    crearPedido(request: PedidoRequest | FormData, claveIdempotencia?: string): Observable<Pedido> {
+        const headers = claveIdempotencia ? new HttpHeaders({ 'Idempotency-Key': claveIdempotencia }) : undefined;
+        return this.http.post<Pedido>(this.apiUrl, request, { headers });
     }
 
     listarMisPedidos(): Observable<Pedido[]> {
@@ -72,8 +92,33 @@ export class PedidoService {
     }
 
     // Métodos para admin
+    // Listado paginado por cursor, del pedido más reciente al más antiguo
+    listarPagina(filtros: FiltrosPedidos = {}, cursor?: string | null, tamano = 50): Observable<PaginaPedidos> {
+        const params: Record<string, string> = { tamano: String(tamano) };
+        Object.entries(filtros).forEach(([clave, valor]) => {
+            if (valor) {
+                params[clave] = valor;
+            }
+        });
+        if (cursor) {
+            params['cursor'] = cursor;
+        }
+        return this.http.get<PaginaPedidos>(`${this.apiUrl}/admin/todos`, { params });
+    }
+
+    // Todos los pedidos que cumplen los filtros, siguiendo el cursor hasta la última página
+    listarTodas(filtros: FiltrosPedidos = {}): Observable<Pedido[]> {
+        const tamano = PedidoService.TAMANO_RECORRIDO;
+        return this.listarPagina(filtros, null, tamano).pipe(
+            expand(pagina => pagina.siguienteCursor
+                ? this.listarPagina(filtros, pagina.siguienteCursor, tamano)
+                : EMPTY),
+            reduce((pedidos: Pedido[], pagina) => pedidos.concat(pagina.pedidos), [])
+        );
+    }
+
     listarTodosPedidos(): Observable<Pedido[]> {
-        return this.http.get<Pedido[]>(`${this.apiUrl}/admin/todos`);
+        return this.listarTodas();
     }
 
     listarPorEstado(estado: string): Observable<Pedido[]> {
@@ -81,12 +126,19 @@ export class PedidoService {
     }
 
     listarPorFecha(fechaInicio: string, fechaFin: string): Observable<Pedido[]> {
-        return this.http.get<Pedido[]>(`${this.apiUrl}/admin/todos`, {
-            params: {
-                fechaInicio,
-                fechaFin
-            }
-        });
+        return this.listarTodas({ desde: fechaInicio, hasta: fechaFin });
+    }
+
+    // Conteos calculados en el servidor, de todos los pedidos o de los días del rango
+    contarPorEstado(desde?: string, hasta?: string): Observable<ConteosPedidos> {
+        const params: Record<string, string> = {};
+        if (desde) {
+            params['desde'] = desde;
+        }
+        if (hasta) {
+            params['hasta'] = hasta;
+        }
+        return this.http.get<ConteosPedidos>(`${this.apiUrl}/admin/conteos`, { params });
     }
 
     actualizarEstado(id: number, nuevoEstado: string): Observable<Pedido> {
@@ -96,19 +148,12 @@ export class PedidoService {
     }
 
     obtenerEstadisticas(): Observable<EstadisticasPedidos> {
-        // Por ahora calculamos del lado del cliente, luego se puede crear endpoint en backend
-        return new Observable(observer => {
-            this.listarTodosPedidos().subscribe(pedidos => {
-                const stats: EstadisticasPedidos = {
-                    totalPedidos: pedidos.length,
-                    pendientes: pedidos.filter(p => p.estado === 'PENDIENTE').length,
-                    enProceso: pedidos.filter(p => p.estado === 'EN_PROCESO').length,
-                    completados: pedidos.filter(p => p.estado === 'ENTREGADO').length,
-                    cancelados: pedidos.filter(p => p.estado === 'CANCELADO').length
-                };
-                observer.next(stats);
-                observer.complete();
-            });
-        });
+        return this.contarPorEstado().pipe(map(conteos => ({
+            totalPedidos: Object.values(conteos).reduce((total, cantidad) => total + cantidad, 0),
+            pendientes: conteos['PENDIENTE'] ?? 0,
+            enProceso: conteos['EN_PROCESO'] ?? 0,
+            completados: conteos['ENTREGADO'] ?? 0,
+            cancelados: conteos['CANCELADO'] ?? 0
+        })));
     }
 }
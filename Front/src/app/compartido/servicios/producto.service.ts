@@ -1,6 +1,6 @@
 import { Injectable, inject } from '@angular/core';
 import { HttpClient, HttpParams } from '@angular/common/http';
-import { Observable } from 'rxjs';
+import { EMPTY, Observable, expand, reduce } from 'rxjs';
 import { environment } from '../../../environments/environment';
 
 export interface Producto {
@@ -13,7 +13,7 @@ export interface Producto {
     certificado: string;
     descripcion: string;
     caracteristicas: string;
-    imagen?: string; // Base64 string
+    imagen?: string; // URL de la imagen
     activo: boolean;
     fechaCreacion: string;
     categoriaId: number;
@@ -22,6 +22,7 @@ export interface Producto {
     stockMinimo?: number;
     calificacionPromedio?: number;
     totalResenas?: number;
+    version?: number; // se reenvía al editar; si el producto cambió entretanto el servidor responde 409
     imagenUrl?: string; // Propiedad opcional para compatibilidad
     descuento?: number; // Propiedad opcional para compatibilidad
 }
@@ -32,12 +33,23 @@ export interface ImagenProducto {
     esPrincipal: boolean;
 }
 
-export interface Page<T> {
-    content: T[];
-    totalPages: number;
-    totalElements: number;
-    size: number;
-    number: number;
+// Página del catálogo; pagina empieza en 0
+export interface PaginaProductos {
+    productos: Producto[];
+    pagina: number;
+    tamano: number;
+    totalElementos: number;
+    totalPaginas: number;
+}
+
+export interface FiltrosCatalogo {
+    categoriaId?: number;
+    query?: string;
+    raza?: string;
+    precioMin?: number;
+    precioMax?: number;  // exclusivo
+    activo?: boolean;
+    orden?: string;      // campo,direccion (ej. precio,asc)
 }
 
 @Injectable({
@@ -47,8 +59,33 @@ export class ProductoService {
     private http = inject(HttpClient);
     private apiUrl = `${environment.apiUrl}/productos`;
 
-    listar(): Observable<Producto[]> {
-        return this.http.get<Producto[]>(this.apiUrl);
+    // Tamaño de página al recorrer el catálogo completo
+    private static readonly TAMANO_RECORRIDO = 100;
+
+    // Una página del catálogo, filtrada y ordenada en el servidor
+    listarPagina(filtros: FiltrosCatalogo = {}, pagina = 0, tamano = 20): Observable<PaginaProductos> {
+        let params = new HttpParams().set('page', pagina).set('size', tamano);
+        Object.entries(filtros).forEach(([clave, valor]) => {
+            if (valor !== undefined && valor !== null && valor !== '') {
+                params = params.set(clave === 'orden' ? 'sort' : clave, valor);
+            }
+        });
+        return this.http.get<PaginaProductos>(this.apiUrl, { params });
+    }
+
+    // Todo el catálogo, pidiendo las páginas una tras otra hasta la última
+    listar(filtros: FiltrosCatalogo = {}): Observable<Producto[]> {
+        const tamano = ProductoService.TAMANO_RECORRIDO;
+        return this.listarPagina(filtros, 0, tamano).pipe(
+            expand(pagina => pagina.pagina + 1 < pagina.totalPaginas
+                ? this.listarPagina(filtros, pagina.pagina + 1, tamano)
+                : EMPTY),
+            reduce((productos: Producto[], pagina) => productos.concat(pagina.productos), [])
+        );
+    }
+
+    listarRazas(): Observable<string[]> {
+        return this.http.get<string[]>(`${this.apiUrl}/razas`);
     }
 
     obtenerPorId(id: number): Observable<Producto> {
@@ -56,12 +93,11 @@ export class ProductoService {
     }
 
     listarPorCategoria(categoriaId: number): Observable<Producto[]> {
-        return this.http.get<Producto[]>(`${this.apiUrl}/categoria/${categoriaId}`);
+        return this.listar({ categoriaId });
     }
 
     buscar(query: string): Observable<Producto[]> {
-        let params = new HttpParams().set('query', query);
-        return this.http.get<Producto[]>(`${this.apiUrl}/buscar`, { params });
+        return this.listar({ query });
     }
 
     // Métodos Admin
@@ -1,5 +1,6 @@
 import { Component, OnInit, inject } from '@angular/core';
 import { CommonModule } from '@angular/common';
+import { forkJoin } from 'rxjs';
 import { PedidoService, Pedido } from '../../compartido/servicios/pedido.service';
 
 interface EstadisticasEntregas {
@@ -44,16 +45,14 @@ export class Entregas implements OnInit {
         this.loading = true;
         this.error = '';
         
-        // Cargar pedidos en estado EN_CAMINO y PENDIENTE (listos para entrega)
-        this.pedidoService.listarTodosPedidos().subscribe({
-            next: (pedidos) => {
-                // Filtrar pedidos que están listos para entrega o en camino
-                const pedidosEntrega = pedidos.filter(p => 
-                    p.estado === 'EN_CAMINO' || p.estado === 'EN_PROCESO'
-                );
-                
+        // Cargar todos los pedidos EN_CAMINO y EN_PROCESO (listos para entrega), filtrados en el servidor
+        forkJoin([
+            this.pedidoService.listarTodas({ estado: 'EN_CAMINO' }),
+            this.pedidoService.listarTodas({ estado: 'EN_PROCESO' })
+        ]).subscribe({
+            next: ([enCamino, enProceso]) => {
                 // Ordenar por fecha
-                this.entregas = pedidosEntrega
+                this.entregas = [...enCamino, ...enProceso]
                     .sort((a, b) => new Date(a.fechaPedido).getTime() - new Date(b.fechaPedido).getTime())
                     .map(p => this.asignarHorarioEntrega(p));
                 
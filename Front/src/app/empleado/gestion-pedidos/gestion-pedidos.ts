@@ -1,9 +1,10 @@
-import { Component, OnInit, inject } from '@angular/core';
+import { Component, OnDestroy, OnInit, inject } from '@angular/core';
 import { CommonModule } from '@angular/common';
 import { FormsModule } from '@angular/forms';
 import { HttpClient, HttpHeaders } from '@angular/common/http';
 import { environment } from '../../../environments/environment';
 import { DomSanitizer, SafeUrl } from '@angular/platform-browser';
+import { Subject, Subscription, debounceTime } from 'rxjs';
 
 interface Pedido {
     id: number;
@@ -33,6 +34,11 @@ interface Pedido {
     tieneComprobante?: boolean;
 }
 
+interface PaginaPedidos {
+    pedidos: Pedido[];
+    siguienteCursor: string | null;
+}
+
 interface EstadisticasPedidos {
     totalPendientes: number;
     completadosHoy: number;
@@ -47,7 +53,7 @@ interface EstadisticasPedidos {
     templateUrl: './gestion-pedidos.html',
     styleUrl: './gestion-pedidos.scss',
 })
-export class GestionPedidos implements OnInit {
+export class GestionPedidos implements OnInit, OnDestroy {
     private http = inject(HttpClient);
     private sanitizer = inject(DomSanitizer);
     private apiUrl = `${environment.apiUrl}/pedidos`;
@@ -60,6 +66,7 @@ export class GestionPedidos implements OnInit {
     
     pedidos: Pedido[] = [];
     pedidosFiltrados: Pedido[] = [];
+    siguienteCursor: string | null = null;
     selectedOrder: any = null;
     processAction: string = '';
     processNotes: string = '';
@@ -76,76 +83,107 @@ export class GestionPedidos implements OnInit {
     filtroActual = 'TODOS';
     busqueda = '';
 
+    private busquedaCambiada = new Subject<void>();
+    private suscripciones = new Subscription();
+    private peticion?: Subscription;
+
     ngOnInit() {
+        // La búsqueda por texto espera a que se deje de escribir antes de consultar
+        this.suscripciones.add(this.busquedaCambiada.pipe(debounceTime(300)).subscribe(() => this.cargarPedidos()));
         this.cargarPedidos();
         this.cargarEstadisticas();
     }
 
+    ngOnDestroy() {
+        this.suscripciones.unsubscribe();
+        this.peticion?.unsubscribe();
+    }
+
+    // Estado y búsqueda van al servidor, así abarcan todos los pedidos y no solo las páginas cargadas
+    private parametros(cursor?: string | null): Record<string, string> {
+        const params: Record<string, string> = {};
+        const estados: Record<string, string> = {
+            'PENDIENTES': 'PENDIENTE',
+            'EN_PROCESO': 'EN_PROCESO',
+            'LISTOS': 'ENTREGADO'
+        };
+        if (estados[this.filtroActual]) {
+            params['estado'] = estados[this.filtroActual];
+        }
+        if (this.busqueda.trim()) {
+            params['texto'] = this.busqueda.trim();
+        }
+        if (cursor) {
+            params['cursor'] = cursor;
+        }
+        return params;
+    }
+
+    // Primera página con los filtros actuales; descarta la respuesta pendiente de filtros anteriores
     cargarPedidos() {
-        this.http.get<Pedido[]>(`${this.apiUrl}/empleado/todos`).subscribe({
-            next: (pedidos) => {
-                console.log('Pedidos recibidos:', pedidos);
-                this.pedidos = pedidos;
-                this.aplicarFiltros();
+        this.peticion?.unsubscribe();
+        this.peticion = this.http.get<PaginaPedidos>(`${this.apiUrl}/empleado/todos`, {
+            params: this.parametros()
+        }).subscribe({
+            next: (pagina) => {
+                this.pedidos = pagina.pedidos;
+                this.pedidosFiltrados = this.pedidos;
+                this.siguienteCursor = pagina.siguienteCursor;
             },
             error: (error) => {
                 console.error('Error al cargar pedidos:', error);
                 // Datos de ejemplo en caso de error
                 this.pedidos = [];
+                this.pedidosFiltrados = [];
             }
         });
     }
 
-    cargarEstadisticas() {
-        // Calcular estadísticas desde los pedidos cargados
-        this.totalPendientes = this.pedidos.filter(p => p.estado === 'PENDIENTE').length;
-        this.totalEnProceso = this.pedidos.filter(p => p.estado === 'EN_PROCESO').length;
-        this.totalListos = this.pedidos.filter(p => p.estado === 'ENTREGADO').length;
-        
-        const hoy = new Date().toISOString().split('T')[0];
-        this.completadosHoy = this.pedidos.filter(p => 
-            p.estado === 'ENTREGADO' && p.fechaPedido.startsWith(hoy)
-        ).length;
-        
-        this.entregasProgramadas = this.pedidos.filter(p => 
-            p.estado === 'EN_CAMINO'
-        ).length;
-    }
-
-    aplicarFiltros() {
-        let resultado = [...this.pedidos];
-
-        // Filtro por estado
-        if (this.filtroActual !== 'TODOS') {
-            if (this.filtroActual === 'PENDIENTES') {
-                resultado = resultado.filter(p => p.estado === 'PENDIENTE');
-            } else if (this.filtroActual === 'EN_PROCESO') {
-                resultado = resultado.filter(p => p.estado === 'EN_PROCESO');
-            } else if (this.filtroActual === 'LISTOS') {
-                resultado = resultado.filter(p => p.estado === 'ENTREGADO');
-            }
+    // Agrega la página siguiente a los pedidos ya cargados
+    cargarMas() {
+        if (!this.siguienteCursor) {
+            return;
         }
+        this.peticion = this.http.get<PaginaPedidos>(`${this.apiUrl}/empleado/todos`, {
+            params: this.parametros(this.siguienteCursor)
+        }).subscribe({
+            next: (pagina) => {
+                this.pedidos = [...this.pedidos, ...pagina.pedidos];
+                this.pedidosFiltrados = this.pedidos;
+                this.siguienteCursor = pagina.siguienteCursor;
+            },
+            error: (error) => console.error('Error al cargar más pedidos:', error)
+        });
+    }
 
-        // Filtro por búsqueda
-        if (this.busqueda) {
-            const termino = this.busqueda.toLowerCase();
-            resultado = resultado.filter(p => 
-                p.numeroPedido.toLowerCase().includes(termino) ||
-                (p.usuarioNombre && p.usuarioNombre.toLowerCase().includes(termino)) ||
-                (p.usuarioEmail && p.usuarioEmail.toLowerCase().includes(termino))
-            );
-        }
+    // Conteos calculados en el servidor sobre todos los pedidos
+    cargarEstadisticas() {
+        this.http.get<Record<string, number>>(`${this.apiUrl}/admin/conteos`).subscribe({
+            next: (conteos) => {
+                this.totalPendientes = conteos['PENDIENTE'] ?? 0;
+                this.totalEnProceso = conteos['EN_PROCESO'] ?? 0;
+                this.totalListos = conteos['ENTREGADO'] ?? 0;
+                this.entregasProgramadas = conteos['EN_CAMINO'] ?? 0;
+            },
+            error: (error) => console.error('Error al cargar estadísticas:', error)
+        });
 
-        this.pedidosFiltrados = resultado;
+        const hoy = new Date().toISOString().split('T')[0];
+        this.http.get<Record<string, number>>(`${this.apiUrl}/admin/conteos`, {
+            params: { desde: hoy, hasta: hoy }
+        }).subscribe({
+            next: (conteos) => this.completadosHoy = conteos['ENTREGADO'] ?? 0,
+            error: (error) => console.error('Error al cargar estadísticas de hoy:', error)
+        });
     }
 
     cambiarFiltro(filtro: string) {
         this.filtroActual = filtro;
-        this.aplicarFiltros();
+        this.cargarPedidos();
     }
 
     buscarPedido() {
-        this.aplicarFiltros();
+        this.busquedaCambiada.next();
     }
 
     // Ver detalles del pedido
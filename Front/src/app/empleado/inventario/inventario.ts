@@ -184,6 +184,13 @@ export class Inventario implements OnInit {
             },
             error: (err) => {
                 console.error('Error al actualizar stock:', err);
+                if (err.status === 409) {
+                    // Hubo ventas desde que se cargó el inventario: el stock mostrado ya no es el real
+                    alert('El stock cambió desde que se cargó el inventario. Se recargaron los datos, vuelva a intentarlo.');
+                    this.cerrarModalStock();
+                    this.cargarInventario();
+                    return;
+                }
                 alert('Error al actualizar el stock');
             }
         });
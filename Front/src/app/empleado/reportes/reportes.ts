@@ -65,20 +65,22 @@ export class Reportes implements OnInit {
         const primerDiaMes = new Date(new Date().getFullYear(), new Date().getMonth(), 1);
         const ultimoDiaMes = new Date(new Date().getFullYear(), new Date().getMonth() + 1, 0);
 
-        this.pedidoService.listarPorFecha(
+        // Conteos del mes por estado calculados en el servidor, sobre todos los pedidos
+        this.pedidoService.contarPorEstado(
             primerDiaMes.toISOString().split('T')[0],
             ultimoDiaMes.toISOString().split('T')[0]
         ).subscribe({
-            next: (pedidos) => {
-                const completados = pedidos.filter(p => p.estado === 'ENTREGADO');
-                this.estadisticas.pedidosProcesados = completados.length;
+            next: (conteos) => {
+                const completados = conteos['ENTREGADO'] ?? 0;
+                const total = Object.values(conteos).reduce((suma, cantidad) => suma + cantidad, 0);
+                this.estadisticas.pedidosProcesados = completados;
                 
                 // Calcular tiempo promedio (simulado - necesitarías la fecha real de procesamiento)
                 this.estadisticas.tiempoPromedio = '2.5h';
                 
                 // Calcular tasa de éxito
-                if (pedidos.length > 0) {
-                    const tasa = (completados.length / pedidos.length) * 100;
+                if (total > 0) {
+                    const tasa = (completados / total) * 100;
                     this.estadisticas.tasaExito = `${Math.round(tasa)}%`;
                 } else {
                     this.estadisticas.tasaExito = '0%';
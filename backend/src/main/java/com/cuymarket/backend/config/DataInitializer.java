@@ -7,10 +7,19 @@ import com.cuymarket.backend.model.producto.Producto;
 import com.cuymarket.backend.model.usuario.Rol;
 import com.cuymarket.backend.model.usuario.Usuario;
 import com.cuymarket.backend.repository.carrito.CarritoRepository;
+import com.cuymarket.backend.repository.pedido.VentaDiariaRepository;
 import com.cuymarket.backend.repository.producto.CategoriaRepository;
 import com.cuymarket.backend.repository.producto.ProductoRepository;
 import com.cuymarket.backend.repository.usuario.RolRepository;
 import com.cuymarket.backend.repository.usuario.UsuarioRepository;
+import com.cuymarket.backend.service.carrito.CarritoService;
+import com.cuymarket.backend.service.finanzas.VentaDiariaService;
+import com.cuymarket.backend.service.pedido.ComprobantePagoService;
+import com.cuymarket.backend.service.pedido.FacturaService;
+import com.cuymarket.backend.service.pedido.PedidoService;
+import com.cuymarket.backend.service.producto.ImagenProductoService;
+import com.cuymarket.backend.service.producto.MovimientoInventarioService;
+import com.cuymarket.backend.service.reportes.ReporteJobService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -29,6 +38,15 @@ public class DataInitializer implements CommandLineRunner {
     private final CategoriaRepository categoriaRepository;
     private final ProductoRepository productoRepository;
     private final CarritoRepository carritoRepository;
+    private final VentaDiariaRepository ventaDiariaRepository;
+    private final VentaDiariaService ventaDiariaService;
+    private final ImagenProductoService imagenProductoService;
+    private final ComprobantePagoService comprobantePagoService;
+    private final MovimientoInventarioService movimientoInventarioService;
+    private final PedidoService pedidoService;
+    private final CarritoService carritoService;
+    private final FacturaService facturaService;
+    private final ReporteJobService reporteJobService;
     private final PasswordEncoder passwordEncoder;
 
     @Override
@@ -54,6 +72,53 @@ public class DataInitializer implements CommandLineRunner {
         if (categoriaRepository.count() == 0) {
             inicializarCategoriasYProductos();
         }
+
+        // Acumulados diarios de ventas (primer arranque o tabla recién creada)
+        if (ventaDiariaRepository.count() == 0) {
+            int filas = ventaDiariaService.reconstruir();
+            System.out.println("Ventas diarias reconstruidas: " + filas + " filas");
+        }
+
+        // Imágenes de la antigua columna LONGBLOB de productos que aún no tienen archivo; la
+        // columna solo se vacía si se activó app.imagenes.migracion.vaciar-legacy
+        int imagenes = imagenProductoService.migrarImagenesLegacy();
+        if (imagenes > 0) {
+            System.out.println("Imágenes de productos migradas al almacén: " + imagenes);
+        }
+        int imagenesVaciadas = imagenProductoService.vaciarImagenesLegacy();
+        if (imagenesVaciadas > 0) {
+            System.out.println("Imágenes antiguas quitadas de la base: " + imagenesVaciadas);
+        }
+
+        // Comprobantes de pago de la antigua columna LONGBLOB que aún no tienen archivo; la
+        // columna solo se vacía si se activó app.comprobantes.migracion.vaciar-legacy
+        int comprobantes = comprobantePagoService.migrarComprobantesLegacy();
+        if (comprobantes > 0) {
+            System.out.println("Comprobantes de pago migrados al almacén: " + comprobantes);
+        }
+        int comprobantesVaciados = comprobantePagoService.vaciarComprobantesLegacy();
+        if (comprobantesVaciados > 0) {
+            System.out.println("Comprobantes antiguos quitados de la base: " + comprobantesVaciados);
+        }
+
+        // Generadores de ids de las líneas de pedido y de carrito, y numeración de pedidos
+        // y facturas, por delante de las filas existentes
+        pedidoService.alinearGeneradorIdsItems();
+        carritoService.alinearGeneradorIdsItems();
+        pedidoService.alinearNumeracion();
+        facturaService.alinearNumeracion();
+
+        // Reportes en segundo plano abandonados hace tiempo (los recientes pueden ser de otra instancia)
+        int interrumpidos = reporteJobService.marcarInterrumpidos();
+        if (interrumpidos > 0) {
+            System.out.println("Reportes interrumpidos marcados como fallidos: " + interrumpidos);
+        }
+
+        // Saldo inicial en el diario de inventario para los productos que no tienen movimientos
+        int saldos = movimientoInventarioService.registrarSaldosIniciales();
+        if (saldos > 0) {
+            System.out.println("Saldos iniciales de inventario registrados: " + saldos);
+        }
     }
 
     private void inicializarRoles() {
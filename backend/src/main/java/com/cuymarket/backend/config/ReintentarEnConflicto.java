@@ -0,0 +1,22 @@
+package com.cuymarket.backend.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marca un método de servicio idempotente que puede repetirse entero si su transacción
+ * choca con otra escritura concurrente (conflicto de {@code @Version}). Lo aplica
+ * {@link ReintentoConflictoAspect}.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ReintentarEnConflicto {
+
+    // Intentos totales, incluido el primero
+    int intentos() default 4;
+
+    // Espera antes del primer reintento; se duplica en cada uno
+    long esperaInicialMs() default 20;
+}
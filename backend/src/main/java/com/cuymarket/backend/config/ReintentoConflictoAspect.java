@@ -0,0 +1,58 @@
+package com.cuymarket.backend.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Repite los métodos con {@link ReintentarEnConflicto} cuando fallan por bloqueo
+ * optimista. Se ejecuta por fuera del proxy transaccional para que cada intento abra
+ * una transacción nueva; si ya había una transacción abierta no reintenta, porque
+ * esa transacción quedó marcada para rollback.
+ */
+@Aspect
+@Component
+// Justo antes del interceptor de @Transactional (LOWEST_PRECEDENCE), que queda por dentro
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+@RequiredArgsConstructor
+public class ReintentoConflictoAspect {
+
+    private final MeterRegistry meterRegistry;
+
+    @Around("@annotation(reintentar)")
+    public Object reintentar(ProceedingJoinPoint joinPoint, ReintentarEnConflicto reintentar) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+
+        String metodo = joinPoint.getSignature().getDeclaringType().getSimpleName()
+                + "." + joinPoint.getSignature().getName();
+        long espera = reintentar.esperaInicialMs();
+
+        for (int intento = 1; ; intento++) {
+            try {
+                return joinPoint.proceed();
+            } catch (OptimisticLockingFailureException e) {
+                meterRegistry.counter("concurrencia.conflictos", "metodo", metodo).increment();
+                if (intento >= reintentar.intentos()) {
+                    meterRegistry.counter("concurrencia.reintentos.agotados", "metodo", metodo).increment();
+                    throw e;
+                }
+                meterRegistry.counter("concurrencia.reintentos", "metodo", metodo).increment();
+
+                // Espera exponencial con variación aleatoria para que los hilos en conflicto no choquen de nuevo
+                Thread.sleep(espera + ThreadLocalRandom.current().nextLong(espera + 1));
+                espera *= 2;
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.cuymarket.backend.config;
 
+import com.cuymarket.backend.controller.CarritoInvitadoController;
 import com.cuymarket.backend.security.JwtAuthenticationFilter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
@@ -46,6 +47,13 @@ public class SecurityConfig {
                         .requestMatchers("/api/categorias/**").permitAll()
                         .requestMatchers("/api/usuarios/public/**").permitAll()
 
+                        // Carrito de visitantes sin sesión (se identifica con su propio token)
+                        .requestMatchers("/api/carrito/invitado", "/api/carrito/invitado/**").permitAll()
+
+                        // Actuator: salud pública, métricas solo para administradores
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
+
                         // Todos los demás requieren autenticación
                         .anyRequest().authenticated())
                 .addFilterBefore(jwtAuthenticationFilter,
@@ -60,6 +68,8 @@ public class SecurityConfig {
         configuration.setAllowedOrigins(Arrays.asList("http://localhost:4200"));
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS"));
         configuration.setAllowedHeaders(Arrays.asList("*"));
+        // El navegador solo deja leer las cabeceras listadas aquí
+        configuration.setExposedHeaders(Arrays.asList(CarritoInvitadoController.CABECERA_TOKEN));
         configuration.setAllowCredentials(true);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
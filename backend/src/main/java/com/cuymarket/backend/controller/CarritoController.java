@@ -3,9 +3,7 @@ package com.cuymarket.backend.controller;
 import com.cuymarket.backend.dto.carrito.AgregarItemRequest;
 import com.cuymarket.backend.dto.carrito.ActualizarCantidadRequest;
 import com.cuymarket.backend.dto.carrito.CarritoResponse;
-import com.cuymarket.backend.dto.producto.ProductoResponse;
-import com.cuymarket.backend.model.carrito.Carrito;
-import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.dto.carrito.OperacionesCarritoRequest;
 import com.cuymarket.backend.security.JwtUtils;
 import com.cuymarket.backend.service.carrito.CarritoService;
 import jakarta.validation.Valid;
@@ -14,8 +12,6 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.stream.Collectors;
-
 @RestController
 @RequestMapping("/api/carrito")
 @RequiredArgsConstructor
@@ -28,8 +24,15 @@ public class CarritoController {
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<CarritoResponse> obtenerCarrito(@RequestHeader("Authorization") String token) {
         Long usuarioId = obtenerUsuarioIdDelToken(token);
-        Carrito carrito = carritoService.obtenerOCrearCarrito(usuarioId);
-        return ResponseEntity.ok(convertirAResponse(carrito));
+        return ResponseEntity.ok(carritoService.obtenerVista(usuarioId));
+    }
+
+    // Cantidad de unidades para el contador del encabezado
+    @GetMapping("/cantidad")
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<Integer> contarItems(@RequestHeader("Authorization") String token) {
+        Long usuarioId = obtenerUsuarioIdDelToken(token);
+        return ResponseEntity.ok(carritoService.contarItems(usuarioId));
     }
 
     @PostMapping("/items")
@@ -39,9 +42,19 @@ public class CarritoController {
             @Valid @RequestBody AgregarItemRequest request) {
         Long usuarioId = obtenerUsuarioIdDelToken(token);
         carritoService.agregarProducto(usuarioId, request.getProductoId(), request.getCantidad());
-        // Recargar el carrito completo desde la BD para asegurar datos actualizados
-        Carrito carrito = carritoService.obtenerCarritoConItems(usuarioId);
-        return ResponseEntity.ok(convertirAResponse(carrito));
+        // El cambio invalidó la vista guardada: se vuelve a armar desde la BD
+        return ResponseEntity.ok(carritoService.obtenerVista(usuarioId));
+    }
+
+    // Varias operaciones en una petición (pedido rápido, restaurar un carrito): todas o ninguna
+    @PatchMapping
+    @PreAuthorize("isAuthenticated()")
+    public ResponseEntity<CarritoResponse> aplicarOperaciones(
+            @RequestHeader("Authorization") String token,
+            @Valid @RequestBody OperacionesCarritoRequest request) {
+        Long usuarioId = obtenerUsuarioIdDelToken(token);
+        carritoService.aplicarOperaciones(usuarioId, request.getOperaciones());
+        return ResponseEntity.ok(carritoService.obtenerVista(usuarioId));
     }
 
     @PutMapping("/items/{itemId}")
@@ -52,9 +65,8 @@ public class CarritoController {
             @Valid @RequestBody ActualizarCantidadRequest request) {
         Long usuarioId = obtenerUsuarioIdDelToken(token);
         carritoService.actualizarCantidad(usuarioId, itemId, request.getCantidad());
-        // Recargar el carrito completo desde la BD
-        Carrito carrito = carritoService.obtenerCarritoConItems(usuarioId);
-        return ResponseEntity.ok(convertirAResponse(carrito));
+        // El cambio invalidó la vista guardada: se vuelve a armar desde la BD
+        return ResponseEntity.ok(carritoService.obtenerVista(usuarioId));
     }
 
     @DeleteMapping("/items/{itemId}")
@@ -64,9 +76,8 @@ public class CarritoController {
             @PathVariable Long itemId) {
         Long usuarioId = obtenerUsuarioIdDelToken(token);
         carritoService.removerProducto(usuarioId, itemId);
-        // Recargar el carrito completo desde la BD
-        Carrito carrito = carritoService.obtenerCarritoConItems(usuarioId);
-        return ResponseEntity.ok(convertirAResponse(carrito));
+        // El cambio invalidó la vista guardada: se vuelve a armar desde la BD
+        return ResponseEntity.ok(carritoService.obtenerVista(usuarioId));
     }
 
     @DeleteMapping
@@ -81,62 +92,4 @@ public class CarritoController {
         String jwt = token.substring(7); // Remover "Bearer "
         return jwtUtils.getUserIdFromToken(jwt);
     }
-
-    private CarritoResponse convertirAResponse(Carrito carrito) {
-        CarritoResponse response = new CarritoResponse();
-        response.setId(carrito.getId());
-        response.setUsuarioId(carrito.getUsuario().getId());
-        response.setTotal(carritoService.calcularTotal(carrito.getId()));
-        response.setTotalItems(carrito.getItems().size());
-        response.setFechaActualizacion(carrito.getFechaActualizacion());
-
-        response.setItems(carrito.getItems().stream()
-                .map(item -> {
-                    ProductoResponse productoResponse = convertirProductoAResponse(item.getProducto());
-                    return new CarritoResponse.ItemCarritoResponse(
-                            item.getId(),
-                            productoResponse,
-                            item.getCantidad(),
-                            item.getProducto().getPrecio().multiply(java.math.BigDecimal.valueOf(item.getCantidad()))
-                    );
-                })
-                .collect(Collectors.toList()));
-
-        return response;
-    }
-
-    private ProductoResponse convertirProductoAResponse(Producto producto) {
-        ProductoResponse response = new ProductoResponse();
-        response.setId(producto.getId());
-        response.setNombre(producto.getNombre());
-        response.setRaza(producto.getRaza());
-        response.setPeso(producto.getPeso());
-        response.setPrecio(producto.getPrecio());
-        response.setTipo(producto.getTipo());
-        // Convertir Boolean a String "Sí" o "No"
-        response.setCertificado(producto.getCertificado() != null && producto.getCertificado() ? "Sí" : "No");
-        response.setDescripcion(producto.getDescripcion());
-        response.setCaracteristicas(producto.getCaracteristicas());
-        
-        // Convertir imagen a Base64 si existe
-        if (producto.getImagen() != null && producto.getImagen().length > 0) {
-            String base64Image = java.util.Base64.getEncoder().encodeToString(producto.getImagen());
-            response.setImagen("data:image/jpeg;base64," + base64Image);
-        }
-        
-        response.setActivo(producto.getActivo());
-        response.setFechaCreacion(producto.getFechaCreacion());
-        
-        // Datos de categoría
-        if (producto.getCategoria() != null) {
-            response.setCategoriaId(producto.getCategoria().getId());
-            response.setCategoriaNombre(producto.getCategoria().getNombre());
-        }
-        
-        // Stock
-        response.setStockDisponible(producto.getStockDisponible());
-        response.setStockMinimo(producto.getStockMinimo());
-        
-        return response;
-    }
 }
@@ -0,0 +1,68 @@
+package com.cuymarket.backend.controller;
+
+import com.cuymarket.backend.dto.carrito.ActualizarCantidadRequest;
+import com.cuymarket.backend.dto.carrito.AgregarItemRequest;
+import com.cuymarket.backend.dto.carrito.CarritoResponse;
+import com.cuymarket.backend.service.carrito.CarritoInvitadoService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Carrito de visitantes sin sesión. El carrito se identifica con el token de la cabecera
+ * X-Carrito-Invitado; cada respuesta devuelve el token renovado en la misma cabecera.
+ * Los items usan el id del producto como id.
+ */
+@RestController
+@RequestMapping("/api/carrito/invitado")
+@RequiredArgsConstructor
+public class CarritoInvitadoController {
+
+    public static final String CABECERA_TOKEN = "X-Carrito-Invitado";
+
+    private final CarritoInvitadoService carritoInvitadoService;
+
+    @GetMapping
+    public ResponseEntity<CarritoResponse> obtenerCarrito(
+            @RequestHeader(value = CABECERA_TOKEN, required = false) String token) {
+        return responder(carritoInvitadoService.obtener(token));
+    }
+
+    @PostMapping("/items")
+    public ResponseEntity<CarritoResponse> agregarItem(
+            @RequestHeader(value = CABECERA_TOKEN, required = false) String token,
+            @Valid @RequestBody AgregarItemRequest request) {
+        return responder(carritoInvitadoService.agregarProducto(token, request.getProductoId(), request.getCantidad()));
+    }
+
+    @PutMapping("/items/{productoId}")
+    public ResponseEntity<CarritoResponse> actualizarCantidad(
+            @RequestHeader(value = CABECERA_TOKEN, required = false) String token,
+            @PathVariable Long productoId,
+            @Valid @RequestBody ActualizarCantidadRequest request) {
+        return responder(carritoInvitadoService.actualizarCantidad(token, productoId, request.getCantidad()));
+    }
+
+    @DeleteMapping("/items/{productoId}")
+    public ResponseEntity<CarritoResponse> eliminarItem(
+            @RequestHeader(value = CABECERA_TOKEN, required = false) String token,
+            @PathVariable Long productoId) {
+        return responder(carritoInvitadoService.removerProducto(token, productoId));
+    }
+
+    @DeleteMapping
+    public ResponseEntity<Void> limpiarCarrito(
+            @RequestHeader(value = CABECERA_TOKEN, required = false) String token) {
+        carritoInvitadoService.limpiarCarrito(token);
+        return ResponseEntity.noContent().build();
+    }
+
+    private ResponseEntity<CarritoResponse> responder(CarritoInvitadoService.Resultado resultado) {
+        ResponseEntity.BodyBuilder respuesta = ResponseEntity.ok();
+        if (resultado.token() != null) {
+            respuesta.header(CABECERA_TOKEN, resultado.token());
+        }
+        return respuesta.body(resultado.carrito());
+    }
+}
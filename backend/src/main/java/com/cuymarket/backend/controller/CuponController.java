@@ -6,6 +6,7 @@ import com.cuymarket.backend.dto.cupon.ValidarCuponRequest;
 import com.cuymarket.backend.model.enums.TipoCupon;
 import com.cuymarket.backend.model.promocion.Cupon;
 import com.cuymarket.backend.service.promocion.CuponService;
+import com.cuymarket.backend.service.promocion.IndiceCuponesService.CuponIndexado;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
@@ -25,8 +26,8 @@ public class CuponController {
     @PostMapping("/validar")
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<CuponResponse> validarCupon(@Valid @RequestBody ValidarCuponRequest request) {
-        Cupon cupon = cuponService.obtenerPorCodigo(request.getCodigo());
-        return ResponseEntity.ok(convertirAResponse(cupon));
+        // Sale del índice en memoria: no consulta la base en cada validación
+        return ResponseEntity.ok(convertirAResponse(cuponService.obtenerIndexado(request.getCodigo())));
     }
 
     @PostMapping
@@ -72,6 +73,21 @@ public class CuponController {
                 vigente);
     }
 
+    private CuponResponse convertirAResponse(CuponIndexado cupon) {
+        boolean vigente = cupon.activo() && cupon.fechaVencimiento().isAfter(java.time.LocalDate.now());
+        return new CuponResponse(
+                cupon.id(),
+                cupon.codigo(),
+                cupon.tipoCupon().name(),
+                cupon.descuento(),
+                cupon.minimoCompra(),
+                cupon.usosMaximos(),
+                cupon.usosActuales().get(),
+                cupon.fechaVencimiento(),
+                cupon.activo(),
+                vigente);
+    }
+
     private Cupon convertirAEntidad(CuponRequest request) {
         Cupon cupon = new Cupon();
         cupon.setCodigo(request.getCodigo());
@@ -0,0 +1,54 @@
+package com.cuymarket.backend.controller;
+
+import com.cuymarket.backend.dto.producto.DiferenciaStockDTO;
+import com.cuymarket.backend.dto.producto.MovimientoInventarioResponse;
+import com.cuymarket.backend.service.producto.MovimientoInventarioService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/inventario")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "http://localhost:4200")
+public class InventarioController {
+
+    private final MovimientoInventarioService movimientoInventarioService;
+
+    // Movimientos de un producto, del más reciente al más antiguo
+    @GetMapping("/movimientos/producto/{productoId}")
+    @PreAuthorize("hasAnyRole('ADMIN', 'EMPLEADO')")
+    public ResponseEntity<Page<MovimientoInventarioResponse>> listarPorProducto(
+            @PathVariable Long productoId,
+            @PageableDefault(size = 50, sort = "fecha", direction = Sort.Direction.DESC) Pageable pageable) {
+        return ResponseEntity.ok(movimientoInventarioService.listarPorProducto(productoId, pageable));
+    }
+
+    // Movimientos de todos los productos entre dos fechas (ambas incluidas)
+    @GetMapping("/movimientos")
+    @PreAuthorize("hasAnyRole('ADMIN', 'EMPLEADO')")
+    public ResponseEntity<Page<MovimientoInventarioResponse>> listarPorFecha(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @PageableDefault(size = 50, sort = "fecha", direction = Sort.Direction.DESC) Pageable pageable) {
+        return ResponseEntity.ok(movimientoInventarioService.listarPorFecha(
+                desde.atStartOfDay(), hasta.plusDays(1).atStartOfDay(), pageable));
+    }
+
+    // Compara el stock con el diario; con aplicar=true corrige el stock según los movimientos
+    @PostMapping("/reconstruir")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<DiferenciaStockDTO>> reconstruirStock(
+            @RequestParam(defaultValue = "false") boolean aplicar) {
+        return ResponseEntity.ok(movimientoInventarioService.reconstruirStock(aplicar));
+    }
+}
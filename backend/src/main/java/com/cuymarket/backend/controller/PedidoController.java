@@ -1,15 +1,27 @@
 package com.cuymarket.backend.controller;
 
 import com.cuymarket.backend.dto.pedido.CrearPedidoRequest;
+import com.cuymarket.backend.dto.pedido.PaginaPedidosResponse;
 import com.cuymarket.backend.dto.pedido.PedidoResponse;
+import com.cuymarket.backend.dto.pedido.ResumenPagoDTO;
+import com.cuymarket.backend.model.enums.EstadoPago;
 import com.cuymarket.backend.model.enums.EstadoPedido;
+import com.cuymarket.backend.model.enums.MetodoPago;
 import com.cuymarket.backend.model.pedido.InformacionPago;
 import com.cuymarket.backend.model.pedido.Pedido;
 import com.cuymarket.backend.security.JwtUtils;
+import com.cuymarket.backend.service.pedido.ComprobantePagoService;
+import com.cuymarket.backend.service.pedido.ComprobantePagoService.ComprobanteGuardado;
+import com.cuymarket.backend.service.pedido.IdempotenciaPedidoService;
 import com.cuymarket.backend.service.pedido.InformacionPagoService;
 import com.cuymarket.backend.service.pedido.PedidoService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -17,7 +29,11 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @RestController
@@ -26,22 +42,46 @@ import java.util.stream.Collectors;
 public class PedidoController {
 
     private final PedidoService pedidoService;
+    private final IdempotenciaPedidoService idempotenciaPedidoService;
     private final InformacionPagoService informacionPagoService;
+    private final ComprobantePagoService comprobantePagoService;
     private final JwtUtils jwtUtils;
 
     @PostMapping(consumes = {"multipart/form-data"})
     @PreAuthorize("isAuthenticated()")
     public ResponseEntity<PedidoResponse> crearPedido(
             @RequestHeader("Authorization") String token,
+            @RequestHeader(value = "Idempotency-Key", required = false) String claveIdempotencia,
             @ModelAttribute @Valid CrearPedidoRequest request) throws Exception {
         Long usuarioId = obtenerUsuarioIdDelToken(token);
-        Pedido pedido = pedidoService.crearDesdeCarrito(
-                usuarioId,
-                request.getDireccionEnvioId(),
-                request.getMetodoPago(),
-                request.getCodigoCupon(),
-                request);
-        return ResponseEntity.ok(convertirAResponse(pedido));
+        // El comprobante se copia al almacén antes de abrir la transacción del pedido
+        ComprobanteGuardado comprobante = MetodoPago.valueOf(request.getMetodoPago()).requiereComprobante()
+                ? comprobantePagoService.guardar(request.getComprobante())
+                : null;
+
+        // Un reintento con la misma clave devuelve el pedido ya creado
+        IdempotenciaPedidoService.Resultado resultado;
+        try {
+            resultado = idempotenciaPedidoService.ejecutar(
+                    usuarioId, claveIdempotencia, () -> pedidoService.crearDesdeCarrito(
+                            usuarioId,
+                            request.getDireccionEnvioId(),
+                            request.getMetodoPago(),
+                            request.getCodigoCupon(),
+                            request,
+                            comprobante));
+        } catch (Exception e) {
+            // Sin pedido el archivo quedaría huérfano
+            comprobantePagoService.eliminar(comprobante);
+            throw e;
+        }
+        if (resultado.repetido()) {
+            // El pedido original conserva su propio comprobante
+            comprobantePagoService.eliminar(comprobante);
+        }
+        return ResponseEntity.ok()
+                .header("Idempotent-Replayed", String.valueOf(resultado.repetido()))
+                .body(convertirAResponse(resultado.pedido()));
     }
 
     @GetMapping
@@ -49,10 +89,7 @@ public class PedidoController {
     public ResponseEntity<List<PedidoResponse>> listarMisPedidos(@RequestHeader("Authorization") String token) {
         Long usuarioId = obtenerUsuarioIdDelToken(token);
         List<Pedido> pedidos = pedidoService.listarPorUsuario(usuarioId);
-        List<PedidoResponse> response = pedidos.stream()
-                .map(this::convertirAResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(convertirAResponses(pedidos));
     }
 
     @GetMapping("/{id}")
@@ -137,51 +174,100 @@ public class PedidoController {
 
     @GetMapping("/empleado/todos")
     @PreAuthorize("hasAnyRole('EMPLEADO', 'ADMIN')")
-    public ResponseEntity<List<PedidoResponse>> listarTodosPedidosEmpleado() {
-        List<Pedido> pedidos = pedidoService.listarTodos();
-        List<PedidoResponse> response = pedidos.stream()
-                .map(this::convertirAResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(response);
+    public ResponseEntity<PaginaPedidosResponse> listarTodosPedidosEmpleado(
+            @RequestParam(required = false) EstadoPedido estado,
+            @RequestParam(required = false) EstadoPago estadoPago,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(required = false) String texto,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int tamano) {
+        return ResponseEntity.ok(listarPagina(estado, estadoPago, desde, hasta, texto, cursor, tamano));
     }
 
     @GetMapping("/admin/todos")
     @PreAuthorize("hasAnyRole('EMPLEADO', 'ADMIN')")
-    public ResponseEntity<List<PedidoResponse>> listarTodosPedidos() {
-        List<Pedido> pedidos = pedidoService.listarTodos();
-        List<PedidoResponse> response = pedidos.stream()
-                .map(this::convertirAResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(response);
+    public ResponseEntity<PaginaPedidosResponse> listarTodosPedidos(
+            @RequestParam(required = false) EstadoPedido estado,
+            @RequestParam(required = false) EstadoPago estadoPago,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta,
+            @RequestParam(required = false) String texto,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int tamano) {
+        return ResponseEntity.ok(listarPagina(estado, estadoPago, desde, hasta, texto, cursor, tamano));
+    }
+
+    // Cantidad de pedidos por estado, de todos o de los días del rango (ambos incluidos)
+    @GetMapping("/admin/conteos")
+    @PreAuthorize("hasAnyRole('EMPLEADO', 'ADMIN')")
+    public ResponseEntity<Map<EstadoPedido, Long>> contarPorEstados(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate desde,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate hasta) {
+        return ResponseEntity.ok(pedidoService.contarPorEstados(
+                desde != null ? desde.atStartOfDay() : null,
+                hasta != null ? hasta.plusDays(1).atStartOfDay() : null));
     }
 
     @GetMapping("/estado/{estado}")
     @PreAuthorize("hasAnyRole('EMPLEADO', 'ADMIN')")
     public ResponseEntity<List<PedidoResponse>> listarPorEstado(@PathVariable EstadoPedido estado) {
         List<Pedido> pedidos = pedidoService.listarPorEstado(estado);
-        List<PedidoResponse> response = pedidos.stream()
-                .map(this::convertirAResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(response);
+        return ResponseEntity.ok(convertirAResponses(pedidos));
     }
 
+    /**
+     * Comprobante de pago tal como se subió, con su tipo real. Se envía desde el disco
+     * sin cargarlo en memoria y admite peticiones Range.
+     */
     @GetMapping("/{pedidoId}/comprobante")
     @PreAuthorize("hasAnyRole('EMPLEADO', 'ADMIN')")
-    public ResponseEntity<byte[]> obtenerComprobantePago(@PathVariable Long pedidoId) {
+    public ResponseEntity<Resource> obtenerComprobantePago(@PathVariable Long pedidoId) {
+        InformacionPago infoPago;
         try {
-            InformacionPago infoPago = informacionPagoService.obtenerPorPedido(pedidoId);
-            if (infoPago == null || infoPago.getComprobante() == null) {
-                return ResponseEntity.notFound().build();
-            }
-
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.IMAGE_JPEG);
-            headers.setContentLength(infoPago.getComprobante().length);
-            
-            return new ResponseEntity<>(infoPago.getComprobante(), headers, HttpStatus.OK);
-        } catch (Exception e) {
+            infoPago = informacionPagoService.obtenerPorPedido(pedidoId);
+        } catch (RuntimeException e) {
+            return ResponseEntity.notFound().build();
+        }
+        if (infoPago.getComprobanteClave() == null) {
             return ResponseEntity.notFound().build();
         }
+        Path archivo = comprobantePagoService.resolver(infoPago.getComprobanteClave());
+        if (!Files.isReadable(archivo)) {
+            return ResponseEntity.notFound().build();
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.parseMediaType(infoPago.getComprobanteTipo()));
+        headers.setContentDisposition(ContentDisposition.inline()
+                .filename("comprobante-" + pedidoId + extension(infoPago.getComprobanteTipo()))
+                .build());
+        headers.setCacheControl(CacheControl.noCache().cachePrivate());
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(new FileSystemResource(archivo));
+    }
+
+    // Fechas del filtro como días completos, ambos incluidos
+    private PaginaPedidosResponse listarPagina(EstadoPedido estado, EstadoPago estadoPago, LocalDate desde,
+            LocalDate hasta, String texto, String cursor, int tamano) {
+        PedidoService.PaginaPedidos pagina = pedidoService.listarPagina(estado, estadoPago,
+                desde != null ? desde.atStartOfDay() : null,
+                hasta != null ? hasta.plusDays(1).atStartOfDay() : null,
+                texto, cursor, tamano);
+        return new PaginaPedidosResponse(convertirAResponses(pagina.pedidos()), pagina.siguienteCursor());
+    }
+
+    // Extensión sugerida para el nombre del archivo descargado
+    private static String extension(String tipoContenido) {
+        return switch (tipoContenido) {
+            case "image/jpeg" -> ".jpg";
+            case "image/png" -> ".png";
+            case "image/webp" -> ".webp";
+            case "application/pdf" -> ".pdf";
+            default -> "";
+        };
     }
 
     private Long obtenerUsuarioIdDelToken(String token) {
@@ -190,6 +276,20 @@ public class PedidoController {
     }
 
     private PedidoResponse convertirAResponse(Pedido pedido) {
+        Map<Long, ResumenPagoDTO> resumenes = informacionPagoService.obtenerResumenPorPedidos(List.of(pedido.getId()));
+        return convertirAResponse(pedido, resumenes.get(pedido.getId()));
+    }
+
+    // La información de pago de toda la lista se busca en una sola consulta
+    private List<PedidoResponse> convertirAResponses(List<Pedido> pedidos) {
+        Map<Long, ResumenPagoDTO> resumenes = informacionPagoService.obtenerResumenPorPedidos(
+                pedidos.stream().map(Pedido::getId).toList());
+        return pedidos.stream()
+                .map(pedido -> convertirAResponse(pedido, resumenes.get(pedido.getId())))
+                .collect(Collectors.toList());
+    }
+
+    private PedidoResponse convertirAResponse(Pedido pedido, ResumenPagoDTO resumenPago) {
         PedidoResponse response = new PedidoResponse();
         response.setId(pedido.getId());
         response.setNumeroPedido(pedido.getNumeroPedido());
@@ -230,14 +330,9 @@ public class PedidoController {
                 .collect(Collectors.toList()));
 
         // Agregar información del comprobante de pago
-        try {
-            InformacionPago infoPago = informacionPagoService.obtenerPorPedido(pedido.getId());
-            if (infoPago != null) {
-                response.setInformacionPagoId(infoPago.getId());
-                response.setTieneComprobante(infoPago.getComprobante() != null && infoPago.getComprobante().length > 0);
-            }
-        } catch (Exception e) {
-            response.setTieneComprobante(false);
+        if (resumenPago != null) {
+            response.setInformacionPagoId(resumenPago.getInformacionPagoId());
+            response.setTieneComprobante(resumenPago.getTieneComprobante());
         }
 
         return response;
@@ -1,18 +1,34 @@
 package com.cuymarket.backend.controller;
 
+import com.cuymarket.backend.dto.producto.PaginaProductosResponse;
+import com.cuymarket.backend.dto.producto.ProductoListadoResponse;
 import com.cuymarket.backend.dto.producto.ProductoRequest;
 import com.cuymarket.backend.dto.producto.ProductoResponse;
+import com.cuymarket.backend.exception.BadRequestException;
 import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.service.producto.ImagenProductoService;
 import com.cuymarket.backend.service.producto.ProductoService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Base64;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/productos")
@@ -20,17 +36,31 @@ import java.util.stream.Collectors;
 public class ProductoController {
 
     private final ProductoService productoService;
+    private final ImagenProductoService imagenProductoService;
 
     /**
-     * Listar todos los productos (público)
+     * Listar productos (público). Devuelve la vista ligera del catálogo, filtrada, paginada y
+     * ordenada en la base de datos (?page=0&size=20&sort=precio,asc). precioMax es exclusivo
      */
     @GetMapping
-    public ResponseEntity<List<ProductoResponse>> listarProductos() {
-        List<Producto> productos = productoService.listarTodos();
-        List<ProductoResponse> response = productos.stream()
-                .map(this::convertirAResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(response);
+    public ResponseEntity<PaginaProductosResponse> listarProductos(
+            @RequestParam(required = false) Long categoriaId,
+            @RequestParam(required = false) String query,
+            @RequestParam(required = false) String raza,
+            @RequestParam(required = false) BigDecimal precioMin,
+            @RequestParam(required = false) BigDecimal precioMax,
+            @RequestParam(required = false) Boolean activo,
+            @PageableDefault(size = 20, sort = "nombre") Pageable pageable) {
+        return ResponseEntity.ok(aPagina(productoService.listarCatalogo(
+                categoriaId, query, raza, precioMin, precioMax, activo, pageable)));
+    }
+
+    /**
+     * Razas de los productos activos, para el filtro del catálogo (público)
+     */
+    @GetMapping("/razas")
+    public ResponseEntity<List<String>> listarRazas() {
+        return ResponseEntity.ok(productoService.listarRazas());
     }
 
     /**
@@ -42,28 +72,82 @@ public class ProductoController {
         return ResponseEntity.ok(convertirAResponse(producto));
     }
 
+    /**
+     * Imagen del producto (público). Con ?v=hash la respuesta no cambia nunca y se
+     * cachea indefinidamente; sin él se revalida con el ETag. Con ?w=ancho se sirve
+     * la variante reducida más cercana.
+     */
+    @GetMapping("/{id}/imagen")
+    public void obtenerImagen(
+            @PathVariable Long id,
+            @RequestParam(required = false) String v,
+            @RequestParam(required = false) Integer w,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Producto producto = productoService.obtenerPorId(id);
+        String hash = producto.getImagenHash();
+        if (hash == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        ImagenProductoService.ArchivoImagen imagen = imagenProductoService.obtenerArchivo(
+                hash, producto.getImagenTipo(), producto.getImagenAncho(), w);
+        Path archivo = imagen.ruta();
+        if (!Files.isReadable(archivo)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        response.setHeader(HttpHeaders.ETAG, imagen.etag());
+        // Mientras la variante se genera, el original no debe quedar cacheado bajo esta URL
+        response.setHeader(HttpHeaders.CACHE_CONTROL,
+                hash.equals(v) && imagen.definitivo() ? "public, max-age=31536000, immutable" : "no-cache");
+        if (imagen.etag().equals(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long tamano = Files.size(archivo);
+        response.setContentType(imagen.tipoContenido());
+        response.setContentLengthLong(tamano);
+
+        // Tomcat puede enviar el archivo con sendfile sin copiarlo por la JVM
+        if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+            request.setAttribute("org.apache.tomcat.sendfile.filename", archivo.toString());
+            request.setAttribute("org.apache.tomcat.sendfile.start", 0L);
+            request.setAttribute("org.apache.tomcat.sendfile.end", tamano);
+            return;
+        }
+
+        try (FileChannel canal = FileChannel.open(archivo)) {
+            OutputStream salida = response.getOutputStream();
+            canal.transferTo(0, tamano, Channels.newChannel(salida));
+            salida.flush();
+        }
+    }
+
     /**
      * Listar productos por categoría (público)
      */
     @GetMapping("/categoria/{categoriaId}")
-    public ResponseEntity<List<ProductoResponse>> listarPorCategoria(@PathVariable Long categoriaId) {
-        List<Producto> productos = productoService.listarPorCategoria(categoriaId);
-        List<ProductoResponse> response = productos.stream()
-                .map(this::convertirAResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(response);
+    public ResponseEntity<PaginaProductosResponse> listarPorCategoria(
+            @PathVariable Long categoriaId,
+            @RequestParam(required = false) Boolean activo,
+            @PageableDefault(size = 20, sort = "nombre") Pageable pageable) {
+        return ResponseEntity.ok(aPagina(productoService.listarCatalogo(
+                categoriaId, null, null, null, null, activo, pageable)));
     }
 
     /**
      * Buscar productos (público)
      */
     @GetMapping("/buscar")
-    public ResponseEntity<List<ProductoResponse>> buscarProductos(@RequestParam String query) {
-        List<Producto> productos = productoService.buscarPorNombre(query);
-        List<ProductoResponse> response = productos.stream()
-                .map(this::convertirAResponse)
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(response);
+    public ResponseEntity<PaginaProductosResponse> buscarProductos(
+            @RequestParam String query,
+            @RequestParam(required = false) Boolean activo,
+            @PageableDefault(size = 20, sort = "nombre") Pageable pageable) {
+        return ResponseEntity.ok(aPagina(productoService.listarCatalogo(
+                null, query, null, null, null, activo, pageable)));
     }
 
     /**
@@ -85,8 +169,12 @@ public class ProductoController {
     public ResponseEntity<ProductoResponse> actualizarProducto(
             @PathVariable Long id,
             @Valid @RequestBody ProductoRequest request) {
+        if (request.getVersion() == null) {
+            throw new BadRequestException("Falta la versión del producto: vuelva a abrir el formulario");
+        }
         Producto producto = convertirAEntidad(request);
-        Producto productoActualizado = productoService.actualizar(id, producto, request.getCategoriaId());
+        Producto productoActualizado = productoService.actualizar(id, producto, request.getCategoriaId(),
+                request.getVersion());
         return ResponseEntity.ok(convertirAResponse(productoActualizado));
     }
 
@@ -127,21 +215,31 @@ public class ProductoController {
     }
 
     /**
-     * Actualizar stock directo (ADMIN)
+     * Actualizar stock directo (ADMIN). La versión es la del producto leído antes de
+     * fijar el valor: si hubo ventas desde entonces se responde 409 en vez de pisarlas
      */
     @PutMapping("/{id}/stock")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<ProductoResponse> actualizarStock(
             @PathVariable Long id,
-            @RequestParam Integer stock) {
-        Producto producto = productoService.actualizarStock(id, stock);
+            @RequestParam Integer stock,
+            @RequestParam Long version) {
+        Producto producto = productoService.actualizarStock(id, stock, version);
         return ResponseEntity.ok(convertirAResponse(producto));
     }
 
     // Métodos de conversión
+    private PaginaProductosResponse aPagina(Page<ProductoListadoResponse> pagina) {
+        pagina.forEach(p -> p.setImagen(imagenProductoService.construirUrl(
+                p.getId(), p.getImagenHash(), ImagenProductoService.ANCHO_LISTADO)));
+        return new PaginaProductosResponse(pagina.getContent(), pagina.getNumber(), pagina.getSize(),
+                pagina.getTotalElements(), pagina.getTotalPages());
+    }
+
     private ProductoResponse convertirAResponse(Producto producto) {
         ProductoResponse response = new ProductoResponse();
         response.setId(producto.getId());
+        response.setVersion(producto.getVersion());
         response.setNombre(producto.getNombre());
         response.setRaza(producto.getRaza());
         response.setPeso(producto.getPeso()); // Ahora peso es String en ambos lados
@@ -151,16 +249,9 @@ public class ProductoController {
         response.setDescripcion(producto.getDescripcion());
         response.setCaracteristicas(producto.getCaracteristicas());
         
-        if (producto.getImagen() != null && producto.getImagen().length > 0) {
-            try {
-                String base64Image = Base64.getEncoder().encodeToString(producto.getImagen());
-                response.setImagen("data:image/jpeg;base64," + base64Image);
-            } catch (Exception e) {
-                response.setImagen(null);
-            }
-        } else {
-            response.setImagen(null);
-        }
+        response.setImagen(imagenProductoService.construirUrl(producto.getId(), producto.getImagenHash()));
+        response.setImagenAncho(producto.getImagenAncho());
+        response.setImagenAlto(producto.getImagenAlto());
         
         response.setActivo(producto.getActivo() != null ? producto.getActivo() : true);
         response.setFechaCreacion(producto.getFechaCreacion());
@@ -188,18 +279,35 @@ public class ProductoController {
         producto.setDescripcion(request.getDescripcion());
         producto.setCaracteristicas(request.getCaracteristicas());
         
-        // Convertir Base64 a bytes si hay imagen
+        // La imagen llega como Base64 (nueva) o como la URL que devolvimos antes (sin cambios)
         if (request.getImagen() != null && !request.getImagen().isEmpty()) {
-            try {
+            String imagen = request.getImagen();
+            if (imagen.startsWith("http") || imagen.startsWith("/")) {
+                String hash = imagenProductoService.extraerHashDeUrl(imagen);
+                if (hash == null) {
+                    throw new BadRequestException("La URL de la imagen no es válida");
+                }
+                ImagenProductoService.ImagenGuardada existente = imagenProductoService.describir(hash);
+                producto.setImagenHash(existente.hash());
+                producto.setImagenTipo(existente.tipoContenido());
+                producto.setImagenAncho(existente.ancho());
+                producto.setImagenAlto(existente.alto());
+            } else {
                 // Si la imagen viene con el prefijo data:image, quitarlo
-                String base64Image = request.getImagen();
-                if (base64Image.contains(",")) {
-                    base64Image = base64Image.split(",")[1];
+                if (imagen.contains(",")) {
+                    imagen = imagen.split(",")[1];
+                }
+                byte[] contenido;
+                try {
+                    contenido = Base64.getDecoder().decode(imagen);
+                } catch (IllegalArgumentException e) {
+                    throw new RuntimeException("La imagen no es un Base64 válido");
                 }
-                producto.setImagen(Base64.getDecoder().decode(base64Image));
-            } catch (IllegalArgumentException e) {
-                // Si falla la decodificación, usar getBytes como fallback
-                producto.setImagen(request.getImagen().getBytes());
+                ImagenProductoService.ImagenGuardada guardada = imagenProductoService.guardar(contenido);
+                producto.setImagenHash(guardada.hash());
+                producto.setImagenTipo(guardada.tipoContenido());
+                producto.setImagenAncho(guardada.ancho());
+                producto.setImagenAlto(guardada.alto());
             }
         }
         
@@ -1,18 +1,27 @@
 package com.cuymarket.backend.controller.reportes;
 
 import com.cuymarket.backend.dto.sistema.ReporteResponse;
+import com.cuymarket.backend.dto.sistema.SolicitudReporteRequest;
+import com.cuymarket.backend.model.enums.TipoReporte;
 import com.cuymarket.backend.model.usuario.Usuario;
 import com.cuymarket.backend.repository.usuario.UsuarioRepository;
+import com.cuymarket.backend.service.reportes.ReporteJobService;
 import com.cuymarket.backend.service.reportes.ReporteService;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -24,11 +33,12 @@ import java.util.List;
 public class ReporteController {
 
     private final ReporteService reporteService;
+    private final ReporteJobService reporteJobService;
     private final UsuarioRepository usuarioRepository;
 
     @GetMapping("/ventas")
     @PreAuthorize("hasAnyRole('ADMIN', 'EMPLEADO')")
-    public ResponseEntity<byte[]> generarReporteVentas(
+    public ResponseEntity<StreamingResponseBody> generarReporteVentas(
             @RequestParam String formato,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaInicio,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fechaFin,
@@ -37,37 +47,37 @@ public class ReporteController {
         try {
             // Si no se especifican fechas, usar el mes actual
             LocalDateTime inicio = (fechaInicio != null) ? fechaInicio.atStartOfDay() : LocalDate.now().withDayOfMonth(1).atStartOfDay();
-            LocalDateTime fin = (fechaFin != null) ? fechaFin.atTime(23, 59, 59) : LocalDate.now().atTime(23, 59, 59);
+            LocalDateTime fin = ((fechaFin != null) ? fechaFin : LocalDate.now()).plusDays(1).atStartOfDay();
 
             // Obtener ID del usuario autenticado
             Long usuarioId = obtenerUsuarioId(authentication);
 
-            byte[] reporte;
-            String contentType;
+            HttpHeaders headers = new HttpHeaders();
+            StreamingResponseBody body;
             String extension;
 
             if ("PDF".equalsIgnoreCase(formato)) {
-                reporte = reporteService.generarReporteVentasPDF(inicio, fin, usuarioId);
-                contentType = "application/pdf";
+                byte[] reporte = reporteService.generarReporteVentasPDF(inicio, fin, usuarioId);
+                headers.setContentType(MediaType.APPLICATION_PDF);
+                headers.setContentLength(reporte.length);
+                body = out -> out.write(reporte);
                 extension = ".pdf";
             } else if ("EXCEL".equalsIgnoreCase(formato)) {
-                reporte = reporteService.generarReporteVentasExcel(inicio, fin, usuarioId);
-                contentType = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+                // El Excel se escribe directo al output stream de la respuesta, sin buffer intermedio
+                headers.setContentType(MediaType.parseMediaType(
+                        "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+                body = out -> reporteService.escribirReporteVentasExcel(inicio, fin, usuarioId, out);
                 extension = ".xlsx";
             } else {
                 return ResponseEntity.badRequest().build();
             }
 
             String filename = "Reporte_Ventas_" + LocalDate.now() + extension;
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(contentType));
             headers.setContentDispositionFormData("attachment", filename);
-            headers.setContentLength(reporte.length);
 
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(reporte);
+                    .body(body);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -129,7 +139,7 @@ public class ReporteController {
         try {
             // Si no se especifican fechas, usar la última semana
             LocalDateTime inicio = (fechaInicio != null) ? fechaInicio.atStartOfDay() : LocalDate.now().minusDays(7).atStartOfDay();
-            LocalDateTime fin = (fechaFin != null) ? fechaFin.atTime(23, 59, 59) : LocalDate.now().atTime(23, 59, 59);
+            LocalDateTime fin = ((fechaFin != null) ? fechaFin : LocalDate.now()).plusDays(1).atStartOfDay();
 
             Long usuarioId = obtenerUsuarioId(authentication);
 
@@ -168,39 +178,38 @@ public class ReporteController {
 
     @GetMapping("/clientes")
     @PreAuthorize("hasAnyRole('ADMIN', 'EMPLEADO')")
-    public ResponseEntity<byte[]> generarReporteClientes(
+    public ResponseEntity<StreamingResponseBody> generarReporteClientes(
             @RequestParam String formato,
             Authentication authentication
     ) {
         try {
             Long usuarioId = obtenerUsuarioId(authentication);
 
-            byte[] reporte;
-            String contentType;
+            HttpHeaders headers = new HttpHeaders();
+            StreamingResponseBody body;
             String extension;
 
             if ("PDF".equalsIgnoreCase(formato)) {
-                reporte = reporteService.generarReporteClientesPDF(usuarioId);
-                contentType = "application/pdf";
+                byte[] reporte = reporteService.generarReporteClientesPDF(usuarioId);
+                headers.setContentType(MediaType.APPLICATION_PDF);
+                headers.setContentLength(reporte.length);
+                body = out -> out.write(reporte);
                 extension = ".pdf";
             } else if ("EXCEL".equalsIgnoreCase(formato)) {
-                reporte = reporteService.generarReporteClientesExcel(usuarioId);
-                contentType = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+                headers.setContentType(MediaType.parseMediaType(
+                        "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"));
+                body = out -> reporteService.escribirReporteClientesExcel(usuarioId, out);
                 extension = ".xlsx";
             } else {
                 return ResponseEntity.badRequest().build();
             }
 
             String filename = "Reporte_Clientes_" + LocalDate.now() + extension;
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.parseMediaType(contentType));
             headers.setContentDispositionFormData("attachment", filename);
-            headers.setContentLength(reporte.length);
 
             return ResponseEntity.ok()
                     .headers(headers)
-                    .body(reporte);
+                    .body(body);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -235,7 +244,7 @@ public class ReporteController {
         try {
             // Si no se especifican fechas, usar el día actual
             LocalDateTime inicio = (fechaInicio != null) ? fechaInicio.atStartOfDay() : LocalDate.now().atStartOfDay();
-            LocalDateTime fin = (fechaFin != null) ? fechaFin.atTime(23, 59, 59) : LocalDate.now().atTime(23, 59, 59);
+            LocalDateTime fin = ((fechaFin != null) ? fechaFin : LocalDate.now()).plusDays(1).atStartOfDay();
 
             Long usuarioId = obtenerUsuarioId(authentication);
 
@@ -272,6 +281,58 @@ public class ReporteController {
         }
     }
 
+    // ==================== REPORTES EN SEGUNDO PLANO ====================
+
+    @PostMapping("/jobs")
+    @PreAuthorize("hasAnyRole('ADMIN', 'EMPLEADO')")
+    public ResponseEntity<ReporteResponse> solicitarReporte(
+            @Valid @RequestBody SolicitudReporteRequest request,
+            Authentication authentication
+    ) {
+        LocalDate[] periodo = periodoPorDefecto(request.getTipo());
+        LocalDateTime inicio = (request.getFechaInicio() != null ? request.getFechaInicio() : periodo[0]).atStartOfDay();
+        LocalDateTime fin = (request.getFechaFin() != null ? request.getFechaFin() : periodo[1]).plusDays(1).atStartOfDay();
+
+        Long usuarioId = obtenerUsuarioId(authentication);
+        ReporteResponse reporte = reporteJobService.solicitar(
+                request.getTipo(), request.getFormato(), inicio, fin, usuarioId);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(reporte);
+    }
+
+    @GetMapping("/jobs/{id}")
+    @PreAuthorize("hasAnyRole('ADMIN', 'EMPLEADO')")
+    public ResponseEntity<ReporteResponse> obtenerEstadoReporte(@PathVariable Long id) {
+        return ResponseEntity.ok(reporteJobService.obtenerEstado(id));
+    }
+
+    @GetMapping("/jobs/{id}/archivo")
+    @PreAuthorize("hasAnyRole('ADMIN', 'EMPLEADO')")
+    public ResponseEntity<Resource> descargarReporte(@PathVariable Long id) {
+        Path archivo = reporteJobService.obtenerArchivo(id);
+        String filename = archivo.getFileName().toString();
+        MediaType contentType = filename.endsWith(".pdf")
+                ? MediaType.APPLICATION_PDF
+                : MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(contentType);
+        headers.setContentDispositionFormData("attachment", filename);
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(new FileSystemResource(archivo));
+    }
+
+    // Mismos períodos por defecto que los endpoints de descarga directa
+    private LocalDate[] periodoPorDefecto(TipoReporte tipo) {
+        LocalDate hoy = LocalDate.now();
+        return switch (tipo) {
+            case VENTAS -> new LocalDate[]{hoy.withDayOfMonth(1), hoy};
+            case PEDIDOS -> new LocalDate[]{hoy.minusDays(7), hoy};
+            default -> new LocalDate[]{hoy, hoy};
+        };
+    }
+
     private Long obtenerUsuarioId(Authentication authentication) {
         String email = authentication.getName();
         return usuarioRepository.findByEmail(email)
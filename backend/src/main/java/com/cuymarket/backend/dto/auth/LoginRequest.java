@@ -13,4 +13,7 @@ public class LoginRequest {
     
     @NotBlank(message = "La contraseña es obligatoria")
     private String password;
+
+    // Token del carrito invitado, si el visitante agregó productos antes de iniciar sesión
+    private String tokenCarritoInvitado;
 }
@@ -32,4 +32,7 @@ public class RegisterRequest {
     @NotBlank(message = "La contraseña es obligatoria")
     @Size(min = 6, message = "La contraseña debe tener al menos 6 caracteres")
     private String password;
+
+    // Token del carrito invitado, si el visitante agregó productos antes de registrarse
+    private String tokenCarritoInvitado;
 }
@@ -0,0 +1,43 @@
+package com.cuymarket.backend.dto.carrito;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+public class OperacionesCarritoRequest {
+
+    // Se aplican en orden y todas o ninguna
+    @NotEmpty(message = "Debe indicar al menos una operación")
+    @Size(max = 100, message = "No se pueden enviar más de 100 operaciones a la vez")
+    private List<@Valid @NotNull Operacion> operaciones;
+
+    public enum Tipo {
+        AGREGAR,     // suma la cantidad (crea el item si no existe)
+        ACTUALIZAR,  // reemplaza la cantidad de un producto que ya está en el carrito
+        ELIMINAR,    // quita el producto del carrito
+        VACIAR       // quita todos los productos
+    }
+
+    // Los items se identifican por producto, no por id de item
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Operacion {
+
+        @NotNull(message = "El tipo de operación es obligatorio")
+        private Tipo tipo;
+
+        private Long productoId;
+
+        @Min(value = 1, message = "La cantidad debe ser al menos 1")
+        private Integer cantidad;
+    }
+}
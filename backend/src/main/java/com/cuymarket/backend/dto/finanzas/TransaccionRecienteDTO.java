@@ -0,0 +1,29 @@
+package com.cuymarket.backend.dto.finanzas;
+
+import com.cuymarket.backend.model.enums.EstadoPago;
+import com.cuymarket.backend.model.enums.MetodoPago;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Datos mínimos de un pedido pagado para la lista de transacciones recientes; se
+ * llena con una expresión constructora JPQL.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransaccionRecienteDTO {
+    private Long pedidoId;
+    private String numeroPedido;
+    private LocalDateTime fechaPedido;
+    private String clienteNombre;
+    private String clienteApellido;
+    private String clienteEmail;
+    private MetodoPago metodoPago;
+    private BigDecimal total;
+    private EstadoPago estadoPago;
+}
@@ -0,0 +1,21 @@
+package com.cuymarket.backend.dto.finanzas;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Ventas pagadas de un mes, agregadas en la base de datos a partir de los
+ * acumulados diarios.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VentaMesDTO {
+    private Integer anio;
+    private Integer mes;
+    private BigDecimal monto;
+    private Long cantidadPedidos;
+}
@@ -0,0 +1,18 @@
+package com.cuymarket.backend.dto.pedido;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaginaPedidosResponse {
+
+    private List<PedidoResponse> pedidos;
+
+    // Se envía como parámetro cursor para pedir la página siguiente; null si no hay más
+    private String siguienteCursor;
+}
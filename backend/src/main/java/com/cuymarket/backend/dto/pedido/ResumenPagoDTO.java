@@ -0,0 +1,18 @@
+package com.cuymarket.backend.dto.pedido;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Lo que la respuesta de un pedido necesita de su información de pago, sin el
+ * comprobante; se llena con una expresión constructora JPQL.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResumenPagoDTO {
+    private Long pedidoId;
+    private Long informacionPagoId;
+    private Boolean tieneComprobante;
+}
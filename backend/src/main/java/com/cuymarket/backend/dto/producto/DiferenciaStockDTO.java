@@ -0,0 +1,18 @@
+package com.cuymarket.backend.dto.producto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Stock guardado en el producto frente al que resulta de sumar sus movimientos.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DiferenciaStockDTO {
+    private Long productoId;
+    private String productoNombre;
+    private Integer stockActual;
+    private Long stockSegunMovimientos;
+}
@@ -0,0 +1,21 @@
+package com.cuymarket.backend.dto.producto;
+
+import com.cuymarket.backend.model.enums.TipoMovimiento;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovimientoInventarioResponse {
+    private Long id;
+    private Long productoId;
+    private String productoNombre;
+    private TipoMovimiento tipo;
+    private Integer cantidad;
+    private String motivo;
+    private LocalDateTime fecha;
+}
@@ -0,0 +1,24 @@
+package com.cuymarket.backend.dto.producto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PaginaProductosResponse {
+
+    private List<ProductoListadoResponse> productos;
+
+    // Página actual, empezando en 0
+    private int pagina;
+
+    private int tamano;
+
+    private long totalElementos;
+
+    private int totalPaginas;
+}
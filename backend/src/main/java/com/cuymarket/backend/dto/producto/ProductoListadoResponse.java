@@ -0,0 +1,58 @@
+package com.cuymarket.backend.dto.producto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Fila del catálogo. Se llena con una expresión constructora JPQL que no toca la
+ * descripción ni la imagen; el detalle completo está en {@link ProductoResponse}.
+ */
+@Data
+@NoArgsConstructor
+public class ProductoListadoResponse {
+
+    private Long id;
+    private String nombre;
+    private String raza;
+    private String peso;
+    private BigDecimal precio;
+    private String tipo;
+    private String certificado;
+    private Boolean activo;
+    private Integer stockDisponible;
+    private Integer stockMinimo;
+    private Long categoriaId;
+    private String categoriaNombre;
+    private Double calificacionPromedio;
+    private Long totalResenas;
+    private String imagen; // URL versionada de la imagen
+    private Long version; // se devuelve al editar el producto
+
+    @JsonIgnore
+    private String imagenHash;
+
+    public ProductoListadoResponse(Long id, String nombre, String raza, String peso, BigDecimal precio,
+            String tipo, Boolean certificado, Boolean activo, Integer stockDisponible, Integer stockMinimo,
+            Long categoriaId, String categoriaNombre, String imagenHash, long version, Double calificacionPromedio,
+            Long totalResenas) {
+        this.id = id;
+        this.nombre = nombre;
+        this.raza = raza;
+        this.peso = peso;
+        this.precio = precio;
+        this.tipo = tipo;
+        this.certificado = certificado != null && certificado ? "Sí" : "No";
+        this.activo = activo != null ? activo : true;
+        this.stockDisponible = stockDisponible != null ? stockDisponible : 0;
+        this.stockMinimo = stockMinimo != null ? stockMinimo : 5;
+        this.categoriaId = categoriaId;
+        this.categoriaNombre = categoriaNombre;
+        this.imagenHash = imagenHash;
+        this.version = version;
+        this.calificacionPromedio = calificacionPromedio;
+        this.totalResenas = totalResenas;
+    }
+}
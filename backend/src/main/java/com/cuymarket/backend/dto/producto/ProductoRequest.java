@@ -48,4 +48,7 @@ public class ProductoRequest {
     private Long categoriaId;
 
     private Boolean activo = true;
+
+    // Versión del producto cuando se abrió el formulario; obligatoria al editar
+    private Long version;
 }
@@ -13,6 +13,7 @@ import java.time.LocalDateTime;
 public class ProductoResponse {
 
     private Long id;
+    private Long version; // se devuelve al editar el producto
     private String nombre;
     private String raza;
     private String peso; // Cambiado de Double a String para coincidir con el modelo
@@ -21,7 +22,9 @@ public class ProductoResponse {
     private String certificado;
     private String descripcion;
     private String caracteristicas;
-    private String imagen; // Base64 string
+    private String imagen; // URL versionada de la imagen
+    private Integer imagenAncho;
+    private Integer imagenAlto;
     private Boolean activo;
     private LocalDateTime fechaCreacion;
 
@@ -0,0 +1,25 @@
+package com.cuymarket.backend.dto.reportes;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Fila del reporte de clientes con sus pedidos ya agregados en la consulta.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ClienteReporteDTO {
+    private Long id;
+    private String nombre;
+    private String apellido;
+    private String email;
+    private String telefono;
+    private Long cantidadPedidos;
+    private BigDecimal totalGastado;
+    private LocalDateTime ultimoPedido;
+}
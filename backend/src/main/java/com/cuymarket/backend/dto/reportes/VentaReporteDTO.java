@@ -0,0 +1,26 @@
+package com.cuymarket.backend.dto.reportes;
+
+import com.cuymarket.backend.model.enums.MetodoPago;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Fila plana del reporte de ventas. Se llena con una expresión constructora
+ * JPQL para no cargar el grafo completo de Pedido al exportar.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VentaReporteDTO {
+    private String numeroPedido;
+    private String clienteNombre;
+    private String clienteApellido;
+    private String clienteEmail;
+    private LocalDateTime fechaPedido;
+    private MetodoPago metodoPago;
+    private BigDecimal total;
+}
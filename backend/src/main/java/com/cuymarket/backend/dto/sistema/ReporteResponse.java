@@ -1,5 +1,6 @@
 package com.cuymarket.backend.dto.sistema;
 
+import com.cuymarket.backend.model.enums.EstadoReporte;
 import com.cuymarket.backend.model.enums.TipoReporte;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -17,6 +18,10 @@ public class ReporteResponse {
     private String formato;
     private LocalDateTime fechaGeneracion;
     private UsuarioSimpleDTO generadoPor;
+    private EstadoReporte estado;
+    private Long tamanoBytes;
+    private String mensajeError;
+    private LocalDateTime fechaCompletado;
 
     @Data
     @NoArgsConstructor
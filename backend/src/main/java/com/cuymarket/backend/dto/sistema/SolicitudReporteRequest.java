@@ -0,0 +1,22 @@
+package com.cuymarket.backend.dto.sistema;
+
+import com.cuymarket.backend.model.enums.TipoReporte;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+@Data
+public class SolicitudReporteRequest {
+
+    @NotNull(message = "El tipo de reporte es obligatorio")
+    private TipoReporte tipo;
+
+    @NotBlank(message = "El formato es obligatorio")
+    private String formato; // PDF o EXCEL
+
+    // Opcionales; si faltan se usa el mismo período por defecto que en la descarga directa
+    private LocalDate fechaInicio;
+    private LocalDate fechaFin;
+}
@@ -22,6 +22,11 @@ public class Carrito {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Bloqueo optimista; CarritoService la incrementa a mano cuando cambian los items
+    @Version
+    @Column(nullable = false)
+    private long version;
+
     @Column(length = 100)
     private String sessionId;
 
@@ -16,9 +16,16 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 public class ItemCarrito {
-    
+
+    public static final int BLOQUE_IDS = 50;
+
+    // Ids en bloques desde la tabla de generadores, como en ItemPedido: así los items de
+    // un carrito invitado se insertan en un solo lote al fusionarlo con el del usuario
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "items_carrito_id")
+    @TableGenerator(name = "items_carrito_id", table = "generadores_id", pkColumnName = "nombre",
+            valueColumnName = "siguiente_valor", pkColumnValue = "items_carrito",
+            allocationSize = ItemCarrito.BLOQUE_IDS)
     private Long id;
     
     @Min(1)
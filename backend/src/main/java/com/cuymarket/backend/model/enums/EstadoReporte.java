@@ -0,0 +1,8 @@
+package com.cuymarket.backend.model.enums;
+
+public enum EstadoReporte {
+    PENDIENTE,
+    EN_PROCESO,
+    COMPLETADO,
+    FALLIDO
+}
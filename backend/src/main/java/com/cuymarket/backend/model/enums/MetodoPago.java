@@ -4,5 +4,10 @@ public enum MetodoPago {
     TARJETA,
     YAPE,
     PLIN,
-    TRANSFERENCIA
+    TRANSFERENCIA;
+
+    // Pagos que el personal verifica a mano con el comprobante que sube el cliente
+    public boolean requiereComprobante() {
+        return this == YAPE || this == PLIN || this == TRANSFERENCIA;
+    }
 }
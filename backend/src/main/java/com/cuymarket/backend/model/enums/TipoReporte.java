@@ -4,5 +4,6 @@ public enum TipoReporte {
     VENTAS,
     PEDIDOS,
     INVENTARIO,
-    CLIENTES
+    CLIENTES,
+    PEDIDOS_COMPLETADOS
 }
@@ -36,9 +36,15 @@ public class InformacionPago {
     @Column(length = 100)
     private String banco;
 
-    @Lob
-    @Column(columnDefinition = "LONGBLOB")
-    private byte[] comprobante;
+    // El archivo está en el almacén de comprobantes (ComprobantePagoService); aquí solo su
+    // clave, tipo y tamaño
+    @Column(length = 32)
+    private String comprobanteClave;
+
+    @Column(length = 50)
+    private String comprobanteTipo;
+
+    private Long comprobanteTamano;
 
     private LocalDateTime fechaPago;
 
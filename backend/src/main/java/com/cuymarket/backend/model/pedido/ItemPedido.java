@@ -17,8 +17,15 @@ import java.math.BigDecimal;
 @AllArgsConstructor
 public class ItemPedido {
 
+    public static final int BLOQUE_IDS = 50;
+
+    // Ids reservados en bloques desde una tabla (MySQL no tiene secuencias): con IDENTITY
+    // Hibernate no puede agrupar los INSERT de las líneas de un pedido en un lote JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "items_pedido_id")
+    @TableGenerator(name = "items_pedido_id", table = "generadores_id", pkColumnName = "nombre",
+            valueColumnName = "siguiente_valor", pkColumnValue = "items_pedido",
+            allocationSize = ItemPedido.BLOQUE_IDS)
     private Long id;
 
     @NotBlank
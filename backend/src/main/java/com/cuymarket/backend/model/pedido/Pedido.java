@@ -21,7 +21,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "pedidos")
+@Table(name = "pedidos", indexes = {
+        @Index(name = "idx_pedidos_estado_pago_fecha", columnList = "estado_pago, fecha_pedido"),
+        @Index(name = "idx_pedidos_fecha_id", columnList = "fecha_pedido, id"),
+        @Index(name = "idx_pedidos_estado_fecha_id", columnList = "estado, fecha_pedido, id")
+})
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -83,12 +87,10 @@ public class Pedido {
     @OneToOne(cascade = CascadeType.ALL)
     @JoinColumn(name = "direccion_envio_id", nullable = false)
     private DireccionEnvio direccionEnvio;
-    
-    @OneToOne(mappedBy = "pedido", cascade = CascadeType.ALL)
-    private InformacionPago informacionPago;
-    
-    @OneToOne(mappedBy = "pedido", cascade = CascadeType.ALL)
-    private Factura factura;
+
+    // InformacionPago y Factura apuntan al pedido pero no se mapean de este lado: un
+    // @OneToOne inverso se carga siempre con el pedido (comprobante y PDF incluidos).
+    // Se consultan por pedido en sus repositorios
     
     @PrePersist
     protected void onCreate() {
@@ -0,0 +1,42 @@
+package com.cuymarket.backend.model.pedido;
+
+import com.cuymarket.backend.model.enums.MetodoPago;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Acumulado de ventas pagadas por día de pedido y método de pago. Se ajusta cada vez
+ * que un pedido entra o sale del estado PAGADO, así el resumen de finanzas no
+ * recorre la tabla de pedidos.
+ */
+@Entity
+@Table(name = "ventas_diarias", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_ventas_diarias_fecha_metodo", columnNames = {"fecha", "metodo_pago"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VentaDiaria {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDate fecha;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "metodo_pago", nullable = false, length = 20)
+    private MetodoPago metodoPago;
+
+    @Column(name = "cantidad_pedidos", nullable = false)
+    private Long cantidadPedidos = 0L;
+
+    @Column(name = "monto_total", nullable = false, precision = 12, scale = 2)
+    private BigDecimal montoTotal = BigDecimal.ZERO;
+}
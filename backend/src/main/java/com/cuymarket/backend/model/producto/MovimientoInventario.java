@@ -0,0 +1,46 @@
+package com.cuymarket.backend.model.producto;
+
+import com.cuymarket.backend.model.enums.TipoMovimiento;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Registro de solo inserción con cada cambio de stock. La cantidad lleva signo
+ * (positiva si entra, negativa si sale), así la suma de los movimientos de un
+ * producto es su stock.
+ */
+@Entity
+@Table(name = "movimientos_inventario", indexes = {
+        @Index(name = "idx_movimientos_producto_fecha", columnList = "producto_id, fecha"),
+        @Index(name = "idx_movimientos_fecha", columnList = "fecha")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MovimientoInventario {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Sin relación JPA: el registro sobrevive aunque el producto se elimine
+    @Column(name = "producto_id", nullable = false)
+    private Long productoId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private TipoMovimiento tipo;
+
+    @Column(nullable = false)
+    private Integer cantidad;
+
+    @Column(length = 255)
+    private String motivo;
+
+    @Column(nullable = false)
+    private LocalDateTime fecha;
+}
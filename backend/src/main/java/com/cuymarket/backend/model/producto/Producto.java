@@ -24,6 +24,11 @@ public class Producto {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
+
+    // Bloqueo optimista; los UPDATE atómicos de stock también la incrementan
+    @Version
+    @Column(nullable = false)
+    private long version;
     
     @NotBlank(message = "El nombre es obligatorio")
     @Column(nullable = false, length = 200)
@@ -53,9 +58,18 @@ public class Producto {
     @Column(columnDefinition = "TEXT")
     private String caracteristicas;
     
-    @Lob
-    @Column(columnDefinition = "LONGBLOB")
-    private byte[] imagen;
+    // La imagen vive en el almacén de archivos (ImagenProductoService); aquí solo su hash y metadatos
+    @Column(name = "imagen_hash", length = 64)
+    private String imagenHash;
+    
+    @Column(name = "imagen_tipo", length = 30)
+    private String imagenTipo;
+    
+    @Column(name = "imagen_ancho")
+    private Integer imagenAncho;
+    
+    @Column(name = "imagen_alto")
+    private Integer imagenAlto;
     
     @Min(0)
     @Column(nullable = false)
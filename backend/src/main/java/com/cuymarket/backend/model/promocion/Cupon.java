@@ -21,6 +21,11 @@ public class Cupon {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
+
+    // Bloqueo optimista: dos canjes simultáneos no pueden pisarse los usos
+    @Version
+    @Column(nullable = false)
+    private long version;
     
     @NotBlank
     @Column(unique = true, nullable = false, length = 50)
@@ -0,0 +1,31 @@
+package com.cuymarket.backend.model.sistema;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Bloqueo con vencimiento de una tarea programada: solo la instancia propietaria la
+ * ejecuta hasta que el bloqueo vence o lo libera. Se maneja con SQL desde
+ * BloqueoTareasService; la entidad define la tabla.
+ */
+@Entity
+@Table(name = "bloqueos_tareas")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BloqueoTarea {
+
+    @Id
+    @Column(length = 100)
+    private String nombre;
+
+    @Column(nullable = false, length = 150)
+    private String propietario;
+
+    @Column(nullable = false)
+    private LocalDateTime venceEn;
+}
@@ -1,5 +1,6 @@
 package com.cuymarket.backend.model.sistema;
 
+import com.cuymarket.backend.model.enums.EstadoReporte;
 import com.cuymarket.backend.model.enums.TipoReporte;
 import com.cuymarket.backend.model.usuario.Usuario;
 import jakarta.persistence.*;
@@ -37,6 +38,30 @@ public class Reporte {
     @JoinColumn(name = "generado_por", nullable = true)
     private Usuario generadoPor;
 
+    // Datos del reporte generado en segundo plano; quedan en null para los
+    // reportes que se descargan directamente
+    @Enumerated(EnumType.STRING)
+    private EstadoReporte estado;
+
+    @Column(name = "fecha_inicio")
+    private LocalDateTime fechaInicio;
+
+    // Exclusiva: primer instante fuera del período
+    @Column(name = "fecha_fin")
+    private LocalDateTime fechaFin;
+
+    @Column(name = "ruta_archivo", length = 500)
+    private String rutaArchivo;
+
+    @Column(name = "tamano_bytes")
+    private Long tamanoBytes;
+
+    @Column(name = "mensaje_error", length = 500)
+    private String mensajeError;
+
+    @Column(name = "fecha_completado")
+    private LocalDateTime fechaCompletado;
+
     @PrePersist
     protected void onCreate() {
         fechaGeneracion = LocalDateTime.now();
@@ -23,7 +23,9 @@ public interface CarritoRepository extends JpaRepository<Carrito, Long> {
     @Query("SELECT DISTINCT c FROM Carrito c LEFT JOIN FETCH c.items i LEFT JOIN FETCH i.producto WHERE c.id = :id")
     Optional<Carrito> findByIdWithItems(@Param("id") Long id);
     
-    @Query("SELECT DISTINCT c FROM Carrito c LEFT JOIN FETCH c.items i LEFT JOIN FETCH i.producto WHERE c.usuario.id = :usuarioId")
+    // La categoría viene en el mismo SELECT: si no, se carga una consulta por categoría distinta
+    @Query("SELECT DISTINCT c FROM Carrito c LEFT JOIN FETCH c.items i LEFT JOIN FETCH i.producto p " +
+           "LEFT JOIN FETCH p.categoria WHERE c.usuario.id = :usuarioId")
     Optional<Carrito> findByUsuarioIdWithItems(@Param("usuarioId") Long usuarioId);
     
     boolean existsByUsuarioId(Long usuarioId);
@@ -2,6 +2,7 @@ package com.cuymarket.backend.repository.carrito;
 
 import com.cuymarket.backend.model.carrito.ItemCarrito;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -17,6 +18,11 @@ public interface ItemCarritoRepository extends JpaRepository<ItemCarrito, Long>
     Optional<ItemCarrito> findByCarritoIdAndProductoId(Long carritoId, Long productoId);
     
     void deleteByCarritoId(Long carritoId);
+
+    // Vacía el carrito con un solo DELETE (deleteByCarritoId carga y borra ítem por ítem)
+    @Modifying
+    @Query("DELETE FROM ItemCarrito ic WHERE ic.carrito.id = :carritoId")
+    int eliminarTodosDelCarrito(@Param("carritoId") Long carritoId);
     
     void deleteByCarritoIdAndProductoId(Long carritoId, Long productoId);
     
@@ -30,4 +36,7 @@ public interface ItemCarritoRepository extends JpaRepository<ItemCarrito, Long>
     List<ItemCarrito> findByCarritoIdOrderByFechaDesc(@Param("carritoId") Long carritoId);
     
     boolean existsByCarritoIdAndProductoId(Long carritoId, Long productoId);
+
+    @Query("SELECT COALESCE(MAX(ic.id), 0) FROM ItemCarrito ic")
+    Long obtenerMaximoId();
 }
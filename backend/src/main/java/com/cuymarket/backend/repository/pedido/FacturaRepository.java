@@ -30,4 +30,8 @@ public interface FacturaRepository extends JpaRepository<Factura, Long> {
     Long contarFacturasPorPeriodo(@Param("fechaInicio") LocalDate fechaInicio, @Param("fechaFin") LocalDate fechaFin);
     
     boolean existsByNumeroFactura(String numeroFactura);
+
+    // Todos los números de una serie tienen el mismo ancho: el máximo de texto es el mayor número
+    @Query("SELECT MAX(f.numeroFactura) FROM Factura f WHERE f.numeroFactura LIKE CONCAT(:prefijo, '%')")
+    String obtenerUltimoNumero(@Param("prefijo") String prefijo);
 }
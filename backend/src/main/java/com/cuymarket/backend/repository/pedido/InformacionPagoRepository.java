@@ -1,5 +1,6 @@
 package com.cuymarket.backend.repository.pedido;
 
+import com.cuymarket.backend.dto.pedido.ResumenPagoDTO;
 import com.cuymarket.backend.model.enums.MetodoPago;
 import com.cuymarket.backend.model.pedido.InformacionPago;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -8,6 +9,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,6 +17,12 @@ import java.util.Optional;
 public interface InformacionPagoRepository extends JpaRepository<InformacionPago, Long> {
     
     Optional<InformacionPago> findByPedidoId(Long pedidoId);
+
+    // Resumen de pago de varios pedidos en una consulta
+    @Query("SELECT new com.cuymarket.backend.dto.pedido.ResumenPagoDTO(ip.pedido.id, ip.id, " +
+           "CASE WHEN ip.comprobanteClave IS NOT NULL THEN true ELSE false END) " +
+           "FROM InformacionPago ip WHERE ip.pedido.id IN :pedidoIds")
+    List<ResumenPagoDTO> buscarResumenPorPedidos(@Param("pedidoIds") Collection<Long> pedidoIds);
     
     List<InformacionPago> findByMetodoPago(MetodoPago metodoPago);
     
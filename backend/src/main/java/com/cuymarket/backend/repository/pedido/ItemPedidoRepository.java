@@ -23,4 +23,7 @@ public interface ItemPedidoRepository extends JpaRepository<ItemPedido, Long> {
     
     @Query("SELECT ip FROM ItemPedido ip WHERE ip.pedido.id = :pedidoId ORDER BY ip.id")
     List<ItemPedido> findByPedidoIdOrdenado(@Param("pedidoId") Long pedidoId);
+
+    @Query("SELECT COALESCE(MAX(ip.id), 0) FROM ItemPedido ip")
+    Long obtenerMaximoId();
 }
@@ -1,24 +1,37 @@
 package com.cuymarket.backend.repository.pedido;
 
 import com.cuymarket.backend.dto.dashboard.ProductoTopDTO;
+import com.cuymarket.backend.dto.finanzas.TransaccionRecienteDTO;
+import com.cuymarket.backend.dto.reportes.VentaReporteDTO;
 import com.cuymarket.backend.model.enums.EstadoPedido;
 import com.cuymarket.backend.model.enums.EstadoPago;
 import com.cuymarket.backend.model.pedido.Pedido;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
 public interface PedidoRepository extends JpaRepository<Pedido, Long> {
 
     Optional<Pedido> findByNumeroPedido(String numeroPedido);
 
+    @Query("SELECT COALESCE(MAX(p.id), 0) FROM Pedido p")
+    Long obtenerMaximoId();
+
     List<Pedido> findByUsuarioId(Long usuarioId);
 
     List<Pedido> findByUsuarioIdOrderByFechaPedidoDesc(Long usuarioId);
@@ -41,6 +54,14 @@ public interface PedidoRepository extends JpaRepository<Pedido, Long> {
     @Query("SELECT COUNT(p) FROM Pedido p WHERE p.estado = :estado")
     Long contarPorEstado(@Param("estado") EstadoPedido estado);
 
+    // Filas [estado, cantidad] de los pedidos del rango ({@code hasta} excluido); sin fechas cuenta todos
+    @Query("SELECT p.estado, COUNT(p) FROM Pedido p WHERE " +
+           "(:desde IS NULL OR p.fechaPedido >= :desde) AND " +
+           "(:hasta IS NULL OR p.fechaPedido < :hasta) " +
+           "GROUP BY p.estado")
+    List<Object[]> contarAgrupadoPorEstado(@Param("desde") LocalDateTime desde,
+            @Param("hasta") LocalDateTime hasta);
+
     @Query("SELECT SUM(p.total) FROM Pedido p WHERE p.estadoPago = 'PAGADO' AND p.fechaPedido BETWEEN :fechaInicio AND :fechaFin")
     BigDecimal calcularVentasTotales(@Param("fechaInicio") LocalDateTime fechaInicio,
             @Param("fechaFin") LocalDateTime fechaFin);
@@ -48,14 +69,38 @@ public interface PedidoRepository extends JpaRepository<Pedido, Long> {
     @Query("SELECT COUNT(p) FROM Pedido p WHERE p.usuario.id = :usuarioId")
     Long contarPedidosByUsuario(@Param("usuarioId") Long usuarioId);
 
-    // Consultas con JOIN FETCH para cargar relaciones
+    // Listado del personal, primera fase: ids de una página ordenada por (fecha_pedido, id)
+    // descendente. El cursor es la última fila de la página anterior (nulo en la primera).
+    // El texto se busca en el número de pedido y en el nombre y el correo del cliente
+    @Query("SELECT p.id FROM Pedido p LEFT JOIN p.usuario u WHERE " +
+           "(:estado IS NULL OR p.estado = :estado) AND " +
+           "(:estadoPago IS NULL OR p.estadoPago = :estadoPago) AND " +
+           "(:desde IS NULL OR p.fechaPedido >= :desde) AND " +
+           "(:hasta IS NULL OR p.fechaPedido < :hasta) AND " +
+           "(:texto IS NULL OR LOWER(p.numeroPedido) LIKE LOWER(CONCAT('%', :texto, '%')) " +
+           "OR LOWER(CONCAT(u.nombre, ' ', u.apellido)) LIKE LOWER(CONCAT('%', :texto, '%')) " +
+           "OR LOWER(u.email) LIKE LOWER(CONCAT('%', :texto, '%'))) AND " +
+           "(:cursorFecha IS NULL OR p.fechaPedido < :cursorFecha " +
+           "OR (p.fechaPedido = :cursorFecha AND p.id < :cursorId)) " +
+           "ORDER BY p.fechaPedido DESC, p.id DESC")
+    List<Long> buscarIdsPagina(@Param("estado") EstadoPedido estado,
+            @Param("estadoPago") EstadoPago estadoPago,
+            @Param("desde") LocalDateTime desde,
+            @Param("hasta") LocalDateTime hasta,
+            @Param("texto") String texto,
+            @Param("cursorFecha") LocalDateTime cursorFecha,
+            @Param("cursorId") Long cursorId,
+            Limit limite);
+
+    // Segunda fase: relaciones de los pedidos de la página (sin orden, lo pone el servicio)
     @Query("SELECT DISTINCT p FROM Pedido p " +
            "LEFT JOIN FETCH p.items i " +
-           "LEFT JOIN FETCH i.producto " +
+           "LEFT JOIN FETCH i.producto pr " +
+           "LEFT JOIN FETCH pr.categoria " +
            "LEFT JOIN FETCH p.usuario " +
            "LEFT JOIN FETCH p.direccionEnvio " +
-           "ORDER BY p.fechaPedido DESC")
-    List<Pedido> findAllWithDetails();
+           "WHERE p.id IN :ids")
+    List<Pedido> findAllByIdWithDetails(@Param("ids") Collection<Long> ids);
 
     @Query("SELECT DISTINCT p FROM Pedido p " +
            "LEFT JOIN FETCH p.items i " +
@@ -103,14 +148,51 @@ public interface PedidoRepository extends JpaRepository<Pedido, Long> {
     List<ProductoTopDTO> findTopSellingProducts(
             org.springframework.data.domain.Pageable pageable);
 
-    @Query("SELECT p FROM Pedido p WHERE p.estadoPago = :estadoPago AND p.fechaPedido >= :fecha")
-    List<Pedido> findByEstadoPagoAndFechaPedidoAfter(@Param("estadoPago") EstadoPago estadoPago,
-            @Param("fecha") LocalDateTime fecha);
+    // Rangos semiabiertos [fechaInicio, fechaFin): usan el índice (estado_pago, fecha_pedido)
+    @Query("SELECT p FROM Pedido p WHERE p.estadoPago = :estadoPago " +
+           "AND p.fechaPedido >= :fechaInicio AND p.fechaPedido < :fechaFin " +
+           "ORDER BY p.fechaPedido ASC")
+    List<Pedido> findByEstadoPagoAndFechaPedidoRango(@Param("estadoPago") EstadoPago estadoPago,
+            @Param("fechaInicio") LocalDateTime fechaInicio,
+            @Param("fechaFin") LocalDateTime fechaFin);
 
-    @Query("SELECT p FROM Pedido p WHERE p.estado = :estado AND p.fechaPedido BETWEEN :fechaInicio AND :fechaFin ORDER BY p.fechaPedido DESC")
-    List<Pedido> findByEstadoAndFechaPedidoBetween(@Param("estado") EstadoPedido estado,
+    @Query("SELECT COALESCE(SUM(p.total), 0) FROM Pedido p WHERE p.estadoPago = :estadoPago " +
+           "AND p.fechaPedido >= :fechaInicio AND p.fechaPedido < :fechaFin")
+    BigDecimal sumarTotalPorEstadoPagoYRango(@Param("estadoPago") EstadoPago estadoPago,
+            @Param("fechaInicio") LocalDateTime fechaInicio,
+            @Param("fechaFin") LocalDateTime fechaFin);
+
+    @Query("SELECT p FROM Pedido p WHERE p.fechaPedido >= :fechaInicio AND p.fechaPedido < :fechaFin " +
+           "ORDER BY p.fechaPedido ASC")
+    List<Pedido> findByFechaPedidoRango(@Param("fechaInicio") LocalDateTime fechaInicio,
+            @Param("fechaFin") LocalDateTime fechaFin);
+
+    @Query("SELECT new com.cuymarket.backend.dto.finanzas.TransaccionRecienteDTO(" +
+           "p.id, p.numeroPedido, p.fechaPedido, u.nombre, u.apellido, u.email, p.metodoPago, p.total, p.estadoPago) " +
+           "FROM Pedido p LEFT JOIN p.usuario u " +
+           "WHERE p.estadoPago = :estadoPago ORDER BY p.fechaPedido DESC")
+    List<TransaccionRecienteDTO> findTransaccionesRecientes(@Param("estadoPago") EstadoPago estadoPago,
+            org.springframework.data.domain.Pageable pageable);
+
+    @Query("SELECT p FROM Pedido p WHERE p.estado = :estado " +
+           "AND p.fechaPedido >= :fechaInicio AND p.fechaPedido < :fechaFin ORDER BY p.fechaPedido DESC")
+    List<Pedido> findByEstadoAndFechaPedidoRango(@Param("estado") EstadoPedido estado,
             @Param("fechaInicio") LocalDateTime fechaInicio,
             @Param("fechaFin") LocalDateTime fechaFin);
 
     List<Pedido> findTop5ByOrderByFechaPedidoDesc();
+
+    // Exportación de reportes: cursor de filas planas, se consume dentro de una transacción
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.cuymarket.backend.dto.reportes.VentaReporteDTO(" +
+           "p.numeroPedido, u.nombre, u.apellido, u.email, p.fechaPedido, p.metodoPago, p.total) " +
+           "FROM Pedido p LEFT JOIN p.usuario u " +
+           "WHERE p.estadoPago = :estadoPago AND p.fechaPedido >= :fechaInicio AND p.fechaPedido < :fechaFin " +
+           "ORDER BY p.fechaPedido ASC")
+    Stream<VentaReporteDTO> streamVentasReporte(@Param("estadoPago") EstadoPago estadoPago,
+            @Param("fechaInicio") LocalDateTime fechaInicio,
+            @Param("fechaFin") LocalDateTime fechaFin);
 }
@@ -0,0 +1,44 @@
+package com.cuymarket.backend.repository.pedido;
+
+import com.cuymarket.backend.dto.finanzas.VentaMesDTO;
+import com.cuymarket.backend.model.pedido.VentaDiaria;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface VentaDiariaRepository extends JpaRepository<VentaDiaria, Long> {
+
+    List<VentaDiaria> findByFechaGreaterThanEqualOrderByFechaAsc(LocalDate desde);
+
+    @Query("SELECT v.metodoPago, SUM(v.cantidadPedidos), SUM(v.montoTotal) FROM VentaDiaria v GROUP BY v.metodoPago")
+    List<Object[]> resumirPorMetodoPago();
+
+    @Query("SELECT new com.cuymarket.backend.dto.finanzas.VentaMesDTO(" +
+           "YEAR(v.fecha), MONTH(v.fecha), SUM(v.montoTotal), SUM(v.cantidadPedidos)) " +
+           "FROM VentaDiaria v WHERE v.fecha >= :desde " +
+           "GROUP BY YEAR(v.fecha), MONTH(v.fecha)")
+    List<VentaMesDTO> resumirPorMes(@Param("desde") LocalDate desde);
+
+    // Suma (o resta, con valores negativos) sobre la fila del día; la crea si no existe
+    @Modifying
+    @Query(value = "INSERT INTO ventas_diarias (fecha, metodo_pago, cantidad_pedidos, monto_total) " +
+                   "VALUES (:fecha, :metodoPago, :cantidad, :monto) " +
+                   "ON DUPLICATE KEY UPDATE cantidad_pedidos = cantidad_pedidos + :cantidad, " +
+                   "monto_total = monto_total + :monto", nativeQuery = true)
+    void acumular(@Param("fecha") LocalDate fecha, @Param("metodoPago") String metodoPago,
+            @Param("cantidad") long cantidad, @Param("monto") BigDecimal monto);
+
+    @Modifying
+    @Query(value = "INSERT INTO ventas_diarias (fecha, metodo_pago, cantidad_pedidos, monto_total) " +
+                   "SELECT CAST(p.fecha_pedido AS DATE), p.metodo_pago, COUNT(*), SUM(p.total) " +
+                   "FROM pedidos p WHERE p.estado_pago = 'PAGADO' " +
+                   "GROUP BY CAST(p.fecha_pedido AS DATE), p.metodo_pago", nativeQuery = true)
+    int reconstruirDesdePedidos();
+}
@@ -0,0 +1,51 @@
+package com.cuymarket.backend.repository.producto;
+
+import com.cuymarket.backend.dto.producto.DiferenciaStockDTO;
+import com.cuymarket.backend.dto.producto.MovimientoInventarioResponse;
+import com.cuymarket.backend.model.producto.MovimientoInventario;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface MovimientoInventarioRepository extends JpaRepository<MovimientoInventario, Long> {
+
+    @Query(value = "SELECT new com.cuymarket.backend.dto.producto.MovimientoInventarioResponse(" +
+           "m.id, m.productoId, p.nombre, m.tipo, m.cantidad, m.motivo, m.fecha) " +
+           "FROM MovimientoInventario m LEFT JOIN Producto p ON p.id = m.productoId " +
+           "WHERE m.productoId = :productoId",
+           countQuery = "SELECT COUNT(m) FROM MovimientoInventario m WHERE m.productoId = :productoId")
+    Page<MovimientoInventarioResponse> buscarPorProducto(@Param("productoId") Long productoId, Pageable pageable);
+
+    @Query(value = "SELECT new com.cuymarket.backend.dto.producto.MovimientoInventarioResponse(" +
+           "m.id, m.productoId, p.nombre, m.tipo, m.cantidad, m.motivo, m.fecha) " +
+           "FROM MovimientoInventario m LEFT JOIN Producto p ON p.id = m.productoId " +
+           "WHERE m.fecha >= :desde AND m.fecha < :hasta",
+           countQuery = "SELECT COUNT(m) FROM MovimientoInventario m WHERE m.fecha >= :desde AND m.fecha < :hasta")
+    Page<MovimientoInventarioResponse> buscarPorFecha(
+            @Param("desde") LocalDateTime desde,
+            @Param("hasta") LocalDateTime hasta,
+            Pageable pageable);
+
+    // Stock de cada producto frente a la suma de sus movimientos
+    @Query("SELECT new com.cuymarket.backend.dto.producto.DiferenciaStockDTO(" +
+           "p.id, p.nombre, p.stockDisponible, COALESCE(SUM(m.cantidad), 0)) " +
+           "FROM Producto p LEFT JOIN MovimientoInventario m ON m.productoId = p.id " +
+           "GROUP BY p.id, p.nombre, p.stockDisponible")
+    List<DiferenciaStockDTO> compararStockConMovimientos();
+
+    // Saldo inicial para los productos que aún no tienen ningún movimiento
+    @Modifying
+    @Query(value = "INSERT INTO movimientos_inventario (producto_id, tipo, cantidad, motivo, fecha) " +
+           "SELECT p.id, 'AJUSTE', p.stock_disponible, 'Saldo inicial', CURRENT_TIMESTAMP FROM productos p " +
+           "WHERE NOT EXISTS (SELECT 1 FROM movimientos_inventario m WHERE m.producto_id = p.id)",
+           nativeQuery = true)
+    int registrarSaldosIniciales();
+}
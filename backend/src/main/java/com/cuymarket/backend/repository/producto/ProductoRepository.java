@@ -1,12 +1,17 @@
 package com.cuymarket.backend.repository.producto;
 
+import com.cuymarket.backend.dto.producto.ProductoListadoResponse;
 import com.cuymarket.backend.model.producto.Producto;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -82,4 +87,71 @@ public interface ProductoRepository extends JpaRepository<Producto, Long> {
     // Con relaciones
     @Query("SELECT DISTINCT p FROM Producto p LEFT JOIN FETCH p.resenas WHERE p.id = :id")
     Optional<Producto> findByIdWithResenas(@Param("id") Long id);
+    
+    // Stock leído siempre de la base (sin pasar por el contexto de persistencia)
+    @Query("SELECT p.stockDisponible FROM Producto p WHERE p.id = :id")
+    Integer obtenerStockDisponible(@Param("id") Long id);
+
+    // Igual para varios productos en una consulta: filas [id, stockDisponible]
+    @Query("SELECT p.id, p.stockDisponible FROM Producto p WHERE p.id IN :ids")
+    List<Object[]> obtenerStocksDisponibles(@Param("ids") Collection<Long> ids);
+
+    // Productos con su categoría en una consulta (vista y fusión de carritos invitados)
+    @Query("SELECT p FROM Producto p LEFT JOIN FETCH p.categoria WHERE p.id IN :ids")
+    List<Producto> findAllByIdWithCategoria(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT p.nombre FROM Producto p WHERE p.id IN :ids ORDER BY p.id")
+    List<String> obtenerNombres(@Param("ids") Collection<Long> ids);
+    
+    // Movimientos de stock atómicos: la condición evita que dos ventas simultáneas dejen stock negativo
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Producto p SET p.stockDisponible = p.stockDisponible - :cantidad, p.version = p.version + 1 " +
+           "WHERE p.id = :id AND p.stockDisponible >= :cantidad")
+    int descontarStockSiDisponible(@Param("id") Long id, @Param("cantidad") Integer cantidad);
+    
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Producto p SET p.stockDisponible = p.stockDisponible + :cantidad, p.version = p.version + 1 " +
+           "WHERE p.id = :id")
+    int incrementarStockAtomico(@Param("id") Long id, @Param("cantidad") Integer cantidad);
+    
+    // Catálogo: solo columnas ligeras, paginado y ordenado en la base de datos
+    @Query(value = "SELECT new com.cuymarket.backend.dto.producto.ProductoListadoResponse(" +
+           "p.id, p.nombre, p.raza, p.peso, p.precio, p.tipo, p.certificado, p.activo, " +
+           "p.stockDisponible, p.stockMinimo, c.id, c.nombre, p.imagenHash, p.version, " +
+           "(SELECT AVG(r.calificacion * 1.0) FROM Resena r WHERE r.producto = p), " +
+           "(SELECT COUNT(r) FROM Resena r WHERE r.producto = p)) " +
+           "FROM Producto p LEFT JOIN p.categoria c WHERE " +
+           "(:categoriaId IS NULL OR c.id = :categoriaId) AND " +
+           "(:texto IS NULL OR LOWER(p.nombre) LIKE LOWER(CONCAT('%', :texto, '%')) " +
+           "OR LOWER(p.tipo) LIKE LOWER(CONCAT('%', :texto, '%')) " +
+           "OR LOWER(p.raza) LIKE LOWER(CONCAT('%', :texto, '%')) " +
+           "OR LOWER(p.descripcion) LIKE LOWER(CONCAT('%', :texto, '%'))) AND " +
+           "(:raza IS NULL OR p.raza = :raza) AND " +
+           "(:precioMin IS NULL OR p.precio >= :precioMin) AND " +
+           "(:precioMax IS NULL OR p.precio < :precioMax) AND " +
+           "(:activo IS NULL OR p.activo = :activo)",
+           countQuery = "SELECT COUNT(p) FROM Producto p LEFT JOIN p.categoria c WHERE " +
+           "(:categoriaId IS NULL OR c.id = :categoriaId) AND " +
+           "(:texto IS NULL OR LOWER(p.nombre) LIKE LOWER(CONCAT('%', :texto, '%')) " +
+           "OR LOWER(p.tipo) LIKE LOWER(CONCAT('%', :texto, '%')) " +
+           "OR LOWER(p.raza) LIKE LOWER(CONCAT('%', :texto, '%')) " +
+           "OR LOWER(p.descripcion) LIKE LOWER(CONCAT('%', :texto, '%'))) AND " +
+           "(:raza IS NULL OR p.raza = :raza) AND " +
+           "(:precioMin IS NULL OR p.precio >= :precioMin) AND " +
+           "(:precioMax IS NULL OR p.precio < :precioMax) AND " +
+           "(:activo IS NULL OR p.activo = :activo)")
+    Page<ProductoListadoResponse> buscarListado(
+        @Param("categoriaId") Long categoriaId,
+        @Param("texto") String texto,
+        @Param("raza") String raza,
+        @Param("precioMin") BigDecimal precioMin,
+        @Param("precioMax") BigDecimal precioMax,
+        @Param("activo") Boolean activo,
+        Pageable pageable
+    );
+
+    // Opciones del filtro de raza del catálogo
+    @Query("SELECT DISTINCT p.raza FROM Producto p WHERE p.activo = true AND p.raza IS NOT NULL " +
+           "AND TRIM(p.raza) <> '' ORDER BY p.raza")
+    List<String> findRazasActivas();
 }
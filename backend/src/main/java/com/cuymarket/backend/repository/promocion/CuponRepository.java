@@ -3,6 +3,7 @@ package com.cuymarket.backend.repository.promocion;
 import com.cuymarket.backend.model.enums.TipoCupon;
 import com.cuymarket.backend.model.promocion.Cupon;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -36,6 +37,27 @@ public interface CuponRepository extends JpaRepository<Cupon, Long> {
     List<Cupon> findCuponesAgotados();
     
     boolean existsByCodigo(String codigo);
+
+    // Canje atómico: la condición impide superar usosMaximos aunque lleguen muchos a la vez
+    @Modifying
+    @Query("UPDATE Cupon c SET c.usosActuales = c.usosActuales + 1, c.version = c.version + 1 " +
+           "WHERE c.id = :id AND c.activo = true AND (c.usosMaximos IS NULL OR c.usosActuales < c.usosMaximos)")
+    int incrementarUsosSiDisponible(@Param("id") Long id);
+
+    // Rango de ids de los cupones activos, para barrerlos por tramos
+    @Query("SELECT MIN(c.id) FROM Cupon c WHERE c.activo = true")
+    Long obtenerMinimoIdActivo();
+
+    @Query("SELECT MAX(c.id) FROM Cupon c WHERE c.activo = true")
+    Long obtenerMaximoIdActivo();
+
+    // Desactiva en un solo UPDATE los vencidos y agotados de un tramo de ids
+    @Modifying
+    @Query("UPDATE Cupon c SET c.activo = false, c.version = c.version + 1 " +
+           "WHERE c.id BETWEEN :desde AND :hasta AND c.activo = true " +
+           "AND (c.fechaVencimiento < :fecha OR (c.usosMaximos IS NOT NULL AND c.usosActuales >= c.usosMaximos))")
+    int desactivarVencidosYAgotados(@Param("desde") Long desde, @Param("hasta") Long hasta,
+                                    @Param("fecha") LocalDate fecha);
     
     @Query("SELECT COUNT(c) FROM Cupon c WHERE c.activo = true AND :fecha BETWEEN c.fechaInicio AND c.fechaVencimiento")
     Long contarCuponesVigentes(@Param("fecha") LocalDate fecha);
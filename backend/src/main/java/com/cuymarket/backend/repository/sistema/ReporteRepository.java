@@ -1,13 +1,18 @@
 package com.cuymarket.backend.repository.sistema;
 
+import com.cuymarket.backend.model.enums.EstadoReporte;
 import com.cuymarket.backend.model.enums.TipoReporte;
 import com.cuymarket.backend.model.sistema.Reporte;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ReporteRepository extends JpaRepository<Reporte, Long> {
@@ -23,4 +28,16 @@ public interface ReporteRepository extends JpaRepository<Reporte, Long> {
     
     @Query("SELECT r FROM Reporte r LEFT JOIN FETCH r.generadoPor")
     List<Reporte> findAllWithUsuario();
+
+    @Query("SELECT r FROM Reporte r LEFT JOIN FETCH r.generadoPor WHERE r.id = :id")
+    Optional<Reporte> findByIdWithUsuario(@Param("id") Long id);
+
+    @Modifying
+    @Query("UPDATE Reporte r SET r.estado = com.cuymarket.backend.model.enums.EstadoReporte.FALLIDO, " +
+           "r.mensajeError = :mensaje, r.fechaCompletado = :fecha " +
+           "WHERE r.estado IN :estados AND r.fechaGeneracion < :creadosAntesDe")
+    int marcarFallidos(@Param("estados") Collection<EstadoReporte> estados,
+            @Param("creadosAntesDe") LocalDateTime creadosAntesDe,
+            @Param("mensaje") String mensaje,
+            @Param("fecha") LocalDateTime fecha);
 }
@@ -1,14 +1,23 @@
 package com.cuymarket.backend.repository.usuario;
 
+import com.cuymarket.backend.dto.reportes.ClienteReporteDTO;
+import com.cuymarket.backend.model.enums.EstadoPago;
+import com.cuymarket.backend.model.enums.NombreRol;
 import com.cuymarket.backend.model.usuario.Usuario;
+import jakarta.persistence.QueryHint;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.HibernateHints.HINT_READ_ONLY;
 
 @Repository
 public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
@@ -32,7 +41,7 @@ public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
     
     // Búsquedas por rol
     @Query("SELECT u FROM Usuario u JOIN u.roles r WHERE r.nombre = :nombreRol")
-    List<Usuario> findByRolNombre(@Param("nombreRol") com.cuymarket.backend.model.enums.NombreRol nombreRol);
+    List<Usuario> findByRolNombre(@Param("nombreRol") NombreRol nombreRol);
     
     // Estadísticas
     @Query("SELECT COUNT(u) FROM Usuario u WHERE u.activo = true")
@@ -48,4 +57,20 @@ public interface UsuarioRepository extends JpaRepository<Usuario, Long> {
     // Búsqueda con roles
     @Query("SELECT DISTINCT u FROM Usuario u LEFT JOIN FETCH u.roles WHERE u.email = :email")
     Optional<Usuario> findByEmailWithRoles(@Param("email") String email);
+    
+    // Reporte de clientes: una sola consulta agregada (pedidos, total pagado y último pedido por cliente)
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new com.cuymarket.backend.dto.reportes.ClienteReporteDTO(" +
+           "u.id, u.nombre, u.apellido, u.email, u.telefono, COUNT(p.id), " +
+           "COALESCE(SUM(CASE WHEN p.estadoPago = :estadoPago THEN p.total ELSE NULL END), 0), " +
+           "MAX(p.fechaPedido)) " +
+           "FROM Usuario u JOIN u.roles r LEFT JOIN u.pedidos p " +
+           "WHERE r.nombre = :nombreRol " +
+           "GROUP BY u.id, u.nombre, u.apellido, u.email, u.telefono " +
+           "ORDER BY u.nombre, u.apellido")
+    Stream<ClienteReporteDTO> streamClientesReporte(@Param("nombreRol") NombreRol nombreRol,
+            @Param("estadoPago") EstadoPago estadoPago);
 }
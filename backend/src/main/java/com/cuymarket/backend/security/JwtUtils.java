@@ -11,7 +11,9 @@ import java.util.Date;
 
 @Component
 public class JwtUtils {
-    
+
+    private static final String TIPO_CARRITO_INVITADO = "carrito-invitado";
+
     @Value("${jwt.secret:cuymarket-secret-key-super-segura-para-jwt-tokens-2024}")
     private String jwtSecret;
     
@@ -33,6 +35,31 @@ public class JwtUtils {
                 .compact();
     }
     
+    // Token de carrito invitado: solo identifica el carrito, no autentica (no lleva userId ni rol)
+    public String generateGuestCartToken(String carritoId, long expirationMs) {
+        return Jwts.builder()
+                .setSubject(carritoId)
+                .claim("tipo", TIPO_CARRITO_INVITADO)
+                .setIssuedAt(new Date())
+                .setExpiration(new Date((new Date()).getTime() + expirationMs))
+                .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+                .compact();
+    }
+
+    // Id del carrito invitado, o null si el token no es válido, venció o es de otro tipo
+    public String getGuestCartIdFromToken(String token) {
+        try {
+            Claims claims = Jwts.parserBuilder()
+                    .setSigningKey(getSigningKey())
+                    .build()
+                    .parseClaimsJws(token)
+                    .getBody();
+            return TIPO_CARRITO_INVITADO.equals(claims.get("tipo", String.class)) ? claims.getSubject() : null;
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
     public String getEmailFromToken(String token) {
         return Jwts.parserBuilder()
                 .setSigningKey(getSigningKey())
@@ -9,7 +9,10 @@ import com.cuymarket.backend.repository.carrito.CarritoRepository;
 import com.cuymarket.backend.repository.usuario.RolRepository;
 import com.cuymarket.backend.repository.usuario.UsuarioRepository;
 import com.cuymarket.backend.security.JwtUtils;
+import com.cuymarket.backend.service.carrito.CarritoInvitadoService;
+import com.cuymarket.backend.service.sistema.DatosDashboardModificadosEvent;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -29,6 +32,8 @@ public class AuthService {
     private final CarritoRepository carritoRepository;
     private final PasswordEncoder passwordEncoder;
     private final JwtUtils jwtUtils;
+    private final ApplicationEventPublisher eventPublisher;
+    private final CarritoInvitadoService carritoInvitadoService;
 
     /**
      * Paso 1 del login: Validar credenciales y verificar si requiere selección de
@@ -49,6 +54,10 @@ public class AuthService {
             throw new RuntimeException("Usuario inactivo. Contacte al administrador.");
         }
 
+        // Credenciales válidas: el carrito invitado pasa al del usuario en una sola operación
+        // (también si luego debe elegir rol, para no perderlo)
+        carritoInvitadoService.fusionar(request.getTokenCarritoInvitado(), usuario.getId());
+
         // Obtener nombres de roles
         Set<NombreRol> rolesUsuario = usuario.getRoles().stream()
                 .map(Rol::getNombre)
@@ -178,11 +187,13 @@ public class AuthService {
 
         // Guardar usuario
         Usuario usuarioGuardado = usuarioRepository.save(usuario);
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("usuario"));
 
         // Crear carrito para el nuevo usuario
         Carrito carrito = new Carrito();
         carrito.setUsuario(usuarioGuardado);
         carritoRepository.save(carrito);
+        carritoInvitadoService.fusionar(request.getTokenCarritoInvitado(), usuarioGuardado.getId());
 
         // Generar token y respuesta
         return generarAuthResponse(usuarioGuardado, NombreRol.CLIENTE);
@@ -0,0 +1,214 @@
+package com.cuymarket.backend.service.carrito;
+
+import com.cuymarket.backend.dto.carrito.CarritoResponse;
+import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.repository.producto.ProductoRepository;
+import com.cuymarket.backend.security.JwtUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carritos de visitantes sin sesión. Viven solo en memoria de esta instancia (Caffeine),
+ * acotados en cantidad y descartados tras un tiempo sin uso; el navegador los identifica
+ * con un token firmado que se renueva en cada respuesta. Al iniciar sesión el carrito se
+ * fusiona con el del usuario en una sola operación ({@link CarritoService#fusionarInvitado}).
+ */
+@Service
+@RequiredArgsConstructor
+public class CarritoInvitadoService {
+
+    private final CarritoService carritoService;
+    private final ProductoRepository productoRepository;
+    private final JwtUtils jwtUtils;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.carrito.invitado.max-carritos:20000}")
+    private long maxCarritos;
+
+    @Value("${app.carrito.invitado.ttl-horas:72}")
+    private long ttlHoras;
+
+    @Value("${app.carrito.invitado.max-lineas:30}")
+    private int maxLineas;
+
+    // Id del carrito -> productoId -> cantidad, en orden de llegada. Los mapas no se
+    // modifican: cada cambio guarda una copia nueva
+    private Cache<String, Map<Long, Integer>> carritos;
+
+    private Counter fusionados;
+    private Counter fusionesFallidas;
+
+    // Carrito tras un cambio y el token (renovado) que lo identifica
+    public record Resultado(String token, CarritoResponse carrito) {
+    }
+
+    @PostConstruct
+    void inicializar() {
+        carritos = Caffeine.newBuilder()
+                .maximumSize(maxCarritos)
+                .expireAfterAccess(Duration.ofHours(ttlHoras))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, carritos, "carritos.invitado");
+
+        fusionados = Counter.builder("carritos.invitado.fusiones")
+                .description("Carritos invitados fusionados al iniciar sesión por resultado")
+                .tag("resultado", "ok")
+                .register(meterRegistry);
+        fusionesFallidas = Counter.builder("carritos.invitado.fusiones")
+                .description("Carritos invitados fusionados al iniciar sesión por resultado")
+                .tag("resultado", "error")
+                .register(meterRegistry);
+    }
+
+    // Vista del carrito; vacía si el token no existe, no es válido o el carrito venció
+    public Resultado obtener(String token) {
+        String id = idDelToken(token);
+        Map<Long, Integer> lineas = id != null ? carritos.getIfPresent(id) : null;
+        if (lineas == null) {
+            return new Resultado(null, carritoService.armarVistaInvitado(Map.of()));
+        }
+        return new Resultado(renovarToken(id), carritoService.armarVistaInvitado(lineas));
+    }
+
+    // Agregar producto (crea el carrito si el token falta o ya no sirve)
+    public Resultado agregarProducto(String token, Long productoId, Integer cantidad) {
+        if (cantidad <= 0) {
+            throw new RuntimeException("La cantidad debe ser mayor a 0");
+        }
+        String id = idOCrear(token);
+        int actual = lineas(id).getOrDefault(productoId, 0);
+        validarStock(productoId, actual + cantidad);
+        return guardar(id, productoId, actual + cantidad);
+    }
+
+    public Resultado actualizarCantidad(String token, Long productoId, Integer cantidad) {
+        if (cantidad <= 0) {
+            throw new RuntimeException("La cantidad debe ser mayor a 0");
+        }
+        String id = idOCrear(token);
+        if (!lineas(id).containsKey(productoId)) {
+            throw new RuntimeException("El producto no está en el carrito");
+        }
+        validarStock(productoId, cantidad);
+        return guardar(id, productoId, cantidad);
+    }
+
+    public Resultado removerProducto(String token, Long productoId) {
+        String id = idOCrear(token);
+        if (!lineas(id).containsKey(productoId)) {
+            throw new RuntimeException("El producto no está en el carrito");
+        }
+        return guardar(id, productoId, 0);
+    }
+
+    public void limpiarCarrito(String token) {
+        String id = idDelToken(token);
+        if (id != null) {
+            carritos.invalidate(id);
+        }
+    }
+
+    /**
+     * Fusiona el carrito invitado con el del usuario y lo descarta. Dentro de una
+     * transacción se hace al confirmarla (en un registro el usuario recién creado aún no
+     * es visible para otra transacción). Se saca del almacén antes de fusionar, así dos
+     * logins simultáneos con el mismo token no lo suman dos veces; si la fusión falla, se
+     * devuelve al almacén y el login sigue igual.
+     */
+    public void fusionar(String token, Long usuarioId) {
+        String id = idDelToken(token);
+        if (id == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    fusionarAhora(id, usuarioId);
+                }
+            });
+        } else {
+            fusionarAhora(id, usuarioId);
+        }
+    }
+
+    private void fusionarAhora(String id, Long usuarioId) {
+        Map<Long, Integer> lineas = carritos.asMap().remove(id);
+        if (lineas == null || lineas.isEmpty()) {
+            return;
+        }
+        try {
+            carritoService.fusionarInvitado(usuarioId, lineas);
+            fusionados.increment();
+        } catch (RuntimeException e) {
+            carritos.asMap().putIfAbsent(id, lineas);
+            fusionesFallidas.increment();
+            System.err.println("No se pudo fusionar el carrito invitado del usuario " + usuarioId + ": " + e.getMessage());
+        }
+    }
+
+    private Resultado guardar(String id, Long productoId, int cantidad) {
+        Map<Long, Integer> lineas = carritos.asMap().compute(id, (clave, actuales) -> {
+            Map<Long, Integer> nuevas = actuales != null ? new LinkedHashMap<>(actuales) : new LinkedHashMap<>();
+            if (cantidad <= 0) {
+                nuevas.remove(productoId);
+            } else {
+                if (!nuevas.containsKey(productoId) && nuevas.size() >= maxLineas) {
+                    throw new RuntimeException("El carrito admite como máximo " + maxLineas + " productos distintos");
+                }
+                nuevas.put(productoId, cantidad);
+            }
+            return Collections.unmodifiableMap(nuevas);
+        });
+        return new Resultado(renovarToken(id), carritoService.armarVistaInvitado(lineas));
+    }
+
+    // Stock leído de la base; en la fusión y en el checkout se vuelve a validar
+    private void validarStock(Long productoId, int cantidad) {
+        Producto producto = productoRepository.findById(productoId)
+                .orElseThrow(() -> new RuntimeException("Producto no encontrado"));
+
+        if (!Boolean.TRUE.equals(producto.getActivo())) {
+            throw new RuntimeException("El producto no está disponible");
+        }
+        if (producto.getStockDisponible() < cantidad) {
+            throw new RuntimeException("Stock insuficiente. Stock disponible: " + producto.getStockDisponible());
+        }
+    }
+
+    private Map<Long, Integer> lineas(String id) {
+        Map<Long, Integer> lineas = carritos.getIfPresent(id);
+        return lineas != null ? lineas : Map.of();
+    }
+
+    private String idDelToken(String token) {
+        return token == null || token.isBlank() ? null : jwtUtils.getGuestCartIdFromToken(token);
+    }
+
+    // Un token vigente conserva su id aunque el carrito haya vencido: se recrea vacío
+    private String idOCrear(String token) {
+        String id = idDelToken(token);
+        return id != null ? id : UUID.randomUUID().toString();
+    }
+
+    private String renovarToken(String id) {
+        return jwtUtils.generateGuestCartToken(id, TimeUnit.HOURS.toMillis(ttlHoras));
+    }
+}
@@ -1,5 +1,11 @@
 package com.cuymarket.backend.service.carrito;
 
+import com.cuymarket.backend.config.ReintentarEnConflicto;
+import com.cuymarket.backend.dto.carrito.CarritoResponse;
+import com.cuymarket.backend.dto.carrito.OperacionesCarritoRequest;
+import com.cuymarket.backend.exception.BadRequestException;
+import com.cuymarket.backend.exception.ResourceNotFoundException;
+import com.cuymarket.backend.dto.producto.ProductoResponse;
 import com.cuymarket.backend.model.carrito.Carrito;
 import com.cuymarket.backend.model.carrito.ItemCarrito;
 import com.cuymarket.backend.model.producto.Producto;
@@ -8,12 +14,24 @@ import com.cuymarket.backend.repository.carrito.CarritoRepository;
 import com.cuymarket.backend.repository.carrito.ItemCarritoRepository;
 import com.cuymarket.backend.repository.producto.ProductoRepository;
 import com.cuymarket.backend.repository.usuario.UsuarioRepository;
+import com.cuymarket.backend.service.producto.ImagenProductoService;
+import com.cuymarket.backend.service.sistema.SecuenciaService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -24,6 +42,11 @@ public class CarritoService {
     private final ItemCarritoRepository itemCarritoRepository;
     private final UsuarioRepository usuarioRepository;
     private final ProductoRepository productoRepository;
+    private final EntityManager entityManager;
+    private final CarritoStore carritoStore;
+    private final ImagenProductoService imagenProductoService;
+    private final PlatformTransactionManager transactionManager;
+    private final SecuenciaService secuenciaService;
 
     // Obtener o crear carrito del usuario
     public Carrito obtenerOCrearCarrito(Long usuarioId) {
@@ -38,13 +61,16 @@ public class CarritoService {
                 });
     }
 
-    // Agregar producto al carrito
+    // Agregar producto al carrito (se repite sola si otra petición modificó el carrito a la vez)
+    @ReintentarEnConflicto
     public Carrito agregarProducto(Long usuarioId, Long productoId, Integer cantidad) {
         if (cantidad <= 0) {
             throw new RuntimeException("La cantidad debe ser mayor a 0");
         }
 
         Carrito carrito = obtenerOCrearCarrito(usuarioId);
+        marcarModificado(carrito);
+        carritoStore.invalidar(usuarioId);
 
         Producto producto = productoRepository.findById(productoId)
                 .orElseThrow(() -> new RuntimeException("Producto no encontrado"));
@@ -96,6 +122,8 @@ public class CarritoService {
         }
 
         Carrito carrito = obtenerCarrito(usuarioId);
+        marcarModificado(carrito);
+        carritoStore.invalidar(usuarioId);
 
         ItemCarrito item = carrito.getItems().stream()
                 .filter(i -> i.getId().equals(itemId))
@@ -119,6 +147,8 @@ public class CarritoService {
     // Remover producto del carrito
     public Carrito removerProducto(Long usuarioId, Long itemId) {
         Carrito carrito = obtenerCarrito(usuarioId);
+        marcarModificado(carrito);
+        carritoStore.invalidar(usuarioId);
 
         ItemCarrito item = carrito.getItems().stream()
                 .filter(i -> i.getId().equals(itemId))
@@ -131,9 +161,109 @@ public class CarritoService {
         return carritoRepository.save(carrito);
     }
 
+    /**
+     * Aplica varias operaciones en una sola transacción, todas o ninguna. Primero calcula
+     * en memoria la cantidad final de cada producto; después valida en una consulta los
+     * productos que cambian y escribe los items en lote (INSERT, UPDATE y DELETE agrupados).
+     */
+    @ReintentarEnConflicto
+    public Carrito aplicarOperaciones(Long usuarioId, List<OperacionesCarritoRequest.Operacion> operaciones) {
+        Carrito carrito = obtenerOCrearCarrito(usuarioId);
+        Map<Long, ItemCarrito> items = carrito.getItems().stream()
+                .collect(Collectors.toMap(item -> item.getProducto().getId(), Function.identity()));
+
+        Map<Long, Integer> finales = new LinkedHashMap<>();
+        items.forEach((productoId, item) -> finales.put(productoId, item.getCantidad()));
+        operaciones.forEach(operacion -> aplicarOperacion(finales, operacion));
+
+        // Productos nuevos o con otra cantidad: se validan todos juntos
+        List<Long> afectados = finales.entrySet().stream()
+                .filter(linea -> !items.containsKey(linea.getKey())
+                        || !items.get(linea.getKey()).getCantidad().equals(linea.getValue()))
+                .map(Map.Entry::getKey)
+                .toList();
+        List<ItemCarrito> eliminados = items.values().stream()
+                .filter(item -> !finales.containsKey(item.getProducto().getId()))
+                .toList();
+        if (afectados.isEmpty() && eliminados.isEmpty()) {
+            return carrito;
+        }
+
+        Map<Long, Producto> productos = afectados.isEmpty() ? Map.of()
+                : productoRepository.findAllByIdWithCategoria(afectados).stream()
+                        .collect(Collectors.toMap(Producto::getId, Function.identity()));
+        List<String> sinStock = new ArrayList<>();
+        for (Long productoId : afectados) {
+            Producto producto = productos.get(productoId);
+            if (producto == null) {
+                throw new ResourceNotFoundException("Producto", "id", productoId);
+            }
+            if (!Boolean.TRUE.equals(producto.getActivo())) {
+                throw new BadRequestException("El producto no está disponible: " + producto.getNombre());
+            }
+            if (producto.getStockDisponible() < finales.get(productoId)) {
+                sinStock.add(producto.getNombre() + " (disponible: " + producto.getStockDisponible() + ")");
+            }
+        }
+        if (!sinStock.isEmpty()) {
+            throw new BadRequestException("Stock insuficiente para: " + String.join(", ", sinStock));
+        }
+
+        marcarModificado(carrito);
+        carritoStore.invalidar(usuarioId);
+
+        List<ItemCarrito> nuevos = new ArrayList<>();
+        for (Long productoId : afectados) {
+            ItemCarrito item = items.get(productoId);
+            if (item != null) {
+                item.setCantidad(finales.get(productoId));
+            } else {
+                ItemCarrito nuevo = new ItemCarrito();
+                nuevo.setCarrito(carrito);
+                nuevo.setProducto(productos.get(productoId));
+                nuevo.setCantidad(finales.get(productoId));
+                carrito.getItems().add(nuevo);
+                nuevos.add(nuevo);
+            }
+        }
+        // orphanRemoval borra los quitados de la colección
+        carrito.getItems().removeAll(eliminados);
+        itemCarritoRepository.saveAll(nuevos);
+        return carrito;
+    }
+
+    private void aplicarOperacion(Map<Long, Integer> cantidades, OperacionesCarritoRequest.Operacion operacion) {
+        Long productoId = operacion.getProductoId();
+        if (operacion.getTipo() != OperacionesCarritoRequest.Tipo.VACIAR && productoId == null) {
+            throw new BadRequestException("La operación " + operacion.getTipo() + " requiere el ID del producto");
+        }
+        if ((operacion.getTipo() == OperacionesCarritoRequest.Tipo.AGREGAR
+                || operacion.getTipo() == OperacionesCarritoRequest.Tipo.ACTUALIZAR) && operacion.getCantidad() == null) {
+            throw new BadRequestException("La operación " + operacion.getTipo() + " requiere la cantidad");
+        }
+
+        switch (operacion.getTipo()) {
+            case AGREGAR -> cantidades.merge(productoId, operacion.getCantidad(), Integer::sum);
+            case ACTUALIZAR -> {
+                if (!cantidades.containsKey(productoId)) {
+                    throw new BadRequestException("El producto " + productoId + " no está en el carrito");
+                }
+                cantidades.put(productoId, operacion.getCantidad());
+            }
+            case ELIMINAR -> {
+                if (cantidades.remove(productoId) == null) {
+                    throw new BadRequestException("El producto " + productoId + " no está en el carrito");
+                }
+            }
+            case VACIAR -> cantidades.clear();
+        }
+    }
+
     // Limpiar carrito
     public void limpiarCarrito(Long usuarioId) {
         Carrito carrito = obtenerCarrito(usuarioId);
+        marcarModificado(carrito);
+        carritoStore.invalidar(usuarioId);
 
         itemCarritoRepository.deleteAll(carrito.getItems());
         carrito.getItems().clear();
@@ -141,25 +271,119 @@ public class CarritoService {
         carritoRepository.save(carrito);
     }
 
-    // Calcular total del carrito
+    /**
+     * Vista del carrito lista para mostrar. Sale del {@link CarritoStore}: la base solo se
+     * lee la primera vez y después de cada cambio. No abre transacción si ya está guardada.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public CarritoResponse obtenerVista(Long usuarioId) {
+        return carritoStore.obtener(usuarioId, id -> new TransactionTemplate(transactionManager)
+                .execute(status -> armarVista(obtenerOCrearCarrito(id))));
+    }
+
+    /**
+     * Vista de un carrito invitado (productoId -> cantidad). El id de cada item es el del
+     * producto; los productos inactivos o eliminados no se muestran.
+     */
     @Transactional(readOnly = true)
-    public BigDecimal calcularTotal(Long usuarioId) {
-        Carrito carrito = obtenerCarritoConItems(usuarioId);
+    public CarritoResponse armarVistaInvitado(Map<Long, Integer> lineas) {
+        Map<Long, Producto> productos = cargarProductos(lineas);
+
+        CarritoResponse response = new CarritoResponse();
+        response.setItems(lineas.entrySet().stream()
+                .filter(linea -> productos.containsKey(linea.getKey()))
+                .map(linea -> {
+                    Producto producto = productos.get(linea.getKey());
+                    return new CarritoResponse.ItemCarritoResponse(
+                            producto.getId(),
+                            convertirProductoAResponse(producto),
+                            linea.getValue(),
+                            producto.getPrecio().multiply(BigDecimal.valueOf(linea.getValue())));
+                })
+                .collect(Collectors.toList()));
+        response.setTotalItems(response.getItems().size());
+        response.setTotal(response.getItems().stream()
+                .map(CarritoResponse.ItemCarritoResponse::getSubtotal)
+                .reduce(BigDecimal.ZERO, BigDecimal::add));
+        return response;
+    }
 
-        return carrito.getItems().stream()
-                .map(item -> item.getProducto().getPrecio().multiply(BigDecimal.valueOf(item.getCantidad())))
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    /**
+     * Pasa las líneas de un carrito invitado al carrito del usuario en una sola operación:
+     * una consulta para el carrito, otra para los productos y los INSERT/UPDATE en lote.
+     * Las cantidades se suman a las que ya tenía y se recortan al stock disponible; los
+     * productos inactivos se descartan. Corre en su propia transacción porque se llama
+     * tras confirmar el login. Devuelve cuántas líneas se fusionaron.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int fusionarInvitado(Long usuarioId, Map<Long, Integer> lineas) {
+        Carrito carrito = obtenerOCrearCarrito(usuarioId);
+        Map<Long, Producto> productos = cargarProductos(lineas);
+        Map<Long, ItemCarrito> existentes = carrito.getItems().stream()
+                .collect(Collectors.toMap(item -> item.getProducto().getId(), Function.identity()));
+
+        List<ItemCarrito> nuevos = new ArrayList<>();
+        int fusionadas = 0;
+        for (Map.Entry<Long, Integer> linea : lineas.entrySet()) {
+            Producto producto = productos.get(linea.getKey());
+            if (producto == null) {
+                continue;
+            }
+            int stock = producto.getStockDisponible() != null ? producto.getStockDisponible() : 0;
+            ItemCarrito item = existentes.get(producto.getId());
+            int actual = item != null ? item.getCantidad() : 0;
+            int cantidad = Math.min(actual + linea.getValue(), stock);
+            if (cantidad <= actual) {
+                continue;
+            }
+
+            if (item != null) {
+                item.setCantidad(cantidad);
+            } else {
+                ItemCarrito nuevo = new ItemCarrito();
+                nuevo.setCarrito(carrito);
+                nuevo.setProducto(producto);
+                nuevo.setCantidad(cantidad);
+                carrito.getItems().add(nuevo);
+                nuevos.add(nuevo);
+            }
+            fusionadas++;
+        }
+
+        if (fusionadas > 0) {
+            marcarModificado(carrito);
+            itemCarritoRepository.saveAll(nuevos);
+            carritoStore.invalidar(usuarioId);
+        }
+        return fusionadas;
+    }
+
+    // Deja el generador de ids de los items por delante de las filas existentes
+    // (las anteriores se crearon con AUTO_INCREMENT)
+    public void alinearGeneradorIdsItems() {
+        secuenciaService.alinear("items_carrito", itemCarritoRepository.obtenerMaximoId() + ItemCarrito.BLOQUE_IDS);
+    }
+
+    // Calcular total del carrito
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BigDecimal calcularTotal(Long usuarioId) {
+        return obtenerVista(usuarioId).getTotal();
     }
 
     // Contar items del carrito
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Integer contarItems(Long usuarioId) {
-        Carrito carrito = obtenerCarrito(usuarioId);
-        return carrito.getItems().stream()
-                .mapToInt(ItemCarrito::getCantidad)
+        return obtenerVista(usuarioId).getItems().stream()
+                .mapToInt(CarritoResponse.ItemCarritoResponse::getCantidad)
                 .sum();
     }
 
+    // Los items viven en otra tabla y no cambian la fila del carrito: se fuerza el
+    // incremento de la versión para que dos cambios simultáneos choquen
+    private void marcarModificado(Carrito carrito) {
+        entityManager.lock(carrito, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+    }
+
     // Consultas
     @Transactional(readOnly = true)
     public Carrito obtenerCarrito(Long usuarioId) {
@@ -173,16 +397,14 @@ public class CarritoService {
                 .orElseThrow(() -> new RuntimeException("Carrito no encontrado"));
     }
 
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public boolean estaVacio(Long usuarioId) {
-        Carrito carrito = obtenerCarrito(usuarioId);
-        return carrito.getItems().isEmpty();
+        return obtenerVista(usuarioId).getItems().isEmpty();
     }
 
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public boolean contieneProducto(Long usuarioId, Long productoId) {
-        Carrito carrito = obtenerCarrito(usuarioId);
-        return carrito.getItems().stream()
+        return obtenerVista(usuarioId).getItems().stream()
                 .anyMatch(item -> item.getProducto().getId().equals(productoId));
     }
 
@@ -191,4 +413,69 @@ public class CarritoService {
         Carrito carrito = obtenerCarritoConItems(usuarioId);
         return carrito.getItems();
     }
+
+    // Arma la vista con el carrito ya cargado (items, productos y categorías)
+    private CarritoResponse armarVista(Carrito carrito) {
+        CarritoResponse response = new CarritoResponse();
+        response.setId(carrito.getId());
+        response.setUsuarioId(carrito.getUsuario().getId());
+        response.setTotalItems(carrito.getItems().size());
+        response.setFechaActualizacion(carrito.getFechaActualizacion());
+
+        response.setItems(carrito.getItems().stream()
+                .map(item -> new CarritoResponse.ItemCarritoResponse(
+                        item.getId(),
+                        convertirProductoAResponse(item.getProducto()),
+                        item.getCantidad(),
+                        item.getProducto().getPrecio().multiply(BigDecimal.valueOf(item.getCantidad()))))
+                .collect(Collectors.toList()));
+
+        response.setTotal(response.getItems().stream()
+                .map(CarritoResponse.ItemCarritoResponse::getSubtotal)
+                .reduce(BigDecimal.ZERO, BigDecimal::add));
+        return response;
+    }
+
+    // Productos activos de las líneas, con su categoría, en una sola consulta
+    private Map<Long, Producto> cargarProductos(Map<Long, Integer> lineas) {
+        if (lineas.isEmpty()) {
+            return Map.of();
+        }
+        return productoRepository.findAllByIdWithCategoria(lineas.keySet()).stream()
+                .filter(producto -> Boolean.TRUE.equals(producto.getActivo()))
+                .collect(Collectors.toMap(Producto::getId, Function.identity()));
+    }
+
+    private ProductoResponse convertirProductoAResponse(Producto producto) {
+        ProductoResponse response = new ProductoResponse();
+        response.setId(producto.getId());
+        response.setNombre(producto.getNombre());
+        response.setRaza(producto.getRaza());
+        response.setPeso(producto.getPeso());
+        response.setPrecio(producto.getPrecio());
+        response.setTipo(producto.getTipo());
+        // Convertir Boolean a String "Sí" o "No"
+        response.setCertificado(producto.getCertificado() != null && producto.getCertificado() ? "Sí" : "No");
+        response.setDescripcion(producto.getDescripcion());
+        response.setCaracteristicas(producto.getCaracteristicas());
+
+        // URL de la imagen (el navegador la descarga y cachea aparte)
+        response.setImagen(imagenProductoService.construirUrl(
+                producto.getId(), producto.getImagenHash(), ImagenProductoService.ANCHO_MINIATURA));
+
+        response.setActivo(producto.getActivo());
+        response.setFechaCreacion(producto.getFechaCreacion());
+
+        // Datos de categoría
+        if (producto.getCategoria() != null) {
+            response.setCategoriaId(producto.getCategoria().getId());
+            response.setCategoriaNombre(producto.getCategoria().getNombre());
+        }
+
+        // Stock (en la vista guardada puede ir algo atrasado; se valida al agregar y al comprar)
+        response.setStockDisponible(producto.getStockDisponible());
+        response.setStockMinimo(producto.getStockMinimo());
+
+        return response;
+    }
 }
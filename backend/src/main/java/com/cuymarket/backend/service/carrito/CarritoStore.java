@@ -0,0 +1,24 @@
+package com.cuymarket.backend.service.carrito;
+
+import com.cuymarket.backend.dto.carrito.CarritoResponse;
+
+import java.util.function.Function;
+
+/**
+ * Almacén de lectura de carritos por usuario. La base de datos sigue siendo la fuente de
+ * verdad: el almacén guarda la vista ya armada para no consultarla en cada lectura, y
+ * quien modifica un carrito lo invalida. {@link CarritoStoreLocal} lo guarda en memoria
+ * de la instancia; un almacén compartido entre instancias puede reemplazarlo
+ * implementando esta interfaz.
+ */
+public interface CarritoStore {
+
+    // Vista del carrito; si no está, se arma con cargar (que lee la base) y se guarda
+    CarritoResponse obtener(Long usuarioId, Function<Long, CarritoResponse> cargar);
+
+    // Descarta el carrito del usuario. Dentro de una transacción se aplica al confirmar
+    void invalidar(Long usuarioId);
+
+    // Descarta los carritos que contienen el producto (cambió su precio, nombre, imagen...)
+    void invalidarConProducto(Long productoId);
+}
@@ -0,0 +1,77 @@
+package com.cuymarket.backend.service.carrito;
+
+import com.cuymarket.backend.dto.carrito.CarritoResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Carritos en memoria de esta instancia (Caffeine), acotados en cantidad y descartados
+ * tras un tiempo sin uso. Si la aplicación corre en varias instancias, un cambio hecho en
+ * otra no invalida esta copia: en ese caso hay que usar un almacén compartido.
+ */
+@Service
+@RequiredArgsConstructor
+public class CarritoStoreLocal implements CarritoStore {
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.carrito.cache.max-carritos:50000}")
+    private long maxCarritos;
+
+    @Value("${app.carrito.cache.ttl-minutos:30}")
+    private long ttlMinutos;
+
+    private Cache<Long, CarritoResponse> carritos;
+
+    @PostConstruct
+    void inicializar() {
+        carritos = Caffeine.newBuilder()
+                .maximumSize(maxCarritos)
+                .expireAfterAccess(Duration.ofMinutes(ttlMinutos))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, carritos, "carritos");
+    }
+
+    @Override
+    public CarritoResponse obtener(Long usuarioId, Function<Long, CarritoResponse> cargar) {
+        // Si se invalida mientras se carga, Caffeine espera a que termine la carga y la descarta
+        return carritos.get(usuarioId, cargar);
+    }
+
+    @Override
+    public void invalidar(Long usuarioId) {
+        despuesDelCommit(() -> carritos.invalidate(usuarioId));
+    }
+
+    @Override
+    public void invalidarConProducto(Long productoId) {
+        despuesDelCommit(() -> carritos.asMap().values().removeIf(carrito -> carrito.getItems().stream()
+                .anyMatch(item -> productoId.equals(item.getProducto().getId()))));
+    }
+
+    // Antes del commit otra petición podría volver a cargar y guardar el carrito viejo
+    private void despuesDelCommit(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+}
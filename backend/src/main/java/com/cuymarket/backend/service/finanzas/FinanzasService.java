@@ -1,17 +1,20 @@
 package com.cuymarket.backend.service.finanzas;
 
 import com.cuymarket.backend.dto.finanzas.FinanzasResumenDTO;
+import com.cuymarket.backend.dto.finanzas.TransaccionRecienteDTO;
 import com.cuymarket.backend.model.enums.EstadoPago;
-import com.cuymarket.backend.model.pedido.Pedido;
+import com.cuymarket.backend.model.enums.MetodoPago;
+import com.cuymarket.backend.model.pedido.VentaDiaria;
 import com.cuymarket.backend.repository.pedido.PedidoRepository;
+import com.cuymarket.backend.repository.pedido.VentaDiariaRepository;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -22,46 +25,42 @@ import java.util.stream.Collectors;
 public class FinanzasService {
 
     private final PedidoRepository pedidoRepository;
+    private final VentaDiariaRepository ventaDiariaRepository;
+    private final VentaDiariaService ventaDiariaService;
 
     public FinanzasResumenDTO obtenerResumenFinanzas() {
         FinanzasResumenDTO resumen = new FinanzasResumenDTO();
         
-        LocalDateTime ahora = LocalDateTime.now();
         LocalDate hoy = LocalDate.now();
         
-        // Obtener todos los pedidos pagados
-        List<Pedido> todosPedidosPagados = pedidoRepository.findByEstadoPago(EstadoPago.PAGADO);
+        // Todo el resumen sale de los acumulados diarios: los días desde el mes anterior
+        // (o los últimos 30 días, lo que empiece antes) y un agrupado por método para
+        // los totales históricos
+        LocalDate inicioMesAnterior = hoy.minusMonths(1).withDayOfMonth(1);
+        LocalDate hace30Dias = hoy.minusDays(30);
+        LocalDate inicioVentana = hace30Dias.isBefore(inicioMesAnterior) ? hace30Dias : inicioMesAnterior;
+        List<VentaDiaria> ventasVentana = ventaDiariaRepository.findByFechaGreaterThanEqualOrderByFechaAsc(inicioVentana);
+        List<Object[]> ventasPorMetodo = ventaDiariaRepository.resumirPorMetodoPago();
         
         // 1. Ingresos Totales
-        BigDecimal ingresosTotales = todosPedidosPagados.stream()
-                .map(Pedido::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal ingresosTotales = BigDecimal.ZERO;
+        long pedidosPagados = 0;
+        for (Object[] fila : ventasPorMetodo) {
+            pedidosPagados += ((Number) fila[1]).longValue();
+            ingresosTotales = ingresosTotales.add((BigDecimal) fila[2]);
+        }
         resumen.setIngresosTotales(ingresosTotales);
         
         // 2. Ingresos Mes Actual
         LocalDate inicioMes = hoy.withDayOfMonth(1);
-        LocalDateTime inicioMesDateTime = inicioMes.atStartOfDay();
         
-        List<Pedido> pedidosMesActual = todosPedidosPagados.stream()
-                .filter(p -> p.getFechaPedido().isAfter(inicioMesDateTime))
-                .collect(Collectors.toList());
-        
-        BigDecimal ingresosMesActual = pedidosMesActual.stream()
-                .map(Pedido::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal ingresosMesActual = sumarEntre(ventasVentana, inicioMes, hoy);
         resumen.setIngresosMesActual(ingresosMesActual);
         
         // 3. Ingresos Mes Anterior (para comparación)
-        LocalDate inicioMesAnterior = hoy.minusMonths(1).withDayOfMonth(1);
         LocalDate finMesAnterior = inicioMes.minusDays(1);
         
-        BigDecimal ingresosMesAnterior = todosPedidosPagados.stream()
-                .filter(p -> {
-                    LocalDate fechaPedido = p.getFechaPedido().toLocalDate();
-                    return !fechaPedido.isBefore(inicioMesAnterior) && !fechaPedido.isAfter(finMesAnterior);
-                })
-                .map(Pedido::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal ingresosMesAnterior = sumarEntre(ventasVentana, inicioMesAnterior, finMesAnterior);
         
         // Calcular cambio porcentual
         BigDecimal cambio = BigDecimal.ZERO;
@@ -73,125 +72,99 @@ public class FinanzasService {
         resumen.setCambioMesAnterior(cambio);
         
         // 4. Promedio Diario (últimos 30 días)
-        LocalDate hace30Dias = hoy.minusDays(30);
-        BigDecimal ingresos30Dias = todosPedidosPagados.stream()
-                .filter(p -> !p.getFechaPedido().toLocalDate().isBefore(hace30Dias))
-                .map(Pedido::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal ingresos30Dias = sumarEntre(ventasVentana, hace30Dias, hoy);
         
         BigDecimal promedioDiario = ingresos30Dias.divide(BigDecimal.valueOf(30), 2, RoundingMode.HALF_UP);
         resumen.setPromedioDiario(promedioDiario);
         
         // 5. Pedidos pagados
-        resumen.setPedidosPagados((long) todosPedidosPagados.size());
+        resumen.setPedidosPagados(pedidosPagados);
         
         // 6. Pedidos hoy
-        int pedidosHoy = (int) todosPedidosPagados.stream()
-                .filter(p -> p.getFechaPedido().toLocalDate().equals(hoy))
-                .count();
+        int pedidosHoy = (int) ventasVentana.stream()
+                .filter(v -> v.getFecha().equals(hoy))
+                .mapToLong(VentaDiaria::getCantidadPedidos)
+                .sum();
         resumen.setPedidosHoy(pedidosHoy);
         
         // 7. Ingresos Mensuales (últimos 6 meses)
-        resumen.setIngresosMensuales(calcularIngresosMensuales(todosPedidosPagados));
+        resumen.setIngresosMensuales(calcularIngresosMensuales());
         
         // 8. Métodos de Pago
-        resumen.setMetodosPago(calcularMetodosPago(todosPedidosPagados));
+        resumen.setMetodosPago(calcularMetodosPago(ventasPorMetodo, pedidosPagados));
         
         // 9. Transacciones Recientes (últimas 10)
-        resumen.setTransaccionesRecientes(obtenerTransaccionesRecientes(todosPedidosPagados));
+        resumen.setTransaccionesRecientes(obtenerTransaccionesRecientes());
         
         return resumen;
     }
     
-    private List<FinanzasResumenDTO.IngresoMensualDTO> calcularIngresosMensuales(List<Pedido> pedidos) {
-        List<FinanzasResumenDTO.IngresoMensualDTO> ingresos = new ArrayList<>();
-        LocalDate ahora = LocalDate.now();
-        
-        for (int i = 5; i >= 0; i--) {
-            LocalDate mes = ahora.minusMonths(i);
-            int mesNum = mes.getMonthValue();
-            int anio = mes.getYear();
-            
-            LocalDate inicioMes = mes.withDayOfMonth(1);
-            LocalDate finMes = mes.withDayOfMonth(mes.lengthOfMonth());
-            
-            List<Pedido> pedidosMes = pedidos.stream()
-                    .filter(p -> {
-                        LocalDate fecha = p.getFechaPedido().toLocalDate();
-                        return !fecha.isBefore(inicioMes) && !fecha.isAfter(finMes);
-                    })
-                    .collect(Collectors.toList());
-            
-            BigDecimal montoMes = pedidosMes.stream()
-                    .map(Pedido::getTotal)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            
-            ingresos.add(new FinanzasResumenDTO.IngresoMensualDTO(
-                    mesNum, anio, montoMes, (long) pedidosMes.size()
-            ));
-        }
-        
-        return ingresos;
+    private BigDecimal sumarEntre(List<VentaDiaria> ventas, LocalDate desde, LocalDate hasta) {
+        return ventas.stream()
+                .filter(v -> !v.getFecha().isBefore(desde) && !v.getFecha().isAfter(hasta))
+                .map(VentaDiaria::getMontoTotal)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+    
+    private List<FinanzasResumenDTO.IngresoMensualDTO> calcularIngresosMensuales() {
+        // Un solo GROUP BY por año y mes, compartido con el dashboard
+        return ventaDiariaService.resumirUltimosMeses(6).stream()
+                .map(v -> new FinanzasResumenDTO.IngresoMensualDTO(
+                        v.getMes(), v.getAnio(), v.getMonto(), v.getCantidadPedidos()
+                ))
+                .collect(Collectors.toList());
     }
     
-    private Map<String, FinanzasResumenDTO.MetodoPagoDTO> calcularMetodosPago(List<Pedido> pedidos) {
+    private Map<String, FinanzasResumenDTO.MetodoPagoDTO> calcularMetodosPago(List<Object[]> ventasPorMetodo,
+            long totalPedidos) {
         Map<String, FinanzasResumenDTO.MetodoPagoDTO> metodos = new HashMap<>();
         
-        long totalPedidos = pedidos.size();
-        
-        // Agrupar por método de pago
-        Map<String, List<Pedido>> pedidosPorMetodo = pedidos.stream()
-                .filter(p -> p.getMetodoPago() != null)
-                .collect(Collectors.groupingBy(p -> p.getMetodoPago().name()));
-        
-        pedidosPorMetodo.forEach((metodo, pedidosMetodo) -> {
-            long cantidad = pedidosMetodo.size();
-            BigDecimal monto = pedidosMetodo.stream()
-                    .map(Pedido::getTotal)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+        for (Object[] fila : ventasPorMetodo) {
+            long cantidad = ((Number) fila[1]).longValue();
+            if (cantidad == 0) {
+                continue;
+            }
+            String metodo = ((MetodoPago) fila[0]).name();
+            BigDecimal monto = (BigDecimal) fila[2];
             
             double porcentaje = totalPedidos > 0 ? (cantidad * 100.0) / totalPedidos : 0;
             
             metodos.put(metodo, new FinanzasResumenDTO.MetodoPagoDTO(
                     metodo, cantidad, monto, porcentaje
             ));
-        });
+        }
         
         return metodos;
     }
     
-    private List<FinanzasResumenDTO.TransaccionDTO> obtenerTransaccionesRecientes(List<Pedido> pedidos) {
+    private List<FinanzasResumenDTO.TransaccionDTO> obtenerTransaccionesRecientes() {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
         
-        return pedidos.stream()
-                .sorted(Comparator.comparing(Pedido::getFechaPedido).reversed())
-                .limit(10)
-                .map(p -> new FinanzasResumenDTO.TransaccionDTO(
-                        p.getId(),
-                        p.getNumeroPedido(),
-                        p.getFechaPedido().format(formatter),
-                        obtenerNombreCliente(p),
-                        p.getMetodoPago() != null ? p.getMetodoPago().name() : "N/A",
-                        p.getTotal(),
-                        p.getEstadoPago().name()
+        return pedidoRepository.findTransaccionesRecientes(EstadoPago.PAGADO, PageRequest.of(0, 10)).stream()
+                .map(t -> new FinanzasResumenDTO.TransaccionDTO(
+                        t.getPedidoId(),
+                        t.getNumeroPedido(),
+                        t.getFechaPedido().format(formatter),
+                        obtenerNombreCliente(t),
+                        t.getMetodoPago() != null ? t.getMetodoPago().name() : "N/A",
+                        t.getTotal(),
+                        t.getEstadoPago().name()
                 ))
                 .collect(Collectors.toList());
     }
     
-    private String obtenerNombreCliente(Pedido pedido) {
-        if (pedido.getUsuario() == null) {
-            return "Cliente Desconocido";
-        }
-        
-        String nombre = pedido.getUsuario().getNombre();
-        String apellido = pedido.getUsuario().getApellido();
+    private String obtenerNombreCliente(TransaccionRecienteDTO transaccion) {
+        String nombre = transaccion.getClienteNombre();
+        String apellido = transaccion.getClienteApellido();
         
         if (nombre != null && apellido != null) {
             return nombre + " " + apellido;
         } else if (nombre != null) {
             return nombre;
+        } else if (transaccion.getClienteEmail() != null) {
+            return transaccion.getClienteEmail();
         } else {
-            return pedido.getUsuario().getEmail();
+            return "Cliente Desconocido";
         }
     }
 }
@@ -0,0 +1,66 @@
+package com.cuymarket.backend.service.finanzas;
+
+import com.cuymarket.backend.dto.finanzas.VentaMesDTO;
+import com.cuymarket.backend.model.enums.EstadoPago;
+import com.cuymarket.backend.model.pedido.Pedido;
+import com.cuymarket.backend.repository.pedido.VentaDiariaRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@RequiredArgsConstructor
+@Transactional
+public class VentaDiariaService {
+
+    private final VentaDiariaRepository ventaDiariaRepository;
+
+    // Ajustar el acumulado del día cuando el pedido entra o sale del estado PAGADO
+    public void registrarCambioEstadoPago(Pedido pedido, EstadoPago estadoAnterior) {
+        boolean estabaPagado = estadoAnterior == EstadoPago.PAGADO;
+        boolean estaPagado = pedido.getEstadoPago() == EstadoPago.PAGADO;
+        if (estabaPagado == estaPagado) {
+            return;
+        }
+
+        int signo = estaPagado ? 1 : -1;
+        ventaDiariaRepository.acumular(
+                pedido.getFechaPedido().toLocalDate(),
+                pedido.getMetodoPago().name(),
+                signo,
+                estaPagado ? pedido.getTotal() : pedido.getTotal().negate());
+    }
+
+    // Ventas de los últimos meses (incluido el actual), un elemento por mes aunque no haya ventas
+    @Transactional(readOnly = true)
+    public List<VentaMesDTO> resumirUltimosMeses(int meses) {
+        YearMonth mesActual = YearMonth.now();
+        YearMonth primerMes = mesActual.minusMonths(meses - 1);
+
+        Map<YearMonth, VentaMesDTO> porMes = new HashMap<>();
+        for (VentaMesDTO venta : ventaDiariaRepository.resumirPorMes(primerMes.atDay(1))) {
+            porMes.put(YearMonth.of(venta.getAnio(), venta.getMes()), venta);
+        }
+
+        List<VentaMesDTO> resultado = new ArrayList<>();
+        for (YearMonth mes = primerMes; !mes.isAfter(mesActual); mes = mes.plusMonths(1)) {
+            VentaMesDTO venta = porMes.get(mes);
+            resultado.add(venta != null ? venta
+                    : new VentaMesDTO(mes.getYear(), mes.getMonthValue(), BigDecimal.ZERO, 0L));
+        }
+        return resultado;
+    }
+
+    // Recalcular todos los acumulados a partir de los pedidos pagados
+    public int reconstruir() {
+        ventaDiariaRepository.deleteAllInBatch();
+        return ventaDiariaRepository.reconstruirDesdePedidos();
+    }
+}
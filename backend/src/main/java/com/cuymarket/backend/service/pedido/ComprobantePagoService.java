@@ -0,0 +1,241 @@
+package com.cuymarket.backend.service.pedido;
+
+import com.cuymarket.backend.exception.BadRequestException;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.ResultSet;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Almacén en disco de los comprobantes de pago. La subida se copia por bloques, sin
+ * cargarla entera en memoria, y fuera de la transacción del pedido; cada archivo recibe
+ * un nombre aleatorio y su tipo se detecta por la firma de los bytes.
+ */
+@Service
+@RequiredArgsConstructor
+public class ComprobantePagoService {
+
+    private static final Pattern CLAVE_VALIDA = Pattern.compile("[0-9a-f]{32}");
+
+    // Bytes leídos al inicio para reconocer el formato
+    private static final int BYTES_FIRMA = 12;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${app.comprobantes.directorio:data/comprobantes}")
+    private String directorio;
+
+    @Value("${app.comprobantes.max-bytes:5242880}")
+    private long maxBytes;
+
+    // Vaciar la columna antigua solo cuando el almacén es persistente y ya se verificó
+    @Value("${app.comprobantes.migracion.vaciar-legacy:false}")
+    private boolean vaciarLegacy;
+
+    private Path carpeta;
+
+    public record ComprobanteGuardado(String clave, String tipoContenido, long tamano) {
+    }
+
+    @PostConstruct
+    void inicializar() throws IOException {
+        carpeta = Path.of(directorio).toAbsolutePath();
+        Files.createDirectories(carpeta);
+    }
+
+    // Guardar la subida; null si no se envió archivo
+    public ComprobanteGuardado guardar(MultipartFile archivo) {
+        if (archivo == null || archivo.isEmpty()) {
+            return null;
+        }
+        // El tamaño declarado permite rechazar sin copiar; al copiar se vuelve a controlar
+        if (archivo.getSize() > maxBytes) {
+            throw new BadRequestException("El comprobante supera el tamaño máximo de " + describirTamano(maxBytes));
+        }
+        try (InputStream entrada = archivo.getInputStream()) {
+            return guardar(entrada, maxBytes, false);
+        } catch (IOException e) {
+            throw new RuntimeException("No se pudo guardar el comprobante: " + e.getMessage(), e);
+        }
+    }
+
+    // Borra un comprobante que no llegó a quedar asociado a un pedido
+    public void eliminar(ComprobanteGuardado comprobante) {
+        if (comprobante == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(resolver(comprobante.clave()));
+        } catch (IOException e) {
+            System.err.println("No se pudo eliminar el comprobante " + comprobante.clave() + ": " + e.getMessage());
+        }
+    }
+
+    // Ruta del archivo de una clave; se reparte en subcarpetas por los dos primeros caracteres
+    public Path resolver(String clave) {
+        if (clave == null || !CLAVE_VALIDA.matcher(clave).matches()) {
+            throw new IllegalArgumentException("Clave de comprobante inválida");
+        }
+        return carpeta.resolve(clave.substring(0, 2)).resolve(clave);
+    }
+
+    /**
+     * Copia al almacén los comprobantes de la antigua columna LONGBLOB
+     * {@code informacion_pago.comprobante} que aún no tienen archivo: los que nunca se
+     * migraron y los que lo perdieron porque el disco no se conservó entre despliegues.
+     * La columna no se toca, sigue siendo la copia de respaldo hasta
+     * {@link #vaciarComprobantesLegacy}. Se procesa uno a la vez para no cargar todos en memoria.
+     */
+    public int migrarComprobantesLegacy() {
+        if (!existeColumnaLegacy()) {
+            return 0;
+        }
+
+        int migrados = 0;
+        for (Map<String, Object> fila : jdbcTemplate.queryForList(
+                "SELECT id, comprobante_clave FROM informacion_pago WHERE comprobante IS NOT NULL")) {
+            Long id = ((Number) fila.get("id")).longValue();
+            String clave = (String) fila.get("comprobante_clave");
+            if (clave != null && CLAVE_VALIDA.matcher(clave).matches() && Files.exists(resolver(clave))) {
+                continue;
+            }
+
+            byte[] contenido = jdbcTemplate.queryForObject(
+                    "SELECT comprobante FROM informacion_pago WHERE id = ?", byte[].class, id);
+            if (contenido == null || contenido.length == 0) {
+                continue;
+            }
+            try {
+                // Ya estaban aceptados: sin límite de tamaño y, si el formato no se reconoce, como binario
+                ComprobanteGuardado comprobante = guardar(new ByteArrayInputStream(contenido), Long.MAX_VALUE, true);
+                jdbcTemplate.update("UPDATE informacion_pago SET comprobante_clave = ?, comprobante_tipo = ?, " +
+                                "comprobante_tamano = ? WHERE id = ?",
+                        comprobante.clave(), comprobante.tipoContenido(), comprobante.tamano(), id);
+                migrados++;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("No se pudo migrar el comprobante del pago " + id + ": " + e.getMessage());
+            }
+        }
+        return migrados;
+    }
+
+    /**
+     * Deja en NULL la columna antigua de los pagos cuyo comprobante ya está en el almacén
+     * con los mismos bytes. Solo con {@code app.comprobantes.migracion.vaciar-legacy=true}:
+     * si el almacén está en un disco efímero, la columna es la única copia que sobrevive
+     * a un reinicio.
+     */
+    public int vaciarComprobantesLegacy() {
+        if (!vaciarLegacy || !existeColumnaLegacy()) {
+            return 0;
+        }
+
+        int vaciados = 0;
+        for (Map<String, Object> fila : jdbcTemplate.queryForList(
+                "SELECT id, comprobante_clave FROM informacion_pago " +
+                        "WHERE comprobante IS NOT NULL AND comprobante_clave IS NOT NULL")) {
+            Long id = ((Number) fila.get("id")).longValue();
+            String clave = (String) fila.get("comprobante_clave");
+            try {
+                byte[] archivo = Files.readAllBytes(resolver(clave));
+                byte[] contenido = jdbcTemplate.queryForObject(
+                        "SELECT comprobante FROM informacion_pago WHERE id = ?", byte[].class, id);
+                if (Arrays.equals(contenido, archivo)) {
+                    vaciados += jdbcTemplate.update("UPDATE informacion_pago SET comprobante = NULL WHERE id = ?", id);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("No se vació el comprobante antiguo del pago " + id + ": " + e.getMessage());
+            }
+        }
+        return vaciados;
+    }
+
+    private ComprobanteGuardado guardar(InputStream entrada, long limite, boolean aceptarDesconocido)
+            throws IOException {
+        byte[] firma = entrada.readNBytes(BYTES_FIRMA);
+        String tipoContenido = detectarTipoContenido(firma);
+        if (tipoContenido == null && aceptarDesconocido) {
+            tipoContenido = "application/octet-stream";
+        } else if (tipoContenido == null) {
+            throw new BadRequestException("El comprobante debe ser una imagen (JPEG, PNG o WebP) o un PDF");
+        }
+
+        String clave = UUID.randomUUID().toString().replace("-", "");
+        Path destino = resolver(clave);
+        Files.createDirectories(destino.getParent());
+        Path temporal = Files.createTempFile(destino.getParent(), clave, ".tmp");
+        try {
+            long tamano = firma.length;
+            try (OutputStream salida = Files.newOutputStream(temporal)) {
+                salida.write(firma);
+                byte[] bloque = new byte[8192];
+                int leidos;
+                while ((leidos = entrada.read(bloque)) != -1) {
+                    tamano += leidos;
+                    if (tamano > limite) {
+                        throw new BadRequestException("El comprobante supera el tamaño máximo de " + describirTamano(limite));
+                    }
+                    salida.write(bloque, 0, leidos);
+                }
+            }
+            Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE);
+            return new ComprobanteGuardado(clave, tipoContenido, tamano);
+        } finally {
+            Files.deleteIfExists(temporal);
+        }
+    }
+
+    private boolean existeColumnaLegacy() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) conexion -> {
+            for (String tabla : new String[]{"informacion_pago", "INFORMACION_PAGO"}) {
+                try (ResultSet columnas = conexion.getMetaData()
+                        .getColumns(conexion.getCatalog(), null, tabla, null)) {
+                    while (columnas.next()) {
+                        if ("comprobante".equalsIgnoreCase(columnas.getString("COLUMN_NAME"))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }));
+    }
+
+    // Tipo por firma de bytes, sin confiar en el nombre ni en lo que declare el cliente
+    private String detectarTipoContenido(byte[] b) {
+        if (b.length >= 3 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xD8 && (b[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (b.length >= 8 && (b[0] & 0xFF) == 0x89 && b[1] == 'P' && b[2] == 'N' && b[3] == 'G') {
+            return "image/png";
+        }
+        if (b.length >= 12 && b[0] == 'R' && b[1] == 'I' && b[2] == 'F' && b[3] == 'F'
+                && b[8] == 'W' && b[9] == 'E' && b[10] == 'B' && b[11] == 'P') {
+            return "image/webp";
+        }
+        if (b.length >= 5 && b[0] == '%' && b[1] == 'P' && b[2] == 'D' && b[3] == 'F' && b[4] == '-') {
+            return "application/pdf";
+        }
+        return null;
+    }
+
+    private static String describirTamano(long bytes) {
+        return bytes >= 1024 * 1024 ? (bytes / (1024 * 1024)) + " MB" : (bytes / 1024) + " KB";
+    }
+}
@@ -4,6 +4,7 @@ import com.cuymarket.backend.model.pedido.Factura;
 import com.cuymarket.backend.model.pedido.Pedido;
 import com.cuymarket.backend.repository.pedido.FacturaRepository;
 import com.cuymarket.backend.repository.pedido.PedidoRepository;
+import com.cuymarket.backend.service.sistema.SecuenciaService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -17,8 +18,12 @@ import java.util.List;
 @Transactional
 public class FacturaService {
 
+    private static final String SERIE_FACTURA = "F001-";
+    private static final String SECUENCIA_FACTURAS = "facturas_numero";
+
     private final FacturaRepository facturaRepository;
     private final PedidoRepository pedidoRepository;
+    private final SecuenciaService secuenciaService;
 
     // Crear factura para pedido
     public Factura crear(Long pedidoId, String rucCliente, String razonSocialCliente) {
@@ -106,8 +111,26 @@ public class FacturaService {
         facturaRepository.delete(factura);
     }
 
+    /**
+     * Numeración de facturas por delante de la última emitida en la serie. Las facturas
+     * anteriores usaban los últimos 8 dígitos de la hora en milisegundos, así que la
+     * secuencia continúa desde el mayor de ellos para no repetir ninguno.
+     */
+    public void alinearNumeracion() {
+        String ultimo = facturaRepository.obtenerUltimoNumero(SERIE_FACTURA);
+        long siguiente = 1;
+        if (ultimo != null) {
+            try {
+                siguiente = Long.parseLong(ultimo.substring(SERIE_FACTURA.length())) + 1;
+            } catch (NumberFormatException e) {
+                System.err.println("Número de factura no reconocido: " + ultimo);
+            }
+        }
+        secuenciaService.alinear(SECUENCIA_FACTURAS, siguiente);
+    }
+
     // Método privado para generar número de factura
     private String generarNumeroFactura() {
-        return "F001-" + String.format("%08d", System.currentTimeMillis() % 100000000);
+        return SERIE_FACTURA + String.format("%08d", secuenciaService.siguiente(SECUENCIA_FACTURAS));
     }
 }
@@ -0,0 +1,188 @@
+package com.cuymarket.backend.service.pedido;
+
+import com.cuymarket.backend.exception.BadRequestException;
+import com.cuymarket.backend.exception.ConflictException;
+import com.cuymarket.backend.model.pedido.Pedido;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Claves de idempotencia para la creación de pedidos. Cada clave (por usuario) recuerda
+ * el pedido que creó durante un tiempo limitado: un reintento del cliente recibe ese
+ * mismo pedido en lugar de crear otro. Si el reintento llega mientras la primera
+ * solicitud sigue en curso, espera su resultado en vez de volver a ejecutar el checkout.
+ *
+ * <p>Las claves viven en memoria de esta instancia y el almacén está acotado: al llenarse
+ * se descartan primero las vencidas y luego las más antiguas ya resueltas.</p>
+ *
+ * <p>También acota cuántos checkouts corren a la vez. Cada uno tiene una conexión ocupada
+ * y, al agotarse un bloque de ids o de números de pedido, pide otra para reservar el
+ * siguiente en su propia transacción; si todas las conexiones del pool estuvieran en
+ * checkouts, ninguno conseguiría la segunda. El límite debe quedar por debajo del pool.</p>
+ */
+@Service
+@RequiredArgsConstructor
+public class IdempotenciaPedidoService {
+
+    private static final int LONGITUD_MAXIMA_CLAVE = 100;
+
+    private final PedidoService pedidoService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.pedidos.idempotencia.ttl-minutos:60}")
+    private long ttlMinutos;
+
+    @Value("${app.pedidos.idempotencia.max-claves:10000}")
+    private int maxClaves;
+
+    @Value("${app.pedidos.idempotencia.espera-segundos:30}")
+    private long esperaSegundos;
+
+    @Value("${app.pedidos.checkout.max-concurrentes:8}")
+    private int maxCheckoutsConcurrentes;
+
+    @Value("${app.pedidos.checkout.espera-segundos:30}")
+    private long esperaCheckoutSegundos;
+
+    private Semaphore checkouts;
+
+    private final ConcurrentHashMap<String, Entrada> claves = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService limpieza = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("idempotencia-pedidos").daemon().factory());
+
+    private Counter nuevas;
+    private Counter repetidas;
+
+    // Resultado de la primera ejecución: id del pedido creado, o la excepción que lanzó
+    private record Entrada(CompletableFuture<Long> pedidoId, long creadaEnNanos) {
+    }
+
+    public record Resultado(Pedido pedido, boolean repetido) {
+    }
+
+    @PostConstruct
+    void inicializar() {
+        checkouts = new Semaphore(maxCheckoutsConcurrentes, true);
+        nuevas = Counter.builder("pedidos.idempotencia")
+                .description("Creaciones de pedido con clave de idempotencia por resultado")
+                .tag("resultado", "nueva")
+                .register(meterRegistry);
+        repetidas = Counter.builder("pedidos.idempotencia")
+                .description("Creaciones de pedido con clave de idempotencia por resultado")
+                .tag("resultado", "repetida")
+                .register(meterRegistry);
+        meterRegistry.gauge("pedidos.idempotencia.claves", claves, Map::size);
+
+        long periodo = Math.max(1, TimeUnit.MINUTES.toSeconds(ttlMinutos) / 4);
+        limpieza.scheduleWithFixedDelay(this::eliminarVencidas, periodo, periodo, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void detener() {
+        limpieza.shutdownNow();
+    }
+
+    /**
+     * Ejecuta la creación del pedido una sola vez por clave. Sin clave se ejecuta siempre.
+     * Si la primera ejecución falla, la clave se libera para que el cliente pueda reintentar
+     * y quien estaba esperando recibe el mismo error.
+     */
+    public Resultado ejecutar(Long usuarioId, String clave, Callable<Pedido> crearPedido) throws Exception {
+        if (clave == null || clave.isBlank()) {
+            return new Resultado(conPermiso(crearPedido), false);
+        }
+        if (clave.length() > LONGITUD_MAXIMA_CLAVE) {
+            throw new BadRequestException("La clave de idempotencia no puede superar los "
+                    + LONGITUD_MAXIMA_CLAVE + " caracteres");
+        }
+
+        String id = usuarioId + ":" + clave;
+        Entrada propia = new Entrada(new CompletableFuture<>(), System.nanoTime());
+        Entrada existente = claves.putIfAbsent(id, propia);
+        if (existente != null) {
+            repetidas.increment();
+            return new Resultado(pedidoService.obtenerPorId(esperar(existente)), true);
+        }
+
+        nuevas.increment();
+        if (claves.size() > maxClaves) {
+            liberarEspacio();
+        }
+        try {
+            // crearDesdeCarrito confirma su propia transacción: al volver, el pedido ya es visible
+            Pedido pedido = conPermiso(crearPedido);
+            propia.pedidoId().complete(pedido.getId());
+            return new Resultado(pedido, false);
+        } catch (Exception e) {
+            claves.remove(id, propia);
+            propia.pedidoId().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private Pedido conPermiso(Callable<Pedido> crearPedido) throws Exception {
+        if (!checkouts.tryAcquire(esperaCheckoutSegundos, TimeUnit.SECONDS)) {
+            throw new ConflictException("Hay demasiados pedidos en curso, intente nuevamente");
+        }
+        try {
+            return crearPedido.call();
+        } finally {
+            checkouts.release();
+        }
+    }
+
+    private Long esperar(Entrada entrada) throws Exception {
+        try {
+            return entrada.pedidoId().get(esperaSegundos, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            throw new ConflictException("El pedido con esta clave aún se está procesando, intente nuevamente");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception causa) {
+                throw causa;
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+    }
+
+    private void eliminarVencidas() {
+        long limite = System.nanoTime() - TimeUnit.MINUTES.toNanos(ttlMinutos);
+        claves.values().removeIf(e -> e.pedidoId().isDone() && e.creadaEnNanos() - limite < 0);
+    }
+
+    // Almacén lleno: primero las vencidas y, si no alcanza, las resueltas más antiguas.
+    // Las que siguen en curso no se tocan
+    private synchronized void liberarEspacio() {
+        eliminarVencidas();
+        int sobrantes = claves.size() - maxClaves;
+        if (sobrantes <= 0) {
+            return;
+        }
+        claves.entrySet().stream()
+                .filter(e -> e.getValue().pedidoId().isDone())
+                .sorted(Comparator.comparingLong(e -> e.getValue().creadaEnNanos()))
+                .limit(sobrantes)
+                .toList()
+                .forEach(e -> claves.remove(e.getKey(), e.getValue()));
+    }
+}
@@ -1,15 +1,20 @@
 package com.cuymarket.backend.service.pedido;
 
+import com.cuymarket.backend.dto.pedido.ResumenPagoDTO;
 import com.cuymarket.backend.model.pedido.InformacionPago;
 import com.cuymarket.backend.model.pedido.Pedido;
 import com.cuymarket.backend.repository.pedido.InformacionPagoRepository;
 import com.cuymarket.backend.repository.pedido.PedidoRepository;
+import com.cuymarket.backend.service.pedido.ComprobantePagoService.ComprobanteGuardado;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -51,10 +56,12 @@ public class InformacionPagoService {
         return pagoRepository.save(pago);
     }
 
-    // Adjuntar comprobante
-    public InformacionPago adjuntarComprobante(Long id, byte[] comprobante) {
+    // Adjuntar comprobante ya guardado en el almacén
+    public InformacionPago adjuntarComprobante(Long id, ComprobanteGuardado comprobante) {
         InformacionPago pago = obtenerPorId(id);
-        pago.setComprobante(comprobante);
+        pago.setComprobanteClave(comprobante.clave());
+        pago.setComprobanteTipo(comprobante.tipoContenido());
+        pago.setComprobanteTamano(comprobante.tamano());
         return pagoRepository.save(pago);
     }
 
@@ -71,6 +78,19 @@ public class InformacionPagoService {
                 .orElseThrow(() -> new RuntimeException("Información de pago no encontrada para el pedido"));
     }
 
+    // Resumen de pago por id de pedido; los pedidos sin información de pago no aparecen
+    @Transactional(readOnly = true)
+    public Map<Long, ResumenPagoDTO> obtenerResumenPorPedidos(Collection<Long> pedidoIds) {
+        if (pedidoIds.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, ResumenPagoDTO> resumenes = new HashMap<>();
+        for (ResumenPagoDTO resumen : pagoRepository.buscarResumenPorPedidos(pedidoIds)) {
+            resumenes.put(resumen.getPedidoId(), resumen);
+        }
+        return resumenes;
+    }
+
     @Transactional(readOnly = true)
     public List<InformacionPago> listarTodos() {
         return pagoRepository.findAll();
@@ -1,47 +1,88 @@
 package com.cuymarket.backend.service.pedido;
 
 import com.cuymarket.backend.dto.pedido.CrearPedidoRequest;
+import com.cuymarket.backend.exception.BadRequestException;
 import com.cuymarket.backend.model.carrito.Carrito;
 import com.cuymarket.backend.model.carrito.ItemCarrito;
+import com.cuymarket.backend.model.enums.EstadoPago;
 import com.cuymarket.backend.model.enums.EstadoPedido;
 import com.cuymarket.backend.model.enums.MetodoPago;
+import com.cuymarket.backend.model.enums.TipoMovimiento;
 import com.cuymarket.backend.model.pedido.InformacionPago;
 import com.cuymarket.backend.model.pedido.ItemPedido;
 import com.cuymarket.backend.model.pedido.Pedido;
-import com.cuymarket.backend.model.promocion.Cupon;
 import com.cuymarket.backend.model.usuario.DireccionEnvio;
 import com.cuymarket.backend.model.usuario.Usuario;
 import com.cuymarket.backend.repository.carrito.CarritoRepository;
+import com.cuymarket.backend.repository.carrito.ItemCarritoRepository;
 import com.cuymarket.backend.repository.pedido.InformacionPagoRepository;
+import com.cuymarket.backend.repository.pedido.ItemPedidoRepository;
 import com.cuymarket.backend.repository.pedido.PedidoRepository;
 import com.cuymarket.backend.repository.promocion.CuponRepository;
 import com.cuymarket.backend.repository.usuario.DireccionEnvioRepository;
 import com.cuymarket.backend.repository.usuario.UsuarioRepository;
+import com.cuymarket.backend.service.carrito.CarritoStore;
+import com.cuymarket.backend.service.pedido.ComprobantePagoService.ComprobanteGuardado;
+import com.cuymarket.backend.service.finanzas.VentaDiariaService;
 import com.cuymarket.backend.service.producto.ProductoService;
+import com.cuymarket.backend.service.producto.ReservaStockService;
+import com.cuymarket.backend.service.promocion.CuponService;
+import com.cuymarket.backend.service.sistema.DatosDashboardModificadosEvent;
+import com.cuymarket.backend.service.sistema.SecuenciaService;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 @Service
 @RequiredArgsConstructor
 @Transactional
 public class PedidoService {
 
+    private static final String SECUENCIA_PEDIDOS = "pedidos_numero";
+    private static final int TAMANO_MAXIMO_PAGINA = 100;
+
     private final PedidoRepository pedidoRepository;
     private final UsuarioRepository usuarioRepository;
     private final CarritoRepository carritoRepository;
     private final DireccionEnvioRepository direccionRepository;
     private final CuponRepository cuponRepository;
     private final ProductoService productoService;
+    private final ReservaStockService reservaStockService;
+    private final VentaDiariaService ventaDiariaService;
+    private final ApplicationEventPublisher eventPublisher;
     private final InformacionPagoRepository informacionPagoRepository;
+    private final ItemCarritoRepository itemCarritoRepository;
+    private final ItemPedidoRepository itemPedidoRepository;
+    private final EntityManager entityManager;
+    private final SecuenciaService secuenciaService;
+    private final CarritoStore carritoStore;
+    private final CuponService cuponService;
+
+    // Página del listado del personal y cursor de la siguiente (null si es la última)
+    public record PaginaPedidos(List<Pedido> pedidos, String siguienteCursor) {
+    }
 
     // Crear pedido desde carrito
-    public Pedido crearDesdeCarrito(Long usuarioId, Long direccionEnvioId, String metodoPago, String codigoCupon, CrearPedidoRequest request) throws Exception {
+    // El comprobante ya viene guardado en el almacén (ComprobantePagoService), fuera de esta transacción
+    public Pedido crearDesdeCarrito(Long usuarioId, Long direccionEnvioId, String metodoPago, String codigoCupon,
+            CrearPedidoRequest request, ComprobanteGuardado comprobante) throws Exception {
         Usuario usuario = usuarioRepository.findById(usuarioId)
                 .orElseThrow(() -> new RuntimeException("Usuario no encontrado"));
 
@@ -55,12 +96,13 @@ public class PedidoService {
         DireccionEnvio direccion = direccionRepository.findById(direccionEnvioId)
                 .orElseThrow(() -> new RuntimeException("Dirección no encontrada"));
 
-        // Verificar stock disponible
+        // Reservar en memoria antes de tocar la base: un producto agotado se rechaza aquí
+        // sin bloquear su fila. La reserva se confirma o libera al terminar la transacción
+        Map<Long, Integer> cantidades = new LinkedHashMap<>();
         for (ItemCarrito itemCarrito : carrito.getItems()) {
-            if (!productoService.tieneStockDisponible(itemCarrito.getProducto().getId(), itemCarrito.getCantidad())) {
-                throw new RuntimeException("Stock insuficiente para: " + itemCarrito.getProducto().getNombre());
-            }
+            cantidades.merge(itemCarrito.getProducto().getId(), itemCarrito.getCantidad(), Integer::sum);
         }
+        reservaStockService.reservar(cantidades);
 
         // Crear pedido
         Pedido pedido = new Pedido();
@@ -70,8 +112,8 @@ public class PedidoService {
         pedido.setEstadoPago(com.cuymarket.backend.model.enums.EstadoPago.PENDIENTE);
         pedido.setMetodoPago(com.cuymarket.backend.model.enums.MetodoPago.valueOf(metodoPago));
         
-        // Generar número de pedido manualmente
-        pedido.setNumeroPedido("PED-" + LocalDateTime.now().toString().replaceAll("[^0-9]", "").substring(0, 14));
+        // Número correlativo; no se repite aunque se creen varios pedidos en el mismo segundo
+        pedido.setNumeroPedido(generarNumeroPedido());
         pedido.setFechaPedido(LocalDateTime.now());
 
         // Calcular subtotal - usar solo precio ya que precioOferta no existe
@@ -83,36 +125,12 @@ public class PedidoService {
 
         // Aplicar cupón si existe
         BigDecimal descuento = BigDecimal.ZERO;
+        CuponService.Canje canje = null;
         if (codigoCupon != null && !codigoCupon.isEmpty()) {
-            Cupon cupon = cuponRepository.findByCodigo(codigoCupon)
-                    .orElseThrow(() -> new RuntimeException("Cupón no válido"));
-
-            // Validar cupón
-            if (!cupon.getActivo()) {
-                throw new RuntimeException("El cupón no está activo");
-            }
-
-            LocalDateTime ahora = LocalDateTime.now();
-            if (cupon.getFechaInicio().isAfter(ahora.toLocalDate()) ||
-                    cupon.getFechaVencimiento().isBefore(ahora.toLocalDate())) {
-                throw new RuntimeException("El cupón no está vigente");
-            }
-
-            if (cupon.getUsosMaximos() != null && cupon.getUsosActuales() >= cupon.getUsosMaximos()) {
-                throw new RuntimeException("El cupón ha alcanzado el límite de usos");
-            }
-
-            // Validar compra mínima
-            if (cupon.getMinimoCompra() != null && subtotal.compareTo(cupon.getMinimoCompra()) < 0) {
-                throw new RuntimeException("El monto mínimo de compra para este cupón es: " + cupon.getMinimoCompra());
-            }
-
-            descuento = calcularDescuentoCupon(subtotal, cupon);
-            pedido.setCupon(cupon);
-
-            // Incrementar usos del cupón
-            cupon.setUsosActuales(cupon.getUsosActuales() + 1);
-            cuponRepository.save(cupon);
+            // Validación desde el índice en memoria; el canje se confirma al final
+            canje = cuponService.prepararCanje(codigoCupon, subtotal);
+            descuento = canje.descuento();
+            pedido.setCupon(cuponRepository.getReferenceById(canje.cuponId()));
         }
 
         pedido.setDescuento(descuento);
@@ -145,10 +163,11 @@ public class PedidoService {
 
         // Guardar pedido primero para generar el número de pedido
         Pedido pedidoGuardado = pedidoRepository.save(pedido);
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("pedido"));
 
         // Guardar información de pago si el método requiere comprobante
         MetodoPago metodo = MetodoPago.valueOf(metodoPago);
-        if (metodo == MetodoPago.YAPE || metodo == MetodoPago.PLIN || metodo == MetodoPago.TRANSFERENCIA) {
+        if (metodo.requiereComprobante()) {
             InformacionPago infoPago = new InformacionPago();
             infoPago.setPedido(pedidoGuardado);
             infoPago.setMetodoPago(metodo);
@@ -163,24 +182,33 @@ public class PedidoService {
                 infoPago.setBanco(request.getBanco());
             }
             
-            // Guardar comprobante si existe
-            if (request.getComprobante() != null && !request.getComprobante().isEmpty()) {
-                infoPago.setComprobante(request.getComprobante().getBytes());
+            // Asociar el comprobante si se envió
+            if (comprobante != null) {
+                infoPago.setComprobanteClave(comprobante.clave());
+                infoPago.setComprobanteTipo(comprobante.tipoContenido());
+                infoPago.setComprobanteTamano(comprobante.tamano());
             }
             
             informacionPagoRepository.save(infoPago);
         }
 
-        // Descontar stock después de guardar
-        for (ItemCarrito itemCarrito : carrito.getItems()) {
-            productoService.descontarStock(itemCarrito.getProducto().getId(), itemCarrito.getCantidad(),
-                    "Pedido #" + pedidoGuardado.getNumeroPedido());
+        // Descontar stock de todas las líneas en un lote; la base sigue siendo quien valida:
+        // si alguna no alcanza se revierte el pedido completo
+        productoService.descontarStockLote(cantidades, "Pedido #" + pedidoGuardado.getNumeroPedido());
+
+        // Limpiar carrito con un solo DELETE. La versión del carrito sube: si alguien lo cambió
+        // mientras se armaba el pedido, el commit falla en lugar de vender un carrito desactualizado
+        itemCarritoRepository.eliminarTodosDelCarrito(carrito.getId());
+        entityManager.lock(carrito, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+        carritoStore.invalidar(usuarioId);
+
+        // El canje (UPDATE condicional) va al final, con todo lo demás ya escrito: la fila
+        // del cupón, que comparten todos los pedidos de la promoción, queda bloqueada solo
+        // hasta el commit y no durante todo el checkout (el UPDATE vacía antes la sesión)
+        if (canje != null) {
+            cuponService.confirmarCanje(canje);
         }
 
-        // Limpiar carrito
-        carrito.getItems().clear();
-        carritoRepository.save(carrito);
-
         return pedidoGuardado;
     }
 
@@ -198,11 +226,12 @@ public class PedidoService {
         if (nuevoEstado == EstadoPedido.CANCELADO && estadoAnterior != EstadoPedido.CANCELADO) {
             for (ItemPedido item : pedido.getItems()) {
                 productoService.incrementarStock(item.getProducto().getId(), item.getCantidad(),
-                        "Cancelación pedido #" + pedido.getNumeroPedido());
+                        "Cancelación pedido #" + pedido.getNumeroPedido(), TipoMovimiento.DEVOLUCION);
             }
         }
 
         pedidoRepository.save(pedido);
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("pedido"));
         // Recargar el pedido con todas sus relaciones para evitar LazyInitializationException
         return pedidoRepository.findByIdWithItems(id)
                 .orElseThrow(() -> new RuntimeException("Pedido no encontrado"));
@@ -211,8 +240,11 @@ public class PedidoService {
     // Actualizar estado de pago
     public Pedido actualizarEstadoPago(Long id, com.cuymarket.backend.model.enums.EstadoPago nuevoEstadoPago) {
         Pedido pedido = obtenerPorId(id);
+        com.cuymarket.backend.model.enums.EstadoPago estadoPagoAnterior = pedido.getEstadoPago();
         pedido.setEstadoPago(nuevoEstadoPago);
         pedidoRepository.save(pedido);
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("pedido"));
+        ventaDiariaService.registrarCambioEstadoPago(pedido, estadoPagoAnterior);
         // Recargar el pedido con todas sus relaciones para evitar LazyInitializationException
         return pedidoRepository.findByIdWithItems(id)
                 .orElseThrow(() -> new RuntimeException("Pedido no encontrado"));
@@ -221,8 +253,11 @@ public class PedidoService {
     // Cancelar pedido y rechazar pago automáticamente (usado por cliente)
     public Pedido cancelarPedidoYRechazarPago(Long id) {
         Pedido pedido = actualizarEstado(id, EstadoPedido.CANCELADO);
+        com.cuymarket.backend.model.enums.EstadoPago estadoPagoAnterior = pedido.getEstadoPago();
         pedido.setEstadoPago(com.cuymarket.backend.model.enums.EstadoPago.RECHAZADO);
         pedidoRepository.save(pedido);
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("pedido"));
+        ventaDiariaService.registrarCambioEstadoPago(pedido, estadoPagoAnterior);
         // Recargar el pedido con todas sus relaciones
         return pedidoRepository.findByIdWithItems(id)
                 .orElseThrow(() -> new RuntimeException("Pedido no encontrado"));
@@ -231,6 +266,7 @@ public class PedidoService {
     // Rechazar pago y cancelar pedido automáticamente (usado por empleado)
     public Pedido rechazarPagoYCancelarPedido(Long id) {
         Pedido pedido = obtenerPorId(id);
+        com.cuymarket.backend.model.enums.EstadoPago estadoPagoAnterior = pedido.getEstadoPago();
         pedido.setEstadoPago(com.cuymarket.backend.model.enums.EstadoPago.RECHAZADO);
         pedido.setEstado(EstadoPedido.CANCELADO);
         
@@ -238,11 +274,13 @@ public class PedidoService {
         if (pedido.getEstado() == EstadoPedido.PENDIENTE || pedido.getEstado() == EstadoPedido.EN_PROCESO) {
             for (ItemPedido item : pedido.getItems()) {
                 productoService.incrementarStock(item.getProducto().getId(), item.getCantidad(),
-                        "Rechazo pago - Pedido #" + pedido.getNumeroPedido());
+                        "Rechazo pago - Pedido #" + pedido.getNumeroPedido(), TipoMovimiento.DEVOLUCION);
             }
         }
         
         pedidoRepository.save(pedido);
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("pedido"));
+        ventaDiariaService.registrarCambioEstadoPago(pedido, estadoPagoAnterior);
         // Recargar el pedido con todas sus relaciones
         return pedidoRepository.findByIdWithItems(id)
                 .orElseThrow(() -> new RuntimeException("Pedido no encontrado"));
@@ -271,9 +309,48 @@ public class PedidoService {
         return pedidoRepository.findByEstadoWithDetails(estado);
     }
 
+    /**
+     * Página del listado del personal, del pedido más reciente al más antiguo, con filtros
+     * opcionales ({@code hasta} excluido; {@code texto} busca por número de pedido o cliente). Primero se buscan solo los ids de la página por
+     * (fecha_pedido, id) y luego se cargan las relaciones de esos pedidos, así el costo no
+     * depende de cuántos pedidos haya antes en el listado.
+     */
     @Transactional(readOnly = true)
-    public List<Pedido> listarTodos() {
-        return pedidoRepository.findAllWithDetails();
+    public PaginaPedidos listarPagina(EstadoPedido estado, EstadoPago estadoPago, LocalDateTime desde,
+            LocalDateTime hasta, String texto, String cursor, int tamano) {
+        String textoNormalizado = texto != null && !texto.isBlank() ? texto.trim() : null;
+        int limite = Math.max(1, Math.min(tamano, TAMANO_MAXIMO_PAGINA));
+        LocalDateTime cursorFecha = null;
+        Long cursorId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] partes = decodificarCursor(cursor);
+            cursorFecha = LocalDateTime.parse(partes[0]);
+            cursorId = Long.valueOf(partes[1]);
+        }
+
+        // Se pide una fila de más para saber si hay otra página
+        List<Long> ids = pedidoRepository.buscarIdsPagina(estado, estadoPago, desde, hasta,
+                textoNormalizado, cursorFecha, cursorId, Limit.of(limite + 1));
+        boolean hayMas = ids.size() > limite;
+        if (hayMas) {
+            ids = ids.subList(0, limite);
+        }
+        if (ids.isEmpty()) {
+            return new PaginaPedidos(List.of(), null);
+        }
+
+        Map<Long, Pedido> porId = new HashMap<>();
+        for (Pedido pedido : pedidoRepository.findAllByIdWithDetails(ids)) {
+            porId.put(pedido.getId(), pedido);
+        }
+        List<Pedido> pedidos = ids.stream().map(porId::get).filter(Objects::nonNull).toList();
+
+        String siguiente = null;
+        if (hayMas && !pedidos.isEmpty()) {
+            Pedido ultimo = pedidos.get(pedidos.size() - 1);
+            siguiente = codificarCursor(ultimo.getFechaPedido(), ultimo.getId());
+        }
+        return new PaginaPedidos(pedidos, siguiente);
     }
 
     @Transactional(readOnly = true)
@@ -296,23 +373,25 @@ public class PedidoService {
         return pedidoRepository.contarPorEstado(estado);
     }
 
+    // Cantidad de pedidos del rango por estado, con cero en los estados sin pedidos
+    @Transactional(readOnly = true)
+    public Map<EstadoPedido, Long> contarPorEstados(LocalDateTime desde, LocalDateTime hasta) {
+        Map<EstadoPedido, Long> conteos = new EnumMap<>(EstadoPedido.class);
+        for (EstadoPedido estado : EstadoPedido.values()) {
+            conteos.put(estado, 0L);
+        }
+        for (Object[] fila : pedidoRepository.contarAgrupadoPorEstado(desde, hasta)) {
+            conteos.put((EstadoPedido) fila[0], (Long) fila[1]);
+        }
+        return conteos;
+    }
+
     @Transactional(readOnly = true)
     public Long contarPorUsuario(Long usuarioId) {
         return (long) pedidoRepository.findByUsuarioIdOrderByFechaPedidoDesc(usuarioId).size();
     }
 
     // Métodos privados
-    private BigDecimal calcularDescuentoCupon(BigDecimal subtotal, Cupon cupon) {
-        switch (cupon.getTipoCupon()) {
-            case PORCENTAJE:
-                return subtotal.multiply(cupon.getDescuento().divide(BigDecimal.valueOf(100)));
-            case MONTO_FIJO:
-                return cupon.getDescuento().min(subtotal); // No puede ser mayor al subtotal
-            default:
-                return BigDecimal.ZERO;
-        }
-    }
-
     private void validarTransicionEstado(EstadoPedido estadoActual, EstadoPedido nuevoEstado) {
         if (estadoActual == EstadoPedido.CANCELADO) {
             throw new RuntimeException("No se puede cambiar el estado de un pedido cancelado");
@@ -322,4 +401,46 @@ public class PedidoService {
             throw new RuntimeException("No se puede cambiar el estado de un pedido entregado");
         }
     }
+
+    private String generarNumeroPedido() {
+        return "PED-" + String.format("%08d", secuenciaService.siguiente(SECUENCIA_PEDIDOS));
+    }
+
+    /**
+     * Numeración de pedidos por delante de los pedidos existentes. Los números anteriores
+     * (fecha y hora con 14 dígitos) no chocan con los nuevos de 8 dígitos; se parte del
+     * último id solo para que la numeración no vuelva a empezar en 1.
+     */
+    public void alinearNumeracion() {
+        secuenciaService.alinear(SECUENCIA_PEDIDOS, pedidoRepository.obtenerMaximoId() + 1);
+    }
+
+    /**
+     * Deja el generador de ids de items_pedido por delante de los ids ya usados. Hace falta
+     * una vez al pasar de IDENTITY a ids por bloques, con filas existentes en la tabla. Se
+     * suma un bloque completo porque Hibernate entrega el bloque que termina en el valor leído.
+     */
+    public void alinearGeneradorIdsItems() {
+        secuenciaService.alinear("items_pedido", itemPedidoRepository.obtenerMaximoId() + ItemPedido.BLOQUE_IDS);
+    }
+
+    // Cursor opaco: fecha y id del último pedido de la página, en Base64 URL
+    private static String codificarCursor(LocalDateTime fecha, Long id) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((fecha + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodificarCursor(String cursor) {
+        try {
+            String[] partes = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\\|");
+            if (partes.length != 2) {
+                throw new IllegalArgumentException();
+            }
+            LocalDateTime.parse(partes[0]);
+            Long.valueOf(partes[1]);
+            return partes;
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new BadRequestException("Cursor de paginación no válido");
+        }
+    }
 }
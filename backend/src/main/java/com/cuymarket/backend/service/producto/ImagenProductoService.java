@@ -0,0 +1,315 @@
+package com.cuymarket.backend.service.producto;
+
+import com.cuymarket.backend.exception.BadRequestException;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Almacén de imágenes de producto direccionado por contenido: cada archivo se guarda
+ * con el SHA-256 de sus bytes como nombre, así dos productos con la misma imagen
+ * comparten archivo y una URL con el hash nunca cambia de contenido.
+ */
+@Service
+@RequiredArgsConstructor
+public class ImagenProductoService {
+
+    private static final Pattern HASH_VALIDO = Pattern.compile("[0-9a-f]{64}");
+
+    // Ancho de las imágenes en tarjetas del catálogo y en el carrito
+    public static final int ANCHO_LISTADO = 400;
+    public static final int ANCHO_MINIATURA = 200;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final VarianteImagenService varianteImagenService;
+
+    @Value("${app.imagenes.directorio:data/imagenes}")
+    private String directorio;
+
+    // Vaciar la columna antigua solo cuando el almacén es persistente y ya se verificó
+    @Value("${app.imagenes.migracion.vaciar-legacy:false}")
+    private boolean vaciarLegacy;
+
+    private Path carpeta;
+
+    public record ImagenGuardada(String hash, String tipoContenido, Integer ancho, Integer alto) {
+    }
+
+    // Archivo a enviar; definitivo = false cuando se sirve el original mientras se genera la variante
+    public record ArchivoImagen(Path ruta, String tipoContenido, String etag, boolean definitivo) {
+    }
+
+    @PostConstruct
+    void inicializar() throws IOException {
+        carpeta = Path.of(directorio).toAbsolutePath();
+        Files.createDirectories(carpeta);
+    }
+
+    // Guardar imagen (si ya existe un archivo con el mismo hash se reutiliza)
+    public ImagenGuardada guardar(byte[] contenido) {
+        String tipoContenido = detectarTipoContenido(contenido);
+        if (tipoContenido == null) {
+            throw new RuntimeException("La imagen no tiene un formato soportado (JPEG, PNG, GIF o WebP)");
+        }
+
+        String hash = calcularHash(contenido);
+        Path destino = resolver(hash);
+        try {
+            if (!Files.exists(destino)) {
+                Files.createDirectories(destino.getParent());
+                Path temporal = Files.createTempFile(destino.getParent(), hash, ".tmp");
+                try {
+                    Files.write(temporal, contenido);
+                    // Si otro hilo guardó la misma imagen a la vez, el rename la reemplaza por bytes idénticos
+                    Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temporal);
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("No se pudo guardar la imagen: " + e.getMessage(), e);
+        }
+
+        int[] dimensiones = leerDimensiones(contenido);
+        Integer ancho = dimensiones != null ? dimensiones[0] : null;
+        varianteImagenService.programar(destino, tipoContenido, ancho);
+        return new ImagenGuardada(hash, tipoContenido, ancho, dimensiones != null ? dimensiones[1] : null);
+    }
+
+    // Tipo y dimensiones de una imagen ya guardada (el cliente reenvía su URL al editar)
+    public ImagenGuardada describir(String hash) {
+        Path ruta = resolver(hash);
+        if (!Files.isReadable(ruta)) {
+            throw new BadRequestException("La imagen indicada no existe");
+        }
+        try {
+            byte[] contenido = Files.readAllBytes(ruta);
+            int[] dimensiones = leerDimensiones(contenido);
+            return new ImagenGuardada(hash, detectarTipoContenido(contenido),
+                    dimensiones != null ? dimensiones[0] : null, dimensiones != null ? dimensiones[1] : null);
+        } catch (IOException e) {
+            throw new RuntimeException("No se pudo leer la imagen: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Archivo para un ancho solicitado. Si la variante aún no existe se encola y mientras
+     * tanto se devuelve el original; sin ancho, si el original ya es más estrecho o si se
+     * pide más que la mayor variante, se devuelve el original.
+     */
+    public ArchivoImagen obtenerArchivo(String hash, String tipoContenido, Integer anchoOriginal,
+            Integer anchoSolicitado) {
+        Path original = resolver(hash);
+        String tipo = tipoContenido != null ? tipoContenido : "application/octet-stream";
+        ArchivoImagen archivoOriginal = new ArchivoImagen(original, tipo, "\"" + hash + "\"", true);
+        if (anchoSolicitado == null || anchoSolicitado <= 0 || anchoOriginal == null) {
+            return archivoOriginal;
+        }
+
+        int ancho = varianteImagenService.anchoVariante(anchoSolicitado);
+        if (ancho >= anchoOriginal) {
+            return archivoOriginal;
+        }
+
+        Path variante = varianteImagenService.rutaVariante(original, ancho, tipo);
+        if (Files.exists(variante)) {
+            return new ArchivoImagen(variante, varianteImagenService.tipoVariante(tipo),
+                    "\"" + hash + "-w" + ancho + "\"", true);
+        }
+        varianteImagenService.programar(original, tipo, ancho);
+        return new ArchivoImagen(original, tipo, archivoOriginal.etag(), false);
+    }
+
+    // Ruta del archivo de un hash; se reparte en subcarpetas por los dos primeros caracteres
+    public Path resolver(String hash) {
+        if (hash == null || !HASH_VALIDO.matcher(hash).matches()) {
+            throw new IllegalArgumentException("Hash de imagen inválido");
+        }
+        return carpeta.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    // URL pública y versionada de la imagen de un producto
+    public String construirUrl(Long productoId, String hash) {
+        return construirUrl(productoId, hash, null);
+    }
+
+    // Igual, pidiendo una variante reducida al ancho indicado
+    public String construirUrl(Long productoId, String hash, Integer ancho) {
+        if (hash == null) {
+            return null;
+        }
+        ServletUriComponentsBuilder url = ServletUriComponentsBuilder.fromCurrentContextPath();
+        url.path("/api/productos/{id}/imagen");
+        if (ancho != null) {
+            url.queryParam("w", ancho);
+        }
+        return url.queryParam("v", hash)
+                .buildAndExpand(productoId)
+                .toUriString();
+    }
+
+    // Extraer el hash de una URL generada por construirUrl (el cliente la reenvía al editar)
+    public String extraerHashDeUrl(String url) {
+        int inicio = url.indexOf("v=");
+        if (inicio < 0) {
+            return null;
+        }
+        String hash = url.substring(inicio + 2);
+        int fin = hash.indexOf('&');
+        if (fin >= 0) {
+            hash = hash.substring(0, fin);
+        }
+        return HASH_VALIDO.matcher(hash).matches() ? hash : null;
+    }
+
+    /**
+     * Copia al almacén las imágenes de la antigua columna LONGBLOB {@code productos.imagen}
+     * que aún no tienen archivo: las que nunca se migraron y las que lo perdieron porque
+     * el disco no se conservó entre despliegues. La columna no se toca, sigue siendo la
+     * copia de respaldo hasta {@link #vaciarImagenesLegacy}. Un producto a la vez para no
+     * cargar todas las imágenes en memoria.
+     */
+    public int migrarImagenesLegacy() {
+        if (!existeColumnaLegacy()) {
+            return 0;
+        }
+
+        int migradas = 0;
+        for (Map<String, Object> fila : jdbcTemplate.queryForList(
+                "SELECT id, imagen_hash FROM productos WHERE imagen IS NOT NULL")) {
+            Long id = ((Number) fila.get("id")).longValue();
+            String hash = (String) fila.get("imagen_hash");
+            if (hash != null && HASH_VALIDO.matcher(hash).matches() && Files.exists(resolver(hash))) {
+                continue;
+            }
+
+            byte[] contenido = jdbcTemplate.queryForObject(
+                    "SELECT imagen FROM productos WHERE id = ?", byte[].class, id);
+            if (contenido == null || contenido.length == 0) {
+                continue;
+            }
+            try {
+                ImagenGuardada imagen = guardar(contenido);
+                jdbcTemplate.update("UPDATE productos SET imagen_hash = ?, imagen_tipo = ?, imagen_ancho = ?, " +
+                                "imagen_alto = ? WHERE id = ?",
+                        imagen.hash(), imagen.tipoContenido(), imagen.ancho(), imagen.alto(), id);
+                migradas++;
+            } catch (RuntimeException e) {
+                System.err.println("No se pudo migrar la imagen del producto " + id + ": " + e.getMessage());
+            }
+        }
+        return migradas;
+    }
+
+    /**
+     * Deja en NULL la columna antigua de los productos cuya imagen ya está en el almacén
+     * con los mismos bytes. Solo con {@code app.imagenes.migracion.vaciar-legacy=true}:
+     * si el almacén está en un disco efímero, la columna es la única copia que sobrevive
+     * a un reinicio.
+     */
+    public int vaciarImagenesLegacy() {
+        if (!vaciarLegacy || !existeColumnaLegacy()) {
+            return 0;
+        }
+
+        int vaciadas = 0;
+        for (Map<String, Object> fila : jdbcTemplate.queryForList(
+                "SELECT id, imagen_hash FROM productos WHERE imagen IS NOT NULL AND imagen_hash IS NOT NULL")) {
+            Long id = ((Number) fila.get("id")).longValue();
+            String hash = (String) fila.get("imagen_hash");
+            try {
+                byte[] archivo = Files.readAllBytes(resolver(hash));
+                byte[] contenido = jdbcTemplate.queryForObject(
+                        "SELECT imagen FROM productos WHERE id = ?", byte[].class, id);
+                if (contenido != null && calcularHash(contenido).equals(hash) && calcularHash(archivo).equals(hash)) {
+                    vaciadas += jdbcTemplate.update("UPDATE productos SET imagen = NULL WHERE id = ?", id);
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("No se vació la imagen antigua del producto " + id + ": " + e.getMessage());
+            }
+        }
+        return vaciadas;
+    }
+
+    private boolean existeColumnaLegacy() {
+        return Boolean.TRUE.equals(jdbcTemplate.execute((ConnectionCallback<Boolean>) conexion -> {
+            for (String tabla : new String[]{"productos", "PRODUCTOS"}) {
+                try (ResultSet columnas = conexion.getMetaData()
+                        .getColumns(conexion.getCatalog(), null, tabla, null)) {
+                    while (columnas.next()) {
+                        if ("imagen".equalsIgnoreCase(columnas.getString("COLUMN_NAME"))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }));
+    }
+
+    private String calcularHash(byte[] contenido) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(contenido));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    // Tipo por firma de bytes, sin confiar en lo que declare el cliente
+    private String detectarTipoContenido(byte[] b) {
+        if (b.length >= 3 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xD8 && (b[2] & 0xFF) == 0xFF) {
+            return "image/jpeg";
+        }
+        if (b.length >= 8 && (b[0] & 0xFF) == 0x89 && b[1] == 'P' && b[2] == 'N' && b[3] == 'G') {
+            return "image/png";
+        }
+        if (b.length >= 6 && b[0] == 'G' && b[1] == 'I' && b[2] == 'F' && b[3] == '8') {
+            return "image/gif";
+        }
+        if (b.length >= 12 && b[0] == 'R' && b[1] == 'I' && b[2] == 'F' && b[3] == 'F'
+                && b[8] == 'W' && b[9] == 'E' && b[10] == 'B' && b[11] == 'P') {
+            return "image/webp";
+        }
+        return null;
+    }
+
+    // Ancho y alto leídos solo de la cabecera; null si ImageIO no reconoce el formato
+    private int[] leerDimensiones(byte[] contenido) {
+        try (ImageInputStream entrada = ImageIO.createImageInputStream(new ByteArrayInputStream(contenido))) {
+            Iterator<ImageReader> lectores = ImageIO.getImageReaders(entrada);
+            if (!lectores.hasNext()) {
+                return null;
+            }
+            ImageReader lector = lectores.next();
+            try {
+                lector.setInput(entrada, true, true);
+                return new int[]{lector.getWidth(0), lector.getHeight(0)};
+            } finally {
+                lector.dispose();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
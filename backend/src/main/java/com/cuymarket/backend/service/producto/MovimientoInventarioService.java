@@ -0,0 +1,285 @@
+package com.cuymarket.backend.service.producto;
+
+import com.cuymarket.backend.dto.producto.DiferenciaStockDTO;
+import com.cuymarket.backend.dto.producto.MovimientoInventarioResponse;
+import com.cuymarket.backend.exception.ConflictException;
+import com.cuymarket.backend.model.enums.TipoMovimiento;
+import com.cuymarket.backend.repository.producto.MovimientoInventarioRepository;
+import com.cuymarket.backend.service.carrito.CarritoStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Diario de movimientos de inventario. Los movimientos se registran al confirmar la
+ * transacción que cambió el stock y van a una cola en memoria; un hilo los inserta en
+ * lotes JDBC, así el checkout no espera a la auditoría. Si la cola se llena, el
+ * movimiento se inserta directamente en lugar de perderse.
+ *
+ * <p>Si un lote falla se escribe movimiento por movimiento, con reintentos. Los que aun así
+ * no se guardan quedan contados: desde ese momento el diario está incompleto y no se
+ * permite corregir el stock con él hasta reiniciar.</p>
+ */
+@Service
+@RequiredArgsConstructor
+public class MovimientoInventarioService {
+
+    private static final String INSERTAR = "INSERT INTO movimientos_inventario " +
+            "(producto_id, tipo, cantidad, motivo, fecha) VALUES (?, ?, ?, ?, ?)";
+
+    private final MovimientoInventarioRepository movimientoRepository;
+    private final ReservaStockService reservaStockService;
+    private final CarritoStore carritoStore;
+    private final JdbcTemplate jdbcTemplate;
+    private final MeterRegistry meterRegistry;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.inventario.movimientos.max-en-cola:10000}")
+    private int maxEnCola;
+
+    @Value("${app.inventario.movimientos.tamano-lote:500}")
+    private int tamanoLote;
+
+    @Value("${app.inventario.movimientos.reintentos:3}")
+    private int reintentos;
+
+    private BlockingQueue<Movimiento> cola;
+    // Serializa las escrituras del hilo con el vaciado que hace la reconstrucción
+    private final Object escritura = new Object();
+    private TransactionTemplate transaccionPropia;
+    private Thread escritor;
+    private volatile boolean activo = true;
+
+    private Counter escritosEnLote;
+    private Counter escritosDirectos;
+    private Counter perdidos;
+    // Movimientos que no se pudieron guardar desde el arranque
+    private final AtomicLong movimientosPerdidos = new AtomicLong();
+
+    private record Movimiento(Long productoId, TipoMovimiento tipo, int cantidad, String motivo,
+            LocalDateTime fecha) {
+    }
+
+    @PostConstruct
+    void inicializar() {
+        cola = new ArrayBlockingQueue<>(maxEnCola);
+        transaccionPropia = new TransactionTemplate(transactionManager);
+        transaccionPropia.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        escritosEnLote = Counter.builder("inventario.movimientos.escritos")
+                .description("Movimientos de inventario insertados por forma de escritura")
+                .tag("modo", "lote")
+                .register(meterRegistry);
+        escritosDirectos = Counter.builder("inventario.movimientos.escritos")
+                .description("Movimientos de inventario insertados por forma de escritura")
+                .tag("modo", "directo")
+                .register(meterRegistry);
+        perdidos = Counter.builder("inventario.movimientos.perdidos")
+                .description("Movimientos de inventario que no se pudieron guardar tras los reintentos")
+                .register(meterRegistry);
+        meterRegistry.gauge("inventario.movimientos.en-cola", cola, BlockingQueue::size);
+
+        escritor = Thread.ofPlatform().name("movimientos-inventario").daemon().start(this::escribirEnLotes);
+    }
+
+    @PreDestroy
+    void detener() throws InterruptedException {
+        activo = false;
+        escritor.interrupt();
+        escritor.join(TimeUnit.SECONDS.toMillis(10));
+        // Lo que quedó en la cola se escribe antes de cerrar
+        vaciarCola();
+    }
+
+    /**
+     * Registra un movimiento. Dentro de una transacción se encola al confirmarse, así un
+     * checkout revertido no deja movimientos; la cantidad lleva signo.
+     */
+    public void registrar(Long productoId, TipoMovimiento tipo, int cantidad, String motivo) {
+        if (cantidad == 0) {
+            return;
+        }
+        String motivoRecortado = motivo != null && motivo.length() > 255 ? motivo.substring(0, 255) : motivo;
+        Movimiento movimiento = new Movimiento(productoId, tipo, cantidad, motivoRecortado, LocalDateTime.now());
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    encolar(movimiento);
+                }
+            });
+        } else {
+            encolar(movimiento);
+        }
+    }
+
+    // Consultas
+    @Transactional(readOnly = true)
+    public Page<MovimientoInventarioResponse> listarPorProducto(Long productoId, Pageable pageable) {
+        return movimientoRepository.buscarPorProducto(productoId, pageable);
+    }
+
+    @Transactional(readOnly = true)
+    public Page<MovimientoInventarioResponse> listarPorFecha(LocalDateTime desde, LocalDateTime hasta,
+            Pageable pageable) {
+        return movimientoRepository.buscarPorFecha(desde, hasta, pageable);
+    }
+
+    // Saldo inicial de los productos que existían antes del diario
+    @Transactional
+    public int registrarSaldosIniciales() {
+        return movimientoRepository.registrarSaldosIniciales();
+    }
+
+    /**
+     * Compara el stock de cada producto con la suma de sus movimientos y, si se pide,
+     * corrige el stock con el valor del diario (nunca por debajo de cero). Devuelve solo
+     * los productos con diferencia. Pensado para mantenimiento: los cambios de stock que
+     * ocurran mientras corre pueden quedar fuera de la comparación. No corrige nada si
+     * algún movimiento se perdió desde el arranque.
+     */
+    @Transactional
+    public List<DiferenciaStockDTO> reconstruirStock(boolean aplicar) {
+        vaciarCola();
+
+        long sinGuardar = movimientosPerdidos.get();
+        if (aplicar && sinGuardar > 0) {
+            throw new ConflictException("El diario de inventario está incompleto: " + sinGuardar +
+                    " movimientos no se pudieron guardar desde el arranque. No se puede corregir el stock con él");
+        }
+
+        List<DiferenciaStockDTO> diferencias = movimientoRepository.compararStockConMovimientos().stream()
+                .filter(d -> d.getStockSegunMovimientos() != d.getStockActual().longValue())
+                .toList();
+
+        if (aplicar && !diferencias.isEmpty()) {
+            jdbcTemplate.batchUpdate(
+                    "UPDATE productos SET stock_disponible = ?, version = version + 1 WHERE id = ?",
+                    diferencias, diferencias.size(), (ps, d) -> {
+                        ps.setInt(1, (int) Math.max(0, d.getStockSegunMovimientos()));
+                        ps.setLong(2, d.getProductoId());
+                    });
+            diferencias.forEach(d -> {
+                reservaStockService.invalidar(d.getProductoId());
+                carritoStore.invalidarConProducto(d.getProductoId());
+            });
+        }
+        return diferencias;
+    }
+
+    private void encolar(Movimiento movimiento) {
+        if (!cola.offer(movimiento)) {
+            escribirDirecto(movimiento);
+        }
+    }
+
+    private void escribirEnLotes() {
+        while (activo) {
+            try {
+                // Espera el primer movimiento y junta los que lleguen hasta completar el lote
+                Movimiento primero = cola.poll(1, TimeUnit.SECONDS);
+                if (primero == null) {
+                    continue;
+                }
+                synchronized (escritura) {
+                    List<Movimiento> lote = new ArrayList<>(tamanoLote);
+                    lote.add(primero);
+                    cola.drainTo(lote, tamanoLote - 1);
+                    escribirLote(lote);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Escribe de inmediato todo lo pendiente (antes de reconstruir o al apagar)
+    private void vaciarCola() {
+        synchronized (escritura) {
+            List<Movimiento> lote = new ArrayList<>(tamanoLote);
+            while (cola.drainTo(lote, tamanoLote) > 0) {
+                escribirLote(lote);
+                lote = new ArrayList<>(tamanoLote);
+            }
+        }
+    }
+
+    private void escribirLote(List<Movimiento> lote) {
+        try {
+            // En su propia transacción: si falla no queda la mitad del lote escrita
+            transaccionPropia.executeWithoutResult(status -> insertar(lote));
+            escritosEnLote.increment(lote.size());
+        } catch (RuntimeException e) {
+            System.err.println("No se pudo guardar un lote de " + lote.size() +
+                    " movimientos de inventario, se escriben uno a uno: " + e.getMessage());
+            lote.forEach(this::escribirDirecto);
+        }
+    }
+
+    // Tras el commit la transacción original ya no escribe: se usa una nueva por movimiento
+    private void escribirDirecto(Movimiento movimiento) {
+        // La interrupción se recuerda y se restaura al final: si se marcara dentro del bucle,
+        // cada sleep siguiente fallaría al instante y los reintentos irían sin espera
+        boolean interrumpido = false;
+        try {
+            for (int intento = 1; intento <= reintentos; intento++) {
+                try {
+                    transaccionPropia.executeWithoutResult(status -> insertar(List.of(movimiento)));
+                    escritosDirectos.increment();
+                    return;
+                } catch (RuntimeException e) {
+                    if (intento == reintentos) {
+                        movimientosPerdidos.incrementAndGet();
+                        perdidos.increment();
+                        System.err.println("Movimiento de inventario perdido (producto " + movimiento.productoId() +
+                                ", " + movimiento.tipo() + " " + movimiento.cantidad() + "): " + e.getMessage());
+                        return;
+                    }
+                    try {
+                        Thread.sleep(100L * intento);
+                    } catch (InterruptedException ie) {
+                        // Se sigue intentando: el movimiento no debe perderse por el apagado
+                        interrumpido = true;
+                    }
+                }
+            }
+        } finally {
+            if (interrumpido) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void insertar(List<Movimiento> movimientos) {
+        jdbcTemplate.batchUpdate(INSERTAR, movimientos, movimientos.size(), (ps, m) -> {
+            ps.setLong(1, m.productoId());
+            ps.setString(2, m.tipo().name());
+            ps.setInt(3, m.cantidad());
+            ps.setString(4, m.motivo());
+            ps.setTimestamp(5, Timestamp.valueOf(m.fecha()));
+        });
+    }
+}
@@ -1,17 +1,29 @@
 package com.cuymarket.backend.service.producto;
 
+import com.cuymarket.backend.dto.producto.ProductoListadoResponse;
+import com.cuymarket.backend.exception.ConflictException;
+import com.cuymarket.backend.model.enums.TipoMovimiento;
 import com.cuymarket.backend.model.producto.Categoria;
 import com.cuymarket.backend.model.producto.Producto;
 import com.cuymarket.backend.repository.producto.CategoriaRepository;
 import com.cuymarket.backend.repository.producto.ProductoRepository;
+import com.cuymarket.backend.service.carrito.CarritoStore;
+import com.cuymarket.backend.service.sistema.DatosDashboardModificadosEvent;
+import jakarta.persistence.EntityManager;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 @Service
 @RequiredArgsConstructor
@@ -19,7 +31,13 @@ import java.util.List;
 public class ProductoService {
 
     private final ProductoRepository productoRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final EntityManager entityManager;
+    private final ReservaStockService reservaStockService;
+    private final MovimientoInventarioService movimientoInventarioService;
+    private final CarritoStore carritoStore;
     private final CategoriaRepository categoriaRepository;
+    private final ApplicationEventPublisher eventPublisher;
 
     // Crear producto
     public Producto crear(Producto producto, Long categoriaId) {
@@ -29,12 +47,20 @@ public class ProductoService {
         producto.setCategoria(categoria);
         producto.setActivo(true);
 
-        return productoRepository.save(producto);
+        Producto guardado = productoRepository.save(producto);
+        if (guardado.getStockDisponible() != null) {
+            movimientoInventarioService.registrar(guardado.getId(), TipoMovimiento.ENTRADA,
+                    guardado.getStockDisponible(), "Stock inicial");
+        }
+
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("producto"));
+        return guardado;
     }
 
     // Actualizar producto
-    public Producto actualizar(Long id, Producto productoActualizado, Long categoriaId) {
+    public Producto actualizar(Long id, Producto productoActualizado, Long categoriaId, long version) {
         Producto producto = obtenerPorId(id);
+        verificarVersion(producto, version);
 
         if (categoriaId != null) {
             Categoria categoria = categoriaRepository.findById(categoriaId)
@@ -50,11 +76,23 @@ public class ProductoService {
         producto.setTipo(productoActualizado.getTipo());
         producto.setCertificado(productoActualizado.getCertificado());
         producto.setCaracteristicas(productoActualizado.getCaracteristicas());
-        producto.setImagen(productoActualizado.getImagen());
+        // La imagen solo cambia si llega un hash distinto al actual (null la quita)
+        if (!Objects.equals(productoActualizado.getImagenHash(), producto.getImagenHash())) {
+            producto.setImagenHash(productoActualizado.getImagenHash());
+            producto.setImagenTipo(productoActualizado.getImagenTipo());
+            producto.setImagenAncho(productoActualizado.getImagenAncho());
+            producto.setImagenAlto(productoActualizado.getImagenAlto());
+        }
         producto.setActivo(productoActualizado.getActivo());
+        int stockAnterior = producto.getStockDisponible();
         producto.setStockDisponible(productoActualizado.getStockDisponible());
         producto.setStockMinimo(productoActualizado.getStockMinimo());
+        reservaStockService.invalidar(id);
+        carritoStore.invalidarConProducto(id);
+        movimientoInventarioService.registrar(id, TipoMovimiento.AJUSTE,
+                producto.getStockDisponible() - stockAnterior, "Edición del producto");
 
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("producto"));
         return productoRepository.save(producto);
     }
 
@@ -62,6 +100,7 @@ public class ProductoService {
     public Producto cambiarEstado(Long id, Boolean activo) {
         Producto producto = obtenerPorId(id);
         producto.setActivo(activo);
+        carritoStore.invalidarConProducto(id);
         return productoRepository.save(producto);
     }
 
@@ -74,6 +113,7 @@ public class ProductoService {
         }
 
         producto.setPrecio(precio);
+        carritoStore.invalidarConProducto(id);
         return productoRepository.save(producto);
     }
 
@@ -100,6 +140,21 @@ public class ProductoService {
         return productoRepository.findAll(pageable);
     }
 
+    // Catálogo ligero (sin descripción ni imagen); todos los filtros son opcionales
+    @Transactional(readOnly = true)
+    public Page<ProductoListadoResponse> listarCatalogo(Long categoriaId, String texto, String raza,
+            BigDecimal precioMin, BigDecimal precioMax, Boolean activo, Pageable pageable) {
+        String textoNormalizado = texto != null && !texto.isBlank() ? texto.trim() : null;
+        String razaNormalizada = raza != null && !raza.isBlank() ? raza.trim() : null;
+        return productoRepository.buscarListado(categoriaId, textoNormalizado, razaNormalizada,
+                precioMin, precioMax, activo, pageable);
+    }
+
+    @Transactional(readOnly = true)
+    public List<String> listarRazas() {
+        return productoRepository.findRazasActivas();
+    }
+
     @Transactional(readOnly = true)
     public List<Producto> listarActivos() {
         return productoRepository.findByActivo(true);
@@ -149,17 +204,23 @@ public class ProductoService {
 
     // Métodos de gestión de stock
     public Producto incrementarStock(Long id, Integer cantidad, String motivo) {
+        return incrementarStock(id, cantidad, motivo, TipoMovimiento.ENTRADA);
+    }
+
+    // Igual, indicando el tipo de movimiento (por ejemplo DEVOLUCION al cancelar un pedido)
+    public Producto incrementarStock(Long id, Integer cantidad, String motivo, TipoMovimiento tipo) {
         if (cantidad <= 0) {
             throw new RuntimeException("La cantidad debe ser mayor a 0");
         }
 
-        Producto producto = obtenerPorId(id);
-        Integer stockAnterior = producto.getStockDisponible();
-        producto.setStockDisponible(stockAnterior + cantidad);
-
-        // TODO: Registrar movimiento en MovimientoInventario si se requiere auditoría
+        if (productoRepository.incrementarStockAtomico(id, cantidad) == 0) {
+            throw new RuntimeException("Producto no encontrado con ID: " + id);
+        }
+        reservaStockService.invalidar(id);
+        movimientoInventarioService.registrar(id, tipo, cantidad, motivo);
 
-        return productoRepository.save(producto);
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("producto"));
+        return recargar(id);
     }
 
     public Producto descontarStock(Long id, Integer cantidad, String motivo) {
@@ -167,31 +228,104 @@ public class ProductoService {
             throw new RuntimeException("La cantidad debe ser mayor a 0");
         }
 
-        Producto producto = obtenerPorId(id);
-
-        if (producto.getStockDisponible() < cantidad) {
+        // Un solo UPDATE condicional: no hay ventana entre la comprobación y la escritura
+        if (productoRepository.descontarStockSiDisponible(id, cantidad) == 0) {
+            Producto producto = recargar(id);
             throw new RuntimeException("Stock insuficiente. Disponible: " + producto.getStockDisponible());
         }
+        reservaStockService.invalidar(id);
+        movimientoInventarioService.registrar(id, TipoMovimiento.SALIDA, -cantidad, motivo);
+
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("producto"));
+        return recargar(id);
+    }
 
-        Integer stockAnterior = producto.getStockDisponible();
-        producto.setStockDisponible(stockAnterior - cantidad);
+    /**
+     * Descuenta el stock de varios productos con un único UPDATE, sin importar cuántas
+     * líneas tenga el pedido. La condición por fila es la misma que en {@link #descontarStock};
+     * si alguna no alcanza, el UPDATE afecta menos filas que líneas, se lanza una excepción
+     * y la transacción del llamador deshace el descuento completo. El stock se lee antes
+     * del UPDATE solo para el mensaje de error: quien decide sigue siendo la condición.
+     */
+    public void descontarStockLote(Map<Long, Integer> cantidades, String motivo) {
+        // Orden fijo por id para que dos lotes concurrentes bloqueen las filas en el mismo orden
+        List<Map.Entry<Long, Integer>> lineas = cantidades.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .toList();
+
+        String casos = " WHEN ? THEN ?".repeat(lineas.size());
+        String sql = "UPDATE productos SET stock_disponible = stock_disponible - CASE id" + casos + " END, " +
+                "version = version + 1 " +
+                "WHERE id IN (" + String.join(", ", Collections.nCopies(lineas.size(), "?")) + ") " +
+                "AND stock_disponible >= CASE id" + casos + " END";
+
+        List<Object> parametros = new ArrayList<>();
+        lineas.forEach(linea -> parametros.addAll(List.of(linea.getKey(), linea.getValue())));
+        lineas.forEach(linea -> parametros.add(linea.getKey()));
+        lineas.forEach(linea -> parametros.addAll(List.of(linea.getKey(), linea.getValue())));
+
+        // Después del UPDATE las filas que sí alcanzaron ya tienen el stock descontado y no
+        // se distinguirían de las que no: el diagnóstico usa los valores previos
+        List<Object[]> stocksPrevios = productoRepository.obtenerStocksDisponibles(cantidades.keySet());
+        List<Long> sinStock = stocksPrevios.stream()
+                .filter(fila -> ((Number) fila[1]).intValue() < cantidades.get((Long) fila[0]))
+                .map(fila -> (Long) fila[0])
+                .toList();
+        if (stocksPrevios.size() < cantidades.size()) {
+            throw new RuntimeException("Alguno de los productos del pedido ya no existe");
+        }
+        if (!sinStock.isEmpty()) {
+            throw new RuntimeException("Stock insuficiente para: " +
+                    String.join(", ", productoRepository.obtenerNombres(sinStock)));
+        }
 
-        // TODO: Registrar movimiento en MovimientoInventario si se requiere auditoría
+        if (jdbcTemplate.update(sql, parametros.toArray()) < lineas.size()) {
+            // Otro pedido se llevó el stock entre la lectura y el UPDATE
+            throw new RuntimeException("Stock insuficiente: otro pedido acaba de tomar el stock disponible, " +
+                    "intente nuevamente");
+        }
 
-        return productoRepository.save(producto);
+        lineas.forEach(linea ->
+                movimientoInventarioService.registrar(linea.getKey(), TipoMovimiento.SALIDA, -linea.getValue(), motivo));
+
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("producto"));
     }
 
-    public Producto actualizarStock(Long id, Integer nuevoStock) {
+    public Producto actualizarStock(Long id, Integer nuevoStock, long version) {
         if (nuevoStock < 0) {
             throw new RuntimeException("El stock no puede ser negativo");
         }
 
         Producto producto = obtenerPorId(id);
+        verificarVersion(producto, version);
+        int stockAnterior = producto.getStockDisponible();
         producto.setStockDisponible(nuevoStock);
+        reservaStockService.invalidar(id);
+        movimientoInventarioService.registrar(id, TipoMovimiento.AJUSTE, nuevoStock - stockAnterior, "Ajuste de stock");
 
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("producto"));
         return productoRepository.save(producto);
     }
 
+    /**
+     * El bloqueo optimista solo cubre la transacción; esta comprobación lo extiende al
+     * formulario. Cada venta sube la versión, así que un valor absoluto de stock leído
+     * antes de una venta se rechaza en vez de deshacerla.
+     */
+    private void verificarVersion(Producto producto, long version) {
+        if (producto.getVersion() != version) {
+            throw new ConflictException("El producto cambió desde que se abrió el formulario " +
+                    "(por ejemplo, por una venta); recargue los datos e intente nuevamente");
+        }
+    }
+
+    // Leer el stock actual de la base de datos, no el que quedó en memoria antes del UPDATE
+    private Producto recargar(Long id) {
+        Producto producto = obtenerPorId(id);
+        entityManager.refresh(producto);
+        return producto;
+    }
+
     @Transactional(readOnly = true)
     public boolean tieneStockDisponible(Long id, Integer cantidad) {
         Producto producto = obtenerPorId(id);
@@ -202,5 +336,8 @@ public class ProductoService {
     public void eliminar(Long id) {
         Producto producto = obtenerPorId(id);
         productoRepository.delete(producto);
+        reservaStockService.invalidar(id);
+        carritoStore.invalidarConProducto(id);
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("producto"));
     }
 }
@@ -0,0 +1,233 @@
+package com.cuymarket.backend.service.producto;
+
+import com.cuymarket.backend.repository.producto.ProductoRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Libro de reservas de stock en memoria. Cada producto tiene un contador atómico con
+ * las unidades que aún se pueden reservar (stock de la base menos las reservas en
+ * curso), así un producto agotado se rechaza sin tocar la fila en la base de datos.
+ *
+ * <p>El contador solo filtra: la venta se sigue validando con el UPDATE condicional
+ * de {@link ProductoService#descontarStockLote}. Si la transacción confirma, la reserva
+ * se da por consumida; si se revierte o vence, las unidades vuelven al contador.</p>
+ */
+@Service
+@RequiredArgsConstructor
+public class ReservaStockService {
+
+    private final ProductoRepository productoRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.stock.reserva-ttl-segundos:120}")
+    private long ttlSegundos;
+
+    // Producto -> unidades reservables; se siembra desde la base al primer uso
+    private final ConcurrentHashMap<Long, AtomicInteger> disponibles = new ConcurrentHashMap<>();
+    // Reservas en curso por id
+    private final ConcurrentHashMap<String, Reserva> reservas = new ConcurrentHashMap<>();
+    // Reservas vencidas cuya transacción todavía podría confirmar
+    private final ConcurrentHashMap<String, Reserva> vencidasRecientes = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService limpieza = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("reservas-stock").daemon().factory());
+
+    private Counter aceptadas;
+    private Counter rechazadas;
+    private Counter vencidas;
+
+    private record Reserva(String id, Map<Long, Integer> lineas, long expiraEnNanos) {
+    }
+
+    @PostConstruct
+    void inicializar() {
+        aceptadas = Counter.builder("stock.reservas")
+                .description("Reservas de stock por resultado")
+                .tag("resultado", "aceptada")
+                .register(meterRegistry);
+        rechazadas = Counter.builder("stock.reservas")
+                .description("Reservas de stock por resultado")
+                .tag("resultado", "rechazada")
+                .register(meterRegistry);
+        vencidas = Counter.builder("stock.reservas.vencidas")
+                .description("Reservas liberadas por superar su tiempo límite")
+                .register(meterRegistry);
+        meterRegistry.gauge("stock.reservas.activas", reservas, Map::size);
+
+        long periodo = Math.max(1, ttlSegundos / 4);
+        limpieza.scheduleWithFixedDelay(this::liberarVencidas, periodo, periodo, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void detener() {
+        limpieza.shutdownNow();
+    }
+
+    /**
+     * Reserva las cantidades indicadas (productoId -> cantidad). Todo o nada: si un
+     * producto no alcanza se devuelven las unidades ya tomadas y se lanza una excepción.
+     * Dentro de una transacción la reserva se confirma o libera sola al terminar.
+     */
+    public String reservar(Map<Long, Integer> cantidades) {
+        // Mismo orden siempre, para que el resultado no dependa de cómo llegan las líneas
+        Map<Long, Integer> lineas = new TreeMap<>(cantidades);
+        List<Runnable> devoluciones = new ArrayList<>();
+        sembrar(lineas.keySet());
+
+        for (Map.Entry<Long, Integer> linea : lineas.entrySet()) {
+            AtomicInteger contador = contador(linea.getKey());
+            if (!tomar(contador, linea.getValue())) {
+                devoluciones.forEach(Runnable::run);
+                rechazadas.increment();
+                String nombre = productoRepository.findById(linea.getKey())
+                        .map(p -> p.getNombre())
+                        .orElse("producto " + linea.getKey());
+                throw new RuntimeException("Stock insuficiente para: " + nombre);
+            }
+            devoluciones.add(() -> contador.addAndGet(linea.getValue()));
+        }
+
+        String id = UUID.randomUUID().toString();
+        reservas.put(id, new Reserva(id, lineas, System.nanoTime() + TimeUnit.SECONDS.toNanos(ttlSegundos)));
+        aceptadas.increment();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        confirmar(id);
+                    } else {
+                        liberar(id);
+                    }
+                }
+            });
+        }
+        return id;
+    }
+
+    // La venta quedó grabada en la base: las unidades ya no vuelven al contador
+    public void confirmar(String reservaId) {
+        if (reservas.remove(reservaId) == null) {
+            // Venció antes de confirmar y sus unidades ya se devolvieron: resembrar desde la base
+            Reserva vencida = vencidasRecientes.remove(reservaId);
+            if (vencida != null) {
+                vencida.lineas().keySet().forEach(disponibles::remove);
+            }
+        }
+    }
+
+    // La venta no se hizo. Se resiembra desde la base en vez de sumar las unidades:
+    // si fue el UPDATE condicional el que la rechazó, el contador estaba desfasado
+    public void liberar(String reservaId) {
+        Reserva reserva = reservas.remove(reservaId);
+        if (reserva != null) {
+            reserva.lineas().keySet().forEach(disponibles::remove);
+        }
+    }
+
+    /**
+     * Descarta el contador de un producto para que se vuelva a leer de la base. Se llama
+     * cuando el stock cambia por fuera de una reserva (ajustes, cancelaciones); dentro
+     * de una transacción se aplica al confirmar.
+     */
+    public void invalidar(Long productoId) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    disponibles.remove(productoId);
+                }
+            });
+        } else {
+            disponibles.remove(productoId);
+        }
+    }
+
+    // Siembra en una sola consulta los contadores que faltan (carrito con varios productos fríos)
+    private void sembrar(Collection<Long> productoIds) {
+        List<Long> faltantes = productoIds.stream()
+                .filter(id -> !disponibles.containsKey(id))
+                .toList();
+        if (faltantes.size() < 2) {
+            return;
+        }
+        for (Object[] fila : productoRepository.obtenerStocksDisponibles(faltantes)) {
+            Long id = (Long) fila[0];
+            int stock = fila[1] != null ? ((Number) fila[1]).intValue() : 0;
+            disponibles.computeIfAbsent(id, clave -> new AtomicInteger(stock - retenido(clave)));
+        }
+    }
+
+    private AtomicInteger contador(Long productoId) {
+        return disponibles.computeIfAbsent(productoId, id -> {
+            Integer stock = productoRepository.obtenerStockDisponible(id);
+            return new AtomicInteger((stock != null ? stock : 0) - retenido(id));
+        });
+    }
+
+    // Unidades de un producto en reservas todavía abiertas
+    private int retenido(Long productoId) {
+        int total = 0;
+        for (Reserva reserva : reservas.values()) {
+            total += reserva.lineas().getOrDefault(productoId, 0);
+        }
+        return total;
+    }
+
+    // Descuento sin bloqueo: reintenta el CAS hasta lograrlo o quedarse sin unidades
+    private boolean tomar(AtomicInteger contador, int cantidad) {
+        while (true) {
+            int actual = contador.get();
+            if (actual < cantidad) {
+                return false;
+            }
+            if (contador.compareAndSet(actual, actual - cantidad)) {
+                return true;
+            }
+        }
+    }
+
+    private void liberarVencidas() {
+        long ahora = System.nanoTime();
+        long olvido = TimeUnit.SECONDS.toNanos(ttlSegundos) * 4;
+        vencidasRecientes.values().removeIf(r -> ahora - r.expiraEnNanos() > olvido);
+
+        for (Reserva reserva : reservas.values()) {
+            if (ahora - reserva.expiraEnNanos() > 0 && reservas.remove(reserva.id(), reserva)) {
+                reserva.lineas().forEach((productoId, cantidad) -> {
+                    AtomicInteger contador = disponibles.get(productoId);
+                    if (contador != null) {
+                        contador.addAndGet(cantidad);
+                    }
+                });
+                vencidasRecientes.put(reserva.id(), reserva);
+                vencidas.increment();
+            }
+        }
+
+        // Los productos sin reservas abiertas se vuelven a leer de la base en el próximo uso,
+        // así cualquier desfase del contador dura como mucho un ciclo de limpieza
+        disponibles.keySet().removeIf(productoId -> retenido(productoId) == 0);
+    }
+}
@@ -0,0 +1,212 @@
+package com.cuymarket.backend.service.producto;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Genera versiones reducidas de las imágenes de producto a anchos fijos. Se trabajan
+ * en segundo plano con un pool y una cola acotados; si la cola está llena la variante
+ * se descarta y se vuelve a pedir la primera vez que alguien la solicite.
+ */
+@Service
+@RequiredArgsConstructor
+public class VarianteImagenService {
+
+    private static final float CALIDAD_JPEG = 0.82f;
+
+    // Valor de anchoVariante cuando ninguna variante cubre el ancho pedido: se sirve el original
+    public static final int ORIGINAL = Integer.MAX_VALUE;
+
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.imagenes.variantes.anchos:200,400,800}")
+    private List<Integer> anchos;
+
+    @Value("${app.imagenes.variantes.hilos:2}")
+    private int hilos;
+
+    @Value("${app.imagenes.variantes.max-en-cola:100}")
+    private int maxEnCola;
+
+    private ThreadPoolExecutor executor;
+    // Variantes encoladas o generándose, para no repetir trabajo
+    private final Set<Path> enCurso = ConcurrentHashMap.newKeySet();
+
+    private Timer tiempoGeneracion;
+    private Counter descartadas;
+
+    @PostConstruct
+    void inicializar() {
+        anchos = anchos.stream().sorted().distinct().toList();
+        executor = new ThreadPoolExecutor(hilos, hilos, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxEnCola),
+                Thread.ofPlatform().name("imagen-variante-", 0).daemon().factory());
+
+        tiempoGeneracion = Timer.builder("imagenes.variantes.generacion")
+                .description("Tiempo de generación de cada variante de imagen")
+                .register(meterRegistry);
+        descartadas = Counter.builder("imagenes.variantes.descartadas")
+                .description("Variantes no encoladas porque la cola estaba llena")
+                .register(meterRegistry);
+        meterRegistry.gauge("imagenes.variantes.en-cola", executor, e -> e.getQueue().size());
+    }
+
+    @PreDestroy
+    void detener() {
+        executor.shutdownNow();
+    }
+
+    // Ancho configurado más pequeño que cubre el solicitado, u ORIGINAL si es más ancho que todos
+    public int anchoVariante(int solicitado) {
+        for (Integer ancho : anchos) {
+            if (ancho >= solicitado) {
+                return ancho;
+            }
+        }
+        return ORIGINAL;
+    }
+
+    // Las imágenes que pueden tener transparencia se reducen a PNG; el resto a JPEG
+    public String tipoVariante(String tipoOriginal) {
+        return "image/png".equals(tipoOriginal) || "image/gif".equals(tipoOriginal) ? "image/png" : "image/jpeg";
+    }
+
+    public Path rutaVariante(Path original, int ancho, String tipoOriginal) {
+        String extension = "image/png".equals(tipoVariante(tipoOriginal)) ? ".png" : ".jpg";
+        return original.resolveSibling(original.getFileName() + "-w" + ancho + extension);
+    }
+
+    // Encolar todas las variantes más estrechas que el original
+    public void programar(Path original, String tipoOriginal, Integer anchoOriginal) {
+        if (anchoOriginal == null) {
+            return;
+        }
+        for (Integer ancho : anchos) {
+            if (ancho < anchoOriginal) {
+                programar(original, tipoOriginal, ancho.intValue());
+            }
+        }
+    }
+
+    public void programar(Path original, String tipoOriginal, int ancho) {
+        Path destino = rutaVariante(original, ancho, tipoOriginal);
+        if (Files.exists(destino) || !enCurso.add(destino)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    tiempoGeneracion.record(() -> generar(original, destino, ancho, tipoVariante(tipoOriginal)));
+                } finally {
+                    enCurso.remove(destino);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            enCurso.remove(destino);
+            descartadas.increment();
+        }
+    }
+
+    // Visible en el paquete para el benchmark de generación
+    void generar(Path original, Path destino, int ancho, String tipoContenido) {
+        Path temporal = null;
+        try {
+            BufferedImage imagen = ImageIO.read(original.toFile());
+            if (imagen == null || imagen.getWidth() <= ancho) {
+                return;
+            }
+
+            boolean png = "image/png".equals(tipoContenido);
+            BufferedImage reducida = reducir(imagen, ancho, png);
+
+            temporal = Files.createTempFile(destino.getParent(), destino.getFileName().toString(), ".tmp");
+            if (png) {
+                ImageIO.write(reducida, "png", temporal.toFile());
+            } else {
+                escribirJpeg(reducida, temporal);
+            }
+            Files.move(temporal, destino, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("No se pudo generar la variante " + destino.getFileName() + ": " + e.getMessage());
+        } finally {
+            if (temporal != null) {
+                try {
+                    Files.deleteIfExists(temporal);
+                } catch (IOException e) {
+                    System.err.println("No se pudo borrar el archivo temporal " + temporal + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // Reducción por mitades y un paso final bilineal: mejor calidad que un único salto grande
+    private BufferedImage reducir(BufferedImage imagen, int anchoDestino, boolean conTransparencia) {
+        int tipo = conTransparencia ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        int altoDestino = Math.max(1, Math.round((float) imagen.getHeight() * anchoDestino / imagen.getWidth()));
+
+        BufferedImage actual = imagen;
+        int ancho = imagen.getWidth();
+        int alto = imagen.getHeight();
+        do {
+            ancho = Math.max(anchoDestino, ancho / 2);
+            alto = ancho == anchoDestino ? altoDestino : Math.max(altoDestino, alto / 2);
+
+            BufferedImage siguiente = new BufferedImage(ancho, alto, tipo);
+            Graphics2D g = siguiente.createGraphics();
+            try {
+                if (!conTransparencia) {
+                    g.setColor(Color.WHITE);
+                    g.fillRect(0, 0, ancho, alto);
+                }
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(actual, 0, 0, ancho, alto, null);
+            } finally {
+                g.dispose();
+            }
+            actual = siguiente;
+        } while (ancho > anchoDestino);
+
+        return actual;
+    }
+
+    private void escribirJpeg(BufferedImage imagen, Path destino) throws IOException {
+        ImageWriter escritor = ImageIO.getImageWritersByFormatName("jpeg").next();
+        try (ImageOutputStream salida = ImageIO.createImageOutputStream(destino.toFile())) {
+            ImageWriteParam parametros = escritor.getDefaultWriteParam();
+            parametros.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            parametros.setCompressionQuality(CALIDAD_JPEG);
+            escritor.setOutput(salida);
+            escritor.write(null, new IIOImage(imagen, null, null), parametros);
+        } finally {
+            escritor.dispose();
+        }
+    }
+}
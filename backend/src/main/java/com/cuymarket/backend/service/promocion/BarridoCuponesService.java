@@ -0,0 +1,132 @@
+package com.cuymarket.backend.service.promocion;
+
+import com.cuymarket.backend.repository.promocion.CuponRepository;
+import com.cuymarket.backend.service.sistema.BloqueoTareasService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Desactiva periódicamente los cupones vencidos y agotados. Recorre los ids por tramos,
+ * cada uno con un UPDATE en su propia transacción, así nunca bloquea muchas filas a la
+ * vez. Con varias instancias solo corre en la que tiene el bloqueo de la tarea.
+ */
+@Service
+@RequiredArgsConstructor
+public class BarridoCuponesService {
+
+    private static final String TAREA = "barrido-cupones";
+
+    private final CuponRepository cuponRepository;
+    private final IndiceCuponesService indiceCupones;
+    private final BloqueoTareasService bloqueoTareasService;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.cupones.barrido.intervalo-minutos:15}")
+    private long intervaloMinutos;
+
+    @Value("${app.cupones.barrido.tamano-tramo:1000}")
+    private int tamanoTramo;
+
+    @Value("${app.cupones.barrido.bloqueo-minutos:10}")
+    private long bloqueoMinutos;
+
+    private final ScheduledExecutorService programador = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("barrido-cupones").daemon().factory());
+
+    private Counter desactivados;
+    private Counter omitidos;
+    private Timer duracion;
+
+    @PostConstruct
+    void inicializar() {
+        desactivados = Counter.builder("cupones.barrido.desactivados")
+                .description("Cupones vencidos o agotados desactivados por el barrido")
+                .register(meterRegistry);
+        omitidos = Counter.builder("cupones.barrido.omitidos")
+                .description("Barridos no ejecutados porque otra instancia tenía el bloqueo")
+                .register(meterRegistry);
+        duracion = Timer.builder("cupones.barrido.duracion")
+                .description("Duración de cada barrido de cupones")
+                .register(meterRegistry);
+
+        programador.scheduleWithFixedDelay(this::barrerProgramado, intervaloMinutos, intervaloMinutos, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void detener() {
+        programador.shutdownNow();
+    }
+
+    /**
+     * Ejecuta un barrido completo y devuelve cuántos cupones desactivó (0 si otra instancia
+     * tiene el bloqueo). El bloqueo se renueva tras cada tramo; si se pierde, se deja el
+     * resto para el próximo barrido.
+     */
+    public int barrer() {
+        Duration bloqueo = Duration.ofMinutes(bloqueoMinutos);
+        if (!bloqueoTareasService.adquirir(TAREA, bloqueo)) {
+            omitidos.increment();
+            return 0;
+        }
+
+        Timer.Sample muestra = Timer.start(meterRegistry);
+        int total = 0;
+        try {
+            Long minimo = cuponRepository.obtenerMinimoIdActivo();
+            Long maximo = cuponRepository.obtenerMaximoIdActivo();
+            if (minimo == null) {
+                return 0;
+            }
+
+            LocalDate hoy = LocalDate.now();
+            TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+            for (long inicio = minimo; inicio <= maximo; inicio += tamanoTramo) {
+                long desde = inicio;
+                long hasta = inicio + tamanoTramo - 1;
+                Integer filas = transaccion.execute(status ->
+                        cuponRepository.desactivarVencidosYAgotados(desde, hasta, hoy));
+                total += filas != null ? filas : 0;
+
+                if (!bloqueoTareasService.adquirir(TAREA, bloqueo)) {
+                    break;
+                }
+            }
+
+            desactivados.increment(total);
+            if (total > 0) {
+                // El UPDATE no pasa por CuponService: el índice se recarga completo
+                indiceCupones.recargar();
+            }
+            return total;
+        } finally {
+            muestra.stop(duracion);
+            bloqueoTareasService.liberar(TAREA);
+        }
+    }
+
+    private void barrerProgramado() {
+        try {
+            int filas = barrer();
+            if (filas > 0) {
+                System.out.println("Cupones vencidos o agotados desactivados: " + filas);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("No se pudo completar el barrido de cupones: " + e.getMessage());
+        }
+    }
+}
@@ -3,8 +3,10 @@ package com.cuymarket.backend.service.promocion;
 import com.cuymarket.backend.model.enums.TipoCupon;
 import com.cuymarket.backend.model.promocion.Cupon;
 import com.cuymarket.backend.repository.promocion.CuponRepository;
+import com.cuymarket.backend.service.promocion.IndiceCuponesService.CuponIndexado;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
@@ -17,6 +19,12 @@ import java.util.List;
 public class CuponService {
 
     private final CuponRepository cuponRepository;
+    private final IndiceCuponesService indiceCupones;
+    private final BarridoCuponesService barridoCuponesService;
+
+    // Cupón aplicado a un pedido, validado pero aún sin canjear
+    public record Canje(Long cuponId, String codigo, BigDecimal descuento) {
+    }
 
     // Crear cupón
     public Cupon crear(Cupon cupon) {
@@ -50,7 +58,9 @@ public class CuponService {
         cupon.setUsosActuales(0);
         cupon.setActivo(true);
 
-        return cuponRepository.save(cupon);
+        Cupon guardado = cuponRepository.save(cupon);
+        indiceCupones.actualizar(guardado);
+        return guardado;
     }
 
     // Actualizar cupón
@@ -77,55 +87,81 @@ public class CuponService {
         cupon.setFechaInicio(cuponActualizado.getFechaInicio());
         cupon.setFechaVencimiento(cuponActualizado.getFechaVencimiento());
 
-        return cuponRepository.save(cupon);
+        Cupon guardado = cuponRepository.save(cupon);
+        indiceCupones.actualizar(guardado);
+        return guardado;
     }
 
     // Cambiar estado
     public Cupon cambiarEstado(Long id, Boolean activo) {
         Cupon cupon = obtenerPorId(id);
         cupon.setActivo(activo);
-        return cuponRepository.save(cupon);
+        Cupon guardado = cuponRepository.save(cupon);
+        indiceCupones.actualizar(guardado);
+        return guardado;
     }
 
-    // Incrementar usos
-    public Cupon incrementarUsos(Long id) {
-        Cupon cupon = obtenerPorId(id);
+    /**
+     * Suma un uso con un UPDATE condicional: si el cupón está inactivo o ya alcanzó el
+     * límite no se actualiza ninguna fila y se rechaza. No lee el cupón ni reintenta, así
+     * muchos canjes simultáneos nunca superan usosMaximos.
+     */
+    public void incrementarUsos(Long id) {
+        if (cuponRepository.incrementarUsosSiDisponible(id) == 0) {
+            throw new RuntimeException("El cupón ha alcanzado el límite de usos");
+        }
+    }
+
+    /**
+     * Valida el cupón contra el índice en memoria y calcula el descuento, sin tocar la base.
+     * El uso se suma después con {@link #confirmarCanje}.
+     */
+    public Canje prepararCanje(String codigo, BigDecimal subtotal) {
+        CuponIndexado cupon = indiceCupones.buscar(codigo)
+                .orElseThrow(() -> new RuntimeException("Cupón no válido"));
 
-        if (cupon.getUsosMaximos() != null && cupon.getUsosActuales() >= cupon.getUsosMaximos()) {
+        if (!cupon.activo()) {
+            throw new RuntimeException("El cupón no está activo");
+        }
+        if (!cupon.vigente(LocalDate.now())) {
+            throw new RuntimeException("El cupón no está vigente");
+        }
+        if (cupon.agotado()) {
             throw new RuntimeException("El cupón ha alcanzado el límite de usos");
         }
+        if (cupon.minimoCompra() != null && subtotal.compareTo(cupon.minimoCompra()) < 0) {
+            throw new RuntimeException("El monto mínimo de compra para este cupón es: " + cupon.minimoCompra());
+        }
 
-        cupon.setUsosActuales(cupon.getUsosActuales() + 1);
-        return cuponRepository.save(cupon);
+        return new Canje(cupon.id(), codigo, calcularDescuento(cupon, subtotal));
     }
 
-    // Validar cupón
+    /**
+     * Canjea dentro de la transacción del pedido: el uso queda confirmado o revertido junto
+     * con él. El UPDATE bloquea la fila del cupón hasta el commit, por eso el pedido lo
+     * llama al final, cuando ya no le queda nada por escribir.
+     */
+    public void confirmarCanje(Canje canje) {
+        incrementarUsos(canje.cuponId());
+        indiceCupones.registrarUso(canje.codigo());
+    }
+
+    // Validar cupón (desde el índice en memoria, sin consultar la base)
     @Transactional(readOnly = true)
     public boolean validarCupon(String codigo, BigDecimal montoCompra) {
-        Cupon cupon = cuponRepository.findByCodigo(codigo).orElse(null);
+        CuponIndexado cupon = indiceCupones.buscar(codigo).orElse(null);
 
         if (cupon == null) {
             return false;
         }
 
-        // Verificar estado activo
-        if (!cupon.getActivo()) {
-            return false;
-        }
-
-        // Verificar fechas
-        LocalDate hoy = LocalDate.now();
-        if (hoy.isBefore(cupon.getFechaInicio()) || hoy.isAfter(cupon.getFechaVencimiento())) {
-            return false;
-        }
-
-        // Verificar usos
-        if (cupon.getUsosMaximos() != null && cupon.getUsosActuales() >= cupon.getUsosMaximos()) {
+        // Verificar estado, fechas y usos
+        if (!cupon.activo() || !cupon.vigente(LocalDate.now()) || cupon.agotado()) {
             return false;
         }
 
         // Verificar compra mínima
-        if (cupon.getMinimoCompra() != null && montoCompra.compareTo(cupon.getMinimoCompra()) < 0) {
+        if (cupon.minimoCompra() != null && montoCompra.compareTo(cupon.minimoCompra()) < 0) {
             return false;
         }
 
@@ -135,16 +171,20 @@ public class CuponService {
     // Calcular descuento
     @Transactional(readOnly = true)
     public BigDecimal calcularDescuento(String codigo, BigDecimal montoCompra) {
-        Cupon cupon = obtenerPorCodigo(codigo);
+        CuponIndexado cupon = obtenerIndexado(codigo);
 
         if (!validarCupon(codigo, montoCompra)) {
             throw new RuntimeException("El cupón no es válido o no cumple los requisitos");
         }
 
-        if (cupon.getTipoCupon() == TipoCupon.PORCENTAJE) {
-            return montoCompra.multiply(cupon.getDescuento().divide(BigDecimal.valueOf(100)));
+        return calcularDescuento(cupon, montoCompra);
+    }
+
+    private BigDecimal calcularDescuento(CuponIndexado cupon, BigDecimal montoCompra) {
+        if (cupon.tipoCupon() == TipoCupon.PORCENTAJE) {
+            return montoCompra.multiply(cupon.descuento().divide(BigDecimal.valueOf(100)));
         } else {
-            return cupon.getDescuento().min(montoCompra); // No puede ser mayor al monto
+            return cupon.descuento().min(montoCompra); // No puede ser mayor al monto
         }
     }
 
@@ -161,6 +201,13 @@ public class CuponService {
                 .orElseThrow(() -> new RuntimeException("Cupón no encontrado con código: " + codigo));
     }
 
+    // Copia del índice en memoria (para validar desde el cliente sin consultar la base)
+    @Transactional(readOnly = true)
+    public CuponIndexado obtenerIndexado(String codigo) {
+        return indiceCupones.buscar(codigo)
+                .orElseThrow(() -> new RuntimeException("Cupón no encontrado con código: " + codigo));
+    }
+
     @Transactional(readOnly = true)
     public List<Cupon> listarTodos() {
         return cuponRepository.findAll();
@@ -214,17 +261,12 @@ public class CuponService {
     public void eliminar(Long id) {
         Cupon cupon = obtenerPorId(id);
         cuponRepository.delete(cupon);
+        indiceCupones.quitar(id);
     }
 
-    // Desactivar cupones vencidos (tarea programada)
-    @Transactional
-    public void desactivarCuponesVencidos() {
-        List<Cupon> cuponesVencidos = listarVencidos();
-        for (Cupon cupon : cuponesVencidos) {
-            if (cupon.getActivo()) {
-                cupon.setActivo(false);
-                cuponRepository.save(cupon);
-            }
-        }
+    // Desactivar cupones vencidos y agotados (lo hace también el barrido programado)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public int desactivarCuponesVencidos() {
+        return barridoCuponesService.barrer();
     }
 }
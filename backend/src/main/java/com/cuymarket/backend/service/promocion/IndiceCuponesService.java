@@ -0,0 +1,164 @@
+package com.cuymarket.backend.service.promocion;
+
+import com.cuymarket.backend.model.enums.TipoCupon;
+import com.cuymarket.backend.model.promocion.Cupon;
+import com.cuymarket.backend.repository.promocion.CuponRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Índice en memoria de todos los cupones por código, para validar y calcular descuentos
+ * sin ir a la base. Se actualiza al confirmarse cada cambio hecho en esta instancia y se
+ * recarga completo cada cierto tiempo, así recoge también los cambios de otras instancias.
+ *
+ * <p>Los usos guardados son solo una referencia para rechazar pronto un cupón agotado: el
+ * límite lo hace cumplir el UPDATE condicional de {@link CuponService#incrementarUsos}.</p>
+ */
+@Service
+@RequiredArgsConstructor
+public class IndiceCuponesService {
+
+    private final CuponRepository cuponRepository;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.cupones.indice.recarga-segundos:60}")
+    private long recargaSegundos;
+
+    // Código normalizado -> cupón; null hasta el primer uso
+    private volatile ConcurrentHashMap<String, CuponIndexado> porCodigo;
+
+    private final ScheduledExecutorService recarga = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("indice-cupones").daemon().factory());
+
+    private Counter recargas;
+
+    // Copia inmutable de un cupón, salvo el contador de usos
+    public record CuponIndexado(Long id, String codigo, TipoCupon tipoCupon, BigDecimal descuento,
+            BigDecimal minimoCompra, LocalDate fechaInicio, LocalDate fechaVencimiento, Integer usosMaximos,
+            boolean activo, AtomicInteger usosActuales) {
+
+        static CuponIndexado de(Cupon cupon) {
+            return new CuponIndexado(cupon.getId(), cupon.getCodigo(), cupon.getTipoCupon(), cupon.getDescuento(),
+                    cupon.getMinimoCompra(), cupon.getFechaInicio(), cupon.getFechaVencimiento(),
+                    cupon.getUsosMaximos(), Boolean.TRUE.equals(cupon.getActivo()),
+                    new AtomicInteger(cupon.getUsosActuales() != null ? cupon.getUsosActuales() : 0));
+        }
+
+        public boolean vigente(LocalDate fecha) {
+            return !fecha.isBefore(fechaInicio) && !fecha.isAfter(fechaVencimiento);
+        }
+
+        public boolean agotado() {
+            return usosMaximos != null && usosActuales.get() >= usosMaximos;
+        }
+    }
+
+    @PostConstruct
+    void inicializar() {
+        recargas = Counter.builder("cupones.indice.recargas")
+                .description("Recargas completas del índice de cupones")
+                .register(meterRegistry);
+        meterRegistry.gauge("cupones.indice.tamano", this, indice -> indice.porCodigo != null ? indice.porCodigo.size() : 0);
+
+        recarga.scheduleWithFixedDelay(this::recargar, recargaSegundos, recargaSegundos, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    void detener() {
+        recarga.shutdownNow();
+    }
+
+    // Búsqueda por código sin distinguir mayúsculas, igual que la columna en MySQL
+    public Optional<CuponIndexado> buscar(String codigo) {
+        if (codigo == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(indice().get(normalizar(codigo)));
+    }
+
+    // Guarda el estado del cupón al confirmar la transacción que lo cambió
+    public void actualizar(Cupon cupon) {
+        despuesDelCommit(() -> {
+            ConcurrentHashMap<String, CuponIndexado> indice = indice();
+            // Si cambió de código, la entrada vieja queda con el código anterior
+            indice.values().removeIf(c -> c.id().equals(cupon.getId()));
+            indice.put(normalizar(cupon.getCodigo()), CuponIndexado.de(cupon));
+        });
+    }
+
+    public void quitar(Long cuponId) {
+        despuesDelCommit(() -> indice().values().removeIf(c -> c.id().equals(cuponId)));
+    }
+
+    // Un canje confirmado suma un uso a la copia en memoria
+    public void registrarUso(String codigo) {
+        despuesDelCommit(() -> buscar(codigo).ifPresent(c -> c.usosActuales().incrementAndGet()));
+    }
+
+    private ConcurrentHashMap<String, CuponIndexado> indice() {
+        ConcurrentHashMap<String, CuponIndexado> indice = porCodigo;
+        if (indice == null) {
+            synchronized (this) {
+                if (porCodigo == null) {
+                    porCodigo = cargar();
+                }
+                indice = porCodigo;
+            }
+        }
+        return indice;
+    }
+
+    // También la usa el barrido tras sus UPDATE masivos. Un cambio confirmado mientras se
+    // recarga puede perderse hasta la siguiente recarga
+    void recargar() {
+        try {
+            porCodigo = cargar();
+            recargas.increment();
+        } catch (RuntimeException e) {
+            System.err.println("No se pudo recargar el índice de cupones: " + e.getMessage());
+        }
+    }
+
+    private ConcurrentHashMap<String, CuponIndexado> cargar() {
+        ConcurrentHashMap<String, CuponIndexado> indice = new ConcurrentHashMap<>();
+        for (Cupon cupon : cuponRepository.findAll()) {
+            indice.put(normalizar(cupon.getCodigo()), CuponIndexado.de(cupon));
+        }
+        return indice;
+    }
+
+    private static String normalizar(String codigo) {
+        return codigo.trim().toUpperCase(Locale.ROOT);
+    }
+
+    // Antes del commit otra petición podría leer un cambio que luego se revierte
+    private void despuesDelCommit(Runnable accion) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    accion.run();
+                }
+            });
+        } else {
+            accion.run();
+        }
+    }
+}
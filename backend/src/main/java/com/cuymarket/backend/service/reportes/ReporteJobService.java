@@ -0,0 +1,299 @@
+package com.cuymarket.backend.service.reportes;
+
+import com.cuymarket.backend.dto.sistema.ReporteResponse;
+import com.cuymarket.backend.exception.BadRequestException;
+import com.cuymarket.backend.exception.ResourceNotFoundException;
+import com.cuymarket.backend.model.enums.EstadoReporte;
+import com.cuymarket.backend.model.enums.TipoReporte;
+import com.cuymarket.backend.model.sistema.Reporte;
+import com.cuymarket.backend.repository.sistema.ReporteRepository;
+import com.cuymarket.backend.repository.usuario.UsuarioRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Genera reportes en segundo plano. Cada solicitud crea un {@link Reporte} en estado
+ * PENDIENTE, se renderiza en un hilo virtual y el archivo queda en disco para
+ * descargarlo después. Las solicitudes idénticas que siguen en curso devuelven el
+ * mismo reporte en lugar de generarlo otra vez.
+ */
+@Service
+@RequiredArgsConstructor
+public class ReporteJobService {
+
+    private final ReporteService reporteService;
+    private final ReporteRepository reporteRepository;
+    private final UsuarioRepository usuarioRepository;
+    private final PlatformTransactionManager transactionManager;
+
+    @Value("${app.reportes.directorio:data/reportes}")
+    private String directorio;
+
+    @Value("${app.reportes.max-concurrentes:2}")
+    private int maxConcurrentes;
+
+    @Value("${app.reportes.max-en-cola:20}")
+    private int maxEnCola;
+
+    // Antigüedad a partir de la cual un reporte sin terminar se da por abandonado. Debe
+    // superar con margen lo que tarda el reporte más lento: otras instancias pueden
+    // seguir generando los suyos
+    @Value("${app.reportes.interrumpido-tras-minutos:120}")
+    private long interrumpidoTrasMinutos;
+
+    // Un hilo virtual por reporte; el semáforo limita cuántos renderizan a la vez
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    // Clave de la solicitud -> id del reporte que la está generando (se completa al crear el registro)
+    private final ConcurrentHashMap<String, CompletableFuture<Long>> enCurso = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService barrido = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("reportes-interrumpidos").daemon().factory());
+    private Semaphore permisos;
+    // Un cupo por entrada de enCurso; se devuelve al quitarla del mapa
+    private Semaphore cupos;
+    private Path carpeta;
+
+    @PostConstruct
+    void inicializar() throws IOException {
+        permisos = new Semaphore(maxConcurrentes);
+        cupos = new Semaphore(maxEnCola);
+        carpeta = Path.of(directorio).toAbsolutePath();
+        Files.createDirectories(carpeta);
+
+        // Los reportes de una instancia que se cayó sin reiniciar también quedan abandonados
+        long periodo = Math.max(1, interrumpidoTrasMinutos / 4);
+        barrido.scheduleWithFixedDelay(this::barrerInterrumpidos, periodo, periodo, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    void detener() {
+        barrido.shutdownNow();
+        executor.shutdownNow();
+    }
+
+    // Encolar un reporte
+    public ReporteResponse solicitar(TipoReporte tipo, String formato, LocalDateTime fechaInicio,
+            LocalDateTime fechaFin, Long usuarioId) {
+        String formatoNormalizado = formato.toUpperCase();
+        if (!"PDF".equals(formatoNormalizado) && !"EXCEL".equals(formatoNormalizado)) {
+            throw new BadRequestException("Formato de reporte no soportado: " + formato);
+        }
+
+        // Inventario y clientes no dependen del período
+        boolean conPeriodo = tipo != TipoReporte.INVENTARIO && tipo != TipoReporte.CLIENTES;
+        LocalDateTime inicio = conPeriodo ? fechaInicio : null;
+        LocalDateTime fin = conPeriodo ? fechaFin : null;
+
+        String clave = tipo + "|" + formatoNormalizado + "|" + inicio + "|" + fin;
+        CompletableFuture<Long> registro = enCurso.get(clave);
+        if (registro == null) {
+            if (!cupos.tryAcquire()) {
+                throw new BadRequestException("Hay demasiados reportes en proceso, intente más tarde");
+            }
+            // El registro se crea fuera del mapa: las solicitudes iguales esperan su id
+            CompletableFuture<Long> nuevo = new CompletableFuture<>();
+            registro = enCurso.putIfAbsent(clave, nuevo);
+            if (registro == null) {
+                Long reporteId = crear(clave, nuevo, tipo, formatoNormalizado, inicio, fin, usuarioId);
+                encolar(reporteId, clave, nuevo, tipo, formatoNormalizado, inicio, fin);
+                return reporteService.obtenerPorId(reporteId);
+            }
+            // Otra solicitud igual se adelantó: se usa la suya
+            cupos.release();
+        }
+
+        return reporteService.obtenerPorId(esperarId(registro));
+    }
+
+    /**
+     * Marca como fallidos los reportes pendientes o en proceso creados hace más de
+     * {@code app.reportes.interrumpido-tras-minutos}: su hilo murió con la instancia que
+     * los generaba y nadie más los va a terminar. Los más recientes pueden seguir en
+     * curso en otra instancia y no se tocan.
+     */
+    @Transactional
+    public int marcarInterrumpidos() {
+        LocalDateTime ahora = LocalDateTime.now();
+        return reporteRepository.marcarFallidos(
+                List.of(EstadoReporte.PENDIENTE, EstadoReporte.EN_PROCESO),
+                ahora.minusMinutes(interrumpidoTrasMinutos),
+                "Generación interrumpida: la instancia que lo generaba se detuvo", ahora);
+    }
+
+    // Consultar estado
+    public ReporteResponse obtenerEstado(Long reporteId) {
+        return reporteService.obtenerPorId(reporteId);
+    }
+
+    // Obtener el archivo de un reporte terminado
+    public Path obtenerArchivo(Long reporteId) {
+        Reporte reporte = reporteRepository.findById(reporteId)
+                .orElseThrow(() -> new ResourceNotFoundException("Reporte no encontrado"));
+
+        if (reporte.getEstado() != EstadoReporte.COMPLETADO || reporte.getRutaArchivo() == null) {
+            throw new BadRequestException("El reporte todavía no está disponible");
+        }
+
+        Path archivo = Path.of(reporte.getRutaArchivo());
+        if (!Files.isReadable(archivo)) {
+            throw new ResourceNotFoundException("El archivo del reporte ya no existe");
+        }
+        return archivo;
+    }
+
+    private Long crear(String clave, CompletableFuture<Long> registro, TipoReporte tipo, String formato,
+            LocalDateTime inicio, LocalDateTime fin, Long usuarioId) {
+        try {
+            Long reporteId = crearRegistro(tipo, formato, inicio, fin, usuarioId).getId();
+            registro.complete(reporteId);
+            return reporteId;
+        } catch (RuntimeException e) {
+            terminar(clave, registro);
+            registro.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // Si el ejecutor no acepta la tarea (p. ej. durante el apagado) el reporte no queda pendiente para siempre
+    private void encolar(Long reporteId, String clave, CompletableFuture<Long> registro, TipoReporte tipo,
+            String formato, LocalDateTime inicio, LocalDateTime fin) {
+        try {
+            executor.submit(() -> ejecutar(reporteId, clave, registro, tipo, formato, inicio, fin));
+        } catch (RuntimeException e) {
+            terminar(clave, registro);
+            marcarFallido(reporteId, null, "No se pudo encolar la generación: " + e.getMessage());
+            throw new BadRequestException("No se pudo encolar el reporte, intente más tarde");
+        }
+    }
+
+    private void terminar(String clave, CompletableFuture<Long> registro) {
+        if (enCurso.remove(clave, registro)) {
+            cupos.release();
+        }
+    }
+
+    private void barrerInterrumpidos() {
+        try {
+            // Llamada interna: sin el proxy, la transacción se abre a mano
+            Integer fallidos = new TransactionTemplate(transactionManager).execute(status -> marcarInterrumpidos());
+            if (fallidos != null && fallidos > 0) {
+                System.out.println("Reportes abandonados marcados como fallidos: " + fallidos);
+            }
+        } catch (RuntimeException e) {
+            System.err.println("No se pudo revisar los reportes abandonados: " + e.getMessage());
+        }
+    }
+
+    private Long esperarId(CompletableFuture<Long> registro) {
+        try {
+            return registro.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException causa ? causa : e;
+        }
+    }
+
+    private Reporte crearRegistro(TipoReporte tipo, String formato, LocalDateTime inicio, LocalDateTime fin,
+            Long usuarioId) {
+        Reporte reporte = new Reporte();
+        reporte.setNombre(tipo.name() + " - " + LocalDate.now());
+        reporte.setTipo(tipo);
+        reporte.setFormato(formato);
+        reporte.setEstado(EstadoReporte.PENDIENTE);
+        reporte.setFechaInicio(inicio);
+        reporte.setFechaFin(fin);
+
+        if (usuarioId != null) {
+            usuarioRepository.findById(usuarioId).ifPresent(reporte::setGeneradoPor);
+        }
+
+        return reporteRepository.save(reporte);
+    }
+
+    private void ejecutar(Long reporteId, String clave, CompletableFuture<Long> registro, TipoReporte tipo,
+            String formato, LocalDateTime inicio, LocalDateTime fin) {
+        String extension = "PDF".equals(formato) ? ".pdf" : ".xlsx";
+        Path destino = carpeta.resolve("reporte-" + reporteId + extension);
+        Path temporal = carpeta.resolve("reporte-" + reporteId + extension + ".tmp");
+
+        try {
+            permisos.acquire();
+            try {
+                actualizar(reporteId, r -> r.setEstado(EstadoReporte.EN_PROCESO));
+
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporal))) {
+                    reporteService.escribirReporte(tipo, formato, inicio, fin, out);
+                }
+                // El archivo solo aparece con su nombre final cuando está completo
+                Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                long tamano = Files.size(destino);
+                actualizar(reporteId, r -> {
+                    r.setEstado(EstadoReporte.COMPLETADO);
+                    r.setRutaArchivo(destino.toString());
+                    r.setTamanoBytes(tamano);
+                    r.setFechaCompletado(LocalDateTime.now());
+                });
+            } finally {
+                permisos.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            marcarFallido(reporteId, temporal, "Generación interrumpida");
+        } catch (Exception e) {
+            System.err.println("Error al generar reporte " + reporteId + ": " + e.getMessage());
+            e.printStackTrace();
+            marcarFallido(reporteId, temporal, e.getMessage());
+        } finally {
+            terminar(clave, registro);
+        }
+    }
+
+    // temporal es null si el reporte no llegó a escribir nada
+    private void marcarFallido(Long reporteId, Path temporal, String mensaje) {
+        try {
+            if (temporal != null) {
+                Files.deleteIfExists(temporal);
+            }
+        } catch (IOException e) {
+            System.err.println("No se pudo borrar el archivo temporal " + temporal + ": " + e.getMessage());
+        }
+
+        String detalle = mensaje != null && mensaje.length() > 500 ? mensaje.substring(0, 500) : mensaje;
+        actualizar(reporteId, r -> {
+            r.setEstado(EstadoReporte.FALLIDO);
+            r.setMensajeError(detalle);
+            r.setFechaCompletado(LocalDateTime.now());
+        });
+    }
+
+    private void actualizar(Long reporteId, Consumer<Reporte> cambios) {
+        reporteRepository.findById(reporteId).ifPresent(reporte -> {
+            cambios.accept(reporte);
+            reporteRepository.save(reporte);
+        });
+    }
+}
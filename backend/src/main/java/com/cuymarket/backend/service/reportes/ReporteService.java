@@ -1,7 +1,11 @@
 package com.cuymarket.backend.service.reportes;
 
+import com.cuymarket.backend.dto.reportes.ClienteReporteDTO;
+import com.cuymarket.backend.dto.reportes.VentaReporteDTO;
 import com.cuymarket.backend.dto.sistema.ReporteResponse;
+import com.cuymarket.backend.exception.ResourceNotFoundException;
 import com.cuymarket.backend.model.enums.EstadoPago;
+import com.cuymarket.backend.model.enums.NombreRol;
 import com.cuymarket.backend.model.enums.TipoReporte;
 import com.cuymarket.backend.model.pedido.Pedido;
 import com.cuymarket.backend.model.producto.Producto;
@@ -20,17 +24,23 @@ import com.itextpdf.layout.properties.TextAlignment;
 import com.itextpdf.layout.properties.UnitValue;
 import lombok.RequiredArgsConstructor;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -41,11 +51,25 @@ public class ReporteService {
     private final ReporteRepository reporteRepository;
     private final UsuarioRepository usuarioRepository;
 
+    // Filas que SXSSF mantiene en memoria antes de volcarlas a disco
+    private static final int FILAS_EN_MEMORIA_EXCEL = 100;
+    // Filas de una tabla PDF grande que se acumulan antes de volcarlas al documento
+    private static final int FILAS_POR_BLOQUE_PDF = 200;
+
     // ==================== REPORTES DE VENTAS ====================
     
     public byte[] generarReporteVentasPDF(LocalDateTime fechaInicio, LocalDateTime fechaFin, Long usuarioId) throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PdfWriter writer = new PdfWriter(baos);
+        renderizarVentasPDF(fechaInicio, fechaFin, baos);
+
+        // Guardar registro en BD
+        guardarRegistroReporte(TipoReporte.VENTAS, "PDF", usuarioId);
+
+        return baos.toByteArray();
+    }
+
+    private void renderizarVentasPDF(LocalDateTime fechaInicio, LocalDateTime fechaFin, OutputStream out) throws IOException {
+        PdfWriter writer = new PdfWriter(out);
         PdfDocument pdf = new PdfDocument(writer);
         Document document = new Document(pdf);
 
@@ -59,17 +83,15 @@ public class ReporteService {
         // Período
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
         Paragraph periodo = new Paragraph(
-                "Período: " + fechaInicio.format(formatter) + " - " + fechaFin.format(formatter))
+                "Período: " + describirPeriodo(fechaInicio, fechaFin, formatter))
                 .setFontSize(12)
                 .setTextAlignment(TextAlignment.CENTER);
         document.add(periodo);
         document.add(new Paragraph("\n"));
 
         // Obtener pedidos pagados del período
-        List<Pedido> pedidos = pedidoRepository.findByEstadoPagoAndFechaPedidoAfter(EstadoPago.PAGADO, fechaInicio)
-                .stream()
-                .filter(p -> p.getFechaPedido().isBefore(fechaFin))
-                .toList();
+        List<Pedido> pedidos = pedidoRepository.findByEstadoPagoAndFechaPedidoRango(
+                EstadoPago.PAGADO, fechaInicio, fechaFin);
 
         // Tabla de ventas
         Table table = new Table(UnitValue.createPercentArray(new float[]{3, 3, 2, 2, 2}))
@@ -109,97 +131,116 @@ public class ReporteService {
         document.add(cantidadPedidos);
 
         document.close();
-        
-        // Guardar registro en BD
-        guardarRegistroReporte(TipoReporte.VENTAS, "PDF", usuarioId);
-        
-        return baos.toByteArray();
     }
 
-    public byte[] generarReporteVentasExcel(LocalDateTime fechaInicio, LocalDateTime fechaFin, Long usuarioId) throws Exception {
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Reporte de Ventas");
-
-        // Estilos
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerStyle.setFont(headerFont);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+    /**
+     * Exporta las ventas del período directamente sobre {@code out}. Las filas se leen
+     * con un cursor y se escriben con una ventana SXSSF, así la memoria usada no
+     * depende de cuántos pedidos tenga el período.
+     */
+    @Transactional
+    public void escribirReporteVentasExcel(LocalDateTime fechaInicio, LocalDateTime fechaFin, Long usuarioId,
+            OutputStream out) throws IOException {
+        renderizarVentasExcel(fechaInicio, fechaFin, out);
 
-        // Título
-        Row titleRow = sheet.createRow(0);
-        Cell titleCell = titleRow.createCell(0);
-        titleCell.setCellValue("REPORTE DE VENTAS");
-        
-        // Período
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        Row periodoRow = sheet.createRow(1);
-        periodoRow.createCell(0).setCellValue(
-                "Período: " + fechaInicio.format(formatter) + " - " + fechaFin.format(formatter));
-
-        // Encabezados (fila 3)
-        Row headerRow = sheet.createRow(3);
-        String[] headers = {"Número Pedido", "Cliente", "Fecha", "Método Pago", "Total"};
-        for (int i = 0; i < headers.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(headers[i]);
-            cell.setCellStyle(headerStyle);
-        }
-
-        // Obtener pedidos
-        List<Pedido> pedidos = pedidoRepository.findByEstadoPagoAndFechaPedidoAfter(EstadoPago.PAGADO, fechaInicio)
-                .stream()
-                .filter(p -> p.getFechaPedido().isBefore(fechaFin))
-                .toList();
+        // Guardar registro en BD
+        guardarRegistroReporte(TipoReporte.VENTAS, "EXCEL", usuarioId);
+    }
 
-        // Datos
-        int rowNum = 4;
-        BigDecimal totalVentas = BigDecimal.ZERO;
-        
-        for (Pedido pedido : pedidos) {
-            Row row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue(pedido.getNumeroPedido());
-            row.createCell(1).setCellValue(obtenerNombreCliente(pedido));
-            row.createCell(2).setCellValue(pedido.getFechaPedido().format(formatter));
-            row.createCell(3).setCellValue(pedido.getMetodoPago() != null ? pedido.getMetodoPago().name() : "N/A");
-            row.createCell(4).setCellValue("S/ " + pedido.getTotal().toString());
-            totalVentas = totalVentas.add(pedido.getTotal());
-        }
+    private void renderizarVentasExcel(LocalDateTime fechaInicio, LocalDateTime fechaFin, OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(FILAS_EN_MEMORIA_EXCEL);
+        workbook.setCompressTempFiles(true);
+        try {
+            SXSSFSheet sheet = workbook.createSheet("Reporte de Ventas");
+            sheet.trackAllColumnsForAutoSizing();
+
+            // Estilos
+            CellStyle headerStyle = workbook.createCellStyle();
+            Font headerFont = workbook.createFont();
+            headerFont.setBold(true);
+            headerStyle.setFont(headerFont);
+            headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+            headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+
+            // Título
+            Row titleRow = sheet.createRow(0);
+            Cell titleCell = titleRow.createCell(0);
+            titleCell.setCellValue("REPORTE DE VENTAS");
+
+            // Período
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+            Row periodoRow = sheet.createRow(1);
+            periodoRow.createCell(0).setCellValue(
+                    "Período: " + describirPeriodo(fechaInicio, fechaFin, formatter));
+
+            // Encabezados (fila 3)
+            Row headerRow = sheet.createRow(3);
+            String[] headers = {"Número Pedido", "Cliente", "Fecha", "Método Pago", "Total"};
+            for (int i = 0; i < headers.length; i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(headers[i]);
+                cell.setCellStyle(headerStyle);
+            }
 
-        // Totales
-        rowNum++;
-        Row totalRow = sheet.createRow(rowNum);
-        totalRow.createCell(3).setCellValue("TOTAL:");
-        Cell totalCell = totalRow.createCell(4);
-        totalCell.setCellValue("S/ " + totalVentas.toString());
-        totalCell.setCellStyle(headerStyle);
+            // Datos: se recorren con cursor, sin materializar la lista
+            int rowNum = 4;
+            long cantidad = 0;
+            BigDecimal totalVentas = BigDecimal.ZERO;
+
+            try (Stream<VentaReporteDTO> ventas = pedidoRepository.streamVentasReporte(
+                    EstadoPago.PAGADO, fechaInicio, fechaFin)) {
+                Iterator<VentaReporteDTO> it = ventas.iterator();
+                while (it.hasNext()) {
+                    VentaReporteDTO venta = it.next();
+                    Row row = sheet.createRow(rowNum++);
+                    row.createCell(0).setCellValue(venta.getNumeroPedido());
+                    row.createCell(1).setCellValue(obtenerNombreCliente(venta));
+                    row.createCell(2).setCellValue(venta.getFechaPedido().format(formatter));
+                    row.createCell(3).setCellValue(venta.getMetodoPago() != null ? venta.getMetodoPago().name() : "N/A");
+                    row.createCell(4).setCellValue("S/ " + venta.getTotal().toString());
+                    totalVentas = totalVentas.add(venta.getTotal());
+                    cantidad++;
+                }
+            }
 
-        Row cantidadRow = sheet.createRow(rowNum + 1);
-        cantidadRow.createCell(3).setCellValue("Cantidad:");
-        cantidadRow.createCell(4).setCellValue(pedidos.size());
+            // Totales
+            rowNum++;
+            Row totalRow = sheet.createRow(rowNum);
+            totalRow.createCell(3).setCellValue("TOTAL:");
+            Cell totalCell = totalRow.createCell(4);
+            totalCell.setCellValue("S/ " + totalVentas.toString());
+            totalCell.setCellStyle(headerStyle);
+
+            Row cantidadRow = sheet.createRow(rowNum + 1);
+            cantidadRow.createCell(3).setCellValue("Cantidad:");
+            cantidadRow.createCell(4).setCellValue(cantidad);
+
+            // Ajustar anchos de columna (SXSSF calcula los anchos a medida que vacía filas)
+            for (int i = 0; i < headers.length; i++) {
+                sheet.autoSizeColumn(i);
+            }
 
-        // Ajustar anchos de columna
-        for (int i = 0; i < headers.length; i++) {
-            sheet.autoSizeColumn(i);
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
         }
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        workbook.write(baos);
-        workbook.close();
-        
-        // Guardar registro en BD
-        guardarRegistroReporte(TipoReporte.VENTAS, "EXCEL", usuarioId);
-        
-        return baos.toByteArray();
     }
 
     // ==================== REPORTES DE INVENTARIO ====================
     
     public byte[] generarReporteInventarioPDF(Long usuarioId) throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PdfWriter writer = new PdfWriter(baos);
+        renderizarInventarioPDF(baos);
+
+        // Guardar registro en BD
+        guardarRegistroReporte(TipoReporte.INVENTARIO, "PDF", usuarioId);
+
+        return baos.toByteArray();
+    }
+
+    private void renderizarInventarioPDF(OutputStream out) throws IOException {
+        PdfWriter writer = new PdfWriter(out);
         PdfDocument pdf = new PdfDocument(writer);
         Document document = new Document(pdf);
 
@@ -255,14 +296,19 @@ public class ReporteService {
         document.add(new Paragraph("Productos con stock bajo: " + productosStockBajo).setFontSize(12).setBold());
 
         document.close();
-        
+    }
+
+    public byte[] generarReporteInventarioExcel(Long usuarioId) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        renderizarInventarioExcel(baos);
+
         // Guardar registro en BD
-        guardarRegistroReporte(TipoReporte.INVENTARIO, "PDF", usuarioId);
-        
+        guardarRegistroReporte(TipoReporte.INVENTARIO, "EXCEL", usuarioId);
+
         return baos.toByteArray();
     }
 
-    public byte[] generarReporteInventarioExcel(Long usuarioId) throws Exception {
+    private void renderizarInventarioExcel(OutputStream out) throws IOException {
         Workbook workbook = new XSSFWorkbook();
         Sheet sheet = workbook.createSheet("Reporte de Inventario");
 
@@ -323,21 +369,24 @@ public class ReporteService {
             sheet.autoSizeColumn(i);
         }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        workbook.write(baos);
+        workbook.write(out);
         workbook.close();
-        
-        // Guardar registro en BD
-        guardarRegistroReporte(TipoReporte.INVENTARIO, "EXCEL", usuarioId);
-        
-        return baos.toByteArray();
     }
 
     // ==================== REPORTES DE PEDIDOS ====================
     
     public byte[] generarReportePedidosPDF(LocalDateTime fechaInicio, LocalDateTime fechaFin, Long usuarioId) throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PdfWriter writer = new PdfWriter(baos);
+        renderizarPedidosPDF(fechaInicio, fechaFin, baos);
+
+        // Guardar registro en BD
+        guardarRegistroReporte(TipoReporte.PEDIDOS, "PDF", usuarioId);
+
+        return baos.toByteArray();
+    }
+
+    private void renderizarPedidosPDF(LocalDateTime fechaInicio, LocalDateTime fechaFin, OutputStream out) throws IOException {
+        PdfWriter writer = new PdfWriter(out);
         PdfDocument pdf = new PdfDocument(writer);
         Document document = new Document(pdf);
 
@@ -351,16 +400,14 @@ public class ReporteService {
         // Período
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
         Paragraph periodo = new Paragraph(
-                "Período: " + fechaInicio.format(formatter) + " - " + fechaFin.format(formatter))
+                "Período: " + describirPeriodo(fechaInicio, fechaFin, formatter))
                 .setFontSize(12)
                 .setTextAlignment(TextAlignment.CENTER);
         document.add(periodo);
         document.add(new Paragraph("\n"));
 
         // Obtener todos los pedidos del período
-        List<Pedido> pedidos = pedidoRepository.findAll().stream()
-                .filter(p -> p.getFechaPedido().isAfter(fechaInicio) && p.getFechaPedido().isBefore(fechaFin))
-                .toList();
+        List<Pedido> pedidos = pedidoRepository.findByFechaPedidoRango(fechaInicio, fechaFin);
 
         // Tabla de pedidos
         Table table = new Table(UnitValue.createPercentArray(new float[]{2, 2, 2, 2, 2, 2}))
@@ -395,14 +442,19 @@ public class ReporteService {
         document.add(new Paragraph("Monto total: S/ " + totalMonto.toString()).setFontSize(12).setBold());
 
         document.close();
-        
+    }
+
+    public byte[] generarReportePedidosExcel(LocalDateTime fechaInicio, LocalDateTime fechaFin, Long usuarioId) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        renderizarPedidosExcel(fechaInicio, fechaFin, baos);
+
         // Guardar registro en BD
-        guardarRegistroReporte(TipoReporte.PEDIDOS, "PDF", usuarioId);
-        
+        guardarRegistroReporte(TipoReporte.PEDIDOS, "EXCEL", usuarioId);
+
         return baos.toByteArray();
     }
 
-    public byte[] generarReportePedidosExcel(LocalDateTime fechaInicio, LocalDateTime fechaFin, Long usuarioId) throws Exception {
+    private void renderizarPedidosExcel(LocalDateTime fechaInicio, LocalDateTime fechaFin, OutputStream out) throws IOException {
         Workbook workbook = new XSSFWorkbook();
         Sheet sheet = workbook.createSheet("Reporte de Pedidos");
 
@@ -420,7 +472,7 @@ public class ReporteService {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
         Row periodoRow = sheet.createRow(1);
         periodoRow.createCell(0).setCellValue(
-                "Período: " + fechaInicio.format(formatter) + " - " + fechaFin.format(formatter));
+                "Período: " + describirPeriodo(fechaInicio, fechaFin, formatter));
 
         // Encabezados
         Row headerRow = sheet.createRow(3);
@@ -432,9 +484,7 @@ public class ReporteService {
         }
 
         // Obtener pedidos
-        List<Pedido> pedidos = pedidoRepository.findAll().stream()
-                .filter(p -> p.getFechaPedido().isAfter(fechaInicio) && p.getFechaPedido().isBefore(fechaFin))
-                .toList();
+        List<Pedido> pedidos = pedidoRepository.findByFechaPedidoRango(fechaInicio, fechaFin);
 
         int rowNum = 4;
         BigDecimal totalMonto = BigDecimal.ZERO;
@@ -467,21 +517,25 @@ public class ReporteService {
             sheet.autoSizeColumn(i);
         }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        workbook.write(baos);
+        workbook.write(out);
         workbook.close();
-        
-        // Guardar registro en BD
-        guardarRegistroReporte(TipoReporte.PEDIDOS, "EXCEL", usuarioId);
-        
-        return baos.toByteArray();
     }
 
     // ==================== REPORTES DE CLIENTES ====================
     
+    @Transactional
     public byte[] generarReporteClientesPDF(Long usuarioId) throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PdfWriter writer = new PdfWriter(baos);
+        renderizarClientesPDF(baos);
+
+        // Guardar registro en BD
+        guardarRegistroReporte(TipoReporte.CLIENTES, "PDF", usuarioId);
+
+        return baos.toByteArray();
+    }
+
+    private void renderizarClientesPDF(OutputStream out) throws IOException {
+        PdfWriter writer = new PdfWriter(out);
         PdfDocument pdf = new PdfDocument(writer);
         Document document = new Document(pdf);
 
@@ -499,112 +553,158 @@ public class ReporteService {
         document.add(fecha);
         document.add(new Paragraph("\n"));
 
-        // Obtener clientes (usuarios que han hecho pedidos)
-        List<Usuario> clientes = usuarioRepository.findAll().stream()
-                .filter(u -> u.getRoles().stream().anyMatch(r -> r.getNombre().name().equals("CLIENTE")))
-                .toList();
-
-        // Tabla
-        Table table = new Table(UnitValue.createPercentArray(new float[]{3, 3, 2, 2}))
+        // Tabla en modo "large table": las filas se vuelcan al documento por bloques
+        Table table = new Table(UnitValue.createPercentArray(new float[]{3, 3, 2, 1, 2, 2}), true)
                 .useAllAvailableWidth();
 
         table.addHeaderCell("Nombre");
         table.addHeaderCell("Email");
         table.addHeaderCell("Teléfono");
         table.addHeaderCell("Pedidos");
+        table.addHeaderCell("Total Gastado");
+        table.addHeaderCell("Último Pedido");
+        document.add(table);
 
-        for (Usuario cliente : clientes) {
-            table.addCell(cliente.getNombre() + " " + (cliente.getApellido() != null ? cliente.getApellido() : ""));
-            table.addCell(cliente.getEmail());
-            table.addCell(cliente.getTelefono() != null ? cliente.getTelefono() : "N/A");
-            
-            long cantidadPedidos = pedidoRepository.findAll().stream()
-                    .filter(p -> p.getUsuario() != null && p.getUsuario().getId().equals(cliente.getId()))
-                    .count();
-            table.addCell(String.valueOf(cantidadPedidos));
+        long totalClientes = 0;
+
+        // Clientes con sus pedidos agregados en una sola consulta
+        try (Stream<ClienteReporteDTO> clientes = usuarioRepository.streamClientesReporte(
+                NombreRol.CLIENTE, EstadoPago.PAGADO)) {
+            Iterator<ClienteReporteDTO> it = clientes.iterator();
+            while (it.hasNext()) {
+                ClienteReporteDTO cliente = it.next();
+                table.addCell(cliente.getNombre() + " " + (cliente.getApellido() != null ? cliente.getApellido() : ""));
+                table.addCell(cliente.getEmail());
+                table.addCell(cliente.getTelefono() != null ? cliente.getTelefono() : "N/A");
+                table.addCell(String.valueOf(cliente.getCantidadPedidos()));
+                table.addCell("S/ " + cliente.getTotalGastado().toString());
+                table.addCell(cliente.getUltimoPedido() != null ? cliente.getUltimoPedido().format(formatter) : "-");
+
+                if (++totalClientes % FILAS_POR_BLOQUE_PDF == 0) {
+                    table.flush();
+                }
+            }
         }
-
-        document.add(table);
+        table.complete();
 
         // Resumen
         document.add(new Paragraph("\n"));
-        document.add(new Paragraph("Total clientes: " + clientes.size()).setFontSize(12).setBold());
+        document.add(new Paragraph("Total clientes: " + totalClientes).setFontSize(12).setBold());
 
         document.close();
-        
-        // Guardar registro en BD
-        guardarRegistroReporte(TipoReporte.CLIENTES, "PDF", usuarioId);
-        
-        return baos.toByteArray();
     }
 
-    public byte[] generarReporteClientesExcel(Long usuarioId) throws Exception {
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Reporte de Clientes");
+    @Transactional
+    public void escribirReporteClientesExcel(Long usuarioId, OutputStream out) throws IOException {
+        renderizarClientesExcel(out);
 
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerStyle.setFont(headerFont);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+        // Guardar registro en BD
+        guardarRegistroReporte(TipoReporte.CLIENTES, "EXCEL", usuarioId);
+    }
 
-        // Título
-        Row titleRow = sheet.createRow(0);
-        titleRow.createCell(0).setCellValue("REPORTE DE CLIENTES");
-        
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
-        Row fechaRow = sheet.createRow(1);
-        fechaRow.createCell(0).setCellValue("Fecha: " + LocalDate.now().format(formatter));
+    private void renderizarClientesExcel(OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(FILAS_EN_MEMORIA_EXCEL);
+        workbook.setCompressTempFiles(true);
+        try {
+            SXSSFSheet sheet = workbook.createSheet("Reporte de Clientes");
+            sheet.trackAllColumnsForAutoSizing();
+
+            CellStyle headerStyle = workbook.createCellStyle();
+            Font headerFont = workbook.createFont();
+            headerFont.setBold(true);
+            headerStyle.setFont(headerFont);
+            headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+            headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+
+            // Título
+            Row titleRow = sheet.createRow(0);
+            titleRow.createCell(0).setCellValue("REPORTE DE CLIENTES");
+
+            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+            Row fechaRow = sheet.createRow(1);
+            fechaRow.createCell(0).setCellValue("Fecha: " + LocalDate.now().format(formatter));
+
+            // Encabezados
+            Row headerRow = sheet.createRow(3);
+            String[] headers = {"Nombre", "Email", "Teléfono", "Pedidos", "Total Gastado", "Último Pedido"};
+            for (int i = 0; i < headers.length; i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(headers[i]);
+                cell.setCellStyle(headerStyle);
+            }
 
-        // Encabezados
-        Row headerRow = sheet.createRow(3);
-        String[] headers = {"Nombre", "Email", "Teléfono", "Pedidos"};
-        for (int i = 0; i < headers.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(headers[i]);
-            cell.setCellStyle(headerStyle);
-        }
+            // Clientes con sus pedidos agregados en una sola consulta
+            int rowNum = 4;
+            long totalClientes = 0;
+
+            try (Stream<ClienteReporteDTO> clientes = usuarioRepository.streamClientesReporte(
+                    NombreRol.CLIENTE, EstadoPago.PAGADO)) {
+                Iterator<ClienteReporteDTO> it = clientes.iterator();
+                while (it.hasNext()) {
+                    ClienteReporteDTO cliente = it.next();
+                    Row row = sheet.createRow(rowNum++);
+                    row.createCell(0).setCellValue(cliente.getNombre() + " " + (cliente.getApellido() != null ? cliente.getApellido() : ""));
+                    row.createCell(1).setCellValue(cliente.getEmail());
+                    row.createCell(2).setCellValue(cliente.getTelefono() != null ? cliente.getTelefono() : "N/A");
+                    row.createCell(3).setCellValue(cliente.getCantidadPedidos());
+                    row.createCell(4).setCellValue("S/ " + cliente.getTotalGastado().toString());
+                    row.createCell(5).setCellValue(cliente.getUltimoPedido() != null ? cliente.getUltimoPedido().format(formatter) : "-");
+                    totalClientes++;
+                }
+            }
 
-        // Obtener clientes
-        List<Usuario> clientes = usuarioRepository.findAll().stream()
-                .filter(u -> u.getRoles().stream().anyMatch(r -> r.getNombre().name().equals("CLIENTE")))
-                .toList();
+            // Resumen
+            rowNum++;
+            Row totalRow = sheet.createRow(rowNum);
+            Cell totalLabel = totalRow.createCell(2);
+            totalLabel.setCellValue("Total clientes:");
+            Cell totalValue = totalRow.createCell(3);
+            totalValue.setCellValue(totalClientes);
+            totalValue.setCellStyle(headerStyle);
+
+            for (int i = 0; i < headers.length; i++) {
+                sheet.autoSizeColumn(i);
+            }
 
-        int rowNum = 4;
-        for (Usuario cliente : clientes) {
-            Row row = sheet.createRow(rowNum++);
-            row.createCell(0).setCellValue(cliente.getNombre() + " " + (cliente.getApellido() != null ? cliente.getApellido() : ""));
-            row.createCell(1).setCellValue(cliente.getEmail());
-            row.createCell(2).setCellValue(cliente.getTelefono() != null ? cliente.getTelefono() : "N/A");
-            
-            long cantidadPedidos = pedidoRepository.findAll().stream()
-                    .filter(p -> p.getUsuario() != null && p.getUsuario().getId().equals(cliente.getId()))
-                    .count();
-            row.createCell(3).setCellValue(cantidadPedidos);
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
         }
+    }
 
-        // Resumen
-        rowNum++;
-        Row totalRow = sheet.createRow(rowNum);
-        Cell totalLabel = totalRow.createCell(2);
-        totalLabel.setCellValue("Total clientes:");
-        Cell totalValue = totalRow.createCell(3);
-        totalValue.setCellValue(clientes.size());
-        totalValue.setCellStyle(headerStyle);
+    // ==================== GENERACIÓN EN SEGUNDO PLANO ====================
 
-        for (int i = 0; i < headers.length; i++) {
-            sheet.autoSizeColumn(i);
+    /**
+     * Escribe el reporte pedido en {@code out} sin registrarlo en el historial; lo usa
+     * {@link ReporteJobService}, que ya creó el registro al aceptar la solicitud.
+     */
+    @Transactional(readOnly = true)
+    public void escribirReporte(TipoReporte tipo, String formato, LocalDateTime fechaInicio, LocalDateTime fechaFin,
+            OutputStream out) throws IOException {
+        boolean pdf = "PDF".equalsIgnoreCase(formato);
+        switch (tipo) {
+            case VENTAS -> {
+                if (pdf) renderizarVentasPDF(fechaInicio, fechaFin, out);
+                else renderizarVentasExcel(fechaInicio, fechaFin, out);
+            }
+            case INVENTARIO -> {
+                if (pdf) renderizarInventarioPDF(out);
+                else renderizarInventarioExcel(out);
+            }
+            case PEDIDOS -> {
+                if (pdf) renderizarPedidosPDF(fechaInicio, fechaFin, out);
+                else renderizarPedidosExcel(fechaInicio, fechaFin, out);
+            }
+            case PEDIDOS_COMPLETADOS -> {
+                if (pdf) renderizarPedidosCompletadosPDF(fechaInicio, fechaFin, out);
+                else renderizarPedidosCompletadosExcel(fechaInicio, fechaFin, out);
+            }
+            case CLIENTES -> {
+                if (pdf) renderizarClientesPDF(out);
+                else renderizarClientesExcel(out);
+            }
         }
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        workbook.write(baos);
-        workbook.close();
-        
-        // Guardar registro en BD
-        guardarRegistroReporte(TipoReporte.CLIENTES, "EXCEL", usuarioId);
-        
-        return baos.toByteArray();
     }
 
     // ==================== MÉTODOS AUXILIARES ====================
@@ -635,6 +735,13 @@ public class ReporteService {
                 .collect(Collectors.toList());
     }
     
+    @Transactional(readOnly = true)
+    public ReporteResponse obtenerPorId(Long id) {
+        Reporte reporte = reporteRepository.findByIdWithUsuario(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Reporte no encontrado"));
+        return convertirAResponse(reporte);
+    }
+
     @Transactional(readOnly = true)
     public List<ReporteResponse> listarRecientes() {
         return reporteRepository.findTop10ByOrderByFechaGeneracionDesc().stream()
@@ -649,6 +756,10 @@ public class ReporteService {
         response.setTipo(reporte.getTipo());
         response.setFormato(reporte.getFormato());
         response.setFechaGeneracion(reporte.getFechaGeneracion());
+        response.setEstado(reporte.getEstado());
+        response.setTamanoBytes(reporte.getTamanoBytes());
+        response.setMensajeError(reporte.getMensajeError());
+        response.setFechaCompletado(reporte.getFechaCompletado());
         
         if (reporte.getGeneradoPor() != null) {
             Usuario usuario = reporte.getGeneradoPor();
@@ -662,6 +773,26 @@ public class ReporteService {
         return response;
     }
     
+    private String obtenerNombreCliente(VentaReporteDTO venta) {
+        String nombre = venta.getClienteNombre();
+        String apellido = venta.getClienteApellido();
+
+        if (nombre != null && apellido != null) {
+            return nombre + " " + apellido;
+        } else if (nombre != null) {
+            return nombre;
+        } else if (venta.getClienteEmail() != null) {
+            return venta.getClienteEmail();
+        } else {
+            return "Cliente Desconocido";
+        }
+    }
+
+    // El período llega semiabierto [inicio, fin): el último día incluido es el anterior a fin
+    private static String describirPeriodo(LocalDateTime fechaInicio, LocalDateTime fechaFin, DateTimeFormatter formatter) {
+        return fechaInicio.format(formatter) + " - " + fechaFin.minusNanos(1).format(formatter);
+    }
+
     private String obtenerNombreCliente(Pedido pedido) {
         if (pedido.getUsuario() == null) {
             return "Cliente Desconocido";
@@ -683,7 +814,16 @@ public class ReporteService {
     
     public byte[] generarReportePedidosCompletadosPDF(LocalDateTime fechaInicio, LocalDateTime fechaFin, Long usuarioId) throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        PdfWriter writer = new PdfWriter(baos);
+        renderizarPedidosCompletadosPDF(fechaInicio, fechaFin, baos);
+
+        // Guardar registro en BD
+        guardarRegistroReporte(TipoReporte.PEDIDOS, "PDF", usuarioId);
+
+        return baos.toByteArray();
+    }
+
+    private void renderizarPedidosCompletadosPDF(LocalDateTime fechaInicio, LocalDateTime fechaFin, OutputStream out) throws IOException {
+        PdfWriter writer = new PdfWriter(out);
         PdfDocument pdf = new PdfDocument(writer);
         Document document = new Document(pdf);
 
@@ -697,14 +837,14 @@ public class ReporteService {
         // Período
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
         Paragraph periodo = new Paragraph(
-                "Período: " + fechaInicio.format(formatter) + " - " + fechaFin.format(formatter))
+                "Período: " + describirPeriodo(fechaInicio, fechaFin, formatter))
                 .setFontSize(12)
                 .setTextAlignment(TextAlignment.CENTER);
         document.add(periodo);
         document.add(new Paragraph("\n"));
 
         // Obtener pedidos completados del período
-        List<Pedido> pedidos = pedidoRepository.findByEstadoAndFechaPedidoBetween(
+        List<Pedido> pedidos = pedidoRepository.findByEstadoAndFechaPedidoRango(
                 com.cuymarket.backend.model.enums.EstadoPedido.ENTREGADO, 
                 fechaInicio, 
                 fechaFin
@@ -748,14 +888,19 @@ public class ReporteService {
         document.add(cantidadPedidos);
 
         document.close();
-        
+    }
+
+    public byte[] generarReportePedidosCompletadosExcel(LocalDateTime fechaInicio, LocalDateTime fechaFin, Long usuarioId) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        renderizarPedidosCompletadosExcel(fechaInicio, fechaFin, baos);
+
         // Guardar registro en BD
-        guardarRegistroReporte(TipoReporte.PEDIDOS, "PDF", usuarioId);
-        
+        guardarRegistroReporte(TipoReporte.PEDIDOS, "EXCEL", usuarioId);
+
         return baos.toByteArray();
     }
 
-    public byte[] generarReportePedidosCompletadosExcel(LocalDateTime fechaInicio, LocalDateTime fechaFin, Long usuarioId) throws Exception {
+    private void renderizarPedidosCompletadosExcel(LocalDateTime fechaInicio, LocalDateTime fechaFin, OutputStream out) throws IOException {
         Workbook workbook = new XSSFWorkbook();
         Sheet sheet = workbook.createSheet("Pedidos Completados");
 
@@ -776,7 +921,7 @@ public class ReporteService {
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy");
         Row periodoRow = sheet.createRow(1);
         periodoRow.createCell(0).setCellValue(
-                "Período: " + fechaInicio.format(formatter) + " - " + fechaFin.format(formatter));
+                "Período: " + describirPeriodo(fechaInicio, fechaFin, formatter));
 
         // Encabezados (fila 3)
         Row headerRow = sheet.createRow(3);
@@ -788,7 +933,7 @@ public class ReporteService {
         }
 
         // Obtener pedidos
-        List<Pedido> pedidos = pedidoRepository.findByEstadoAndFechaPedidoBetween(
+        List<Pedido> pedidos = pedidoRepository.findByEstadoAndFechaPedidoRango(
                 com.cuymarket.backend.model.enums.EstadoPedido.ENTREGADO, 
                 fechaInicio, 
                 fechaFin
@@ -826,14 +971,8 @@ public class ReporteService {
             sheet.autoSizeColumn(i);
         }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        workbook.write(baos);
+        workbook.write(out);
         workbook.close();
-        
-        // Guardar registro en BD
-        guardarRegistroReporte(TipoReporte.PEDIDOS, "EXCEL", usuarioId);
-        
-        return baos.toByteArray();
     }
 }
 
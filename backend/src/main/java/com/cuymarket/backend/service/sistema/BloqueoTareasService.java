@@ -0,0 +1,81 @@
+package com.cuymarket.backend.service.sistema;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Bloqueos de tareas programadas en la tabla {@code bloqueos_tareas}, para que con varias
+ * instancias levantadas una tarea corra en una sola. Cada bloqueo vence solo: si la
+ * instancia que lo tiene se cae, otra lo toma al vencer. Los vencimientos usan el reloj
+ * de cada instancia, así que la duración debe dejar margen para diferencias entre relojes.
+ */
+@Service
+@RequiredArgsConstructor
+public class BloqueoTareasService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+
+    // Identifica a esta instancia como propietaria
+    private final String propietario = nombreEquipo() + ":" + UUID.randomUUID();
+
+    /**
+     * Toma el bloqueo si está libre o vencido, o lo renueva si ya es de esta instancia.
+     * Devuelve false si lo tiene otra instancia.
+     */
+    public boolean adquirir(String tarea, Duration duracion) {
+        LocalDateTime ahora = LocalDateTime.now();
+        Timestamp venceEn = Timestamp.valueOf(ahora.plus(duracion));
+        return Boolean.TRUE.equals(enTransaccionPropia().execute(status -> {
+            int filas = jdbcTemplate.update(
+                    "UPDATE bloqueos_tareas SET propietario = ?, vence_en = ? " +
+                    "WHERE nombre = ? AND (propietario = ? OR vence_en < ?)",
+                    propietario, venceEn, tarea, propietario, Timestamp.valueOf(ahora));
+            return filas > 0 || crearSiNoExiste(tarea, venceEn);
+        }));
+    }
+
+    // Lo deja vencido para que la próxima ejecución (de cualquier instancia) no espere
+    public void liberar(String tarea) {
+        enTransaccionPropia().executeWithoutResult(status -> jdbcTemplate.update(
+                "UPDATE bloqueos_tareas SET vence_en = ? WHERE nombre = ? AND propietario = ?",
+                Timestamp.valueOf(LocalDateTime.now()), tarea, propietario));
+    }
+
+    private boolean crearSiNoExiste(String tarea, Timestamp venceEn) {
+        try {
+            jdbcTemplate.update("INSERT INTO bloqueos_tareas (nombre, propietario, vence_en) VALUES (?, ?, ?)",
+                    tarea, propietario, venceEn);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // Existe y lo tiene otra instancia
+            return false;
+        }
+    }
+
+    private TransactionTemplate enTransaccionPropia() {
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        transaccion.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transaccion;
+    }
+
+    private static String nombreEquipo() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "desconocido";
+        }
+    }
+}
@@ -7,14 +7,25 @@ import com.cuymarket.backend.model.enums.EstadoPago;
 import com.cuymarket.backend.repository.usuario.UsuarioRepository;
 import com.cuymarket.backend.repository.pedido.PedidoRepository;
 import com.cuymarket.backend.repository.producto.ProductoRepository;
+import com.cuymarket.backend.service.finanzas.VentaDiariaService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 @Service
@@ -24,9 +35,88 @@ public class DashboardService {
     private final UsuarioRepository usuarioRepository;
     private final PedidoRepository pedidoRepository;
     private final ProductoRepository productoRepository;
+    private final VentaDiariaService ventaDiariaService;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.dashboard.cache-ttl-segundos:30}")
+    private long cacheTtlSegundos;
+
+    // Resumen calculado junto con la generación en la que se calculó; cualquier
+    // invalidación posterior lo deja obsoleto aunque no haya vencido el TTL
+    private record ResumenEnCache(DashboardResumenDTO resumen, long generacion, long expiraEnNanos) {
+    }
+
+    private final AtomicReference<ResumenEnCache> cache = new AtomicReference<>();
+    private final AtomicLong generacion = new AtomicLong();
+    private final Object lockRecalculo = new Object();
+
+    private TransactionTemplate transaccionLectura;
+    private Counter aciertosCache;
+    private Counter fallosCache;
+    private Counter invalidaciones;
+
+    @PostConstruct
+    void inicializar() {
+        transaccionLectura = new TransactionTemplate(transactionManager);
+        transaccionLectura.setReadOnly(true);
+
+        aciertosCache = Counter.builder("dashboard.resumen.cache")
+                .description("Consultas del resumen del dashboard por resultado de caché")
+                .tag("resultado", "hit")
+                .register(meterRegistry);
+        fallosCache = Counter.builder("dashboard.resumen.cache")
+                .description("Consultas del resumen del dashboard por resultado de caché")
+                .tag("resultado", "miss")
+                .register(meterRegistry);
+        invalidaciones = Counter.builder("dashboard.resumen.invalidaciones")
+                .description("Veces que se descartó el resumen por cambios en los datos")
+                .register(meterRegistry);
+    }
 
-    @Transactional(readOnly = true)
     public DashboardResumenDTO obtenerResumen() {
+        ResumenEnCache actual = cache.get();
+        if (esVigente(actual)) {
+            aciertosCache.increment();
+            return actual.resumen();
+        }
+
+        // Un solo hilo recalcula; los demás esperan y reutilizan su resultado
+        synchronized (lockRecalculo) {
+            actual = cache.get();
+            if (esVigente(actual)) {
+                aciertosCache.increment();
+                return actual.resumen();
+            }
+
+            fallosCache.increment();
+            long generacionCalculo = generacion.get();
+            DashboardResumenDTO resumen = transaccionLectura.execute(status -> calcularResumen());
+            cache.set(new ResumenEnCache(resumen, generacionCalculo,
+                    System.nanoTime() + TimeUnit.SECONDS.toNanos(cacheTtlSegundos)));
+            return resumen;
+        }
+    }
+
+    // Descartar el resumen cuando cambian pedidos, productos o usuarios
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void alModificarDatos(DatosDashboardModificadosEvent evento) {
+        invalidarResumen();
+    }
+
+    public void invalidarResumen() {
+        generacion.incrementAndGet();
+        cache.set(null);
+        invalidaciones.increment();
+    }
+
+    private boolean esVigente(ResumenEnCache entrada) {
+        return entrada != null
+                && entrada.generacion() == generacion.get()
+                && System.nanoTime() - entrada.expiraEnNanos() < 0;
+    }
+
+    private DashboardResumenDTO calcularResumen() {
         DashboardResumenDTO dto = new DashboardResumenDTO();
 
         // 1. Estadisticas Generales
@@ -42,12 +132,8 @@ public class DashboardService {
 
         // Ingresos del mes actual
         LocalDate inicioMes = LocalDate.now().withDayOfMonth(1);
-        List<Pedido> pedidosMes = pedidoRepository.findByEstadoPagoAndFechaPedidoAfter(
-                EstadoPago.PAGADO, inicioMes.atStartOfDay());
-
-        BigDecimal ingresos = pedidosMes.stream()
-                .map(Pedido::getTotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        BigDecimal ingresos = pedidoRepository.sumarTotalPorEstadoPagoYRango(
+                EstadoPago.PAGADO, inicioMes.atStartOfDay(), inicioMes.plusMonths(1).atStartOfDay());
         dto.setIngresosMes(ingresos);
 
         dto.setCambioUsuarios("+12% este mes"); // Mock
@@ -67,24 +153,10 @@ public class DashboardService {
     }
 
     private List<VentaMensualDTO> calcularVentasMensuales() {
-        List<VentaMensualDTO> result = new ArrayList<>();
-        LocalDate now = LocalDate.now();
-
-        for (int i = 5; i >= 0; i--) {
-            LocalDate d = now.minusMonths(i);
-            LocalDate start = d.withDayOfMonth(1);
-            LocalDate end = d.withDayOfMonth(d.lengthOfMonth());
-
-            BigDecimal total = pedidoRepository
-                    .findByEstadoPagoAndFechaPedidoAfter(EstadoPago.PAGADO, start.atStartOfDay())
-                    .stream()
-                    .filter(p -> p.getFechaPedido().isBefore(end.plusDays(1).atStartOfDay()))
-                    .map(Pedido::getTotal)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-
-            result.add(new VentaMensualDTO(d.getMonthValue(), d.getYear(), total));
-        }
-        return result;
+        // Una sola consulta agrupada por año y mes sobre los acumulados diarios
+        return ventaDiariaService.resumirUltimosMeses(6).stream()
+                .map(v -> new VentaMensualDTO(v.getMes(), v.getAnio(), v.getMonto()))
+                .collect(Collectors.toList());
     }
 
     private PedidoRecienteDTO mapToRecienteDTO(Pedido p) {
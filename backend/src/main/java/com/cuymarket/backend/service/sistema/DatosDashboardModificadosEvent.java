@@ -0,0 +1,11 @@
+package com.cuymarket.backend.service.sistema;
+
+/**
+ * Se publica cuando una escritura cambia datos que muestra el resumen del dashboard
+ * (pedidos, stock o usuarios). {@link DashboardService} lo escucha para descartar
+ * el resumen en caché una vez confirmada la transacción.
+ *
+ * @param origen entidad que cambió, solo informativo
+ */
+public record DatosDashboardModificadosEvent(String origen) {
+}
@@ -0,0 +1,120 @@
+package com.cuymarket.backend.service.sistema;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Secuencias que reservan bloques de valores en la tabla {@code generadores_id} (la misma
+ * que usa Hibernate para los ids de items_pedido) y los entregan desde memoria. Solo se va
+ * a la base una vez por bloque, y como cada reserva es un UPDATE atómico, varias instancias
+ * de la aplicación nunca reciben el mismo bloque. Los valores que quedan sin usar de un
+ * bloque al reiniciar se pierden: de ahí los huecos.
+ */
+@Service
+@RequiredArgsConstructor
+public class SecuenciaEnBloquesService implements SecuenciaService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.secuencias.tamano-bloque:100}")
+    private int tamanoBloque;
+
+    private final ConcurrentHashMap<String, Bloque> bloques = new ConcurrentHashMap<>();
+
+    // Valores [siguiente, limite) ya reservados en la base para esta instancia
+    private static final class Bloque {
+        private long siguiente;
+        private long limite;
+    }
+
+    @Override
+    public long siguiente(String secuencia) {
+        Bloque bloque = bloques.computeIfAbsent(secuencia, s -> new Bloque());
+        synchronized (bloque) {
+            if (bloque.siguiente >= bloque.limite) {
+                bloque.limite = reservarBloque(secuencia);
+                bloque.siguiente = bloque.limite - tamanoBloque;
+            }
+            return bloque.siguiente++;
+        }
+    }
+
+    @Override
+    public void alinear(String secuencia, long minimo) {
+        enTransaccionPropia().executeWithoutResult(status -> {
+            int filas = jdbcTemplate.update(
+                    "UPDATE generadores_id SET siguiente_valor = ? WHERE nombre = ? AND siguiente_valor < ?",
+                    minimo, secuencia, minimo);
+            if (filas == 0 && !crearSiNoExiste(secuencia, minimo)) {
+                // Ya existía (la creó otra instancia entretanto): se vuelve a intentar el ajuste
+                jdbcTemplate.update(
+                        "UPDATE generadores_id SET siguiente_valor = ? WHERE nombre = ? AND siguiente_valor < ?",
+                        minimo, secuencia, minimo);
+            }
+        });
+        // El bloque en memoria puede haber quedado por debajo: se descarta
+        Bloque bloque = bloques.get(secuencia);
+        if (bloque != null) {
+            synchronized (bloque) {
+                if (bloque.siguiente < minimo) {
+                    bloque.limite = bloque.siguiente;
+                }
+            }
+        }
+    }
+
+    // Devuelve el final (exclusivo) del bloque reservado. Va en su propia transacción: si
+    // quedara dentro de la del llamador y esta se revirtiera, otra instancia podría recibir
+    // el mismo bloque que esta sigue entregando desde memoria
+    private long reservarBloque(String secuencia) {
+        Long limite = enTransaccionPropia().execute(status -> {
+            int filas = jdbcTemplate.update(
+                    "UPDATE generadores_id SET siguiente_valor = siguiente_valor + ? WHERE nombre = ?",
+                    tamanoBloque, secuencia);
+            if (filas == 0) {
+                crearSiNoExiste(secuencia, 1);
+                jdbcTemplate.update(
+                        "UPDATE generadores_id SET siguiente_valor = siguiente_valor + ? WHERE nombre = ?",
+                        tamanoBloque, secuencia);
+            }
+            // La fila sigue bloqueada por el UPDATE: nadie la cambia antes de leerla
+            return jdbcTemplate.queryForObject(
+                    "SELECT siguiente_valor FROM generadores_id WHERE nombre = ?", Long.class, secuencia);
+        });
+        Counter.builder("secuencias.bloques.reservados")
+                .description("Bloques de valores reservados en la base por secuencia")
+                .tag("secuencia", secuencia)
+                .register(meterRegistry)
+                .increment();
+        return limite;
+    }
+
+    private boolean crearSiNoExiste(String secuencia, long valorInicial) {
+        try {
+            jdbcTemplate.update("INSERT INTO generadores_id (nombre, siguiente_valor) VALUES (?, ?)",
+                    secuencia, valorInicial);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // Otra instancia la creó al mismo tiempo
+            return false;
+        }
+    }
+
+    private TransactionTemplate enTransaccionPropia() {
+        TransactionTemplate transaccion = new TransactionTemplate(transactionManager);
+        transaccion.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        return transaccion;
+    }
+}
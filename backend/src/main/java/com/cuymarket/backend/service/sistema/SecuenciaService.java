@@ -0,0 +1,15 @@
+package com.cuymarket.backend.service.sistema;
+
+/**
+ * Numeración correlativa por nombre de secuencia (pedidos, facturas...). Los valores son
+ * únicos y crecientes para cada secuencia, pero puede haber huecos: no sirve para
+ * contar registros.
+ */
+public interface SecuenciaService {
+
+    // Siguiente valor de la secuencia; la crea si no existe
+    long siguiente(String secuencia);
+
+    // Asegura que los próximos valores sean mayores o iguales a minimo
+    void alinear(String secuencia, long minimo);
+}
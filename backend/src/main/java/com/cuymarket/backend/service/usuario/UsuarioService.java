@@ -5,7 +5,9 @@ import com.cuymarket.backend.model.usuario.Rol;
 import com.cuymarket.backend.model.usuario.Usuario;
 import com.cuymarket.backend.repository.usuario.RolRepository;
 import com.cuymarket.backend.repository.usuario.UsuarioRepository;
+import com.cuymarket.backend.service.sistema.DatosDashboardModificadosEvent;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -22,6 +24,7 @@ public class UsuarioService {
     private final UsuarioRepository usuarioRepository;
     private final RolRepository rolRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
 
     // Crear usuario
     public Usuario crear(Usuario usuario, Set<NombreRol> rolesNombres) {
@@ -44,6 +47,7 @@ public class UsuarioService {
             }
         }
 
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("usuario"));
         return usuarioRepository.save(usuario);
     }
 
@@ -199,6 +203,7 @@ public class UsuarioService {
     public void eliminar(Long id) {
         Usuario usuario = obtenerPorId(id);
         usuarioRepository.delete(usuario);
+        eventPublisher.publishEvent(new DatosDashboardModificadosEvent("usuario"));
     }
 
     // Validaciones privadas
@@ -0,0 +1,128 @@
+package com.cuymarket.backend.controller;
+
+import com.cuymarket.backend.dto.pedido.CrearPedidoRequest;
+import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.service.carrito.CarritoService;
+import com.cuymarket.backend.service.pedido.PedidoService;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+@WithMockUser(username = "admin@cuymarket.com", roles = "ADMIN")
+class PedidoControllerTest {
+
+    @Autowired
+    private WebApplicationContext contexto;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private CarritoService carritoService;
+
+    @Autowired
+    private DatosPrueba datos;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void configurar() {
+        mvc = MockMvcBuilders.webAppContextSetup(contexto).apply(springSecurity()).build();
+    }
+
+    @Test
+    void elListadoNoConsultaElPagoDeCadaPedido() throws Exception {
+        // Un pedido listado antes deja cargado todo lo que se inicializa una sola vez
+        listar(clienteConPedidos(1, Set.of()));
+
+        Set<Long> conComprobante = new HashSet<>();
+        String email = clienteConPedidos(23, conComprobante);
+        ContadorJdbc.Medicion conVeintitres = listar(email);
+        ContadorJdbc.Medicion conUno = listar(clienteConPedidos(1, Set.of()));
+
+        assertEquals(conUno.getSentencias(), conVeintitres.getSentencias());
+        // Ids de la página, pedidos con sus items, carrito del cliente y resúmenes de pago
+        assertTrue(conVeintitres.getSentencias() <= 4, "El listado ejecutó " + conVeintitres.getSentencias()
+                + " sentencias:\n" + String.join("\n", conVeintitres.getSql()));
+
+        JsonNode pedidos = objectMapper.readTree(mvc.perform(get("/api/pedidos/admin/todos")
+                        .param("texto", email)
+                        .param("tamano", "50"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString()).get("pedidos");
+        assertEquals(23, pedidos.size());
+        for (JsonNode pedido : pedidos) {
+            assertFalse(pedido.get("informacionPagoId").isNull());
+            assertEquals(conComprobante.contains(pedido.get("id").asLong()), pedido.get("tieneComprobante").asBoolean());
+        }
+    }
+
+    private ContadorJdbc.Medicion listar(String email) throws Exception {
+        return ContadorJdbc.medir(() -> mvc.perform(get("/api/pedidos/admin/todos")
+                        .param("texto", email)
+                        .param("tamano", "50"))
+                .andExpect(status().isOk()));
+    }
+
+    // Cada pedido tiene su propia dirección de envío
+    private Long direccion(DatosPrueba.Cliente cliente) {
+        String marca = UUID.randomUUID().toString();
+        jdbcTemplate.update("INSERT INTO direcciones_envio (nombre, apellido, telefono, direccion, ciudad, distrito, " +
+                "es_principal, usuario_id) VALUES ('Prueba', 'Listado', '999999999', ?, 'Lima', 'Lima', false, ?)",
+                marca, cliente.usuarioId());
+        return jdbcTemplate.queryForObject("SELECT id FROM direcciones_envio WHERE direccion = ?", Long.class, marca);
+    }
+
+    // Cliente con pedidos de dos productos pagados por Yape; uno de cada tres con comprobante
+    private String clienteConPedidos(int cantidad, Set<Long> conComprobante) throws Exception {
+        DatosPrueba.Cliente cliente = datos.crearClientes(1).get(0);
+        for (int i = 0; i < cantidad; i++) {
+            for (int j = 0; j < 2; j++) {
+                Producto producto = datos.crearProducto(new BigDecimal("12.50"), 10);
+                carritoService.agregarProducto(cliente.usuarioId(), producto.getId(), 1);
+            }
+            Long pedidoId = pedidoService.crearDesdeCarrito(cliente.usuarioId(), direccion(cliente), "YAPE", null,
+                    new CrearPedidoRequest(), null).getId();
+            if (i % 3 == 0 && cantidad > 1) {
+                jdbcTemplate.update("UPDATE informacion_pago SET comprobante_clave = ?, comprobante_tipo = 'image/png' " +
+                        "WHERE pedido_id = ?", "prueba/" + pedidoId + ".png", pedidoId);
+                conComprobante.add(pedidoId);
+            }
+        }
+        return jdbcTemplate.queryForObject("SELECT email FROM usuarios WHERE id = ?", String.class,
+                cliente.usuarioId());
+    }
+}
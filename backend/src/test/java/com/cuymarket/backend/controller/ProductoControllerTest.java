@@ -0,0 +1,191 @@
+package com.cuymarket.backend.controller;
+
+import com.cuymarket.backend.dto.producto.ProductoRequest;
+import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.repository.producto.CategoriaRepository;
+import com.cuymarket.backend.repository.producto.ProductoRepository;
+import com.cuymarket.backend.service.producto.ProductoService;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+@WithMockUser(username = "admin@cuymarket.com", roles = "ADMIN")
+class ProductoControllerTest {
+
+    @Autowired
+    private WebApplicationContext contexto;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private ProductoService productoService;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void configurar() {
+        mvc = MockMvcBuilders.webAppContextSetup(contexto).apply(springSecurity()).build();
+    }
+
+    @Test
+    void reenviarLaUrlConservaLosMetadatosDeLaImagen() throws Exception {
+        ProductoRequest conImagen = solicitud("data:image/png;base64,"
+                + Base64.getEncoder().encodeToString(DatosPrueba.png(300, 200)));
+        JsonNode creado = crear(conImagen);
+
+        // Otro producto que reutiliza la imagen por su URL
+        JsonNode copia = crear(solicitud(creado.get("imagen").asText()));
+        Producto producto = productoRepository.findById(copia.get("id").asLong()).orElseThrow();
+
+        assertEquals("image/png", producto.getImagenTipo());
+        assertEquals(300, producto.getImagenAncho());
+        assertEquals(200, producto.getImagenAlto());
+    }
+
+    @Test
+    void unaUrlSinHashValidoSeRechaza() throws Exception {
+        JsonNode creado = crear(solicitud("data:image/png;base64,"
+                + Base64.getEncoder().encodeToString(DatosPrueba.png(40, 40))));
+
+        ProductoRequest edicion = solicitud("/api/productos/1/imagen?v=no-es-un-hash");
+        edicion.setVersion(creado.get("version").asLong());
+        mvc.perform(put("/api/productos/{id}", creado.get("id").asLong())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(edicion)))
+                .andExpect(status().isBadRequest());
+
+        Producto producto = productoRepository.findById(creado.get("id").asLong()).orElseThrow();
+        assertEquals(40, producto.getImagenAncho());
+    }
+
+    @Test
+    void unaEdicionAbiertaAntesDeUnaVentaNoLaDeshace() throws Exception {
+        ProductoRequest formulario = solicitud(null);
+        formulario.setStockDisponible(10);
+        JsonNode creado = crear(formulario);
+        Long id = creado.get("id").asLong();
+        formulario.setVersion(creado.get("version").asLong());
+
+        // Venta entre que se abrió el formulario y se guardó
+        productoService.descontarStockLote(Map.of(id, 4), "Venta de prueba");
+
+        formulario.setNombre("Nombre editado");
+        mvc.perform(put("/api/productos/{id}", id)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(formulario)))
+                .andExpect(status().isConflict());
+        mvc.perform(put("/api/productos/{id}/stock", id)
+                        .param("stock", "10")
+                        .param("version", String.valueOf(formulario.getVersion())))
+                .andExpect(status().isConflict());
+        assertEquals(6, productoRepository.findById(id).orElseThrow().getStockDisponible());
+
+        // Sin versión la edición no se acepta
+        formulario.setVersion(null);
+        mvc.perform(put("/api/productos/{id}", id)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(formulario)))
+                .andExpect(status().isBadRequest());
+
+        // Con la versión actual se guarda
+        JsonNode actual = objectMapper.readTree(mvc.perform(get("/api/productos/{id}", id))
+                .andReturn().getResponse().getContentAsString());
+        formulario.setVersion(actual.get("version").asLong());
+        formulario.setStockDisponible(actual.get("stockDisponible").asInt());
+        mvc.perform(put("/api/productos/{id}", id)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(formulario)))
+                .andExpect(status().isOk());
+        Producto producto = productoRepository.findById(id).orElseThrow();
+        assertEquals("Nombre editado", producto.getNombre());
+        assertEquals(6, producto.getStockDisponible());
+    }
+
+    @Test
+    void elCatalogoDevuelveUnaPaginaFiltradaEnElServidor() throws Exception {
+        String raza = "Raza " + System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            ProductoRequest solicitud = solicitud(null);
+            solicitud.setRaza(raza);
+            solicitud.setPrecio(new BigDecimal(10 * (i + 1)));
+            crear(solicitud);
+        }
+
+        String respuesta = mvc.perform(get("/api/productos")
+                        .param("raza", raza)
+                        .param("precioMin", "20")
+                        .param("precioMax", "50")
+                        .param("size", "2")
+                        .param("sort", "precio,desc"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        JsonNode pagina = objectMapper.readTree(respuesta);
+
+        assertEquals(3, pagina.get("totalElementos").asLong());
+        assertEquals(2, pagina.get("totalPaginas").asInt());
+        assertEquals(0, pagina.get("pagina").asInt());
+        assertEquals(2, pagina.get("productos").size());
+        assertEquals(40, pagina.get("productos").get(0).get("precio").asInt());
+
+        String razas = mvc.perform(get("/api/productos/razas"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        assertTrue(razas.contains(raza));
+    }
+
+    private JsonNode crear(ProductoRequest solicitud) throws Exception {
+        String respuesta = mvc.perform(post("/api/productos")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(solicitud)))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(respuesta);
+    }
+
+    private ProductoRequest solicitud(String imagen) {
+        ProductoRequest solicitud = new ProductoRequest();
+        solicitud.setNombre("Cuy de prueba");
+        solicitud.setRaza("Perú");
+        solicitud.setPeso(1.2);
+        solicitud.setPrecio(new BigDecimal("45.00"));
+        solicitud.setTipo("Carne");
+        solicitud.setImagen(imagen);
+        solicitud.setStockDisponible(3);
+        solicitud.setCategoriaId(categoriaRepository.findAll().get(0).getId());
+        return solicitud;
+    }
+}
@@ -0,0 +1,85 @@
+package com.cuymarket.backend.controller.reportes;
+
+import com.cuymarket.backend.model.enums.EstadoPago;
+import com.cuymarket.backend.model.enums.EstadoPedido;
+import com.cuymarket.backend.model.enums.MetodoPago;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import com.cuymarket.backend.soporte.DatosPrueba.PedidoSemilla;
+import com.cuymarket.backend.soporte.LectorExcel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+@WithMockUser(username = "admin@cuymarket.com", roles = "ADMIN")
+class ReporteControllerTest {
+
+    @Autowired
+    private WebApplicationContext contexto;
+
+    @Autowired
+    private DatosPrueba datos;
+
+    private MockMvc mvc;
+
+    @BeforeEach
+    void configurar() {
+        mvc = MockMvcBuilders.webAppContextSetup(contexto).apply(springSecurity()).build();
+    }
+
+    @Test
+    void elPeriodoIncluyeTodoElUltimoDiaYNadaDelSiguiente() throws Exception {
+        // Un día lejano para no cruzarse con pedidos de otras pruebas
+        LocalDate dia = LocalDate.of(2001, 3, 15);
+        Long clienteId = datos.idUsuario("cliente@cuymarket.com");
+        datos.insertarPedidos(clienteId, List.of(
+                semilla(dia.minusDays(1).atTime(23, 59, 59, 999_999_000), EstadoPedido.ENTREGADO),
+                semilla(dia.atStartOfDay(), EstadoPedido.ENTREGADO),
+                semilla(dia.atTime(23, 59, 59, 500_000_000), EstadoPedido.ENTREGADO),
+                semilla(dia.plusDays(1).atStartOfDay(), EstadoPedido.ENTREGADO)));
+
+        MvcResult ventas = mvc.perform(get("/api/reportes/ventas")
+                        .param("formato", "EXCEL")
+                        .param("fechaInicio", dia.toString())
+                        .param("fechaFin", dia.toString()))
+                .andReturn();
+        byte[] archivoVentas = mvc.perform(asyncDispatch(ventas))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(2, LectorExcel.valorDeEtiqueta(archivoVentas, "Cantidad:"));
+
+        byte[] archivoCompletados = mvc.perform(get("/api/reportes/pedidos-completados")
+                        .param("formato", "EXCEL")
+                        .param("fechaInicio", dia.toString())
+                        .param("fechaFin", dia.toString()))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals(2, LectorExcel.valorDeEtiqueta(archivoCompletados, "Total Pedidos:"));
+    }
+
+    private static PedidoSemilla semilla(LocalDateTime fecha, EstadoPedido estado) {
+        return new PedidoSemilla(fecha, estado, EstadoPago.PAGADO, MetodoPago.TARJETA, new BigDecimal("10.00"));
+    }
+}
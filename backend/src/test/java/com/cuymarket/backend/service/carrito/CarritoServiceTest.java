@@ -0,0 +1,162 @@
+package com.cuymarket.backend.service.carrito;
+
+import com.cuymarket.backend.dto.carrito.OperacionesCarritoRequest.Operacion;
+import com.cuymarket.backend.exception.BadRequestException;
+import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.cuymarket.backend.dto.carrito.OperacionesCarritoRequest.Tipo.ACTUALIZAR;
+import static com.cuymarket.backend.dto.carrito.OperacionesCarritoRequest.Tipo.AGREGAR;
+import static com.cuymarket.backend.dto.carrito.OperacionesCarritoRequest.Tipo.ELIMINAR;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+class CarritoServiceTest {
+
+    @Autowired
+    private CarritoService carritoService;
+
+    @Autowired
+    private DatosPrueba datos;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void elCarritoInvitadoSeFusionaSinPasarDelStock() {
+        DatosPrueba.Cliente cliente = datos.crearClientes(1).get(0);
+        Producto nuevo = datos.crearProducto(new BigDecimal("10.00"), 5);
+        Producto enCarrito = datos.crearProducto(new BigDecimal("10.00"), 3);
+        Producto lleno = datos.crearProducto(new BigDecimal("10.00"), 2);
+        Producto agotado = datos.crearProducto(new BigDecimal("10.00"), 0);
+        carritoService.agregarProducto(cliente.usuarioId(), enCarrito.getId(), 2);
+        carritoService.agregarProducto(cliente.usuarioId(), lleno.getId(), 2);
+
+        Map<Long, Integer> invitado = new LinkedHashMap<>();
+        invitado.put(nuevo.getId(), 8);
+        invitado.put(enCarrito.getId(), 4);
+        invitado.put(lleno.getId(), 1);
+        invitado.put(agotado.getId(), 1);
+        invitado.put(-1L, 1);
+
+        // Solo cambian el producto nuevo y el que ya estaba con stock de sobra
+        assertEquals(2, carritoService.fusionarInvitado(cliente.usuarioId(), invitado));
+        assertEquals(5, cantidad(cliente, nuevo));
+        assertEquals(3, cantidad(cliente, enCarrito));
+        assertEquals(2, cantidad(cliente, lleno));
+        assertNull(cantidad(cliente, agotado));
+    }
+
+    @Test
+    void fusionarUnoODiezProductosEjecutaLasMismasSentencias() throws Exception {
+        int conUno = sentenciasDeFusion(1);
+        int conDiez = sentenciasDeFusion(10);
+
+        assertEquals(conUno, conDiez);
+        // Carrito, usuario, productos, INSERT y UPDATE de items en lote y versión del carrito
+        assertTrue(conDiez <= 6, "La fusión ejecutó " + conDiez + " sentencias");
+    }
+
+    @Test
+    void nueveOperacionesSeEscribenEnLote() throws Exception {
+        DatosPrueba.Cliente cliente = datos.crearClientes(1).get(0);
+        Producto[] p = new Producto[7];
+        for (int i = 0; i < p.length; i++) {
+            p[i] = datos.crearProducto(new BigDecimal("10.00"), 20);
+        }
+        for (int i = 0; i < 3; i++) {
+            carritoService.agregarProducto(cliente.usuarioId(), p[i].getId(), 1);
+        }
+
+        List<Operacion> operaciones = List.of(
+                new Operacion(AGREGAR, p[3].getId(), 2),
+                new Operacion(AGREGAR, p[4].getId(), 1),
+                new Operacion(AGREGAR, p[0].getId(), 1),
+                new Operacion(ACTUALIZAR, p[1].getId(), 3),
+                new Operacion(ELIMINAR, p[2].getId(), null),
+                new Operacion(AGREGAR, p[5].getId(), 1),
+                new Operacion(ACTUALIZAR, p[3].getId(), 4),
+                new Operacion(AGREGAR, p[6].getId(), 1),
+                new Operacion(ELIMINAR, p[4].getId(), null));
+        ContadorJdbc.Medicion medicion = ContadorJdbc.medir(
+                () -> carritoService.aplicarOperaciones(cliente.usuarioId(), operaciones));
+        List<String> sentencias = medicion.getSql().stream()
+                .filter(sql -> !sql.contains("generadores_id"))
+                .toList();
+
+        assertEquals(2, cantidad(cliente, p[0]));
+        assertEquals(3, cantidad(cliente, p[1]));
+        assertNull(cantidad(cliente, p[2]));
+        assertEquals(4, cantidad(cliente, p[3]));
+        assertNull(cantidad(cliente, p[4]));
+        assertEquals(1, cantidad(cliente, p[5]));
+        assertEquals(1, cantidad(cliente, p[6]));
+        assertTrue(sentencias.size() <= 7, "Las operaciones ejecutaron " + sentencias.size() + " sentencias:\n"
+                + String.join("\n", sentencias));
+    }
+
+    @Test
+    void siUnaOperacionNoTieneStockNoSeAplicaNinguna() {
+        DatosPrueba.Cliente cliente = datos.crearClientes(1).get(0);
+        Producto conStock = datos.crearProducto(new BigDecimal("10.00"), 20);
+        Producto escaso = datos.crearProducto(new BigDecimal("10.00"), 2);
+        carritoService.agregarProducto(cliente.usuarioId(), conStock.getId(), 1);
+
+        assertThrows(BadRequestException.class, () -> carritoService.aplicarOperaciones(cliente.usuarioId(), List.of(
+                new Operacion(ACTUALIZAR, conStock.getId(), 5),
+                new Operacion(AGREGAR, escaso.getId(), 3))));
+        assertEquals(1, cantidad(cliente, conStock));
+        assertNull(cantidad(cliente, escaso));
+    }
+
+    // Sentencias de la fusión sin las reservas de bloques de ids en generadores_id
+    private int sentenciasDeFusion(int lineas) throws Exception {
+        DatosPrueba.Cliente cliente = datos.crearClientes(1).get(0);
+        Producto previo = datos.crearProducto(new BigDecimal("10.00"), 50);
+        carritoService.agregarProducto(cliente.usuarioId(), previo.getId(), 1);
+
+        Map<Long, Integer> invitado = new LinkedHashMap<>();
+        invitado.put(previo.getId(), 1);
+        for (int i = 0; i < lineas; i++) {
+            invitado.put(datos.crearProducto(new BigDecimal("10.00"), 50).getId(), 2);
+        }
+
+        ContadorJdbc.Medicion medicion = ContadorJdbc.medir(
+                () -> carritoService.fusionarInvitado(cliente.usuarioId(), invitado));
+        assertEquals(lineas + 1, contarItems(cliente));
+        List<String> sentencias = medicion.getSql().stream()
+                .filter(sql -> !sql.contains("generadores_id"))
+                .toList();
+        return sentencias.size();
+    }
+
+    private Integer cantidad(DatosPrueba.Cliente cliente, Producto producto) {
+        List<Integer> cantidades = jdbcTemplate.queryForList("SELECT i.cantidad FROM items_carrito i " +
+                        "JOIN carritos c ON c.id = i.carrito_id WHERE c.usuario_id = ? AND i.producto_id = ?",
+                Integer.class, cliente.usuarioId(), producto.getId());
+        return cantidades.isEmpty() ? null : cantidades.get(0);
+    }
+
+    private int contarItems(DatosPrueba.Cliente cliente) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM items_carrito i " +
+                "JOIN carritos c ON c.id = i.carrito_id WHERE c.usuario_id = ?", Integer.class, cliente.usuarioId());
+    }
+}
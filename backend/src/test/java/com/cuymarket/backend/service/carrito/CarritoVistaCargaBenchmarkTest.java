@@ -0,0 +1,133 @@
+package com.cuymarket.backend.service.carrito;
+
+import com.cuymarket.backend.model.carrito.ItemCarrito;
+import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Lecturas de base por vista del carrito bajo carga. Una vista es lo que pide cada página:
+ * el contador del icono, el total y el carrito completo. Se compara la lectura directa del
+ * carrito con sus items (lo que hacía cada llamada antes del CarritoStore) con las vistas
+ * servidas desde el store, donde un 2 % de las vistas va precedida de un cambio al carrito
+ * que lo invalida.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+@Tag("benchmark")
+class CarritoVistaCargaBenchmarkTest {
+
+    private static final int CLIENTES = 100;
+    private static final int HILOS = 16;
+    private static final int VISTAS_POR_HILO = 2_000;
+    private static final int PORCENTAJE_CAMBIOS = 2;
+
+    @Autowired
+    private CarritoService carritoService;
+
+    @Autowired
+    private DatosPrueba datos;
+
+    @Test
+    void lecturasDeBasePorVistaDelCarrito() throws Exception {
+        List<Producto> productos = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            productos.add(datos.crearProducto(new BigDecimal("20.00"), 1_000_000));
+        }
+        List<Long> usuarios = datos.crearClientes(CLIENTES).stream().map(DatosPrueba.Cliente::usuarioId).toList();
+        for (Long usuarioId : usuarios) {
+            for (int i = 0; i < 3; i++) {
+                carritoService.agregarProducto(usuarioId, productos.get(i).getId(), 1);
+            }
+        }
+
+        Resultado directo = cargar(usuarios, usuarioId -> {
+            // Contador, total y carrito: tres lecturas del carrito con sus items
+            for (int i = 0; i < 3; i++) {
+                carritoService.obtenerCarritoConItems(usuarioId).getItems().stream()
+                        .mapToInt(ItemCarrito::getCantidad).sum();
+            }
+        }, null);
+
+        Resultado conStore = cargar(usuarios, usuarioId -> {
+            carritoService.contarItems(usuarioId);
+            carritoService.calcularTotal(usuarioId);
+            carritoService.obtenerVista(usuarioId);
+        }, usuarioId -> carritoService.agregarProducto(usuarioId,
+                productos.get(ThreadLocalRandom.current().nextInt(productos.size())).getId(), 1));
+
+        System.out.printf("Lectura directa: %d vistas, %.2f sentencias por vista, %.1f vistas/s%n",
+                directo.vistas(), directo.sentenciasPorVista(), directo.vistasPorSegundo());
+        System.out.printf("CarritoStore (%d%% con cambio previo): %d vistas, %.3f sentencias por vista, " +
+                        "%.1f vistas/s%n", PORCENTAJE_CAMBIOS, conStore.vistas(), conStore.sentenciasPorVista(),
+                conStore.vistasPorSegundo());
+
+        assertTrue(conStore.sentenciasPorVista() * 10 < directo.sentenciasPorVista(),
+                "El store no redujo las lecturas por vista");
+    }
+
+    private interface PorUsuario {
+        void ejecutar(Long usuarioId) throws Exception;
+    }
+
+    private record Resultado(long vistas, long sentencias, double segundos) {
+        double sentenciasPorVista() {
+            return (double) sentencias / vistas;
+        }
+
+        double vistasPorSegundo() {
+            return vistas / segundos;
+        }
+    }
+
+    // Solo se cuentan las sentencias de las vistas; las de los cambios quedan fuera
+    private Resultado cargar(List<Long> usuarios, PorUsuario vista, PorUsuario cambio) throws Exception {
+        CountDownLatch salida = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(HILOS);
+        try {
+            List<Future<Long>> sentenciasPorHilo = new ArrayList<>();
+            for (int h = 0; h < HILOS; h++) {
+                sentenciasPorHilo.add(executor.submit(() -> {
+                    salida.await();
+                    ThreadLocalRandom azar = ThreadLocalRandom.current();
+                    long sentencias = 0;
+                    for (int i = 0; i < VISTAS_POR_HILO; i++) {
+                        Long usuarioId = usuarios.get(azar.nextInt(usuarios.size()));
+                        if (cambio != null && azar.nextInt(100) < PORCENTAJE_CAMBIOS) {
+                            cambio.ejecutar(usuarioId);
+                        }
+                        sentencias += ContadorJdbc.medir(() -> vista.ejecutar(usuarioId)).getSentencias();
+                    }
+                    return sentencias;
+                }));
+            }
+            long inicio = System.nanoTime();
+            salida.countDown();
+            long sentencias = 0;
+            for (Future<Long> resultado : sentenciasPorHilo) {
+                sentencias += resultado.get();
+            }
+            return new Resultado((long) HILOS * VISTAS_POR_HILO, sentencias, (System.nanoTime() - inicio) / 1e9);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
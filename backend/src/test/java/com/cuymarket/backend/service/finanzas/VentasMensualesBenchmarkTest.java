@@ -0,0 +1,147 @@
+package com.cuymarket.backend.service.finanzas;
+
+import com.cuymarket.backend.dto.finanzas.VentaMesDTO;
+import com.cuymarket.backend.model.enums.EstadoPago;
+import com.cuymarket.backend.model.enums.EstadoPedido;
+import com.cuymarket.backend.model.enums.MetodoPago;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.ContadorJdbc.Medicion;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import com.cuymarket.backend.soporte.DatosPrueba.PedidoSemilla;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Serie de ventas de los últimos seis meses (dashboard y finanzas) sobre 100 000 pedidos
+ * repartidos en tres años. Compara la consulta por mes original, que traía todo lo
+ * pagado desde el inicio del mes hasta hoy, la suma acotada por mes y el GROUP BY
+ * único sobre los acumulados diarios.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+@Tag("benchmark")
+class VentasMensualesBenchmarkTest {
+
+    private static final int PEDIDOS = 100_000;
+    private static final int DIAS = 3 * 365;
+    private static final int MESES = 6;
+    private static final int REPETICIONES = 20;
+
+    @Autowired
+    private VentaDiariaService ventaDiariaService;
+
+    @Autowired
+    private DatosPrueba datos;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void seisMesesEnUnaSolaConsultaAgrupada() throws Exception {
+        LocalDateTime ahora = LocalDateTime.now();
+        List<PedidoSemilla> semillas = new ArrayList<>(PEDIDOS);
+        for (int i = 0; i < PEDIDOS; i++) {
+            // Reparto uniforme hacia atrás, sin pasar de ahora
+            LocalDateTime fecha = ahora.minusMinutes(1 + (long) i * DIAS * 24 * 60 / PEDIDOS);
+            EstadoPago estadoPago = i % 4 == 0 ? EstadoPago.PENDIENTE : EstadoPago.PAGADO;
+            semillas.add(new PedidoSemilla(fecha, EstadoPedido.ENTREGADO, estadoPago,
+                    MetodoPago.values()[i % MetodoPago.values().length], BigDecimal.valueOf(10 + i % 90)));
+        }
+        datos.insertarPedidos(datos.idUsuario("cliente@cuymarket.com"), semillas);
+        transactionTemplate.executeWithoutResult(estado -> ventaDiariaService.reconstruir());
+
+        YearMonth mesActual = YearMonth.now();
+        YearMonth primerMes = mesActual.minusMonths(MESES - 1);
+
+        // Original: por cada mes, todo lo pagado desde su inicio hasta hoy, sumado en Java
+        Resultado porMesAbierto = medir(() -> transactionTemplate.execute(estado -> {
+            List<BigDecimal> montos = new ArrayList<>();
+            for (YearMonth mes = primerMes; !mes.isAfter(mesActual); mes = mes.plusMonths(1)) {
+                LocalDateTime finMes = mes.plusMonths(1).atDay(1).atStartOfDay();
+                montos.add(entityManager.createQuery("SELECT p.fechaPedido, p.total FROM Pedido p " +
+                                "WHERE p.estadoPago = :estadoPago AND p.fechaPedido >= :desde", Object[].class)
+                        .setParameter("estadoPago", EstadoPago.PAGADO)
+                        .setParameter("desde", mes.atDay(1).atStartOfDay())
+                        .getResultStream()
+                        .filter(fila -> ((LocalDateTime) fila[0]).isBefore(finMes))
+                        .map(fila -> (BigDecimal) fila[1])
+                        .reduce(BigDecimal.ZERO, BigDecimal::add));
+            }
+            return montos;
+        }));
+
+        // Seis SUM acotados sobre pedidos
+        Resultado porMesAcotado = medir(() -> transactionTemplate.execute(estado -> {
+            List<BigDecimal> montos = new ArrayList<>();
+            for (YearMonth mes = primerMes; !mes.isAfter(mesActual); mes = mes.plusMonths(1)) {
+                montos.add(entityManager.createQuery("SELECT COALESCE(SUM(p.total), 0) FROM Pedido p " +
+                                "WHERE p.estadoPago = :estadoPago AND p.fechaPedido >= :desde AND p.fechaPedido < :hasta",
+                                BigDecimal.class)
+                        .setParameter("estadoPago", EstadoPago.PAGADO)
+                        .setParameter("desde", mes.atDay(1).atStartOfDay())
+                        .setParameter("hasta", mes.plusMonths(1).atDay(1).atStartOfDay())
+                        .getSingleResult());
+            }
+            return montos;
+        }));
+
+        // Actual: un GROUP BY año, mes sobre ventas_diarias
+        Resultado agrupado = medir(() -> ventaDiariaService.resumirUltimosMeses(MESES).stream()
+                .map(VentaMesDTO::getMonto)
+                .toList());
+
+        System.out.printf("Ventas de %d meses con %d pedidos sembrados (%d repeticiones)%n",
+                MESES, PEDIDOS, REPETICIONES);
+        System.out.printf("  %-26s %10s %12s %10s%n", "estrategia", "sentencias", "filas leidas", "ms/llamada");
+        imprimir("6 consultas desde el mes", porMesAbierto);
+        imprimir("6 SUM acotados", porMesAcotado);
+        imprimir("1 GROUP BY ventas_diarias", agrupado);
+
+        for (int i = 0; i < MESES; i++) {
+            assertEquals(0, porMesAbierto.montos().get(i).compareTo(agrupado.montos().get(i)));
+            assertEquals(0, porMesAcotado.montos().get(i).compareTo(agrupado.montos().get(i)));
+        }
+        assertEquals(1, agrupado.medicion().getSentencias());
+        assertTrue(agrupado.medicion().getFilas() <= MESES);
+    }
+
+    private record Resultado(List<BigDecimal> montos, Medicion medicion, double msPorLlamada) {
+    }
+
+    private Resultado medir(Supplier<List<BigDecimal>> calculo) throws Exception {
+        calculo.get();
+        List<List<BigDecimal>> montos = new ArrayList<>();
+        Medicion medicion = ContadorJdbc.medir(() -> montos.add(calculo.get()));
+        long inicio = System.nanoTime();
+        for (int i = 0; i < REPETICIONES; i++) {
+            calculo.get();
+        }
+        double ms = (System.nanoTime() - inicio) / 1_000_000.0 / REPETICIONES;
+        return new Resultado(montos.get(0), medicion, ms);
+    }
+
+    private static void imprimir(String estrategia, Resultado resultado) {
+        System.out.printf("  %-26s %10d %12d %10.2f%n", estrategia, resultado.medicion().getSentencias(),
+                resultado.medicion().getFilas(), resultado.msPorLlamada());
+    }
+}
@@ -0,0 +1,147 @@
+package com.cuymarket.backend.service.pedido;
+
+import com.cuymarket.backend.dto.pedido.CrearPedidoRequest;
+import com.cuymarket.backend.model.enums.TipoCupon;
+import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.model.promocion.Cupon;
+import com.cuymarket.backend.service.carrito.CarritoService;
+import com.cuymarket.backend.service.promocion.CuponService;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checkouts simultáneos por la misma entrada que usa el controlador. Con 500 clientes y
+ * stock para 100, el descuento condicional deja exactamente 100 pedidos y el stock en
+ * cero; con un cupón de 50 usos, nunca se canjea más de 50 veces.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+class CheckoutConcurrenteTest {
+
+    private static final int CLIENTES = 500;
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private IdempotenciaPedidoService idempotenciaPedidoService;
+
+    @Autowired
+    private CarritoService carritoService;
+
+    @Autowired
+    private CuponService cuponService;
+
+    @Autowired
+    private DatosPrueba datos;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void elStockNuncaQuedaNegativoCon500CheckoutsEnParalelo() throws Exception {
+        int stock = 100;
+        Producto producto = datos.crearProducto(new BigDecimal("25.00"), stock);
+        List<DatosPrueba.Cliente> clientes = clientesConCarrito(producto);
+
+        int exitosos = comprarEnParalelo(clientes, null);
+
+        Integer stockFinal = jdbcTemplate.queryForObject(
+                "SELECT stock_disponible FROM productos WHERE id = ?", Integer.class, producto.getId());
+        Integer vendidos = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(SUM(cantidad), 0) FROM items_pedido WHERE producto_id = ?", Integer.class,
+                producto.getId());
+
+        assertEquals(stock, exitosos);
+        assertEquals(0, stockFinal);
+        assertEquals(stock, vendidos);
+    }
+
+    @Test
+    void elCuponNuncaSuperaSuLimiteDeUsos() throws Exception {
+        int usosMaximos = 50;
+        Producto producto = datos.crearProducto(new BigDecimal("25.00"), CLIENTES);
+        List<DatosPrueba.Cliente> clientes = clientesConCarrito(producto);
+
+        Cupon cupon = new Cupon();
+        cupon.setCodigo("LIMITE-" + UUID.randomUUID().toString().substring(0, 8));
+        cupon.setTipoCupon(TipoCupon.PORCENTAJE);
+        cupon.setDescuento(BigDecimal.TEN);
+        cupon.setUsosMaximos(usosMaximos);
+        cupon.setFechaInicio(LocalDate.now().minusDays(1));
+        cupon.setFechaVencimiento(LocalDate.now().plusDays(1));
+        cupon = cuponService.crear(cupon);
+
+        int exitosos = comprarEnParalelo(clientes, cupon.getCodigo());
+
+        Integer usos = jdbcTemplate.queryForObject(
+                "SELECT usos_actuales FROM cupones WHERE id = ?", Integer.class, cupon.getId());
+        Integer pedidosConCupon = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM pedidos WHERE cupon_id = ?", Integer.class, cupon.getId());
+
+        assertEquals(usosMaximos, exitosos);
+        assertEquals(usosMaximos, usos);
+        assertEquals(usosMaximos, pedidosConCupon);
+    }
+
+    private List<DatosPrueba.Cliente> clientesConCarrito(Producto producto) {
+        List<DatosPrueba.Cliente> clientes = datos.crearClientes(CLIENTES);
+        for (DatosPrueba.Cliente cliente : clientes) {
+            carritoService.agregarProducto(cliente.usuarioId(), producto.getId(), 1);
+        }
+        return clientes;
+    }
+
+    // Todos salen a la vez; devuelve cuántos pedidos se crearon
+    private int comprarEnParalelo(List<DatosPrueba.Cliente> clientes, String codigoCupon) throws Exception {
+        AtomicInteger exitosos = new AtomicInteger();
+        AtomicInteger rechazados = new AtomicInteger();
+        CountDownLatch salida = new CountDownLatch(1);
+        ExecutorService hilos = Executors.newFixedThreadPool(clientes.size());
+        try {
+            List<Future<?>> compras = new ArrayList<>();
+            for (DatosPrueba.Cliente cliente : clientes) {
+                compras.add(hilos.submit(() -> {
+                    salida.await();
+                    try {
+                        idempotenciaPedidoService.ejecutar(cliente.usuarioId(), null,
+                                () -> pedidoService.crearDesdeCarrito(cliente.usuarioId(), cliente.direccionId(),
+                                        "TARJETA", codigoCupon, new CrearPedidoRequest(), null));
+                        exitosos.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        rechazados.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            salida.countDown();
+            for (Future<?> compra : compras) {
+                compra.get();
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+        assertEquals(clientes.size(), exitosos.get() + rechazados.get());
+        return exitosos.get();
+    }
+}
@@ -0,0 +1,103 @@
+package com.cuymarket.backend.service.pedido;
+
+import com.cuymarket.backend.model.enums.EstadoPago;
+import com.cuymarket.backend.model.enums.EstadoPedido;
+import com.cuymarket.backend.model.enums.MetodoPago;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+class ComprobantePagoServiceTest {
+
+    @Autowired
+    private ComprobantePagoService comprobantePagoService;
+
+    @Autowired
+    private DatosPrueba datos;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void crearColumnaLegacy() {
+        jdbcTemplate.execute("ALTER TABLE informacion_pago ADD COLUMN IF NOT EXISTS comprobante BLOB");
+    }
+
+    @Test
+    void laMigracionConservaLaColumnaYRecuperaArchivosPerdidos() throws Exception {
+        byte[] contenido = DatosPrueba.png(120, 80);
+        Long pagoId = crearPagoConComprobanteLegacy(contenido);
+
+        assertTrue(comprobantePagoService.migrarComprobantesLegacy() >= 1);
+        String clave = jdbcTemplate.queryForObject(
+                "SELECT comprobante_clave FROM informacion_pago WHERE id = ?", String.class, pagoId);
+        Path archivo = comprobantePagoService.resolver(clave);
+        assertArrayEquals(contenido, Files.readAllBytes(archivo));
+        assertEquals("image/png", jdbcTemplate.queryForObject(
+                "SELECT comprobante_tipo FROM informacion_pago WHERE id = ?", String.class, pagoId));
+        assertNotNull(leerLegacy(pagoId));
+
+        // Disco efímero: el archivo desaparece y el siguiente arranque lo vuelve a escribir
+        Files.delete(archivo);
+        assertTrue(comprobantePagoService.migrarComprobantesLegacy() >= 1);
+        String nuevaClave = jdbcTemplate.queryForObject(
+                "SELECT comprobante_clave FROM informacion_pago WHERE id = ?", String.class, pagoId);
+        assertArrayEquals(contenido, Files.readAllBytes(comprobantePagoService.resolver(nuevaClave)));
+
+        // Sin activar la opción la columna nunca se vacía
+        assertEquals(0, comprobantePagoService.vaciarComprobantesLegacy());
+        assertNotNull(leerLegacy(pagoId));
+    }
+
+    @Test
+    void vaciarLaColumnaEsOpcional() {
+        Long pagoId = crearPagoConComprobanteLegacy(DatosPrueba.png(32, 32));
+        comprobantePagoService.migrarComprobantesLegacy();
+
+        ReflectionTestUtils.setField(comprobantePagoService, "vaciarLegacy", true);
+        try {
+            assertTrue(comprobantePagoService.vaciarComprobantesLegacy() >= 1);
+        } finally {
+            ReflectionTestUtils.setField(comprobantePagoService, "vaciarLegacy", false);
+        }
+        assertNull(leerLegacy(pagoId));
+    }
+
+    // Pedido nuevo con su información de pago y el comprobante solo en la columna antigua
+    private Long crearPagoConComprobanteLegacy(byte[] contenido) {
+        DatosPrueba.Cliente cliente = datos.crearClientes(1).get(0);
+        Long pedidoId = datos.insertarPedidos(cliente.usuarioId(), List.of(new DatosPrueba.PedidoSemilla(
+                LocalDateTime.now(), EstadoPedido.PENDIENTE, EstadoPago.PENDIENTE, MetodoPago.YAPE,
+                new BigDecimal("30.00")))).get(0);
+        jdbcTemplate.update("INSERT INTO informacion_pago (metodo_pago, comprobante, pedido_id) VALUES ('YAPE', ?, ?)",
+                contenido, pedidoId);
+        return jdbcTemplate.queryForObject("SELECT id FROM informacion_pago WHERE pedido_id = ?", Long.class, pedidoId);
+    }
+
+    private byte[] leerLegacy(Long pagoId) {
+        return jdbcTemplate.queryForObject(
+                "SELECT comprobante FROM informacion_pago WHERE id = ?", byte[].class, pagoId);
+    }
+}
@@ -0,0 +1,198 @@
+package com.cuymarket.backend.service.pedido;
+
+import com.cuymarket.backend.dto.pedido.CrearPedidoRequest;
+import com.cuymarket.backend.exception.ConflictException;
+import com.cuymarket.backend.model.pedido.Pedido;
+import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.service.carrito.CarritoService;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reintentos del mismo checkout con una clave de idempotencia: solo uno crea el pedido y
+ * los demás reciben ese mismo pedido; si el primero falla, la clave queda libre.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+class IdempotenciaPedidoServiceTest {
+
+    private static final int REINTENTOS = 20;
+
+    @Autowired
+    private IdempotenciaPedidoService idempotenciaPedidoService;
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private CarritoService carritoService;
+
+    @Autowired
+    private DatosPrueba datos;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void laMismaClaveEnParaleloCreaUnSoloPedido() throws Exception {
+        DatosPrueba.Cliente cliente = clienteConCarrito();
+        CountDownLatch salida = new CountDownLatch(1);
+        ExecutorService hilos = Executors.newFixedThreadPool(REINTENTOS);
+        List<IdempotenciaPedidoService.Resultado> resultados = new ArrayList<>();
+        try {
+            List<Future<IdempotenciaPedidoService.Resultado>> envios = new ArrayList<>();
+            for (int i = 0; i < REINTENTOS; i++) {
+                envios.add(hilos.submit(() -> {
+                    salida.await();
+                    return idempotenciaPedidoService.ejecutar(cliente.usuarioId(), "doble-clic", checkout(cliente));
+                }));
+            }
+            salida.countDown();
+            for (Future<IdempotenciaPedidoService.Resultado> envio : envios) {
+                resultados.add(envio.get());
+            }
+        } finally {
+            hilos.shutdownNow();
+        }
+
+        assertEquals(1, resultados.stream().filter(r -> !r.repetido()).count());
+        assertEquals(REINTENTOS - 1, resultados.stream().filter(IdempotenciaPedidoService.Resultado::repetido).count());
+        assertEquals(1, resultados.stream().map(r -> r.pedido().getId()).distinct().count());
+        assertEquals(1, pedidosDe(cliente));
+    }
+
+    @Test
+    void siElPrimerIntentoFallaElReintentoCreaElPedido() throws Exception {
+        DatosPrueba.Cliente cliente = clienteConCarrito();
+
+        assertThrows(IllegalStateException.class, () -> idempotenciaPedidoService.ejecutar(cliente.usuarioId(),
+                "reintento", () -> {
+                    throw new IllegalStateException("Pasarela caída");
+                }));
+        assertEquals(0, pedidosDe(cliente));
+
+        IdempotenciaPedidoService.Resultado resultado =
+                idempotenciaPedidoService.ejecutar(cliente.usuarioId(), "reintento", checkout(cliente));
+        assertFalse(resultado.repetido());
+        assertEquals(1, pedidosDe(cliente));
+    }
+
+    @Test
+    void quienEsperaUnaClaveEnCursoRecibeSuPedidoOUn409() throws Exception {
+        DatosPrueba.Cliente cliente = clienteConCarrito();
+        CountDownLatch dentro = new CountDownLatch(1);
+        CountDownLatch seguir = new CountDownLatch(1);
+        Callable<Pedido> lento = () -> {
+            dentro.countDown();
+            seguir.await();
+            return checkout(cliente).call();
+        };
+
+        ExecutorService hilo = Executors.newSingleThreadExecutor();
+        ReflectionTestUtils.setField(idempotenciaPedidoService, "esperaSegundos", 1L);
+        try {
+            Future<IdempotenciaPedidoService.Resultado> primero =
+                    hilo.submit(() -> idempotenciaPedidoService.ejecutar(cliente.usuarioId(), "en-curso", lento));
+            assertTrue(dentro.await(10, TimeUnit.SECONDS));
+
+            // El primero no termina dentro de la espera: el duplicado no crea otro pedido
+            assertThrows(ConflictException.class, () -> idempotenciaPedidoService.ejecutar(cliente.usuarioId(),
+                    "en-curso", checkout(cliente)));
+
+            seguir.countDown();
+            Long pedidoId = primero.get(30, TimeUnit.SECONDS).pedido().getId();
+            IdempotenciaPedidoService.Resultado repetido =
+                    idempotenciaPedidoService.ejecutar(cliente.usuarioId(), "en-curso", checkout(cliente));
+            assertTrue(repetido.repetido());
+            assertEquals(pedidoId, repetido.pedido().getId());
+            assertEquals(1, pedidosDe(cliente));
+        } finally {
+            seguir.countDown();
+            ReflectionTestUtils.setField(idempotenciaPedidoService, "esperaSegundos", 30L);
+            hilo.shutdownNow();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void alLlenarseSoloSeDescartanLasClavesResueltas() throws Exception {
+        Map<String, ?> claves = (Map<String, ?>) ReflectionTestUtils.getField(idempotenciaPedidoService, "claves");
+        CountDownLatch dentro = new CountDownLatch(1);
+        CountDownLatch seguir = new CountDownLatch(1);
+
+        ExecutorService hilo = Executors.newSingleThreadExecutor();
+        ReflectionTestUtils.setField(idempotenciaPedidoService, "maxClaves", 2);
+        try {
+            Future<?> enCurso = hilo.submit(() -> idempotenciaPedidoService.ejecutar(-1L, "en-curso", () -> {
+                dentro.countDown();
+                seguir.await();
+                return pedido(1L);
+            }));
+            assertTrue(dentro.await(10, TimeUnit.SECONDS));
+            idempotenciaPedidoService.ejecutar(-1L, "resuelta-1", () -> pedido(2L));
+            idempotenciaPedidoService.ejecutar(-1L, "resuelta-2", () -> pedido(3L));
+            idempotenciaPedidoService.ejecutar(-1L, "resuelta-3", () -> pedido(4L));
+
+            // La que sigue en curso se conserva aunque sea la más antigua
+            assertTrue(claves.containsKey("-1:en-curso"));
+            assertTrue(claves.containsKey("-1:resuelta-3"));
+            assertFalse(claves.containsKey("-1:resuelta-1"));
+            assertTrue(claves.size() <= 2, "Quedaron " + claves.size() + " claves");
+
+            seguir.countDown();
+            enCurso.get(10, TimeUnit.SECONDS);
+        } finally {
+            seguir.countDown();
+            ReflectionTestUtils.setField(idempotenciaPedidoService, "maxClaves", 10000);
+            hilo.shutdownNow();
+        }
+    }
+
+    private DatosPrueba.Cliente clienteConCarrito() {
+        DatosPrueba.Cliente cliente = datos.crearClientes(1).get(0);
+        Producto producto = datos.crearProducto(new BigDecimal("15.00"), 50);
+        carritoService.agregarProducto(cliente.usuarioId(), producto.getId(), 1);
+        return cliente;
+    }
+
+    private Callable<Pedido> checkout(DatosPrueba.Cliente cliente) {
+        return () -> pedidoService.crearDesdeCarrito(cliente.usuarioId(), cliente.direccionId(), "TARJETA", null,
+                new CrearPedidoRequest(), null);
+    }
+
+    private int pedidosDe(DatosPrueba.Cliente cliente) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pedidos WHERE usuario_id = ?", Integer.class,
+                cliente.usuarioId());
+    }
+
+    // Pedido sin guardar: la clave solo recuerda su id
+    private static Pedido pedido(Long id) {
+        Pedido pedido = new Pedido();
+        pedido.setId(id);
+        return pedido;
+    }
+}
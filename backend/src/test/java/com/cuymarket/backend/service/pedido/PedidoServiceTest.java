@@ -0,0 +1,145 @@
+package com.cuymarket.backend.service.pedido;
+
+import com.cuymarket.backend.dto.pedido.CrearPedidoRequest;
+import com.cuymarket.backend.model.enums.EstadoPago;
+import com.cuymarket.backend.model.enums.EstadoPedido;
+import com.cuymarket.backend.model.enums.MetodoPago;
+import com.cuymarket.backend.model.pedido.Pedido;
+import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.service.carrito.CarritoService;
+import com.cuymarket.backend.service.producto.ProductoService;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+class PedidoServiceTest {
+
+    @Autowired
+    private PedidoService pedidoService;
+
+    @Autowired
+    private CarritoService carritoService;
+
+    @Autowired
+    private ProductoService productoService;
+
+    @Autowired
+    private DatosPrueba datos;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void elCheckoutEjecutaLasMismasSentenciasConUnaOVeinteLineas() throws Exception {
+        // Un checkout previo deja cargado todo lo que se inicializa una sola vez
+        sentenciasDeCheckout(1);
+
+        int conUnaLinea = sentenciasDeCheckout(1);
+        int conVeinteLineas = sentenciasDeCheckout(20);
+
+        assertEquals(conUnaLinea, conVeinteLineas);
+        // Hoy son 10; una sentencia más por checkout tiene que notarse aquí
+        assertTrue(conVeinteLineas <= 10, "El checkout ejecutó " + conVeinteLineas + " sentencias");
+    }
+
+    @Test
+    void elDiagnosticoSoloNombraLosProductosSinStock() {
+        Producto alcanza = datos.crearProducto(new BigDecimal("10.00"), 10);
+        Producto noAlcanza = datos.crearProducto(new BigDecimal("10.00"), 5);
+        Map<Long, Integer> cantidades = new LinkedHashMap<>();
+        cantidades.put(alcanza.getId(), 6);
+        cantidades.put(noAlcanza.getId(), 20);
+
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> productoService.descontarStockLote(cantidades, "Prueba"));
+
+        assertTrue(error.getMessage().contains(noAlcanza.getNombre()), error.getMessage());
+        assertFalse(error.getMessage().contains(alcanza.getNombre()), error.getMessage());
+        assertEquals(10, stock(alcanza.getId()));
+        assertEquals(5, stock(noAlcanza.getId()));
+    }
+
+    @Test
+    void elListadoYLosConteosCubrenTodosLosPedidosNoSoloLaPrimeraPagina() {
+        DatosPrueba.Cliente cliente = datos.crearClientes(1).get(0);
+        LocalDateTime inicio = LocalDateTime.of(1995, 3, 1, 9, 0);
+        List<DatosPrueba.PedidoSemilla> semillas = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            EstadoPedido estado = i % 5 == 0 ? EstadoPedido.CANCELADO : EstadoPedido.ENTREGADO;
+            semillas.add(new DatosPrueba.PedidoSemilla(inicio.plusMinutes(i), estado, EstadoPago.PAGADO,
+                    MetodoPago.TARJETA, new BigDecimal("20.00")));
+        }
+        datos.insertarPedidos(cliente.usuarioId(), semillas);
+        LocalDateTime desde = inicio.toLocalDate().atStartOfDay();
+        LocalDateTime hasta = desde.plusDays(1);
+
+        Map<EstadoPedido, Long> conteos = pedidoService.contarPorEstados(desde, hasta);
+        assertEquals(200L, conteos.get(EstadoPedido.ENTREGADO));
+        assertEquals(50L, conteos.get(EstadoPedido.CANCELADO));
+        assertEquals(0L, conteos.get(EstadoPedido.PENDIENTE));
+
+        // Recorrido por cursor con el estado filtrado en el servidor
+        assertEquals(200, recorrer(EstadoPedido.ENTREGADO, desde, hasta, null).size());
+
+        String email = jdbcTemplate.queryForObject("SELECT email FROM usuarios WHERE id = ?", String.class,
+                cliente.usuarioId());
+        List<Pedido> delCliente = recorrer(null, null, null, email.toUpperCase());
+        assertEquals(250, delCliente.size());
+        assertTrue(delCliente.stream().allMatch(p -> p.getUsuario().getId().equals(cliente.usuarioId())));
+    }
+
+    // Todas las páginas del listado del personal, de 100 en 100
+    private List<Pedido> recorrer(EstadoPedido estado, LocalDateTime desde, LocalDateTime hasta, String texto) {
+        List<Pedido> pedidos = new ArrayList<>();
+        String cursor = null;
+        do {
+            PedidoService.PaginaPedidos pagina = pedidoService.listarPagina(estado, null, desde, hasta, texto,
+                    cursor, 100);
+            pedidos.addAll(pagina.pedidos());
+            cursor = pagina.siguienteCursor();
+        } while (cursor != null);
+        return pedidos;
+    }
+
+    // Sentencias del checkout sin contar las reservas de bloques de ids en generadores_id,
+    // que se reparten entre muchos pedidos y caen en uno u otro según el momento
+    private int sentenciasDeCheckout(int lineas) throws Exception {
+        DatosPrueba.Cliente cliente = datos.crearClientes(1).get(0);
+        for (int i = 0; i < lineas; i++) {
+            Producto producto = datos.crearProducto(new BigDecimal("12.50"), 10);
+            carritoService.agregarProducto(cliente.usuarioId(), producto.getId(), 2);
+        }
+
+        ContadorJdbc.Medicion medicion = ContadorJdbc.medir(() -> pedidoService.crearDesdeCarrito(
+                cliente.usuarioId(), cliente.direccionId(), "TARJETA", null, new CrearPedidoRequest(), null));
+        List<String> sentencias = medicion.getSql().stream()
+                .filter(sql -> !sql.contains("generadores_id"))
+                .toList();
+        return sentencias.size();
+    }
+
+    private int stock(Long productoId) {
+        return jdbcTemplate.queryForObject("SELECT stock_disponible FROM productos WHERE id = ?", Integer.class,
+                productoId);
+    }
+}
@@ -0,0 +1,104 @@
+package com.cuymarket.backend.service.producto;
+
+import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+class ImagenProductoServiceTest {
+
+    @Autowired
+    private ImagenProductoService imagenProductoService;
+
+    @Autowired
+    private VarianteImagenService varianteImagenService;
+
+    @Autowired
+    private DatosPrueba datos;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void crearColumnaLegacy() {
+        jdbcTemplate.execute("ALTER TABLE productos ADD COLUMN IF NOT EXISTS imagen BLOB");
+    }
+
+    @Test
+    void laMigracionConservaLaColumnaYRecuperaArchivosPerdidos() throws Exception {
+        byte[] contenido = DatosPrueba.png(320, 180);
+        Producto producto = datos.crearProducto(new BigDecimal("10.00"), 5);
+        jdbcTemplate.update("UPDATE productos SET imagen = ? WHERE id = ?", contenido, producto.getId());
+
+        assertTrue(imagenProductoService.migrarImagenesLegacy() >= 1);
+        String hash = jdbcTemplate.queryForObject(
+                "SELECT imagen_hash FROM productos WHERE id = ?", String.class, producto.getId());
+        Path archivo = imagenProductoService.resolver(hash);
+        assertArrayEquals(contenido, Files.readAllBytes(archivo));
+        assertEquals(320, jdbcTemplate.queryForObject(
+                "SELECT imagen_ancho FROM productos WHERE id = ?", Integer.class, producto.getId()));
+        assertNotNull(leerLegacy(producto.getId()));
+
+        // Disco efímero: el archivo desaparece y el siguiente arranque lo vuelve a escribir
+        Files.delete(archivo);
+        assertTrue(imagenProductoService.migrarImagenesLegacy() >= 1);
+        assertArrayEquals(contenido, Files.readAllBytes(archivo));
+
+        // Sin activar la opción la columna nunca se vacía
+        assertEquals(0, imagenProductoService.vaciarImagenesLegacy());
+        assertNotNull(leerLegacy(producto.getId()));
+    }
+
+    @Test
+    void vaciarLaColumnaEsOpcional() throws Exception {
+        byte[] contenido = DatosPrueba.png(64, 64);
+        Producto producto = datos.crearProducto(new BigDecimal("10.00"), 5);
+        jdbcTemplate.update("UPDATE productos SET imagen = ? WHERE id = ?", contenido, producto.getId());
+        imagenProductoService.migrarImagenesLegacy();
+
+        ReflectionTestUtils.setField(imagenProductoService, "vaciarLegacy", true);
+        try {
+            assertTrue(imagenProductoService.vaciarImagenesLegacy() >= 1);
+        } finally {
+            ReflectionTestUtils.setField(imagenProductoService, "vaciarLegacy", false);
+        }
+        assertNull(leerLegacy(producto.getId()));
+    }
+
+    @Test
+    void unAnchoMayorQueTodasLasVariantesSirveElOriginal() {
+        ImagenProductoService.ImagenGuardada imagen = imagenProductoService.guardar(DatosPrueba.png(2000, 100));
+
+        ImagenProductoService.ArchivoImagen archivo = imagenProductoService.obtenerArchivo(
+                imagen.hash(), imagen.tipoContenido(), imagen.ancho(), 1600);
+        assertEquals(imagenProductoService.resolver(imagen.hash()), archivo.ruta());
+        assertTrue(archivo.definitivo());
+
+        assertEquals(VarianteImagenService.ORIGINAL, varianteImagenService.anchoVariante(1600));
+        assertEquals(800, varianteImagenService.anchoVariante(700));
+    }
+
+    private byte[] leerLegacy(Long productoId) {
+        return jdbcTemplate.queryForObject("SELECT imagen FROM productos WHERE id = ?", byte[].class, productoId);
+    }
+}
@@ -0,0 +1,136 @@
+package com.cuymarket.backend.service.producto;
+
+import com.cuymarket.backend.dto.carrito.CarritoResponse;
+import com.cuymarket.backend.dto.producto.DiferenciaStockDTO;
+import com.cuymarket.backend.dto.producto.ProductoResponse;
+import com.cuymarket.backend.exception.ConflictException;
+import com.cuymarket.backend.model.enums.TipoMovimiento;
+import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.service.carrito.CarritoStore;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Un lote con un movimiento que la base rechaza no se pierde entero: los demás se escriben
+ * uno a uno y, como el diario ya no está completo, la reconstrucción no corrige el stock.
+ * Deja el servicio con un movimiento perdido, por eso corre al final y se descarta el
+ * contexto al terminar.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+@DirtiesContext
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class MovimientoInventarioServiceTest {
+
+    private static final int MOVIMIENTOS = 1000;
+
+    @Autowired
+    private MovimientoInventarioService movimientoInventarioService;
+
+    @Autowired
+    private DatosPrueba datos;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private CarritoStore carritoStore;
+
+    @Test
+    @Order(1)
+    void corregirElStockDescartaLosCarritosQueLoMuestran() {
+        Producto producto = datos.crearProducto(new BigDecimal("10.00"), 5);
+        movimientoInventarioService.reconstruirStock(true);
+        Integer segunDiario = jdbcTemplate.queryForObject(
+                "SELECT stock_disponible FROM productos WHERE id = ?", Integer.class, producto.getId());
+
+        // Un cambio directo en la tabla deja el stock fuera del diario
+        jdbcTemplate.update("UPDATE productos SET stock_disponible = stock_disponible + 3 WHERE id = ?", producto.getId());
+        ProductoResponse vista = new ProductoResponse();
+        vista.setId(producto.getId());
+        vista.setStockDisponible(segunDiario + 3);
+        CarritoResponse carrito = new CarritoResponse(null, -1L,
+                List.of(new CarritoResponse.ItemCarritoResponse(null, vista, 1, new BigDecimal("10.00"))),
+                new BigDecimal("10.00"), 1, null);
+        carritoStore.obtener(-1L, id -> carrito);
+
+        List<DiferenciaStockDTO> diferencias = movimientoInventarioService.reconstruirStock(true);
+        assertTrue(diferencias.stream().anyMatch(d -> d.getProductoId().equals(producto.getId())));
+        assertEquals(segunDiario, jdbcTemplate.queryForObject(
+                "SELECT stock_disponible FROM productos WHERE id = ?", Integer.class, producto.getId()));
+
+        // El carrito guardado mostraba el stock viejo: la siguiente lectura tiene que volver a cargarlo
+        AtomicInteger cargas = new AtomicInteger();
+        carritoStore.obtener(-1L, id -> {
+            cargas.incrementAndGet();
+            return carrito;
+        });
+        assertEquals(1, cargas.get());
+        carritoStore.invalidar(-1L);
+    }
+
+    @Test
+    @Order(2)
+    void unLoteFallidoSeEscribeUnoAUnoYBloqueaLaReconstruccion() throws Exception {
+        Producto producto = datos.crearProducto(new BigDecimal("10.00"), 0);
+        jdbcTemplate.execute("ALTER TABLE movimientos_inventario ADD CONSTRAINT chk_prueba_rechazado " +
+                "CHECK (motivo IS NULL OR motivo <> 'rechazado')");
+        try {
+            // Todos se encolan al confirmar, y el rechazado cae en medio de un lote
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                for (int i = 0; i < MOVIMIENTOS; i++) {
+                    movimientoInventarioService.registrar(producto.getId(), TipoMovimiento.ENTRADA, 1,
+                            i == MOVIMIENTOS / 2 ? "rechazado" : "prueba");
+                }
+            });
+            esperarPerdidos(1);
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE movimientos_inventario DROP CONSTRAINT chk_prueba_rechazado");
+        }
+
+        // La comparación sigue disponible; la corrección no
+        movimientoInventarioService.reconstruirStock(false);
+        assertEquals(MOVIMIENTOS - 1, jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM movimientos_inventario WHERE producto_id = ? AND motivo = 'prueba'",
+                Integer.class, producto.getId()));
+        assertThrows(ConflictException.class, () -> movimientoInventarioService.reconstruirStock(true));
+    }
+
+    private void esperarPerdidos(double cantidad) throws InterruptedException {
+        long limite = System.nanoTime() + 30_000_000_000L;
+        while (meterRegistry.counter("inventario.movimientos.perdidos").count() < cantidad) {
+            if (System.nanoTime() > limite) {
+                throw new AssertionError("El movimiento rechazado no llegó a descartarse");
+            }
+            Thread.sleep(50);
+        }
+    }
+}
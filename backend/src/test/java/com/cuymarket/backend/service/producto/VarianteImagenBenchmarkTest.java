@@ -0,0 +1,99 @@
+package com.cuymarket.backend.service.producto;
+
+import com.cuymarket.backend.soporte.DatosPrueba;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileSystemUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Variantes generadas por segundo a partir de una foto de 2000x1500, por ancho y formato.
+ * Se ejecuta con: mvn test -Pbenchmark -Dtest=VarianteImagenBenchmarkTest
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(0)
+public class VarianteImagenBenchmarkTest {
+
+    @Param({"200", "400", "800"})
+    public int ancho;
+
+    @Param({"image/jpeg", "image/png"})
+    public String tipo;
+
+    private VarianteImagenService servicio;
+    private Path carpeta;
+    private Path original;
+    private Path destino;
+
+    @Test
+    void generacionDeVariantes() throws Exception {
+        var resultados = new Runner(new OptionsBuilder()
+                .include(getClass().getName() + ".generar")
+                .shouldFailOnError(true)
+                .build()).run();
+        assertFalse(resultados.isEmpty());
+    }
+
+    @Setup(Level.Trial)
+    public void preparar() throws Exception {
+        servicio = new VarianteImagenService(new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(servicio, "anchos", List.of(200, 400, 800));
+        ReflectionTestUtils.setField(servicio, "hilos", 1);
+        ReflectionTestUtils.setField(servicio, "maxEnCola", 1);
+        servicio.inicializar();
+
+        carpeta = Files.createTempDirectory("variantes-benchmark");
+        original = carpeta.resolve("original");
+        byte[] png = DatosPrueba.png(2000, 1500);
+        if ("image/png".equals(tipo)) {
+            Files.write(original, png);
+        } else {
+            BufferedImage imagen = ImageIO.read(new ByteArrayInputStream(png));
+            ImageIO.write(imagen, "jpeg", original.toFile());
+        }
+        destino = servicio.rutaVariante(original, ancho, tipo);
+    }
+
+    @TearDown(Level.Trial)
+    public void limpiar() throws Exception {
+        servicio.detener();
+        FileSystemUtils.deleteRecursively(carpeta);
+    }
+
+    @Benchmark
+    public long generar() throws Exception {
+        servicio.generar(original, destino, ancho, servicio.tipoVariante(tipo));
+        return Files.size(destino);
+    }
+}
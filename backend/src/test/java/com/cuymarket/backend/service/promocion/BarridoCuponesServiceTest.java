@@ -0,0 +1,132 @@
+package com.cuymarket.backend.service.promocion;
+
+import com.cuymarket.backend.model.enums.TipoCupon;
+import com.cuymarket.backend.model.promocion.Cupon;
+import com.cuymarket.backend.service.sistema.BloqueoTareasService;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * El barrido recorre los cupones por tramos y desactiva solo los vencidos y agotados.
+ * Mientras otra instancia tenga el bloqueo de la tarea no toca nada; al vencer, lo toma.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+class BarridoCuponesServiceTest {
+
+    private static final String TAREA = "barrido-cupones";
+
+    @Autowired
+    private BarridoCuponesService barridoCuponesService;
+
+    @Autowired
+    private BloqueoTareasService bloqueoTareasService;
+
+    @Autowired
+    private CuponService cuponService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void desactivaSoloLosVencidosYAgotadosDeCadaTramo() {
+        // Vencido, agotado y vigente alternados, repartidos en varios tramos de 4 ids
+        List<Long> vencidos = new ArrayList<>();
+        List<Long> agotados = new ArrayList<>();
+        List<Long> vigentes = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            Long id = crearCupon();
+            switch (i % 3) {
+                case 0 -> {
+                    jdbcTemplate.update("UPDATE cupones SET fecha_inicio = ?, fecha_vencimiento = ? WHERE id = ?",
+                            LocalDate.now().minusDays(10), LocalDate.now().minusDays(1), id);
+                    vencidos.add(id);
+                }
+                case 1 -> {
+                    jdbcTemplate.update("UPDATE cupones SET usos_actuales = usos_maximos WHERE id = ?", id);
+                    agotados.add(id);
+                }
+                default -> vigentes.add(id);
+            }
+        }
+
+        ReflectionTestUtils.setField(barridoCuponesService, "tamanoTramo", 4);
+        try {
+            assertTrue(barridoCuponesService.barrer() >= vencidos.size() + agotados.size());
+        } finally {
+            ReflectionTestUtils.setField(barridoCuponesService, "tamanoTramo", 1000);
+        }
+
+        vencidos.forEach(id -> assertFalse(activo(id), "Cupón vencido " + id));
+        agotados.forEach(id -> assertFalse(activo(id), "Cupón agotado " + id));
+        vigentes.forEach(id -> assertTrue(activo(id), "Cupón vigente " + id));
+    }
+
+    @Test
+    void otraInstanciaNoTomaUnBloqueoVivoPeroSiUnoVencido() {
+        BloqueoTareasService otraInstancia = new BloqueoTareasService(jdbcTemplate, transactionManager);
+        Long vencido = crearCupon();
+        jdbcTemplate.update("UPDATE cupones SET fecha_inicio = ?, fecha_vencimiento = ? WHERE id = ?",
+                LocalDate.now().minusDays(10), LocalDate.now().minusDays(1), vencido);
+
+        assertTrue(otraInstancia.adquirir(TAREA, Duration.ofMinutes(10)));
+        try {
+            assertFalse(bloqueoTareasService.adquirir(TAREA, Duration.ofMinutes(10)));
+            assertEquals(0, barridoCuponesService.barrer());
+            assertTrue(activo(vencido));
+
+            // La otra instancia se cayó sin liberarlo: al vencer, esta lo toma y aquella ya no
+            jdbcTemplate.update("UPDATE bloqueos_tareas SET vence_en = ? WHERE nombre = ?",
+                    Timestamp.valueOf(LocalDateTime.now().minusSeconds(1)), TAREA);
+            assertTrue(bloqueoTareasService.adquirir(TAREA, Duration.ofMinutes(10)));
+            assertFalse(otraInstancia.adquirir(TAREA, Duration.ofMinutes(10)));
+        } finally {
+            bloqueoTareasService.liberar(TAREA);
+            otraInstancia.liberar(TAREA);
+        }
+
+        assertTrue(barridoCuponesService.barrer() >= 1);
+        assertFalse(activo(vencido));
+    }
+
+    private Long crearCupon() {
+        Cupon cupon = new Cupon();
+        cupon.setCodigo("BARRIDO-" + UUID.randomUUID().toString().substring(0, 8));
+        cupon.setTipoCupon(TipoCupon.PORCENTAJE);
+        cupon.setDescuento(BigDecimal.TEN);
+        cupon.setUsosMaximos(5);
+        cupon.setFechaInicio(LocalDate.now().minusDays(1));
+        cupon.setFechaVencimiento(LocalDate.now().plusDays(30));
+        return cuponService.crear(cupon).getId();
+    }
+
+    private boolean activo(Long cuponId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT activo FROM cupones WHERE id = ?", Boolean.class, cuponId));
+    }
+}
@@ -0,0 +1,121 @@
+package com.cuymarket.backend.service.reportes;
+
+import com.cuymarket.backend.exception.BadRequestException;
+import com.cuymarket.backend.model.enums.EstadoReporte;
+import com.cuymarket.backend.model.enums.TipoReporte;
+import com.cuymarket.backend.model.sistema.Reporte;
+import com.cuymarket.backend.repository.sistema.ReporteRepository;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+class ReporteJobServiceTest {
+
+    @Autowired
+    private ReporteJobService reporteJobService;
+
+    @Autowired
+    private ReporteRepository reporteRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void solicitudesIgualesSimultaneasCompartenElMismoReporte() throws Exception {
+        LocalDateTime inicio = LocalDate.of(2002, 1, 1).atStartOfDay();
+        LocalDateTime fin = inicio.plusMonths(1);
+        Callable<Long> solicitar = () -> reporteJobService
+                .solicitar(TipoReporte.VENTAS, "excel", inicio, fin, null).getId();
+
+        Set<Long> ids = new HashSet<>();
+        try (ExecutorService hilos = Executors.newFixedThreadPool(8)) {
+            for (Future<Long> resultado : hilos.invokeAll(IntStream.range(0, 8).mapToObj(i -> solicitar).toList())) {
+                ids.add(resultado.get());
+            }
+        }
+        assertEquals(1, ids.size());
+    }
+
+    @Test
+    void soloLosReportesAbandonadosHaceTiempoQuedanFallidos() {
+        Reporte pendiente = reporteRepository.save(reporte(EstadoReporte.PENDIENTE));
+        Reporte enProceso = reporteRepository.save(reporte(EstadoReporte.EN_PROCESO));
+        Reporte completado = reporteRepository.save(reporte(EstadoReporte.COMPLETADO));
+        for (Reporte viejo : List.of(pendiente, enProceso, completado)) {
+            jdbcTemplate.update("UPDATE reportes SET fecha_generacion = ? WHERE id = ?",
+                    Timestamp.valueOf(LocalDateTime.now().minusDays(1)), viejo.getId());
+        }
+        // Recién creado: puede estar generándose en otra instancia
+        Reporte reciente = reporteRepository.save(reporte(EstadoReporte.EN_PROCESO));
+
+        reporteJobService.marcarInterrumpidos();
+
+        assertEquals(EstadoReporte.FALLIDO, estado(pendiente));
+        assertEquals(EstadoReporte.FALLIDO, estado(enProceso));
+        assertEquals(EstadoReporte.COMPLETADO, estado(completado));
+        assertEquals(EstadoReporte.EN_PROCESO, estado(reciente));
+    }
+
+    @Test
+    void siElEjecutorRechazaLaTareaElReporteFallaYLaSolicitudSePuedeRepetir() {
+        LocalDateTime inicio = LocalDate.of(2003, 1, 1).atStartOfDay();
+        LocalDateTime fin = inicio.plusMonths(1);
+        ExecutorService original = (ExecutorService) ReflectionTestUtils.getField(reporteJobService, "executor");
+        ExecutorService apagado = Executors.newSingleThreadExecutor();
+        apagado.shutdown();
+
+        ReflectionTestUtils.setField(reporteJobService, "executor", apagado);
+        try {
+            assertThrows(BadRequestException.class,
+                    () -> reporteJobService.solicitar(TipoReporte.VENTAS, "PDF", inicio, fin, null));
+        } finally {
+            ReflectionTestUtils.setField(reporteJobService, "executor", original);
+        }
+        Long rechazado = jdbcTemplate.queryForObject(
+                "SELECT MAX(id) FROM reportes WHERE tipo = 'VENTAS' AND fecha_inicio = ?", Long.class,
+                Timestamp.valueOf(inicio));
+        assertEquals(EstadoReporte.FALLIDO, reporteRepository.findById(rechazado).orElseThrow().getEstado());
+
+        // La clave quedó libre: la misma solicitud crea un reporte nuevo
+        Long reintento = reporteJobService.solicitar(TipoReporte.VENTAS, "PDF", inicio, fin, null).getId();
+        assertNotEquals(rechazado, reintento);
+    }
+
+    private EstadoReporte estado(Reporte reporte) {
+        return reporteRepository.findById(reporte.getId()).orElseThrow().getEstado();
+    }
+
+    private static Reporte reporte(EstadoReporte estado) {
+        Reporte reporte = new Reporte();
+        reporte.setNombre("Prueba");
+        reporte.setTipo(TipoReporte.INVENTARIO);
+        reporte.setFormato("PDF");
+        reporte.setEstado(estado);
+        return reporte;
+    }
+}
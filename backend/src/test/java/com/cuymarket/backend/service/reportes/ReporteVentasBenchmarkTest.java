@@ -0,0 +1,127 @@
+package com.cuymarket.backend.service.reportes;
+
+import com.cuymarket.backend.dto.reportes.VentaReporteDTO;
+import com.cuymarket.backend.model.enums.EstadoPago;
+import com.cuymarket.backend.model.enums.EstadoPedido;
+import com.cuymarket.backend.model.enums.MetodoPago;
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.ContadorJdbc.Medicion;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import com.cuymarket.backend.soporte.DatosPrueba.PedidoSemilla;
+import com.cuymarket.backend.soporte.LectorExcel;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Filas leídas de la base frente a filas emitidas en el reporte de ventas de un mes
+ * pasado, con dos años de pedidos sembrados. Se compara con la consulta anterior, que
+ * traía todo lo pagado desde el inicio del período y descartaba el resto en Java.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+@Tag("benchmark")
+class ReporteVentasBenchmarkTest {
+
+    private static final int MESES = 24;
+    private static final int PEDIDOS_POR_DIA = 60;
+
+    @Autowired
+    private ReporteService reporteService;
+
+    @Autowired
+    private DatosPrueba datos;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void reporteDeUnMesPasadoLeeSoloLasFilasDelPeriodo() throws Exception {
+        LocalDate hoy = LocalDate.now();
+        List<PedidoSemilla> semillas = new ArrayList<>();
+        for (LocalDate dia = hoy.minusMonths(MESES); dia.isBefore(hoy); dia = dia.plusDays(1)) {
+            for (int i = 0; i < PEDIDOS_POR_DIA; i++) {
+                EstadoPago estadoPago = i % 4 == 0 ? EstadoPago.PENDIENTE : EstadoPago.PAGADO;
+                semillas.add(new PedidoSemilla(dia.atTime(8, 0).plusMinutes(i * 10L), EstadoPedido.ENTREGADO,
+                        estadoPago, MetodoPago.values()[i % MetodoPago.values().length], new BigDecimal("25.50")));
+            }
+        }
+        datos.insertarPedidos(datos.idUsuario("cliente@cuymarket.com"), semillas);
+
+        LocalDateTime inicio = hoy.minusMonths(12).withDayOfMonth(1).atStartOfDay();
+        LocalDateTime fin = inicio.plusMonths(1);
+        long esperados = semillas.stream()
+                .filter(s -> s.estadoPago() == EstadoPago.PAGADO)
+                .filter(s -> !s.fecha().isBefore(inicio) && s.fecha().isBefore(fin))
+                .count();
+
+        String consulta = "SELECT new com.cuymarket.backend.dto.reportes.VentaReporteDTO(" +
+                "p.numeroPedido, u.nombre, u.apellido, u.email, p.fechaPedido, p.metodoPago, p.total) " +
+                "FROM Pedido p LEFT JOIN p.usuario u WHERE p.estadoPago = :estadoPago AND p.fechaPedido >= :fechaInicio";
+
+        // Antes: todo lo pagado desde el inicio del período, filtrado después en Java
+        long[] emitidos = new long[2];
+        long[] ms = new long[2];
+        Medicion antes = ContadorJdbc.medir(() -> {
+            long t0 = System.nanoTime();
+            transactionTemplate.executeWithoutResult(estado -> emitidos[0] = entityManager
+                    .createQuery(consulta, VentaReporteDTO.class)
+                    .setParameter("estadoPago", EstadoPago.PAGADO)
+                    .setParameter("fechaInicio", inicio)
+                    .getResultStream()
+                    .filter(v -> v.getFechaPedido().isBefore(fin))
+                    .count());
+            ms[0] = (System.nanoTime() - t0) / 1_000_000;
+        });
+
+        // Ahora: el rango [inicio, fin) va en la consulta
+        Medicion ahora = ContadorJdbc.medir(() -> {
+            long t0 = System.nanoTime();
+            transactionTemplate.executeWithoutResult(estado -> emitidos[1] = entityManager
+                    .createQuery(consulta + " AND p.fechaPedido < :fechaFin", VentaReporteDTO.class)
+                    .setParameter("estadoPago", EstadoPago.PAGADO)
+                    .setParameter("fechaInicio", inicio)
+                    .setParameter("fechaFin", fin)
+                    .getResultStream()
+                    .count());
+            ms[1] = (System.nanoTime() - t0) / 1_000_000;
+        });
+
+        // El reporte completo lee exactamente las filas que emite
+        ByteArrayOutputStream salida = new ByteArrayOutputStream();
+        Medicion reporte = ContadorJdbc.medir(() -> reporteService.escribirReporteVentasExcel(inicio, fin, null, salida));
+        long filasEnReporte = LectorExcel.valorDeEtiqueta(salida.toByteArray(), "Cantidad:");
+
+        System.out.printf("Reporte de ventas de %s con %d pedidos sembrados%n", inicio.toLocalDate(), semillas.size());
+        System.out.printf("  %-24s %12s %12s %8s%n", "estrategia", "filas leidas", "emitidas", "ms");
+        System.out.printf("  %-24s %12d %12d %8d%n", "desde inicio + filtro", antes.getFilas(), emitidos[0], ms[0]);
+        System.out.printf("  %-24s %12d %12d %8d%n", "rango [inicio, fin)", ahora.getFilas(), emitidos[1], ms[1]);
+        System.out.printf("  %-24s %12d %12d%n", "reporte Excel completo", reporte.getFilas(), filasEnReporte);
+
+        assertEquals(esperados, emitidos[0]);
+        assertEquals(esperados, emitidos[1]);
+        assertEquals(esperados, ahora.getFilas());
+        assertEquals(esperados, filasEnReporte);
+        assertEquals(esperados, reporte.getFilas());
+        assertTrue(antes.getFilas() > 10 * esperados);
+    }
+}
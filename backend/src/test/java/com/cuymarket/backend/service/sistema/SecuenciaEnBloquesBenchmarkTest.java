@@ -0,0 +1,116 @@
+package com.cuymarket.backend.service.sistema;
+
+import com.cuymarket.backend.soporte.ContadorJdbc;
+import com.cuymarket.backend.soporte.DatosPrueba;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Números entregados por segundo por dos instancias del servicio (como dos nodos de la
+ * aplicación) que comparten la tabla generadores_id, con varios hilos en cada una.
+ * Comprueba además que ningún número se repite entre nodos y que cada hilo los recibe
+ * en orden creciente.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@Import({ContadorJdbc.class, DatosPrueba.class})
+@Tag("benchmark")
+class SecuenciaEnBloquesBenchmarkTest {
+
+    private static final int NODOS = 2;
+    private static final int HILOS_POR_NODO = 4;
+    private static final int NUMEROS_POR_HILO = 50_000;
+    private static final int OBJETIVO_POR_SEGUNDO = 10_000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void masDeDiezMilNumerosPorSegundoSinRepetirEntreNodos() throws Exception {
+        String secuencia = "benchmark_" + UUID.randomUUID().toString().substring(0, 8);
+        List<SecuenciaEnBloquesService> nodos = new ArrayList<>();
+        for (int i = 0; i < NODOS; i++) {
+            SecuenciaEnBloquesService nodo = new SecuenciaEnBloquesService(jdbcTemplate, transactionManager,
+                    meterRegistry);
+            ReflectionTestUtils.setField(nodo, "tamanoBloque", 100);
+            nodos.add(nodo);
+        }
+
+        // Primer bloque de cada nodo fuera de la medición
+        nodos.forEach(nodo -> nodo.siguiente(secuencia));
+
+        int hilos = NODOS * HILOS_POR_NODO;
+        CountDownLatch salida = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(hilos);
+        List<Future<long[]>> resultados = new ArrayList<>();
+        try {
+            for (int h = 0; h < hilos; h++) {
+                SecuenciaEnBloquesService nodo = nodos.get(h % NODOS);
+                resultados.add(executor.submit(() -> {
+                    salida.await();
+                    long[] numeros = new long[NUMEROS_POR_HILO];
+                    for (int i = 0; i < numeros.length; i++) {
+                        numeros[i] = nodo.siguiente(secuencia);
+                    }
+                    return numeros;
+                }));
+            }
+            long inicio = System.nanoTime();
+            salida.countDown();
+            List<long[]> porHilo = new ArrayList<>();
+            for (Future<long[]> resultado : resultados) {
+                porHilo.add(resultado.get());
+            }
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+
+            long total = (long) hilos * NUMEROS_POR_HILO;
+            long[] todos = porHilo.stream().flatMapToLong(Arrays::stream).sorted().toArray();
+            long distintos = Arrays.stream(todos).distinct().count();
+            boolean crecientes = porHilo.stream().allMatch(numeros -> {
+                for (int i = 1; i < numeros.length; i++) {
+                    if (numeros[i] <= numeros[i - 1]) {
+                        return false;
+                    }
+                }
+                return true;
+            });
+            long porSegundo = Math.round(total / segundos);
+            long bloques = (todos[todos.length - 1] - todos[0]) / 100 + 1;
+
+            System.out.printf("%d números en %.3f s con %d nodos y %d hilos: %d por segundo, ~%d bloques " +
+                    "reservados en la base%n", total, segundos, NODOS, hilos, porSegundo, bloques);
+
+            assertEquals(total, distintos);
+            assertTrue(crecientes);
+            assertTrue(porSegundo >= OBJETIVO_POR_SEGUNDO, "Solo " + porSegundo + " números por segundo");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
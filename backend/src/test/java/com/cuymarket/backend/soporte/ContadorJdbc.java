@@ -0,0 +1,127 @@
+package com.cuymarket.backend.soporte;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Cuenta las sentencias que se envían a la base y las filas que se leen de ella. Envuelve
+ * el DataSource de la aplicación y solo mide lo que ejecuta el hilo actual dentro de
+ * {@link #medir}, así las tareas en segundo plano no alteran los números.
+ */
+@TestConfiguration(proxyBeanMethods = false)
+public class ContadorJdbc {
+
+    private static final ThreadLocal<Medicion> ACTUAL = new ThreadLocal<>();
+
+    @FunctionalInterface
+    public interface Accion {
+        void ejecutar() throws Exception;
+    }
+
+    public static final class Medicion {
+        private int sentencias;
+        private long filas;
+        private final List<String> sql = new ArrayList<>();
+
+        // Un lote JDBC cuenta como una sentencia: es un solo viaje a la base
+        public int getSentencias() {
+            return sentencias;
+        }
+
+        public long getFilas() {
+            return filas;
+        }
+
+        public List<String> getSql() {
+            return Collections.unmodifiableList(sql);
+        }
+    }
+
+    public static Medicion medir(Accion accion) throws Exception {
+        Medicion medicion = new Medicion();
+        ACTUAL.set(medicion);
+        try {
+            accion.ejecutar();
+        } finally {
+            ACTUAL.remove();
+        }
+        return medicion;
+    }
+
+    @Bean
+    static BeanPostProcessor contadorJdbcDataSource() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource dataSource && !(bean instanceof DataSourceContador)
+                        ? new DataSourceContador(dataSource)
+                        : bean;
+            }
+        };
+    }
+
+    static final class DataSourceContador extends DelegatingDataSource {
+
+        DataSourceContador(DataSource destino) {
+            super(destino);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return (Connection) envolver(super.getConnection(), Connection.class, null);
+        }
+
+        @Override
+        public Connection getConnection(String usuario, String clave) throws SQLException {
+            return (Connection) envolver(super.getConnection(usuario, clave), Connection.class, null);
+        }
+    }
+
+    private static Object envolver(Object destino, Class<?> tipo, String sqlPreparado) {
+        return Proxy.newProxyInstance(ContadorJdbc.class.getClassLoader(), new Class<?>[]{tipo},
+                (instancia, metodo, argumentos) -> {
+                    Object resultado;
+                    try {
+                        resultado = metodo.invoke(destino, argumentos);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+
+                    String nombre = metodo.getName();
+                    Medicion medicion = ACTUAL.get();
+                    if (destino instanceof Connection && resultado instanceof Statement) {
+                        String sql = nombre.startsWith("prepare") ? (String) argumentos[0] : null;
+                        return envolver(resultado, metodo.getReturnType(), sql);
+                    }
+                    if (destino instanceof Statement) {
+                        if (medicion != null && nombre.startsWith("execute")) {
+                            medicion.sentencias++;
+                            medicion.sql.add(argumentos != null && argumentos.length > 0 && argumentos[0] instanceof String sql
+                                    ? sql : sqlPreparado);
+                        }
+                        // Las claves generadas de un INSERT no son filas leídas
+                        if (resultado instanceof ResultSet filas && !"getGeneratedKeys".equals(nombre)) {
+                            return envolver(filas, ResultSet.class, null);
+                        }
+                    }
+                    if (destino instanceof ResultSet && medicion != null && "next".equals(nombre)
+                            && Boolean.TRUE.equals(resultado)) {
+                        medicion.filas++;
+                    }
+                    return resultado;
+                });
+    }
+}
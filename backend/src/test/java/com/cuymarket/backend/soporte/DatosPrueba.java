@@ -0,0 +1,149 @@
+package com.cuymarket.backend.soporte;
+
+import com.cuymarket.backend.model.enums.EstadoPago;
+import com.cuymarket.backend.model.enums.EstadoPedido;
+import com.cuymarket.backend.model.enums.MetodoPago;
+import com.cuymarket.backend.model.producto.Producto;
+import com.cuymarket.backend.repository.producto.CategoriaRepository;
+import com.cuymarket.backend.service.producto.ProductoService;
+import org.springframework.boot.test.context.TestComponent;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Carga masiva de datos para pruebas y benchmarks. Escribe por JDBC en lotes, sin pasar
+ * por los servicios, para poder sembrar decenas de miles de pedidos en segundos.
+ */
+@TestComponent
+public class DatosPrueba {
+
+    private static final int TAMANO_LOTE = 1000;
+
+    // DNI de 8 dígitos, único en toda la ejecución aunque varias pruebas compartan la base
+    private static final AtomicInteger SIGUIENTE_DNI = new AtomicInteger(50_000_000);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductoService productoService;
+    private final CategoriaRepository categoriaRepository;
+
+    public DatosPrueba(JdbcTemplate jdbcTemplate, ProductoService productoService,
+            CategoriaRepository categoriaRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.productoService = productoService;
+        this.categoriaRepository = categoriaRepository;
+    }
+
+    public record Cliente(Long usuarioId, Long direccionId) {
+    }
+
+    public record PedidoSemilla(LocalDateTime fecha, EstadoPedido estado, EstadoPago estadoPago,
+            MetodoPago metodoPago, BigDecimal total) {
+    }
+
+    // Producto nuevo con el stock indicado, por el servicio para que quede en el diario de inventario
+    public Producto crearProducto(BigDecimal precio, int stock) {
+        Producto producto = new Producto();
+        producto.setNombre("Prueba " + UUID.randomUUID().toString().substring(0, 8));
+        producto.setPrecio(precio);
+        producto.setStockDisponible(stock);
+        return productoService.crear(producto, categoriaRepository.findAll().get(0).getId());
+    }
+
+    // PNG con un degradado, para que cada tamaño tenga bytes distintos
+    public static byte[] png(int ancho, int alto) {
+        BufferedImage imagen = new BufferedImage(ancho, alto, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < ancho; x++) {
+            for (int y = 0; y < alto; y++) {
+                imagen.setRGB(x, y, (x * 255 / ancho) << 16 | (y * 255 / alto) << 8);
+            }
+        }
+        try {
+            ByteArrayOutputStream salida = new ByteArrayOutputStream();
+            ImageIO.write(imagen, "png", salida);
+            return salida.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Clientes nuevos, cada uno con una dirección de envío, en el mismo orden en que se crean
+    public List<Cliente> crearClientes(int cantidad) {
+        String marca = UUID.randomUUID().toString().replace("-", "").substring(0, 12);
+        List<Integer> indices = IntStream.range(0, cantidad).boxed().toList();
+
+        jdbcTemplate.batchUpdate("INSERT INTO usuarios (nombre, apellido, dni, telefono, email, password, " +
+                        "email_verificado, activo, fecha_registro) VALUES ('Cliente', 'Prueba', ?, '999999999', ?, " +
+                        "'sin-clave', true, true, CURRENT_TIMESTAMP)",
+                indices, TAMANO_LOTE, (ps, i) -> {
+                    ps.setString(1, String.valueOf(SIGUIENTE_DNI.getAndIncrement()));
+                    ps.setString(2, "cliente-" + marca + "-" + i + "@prueba.pe");
+                });
+        List<Long> usuarios = jdbcTemplate.queryForList(
+                "SELECT id FROM usuarios WHERE email LIKE ? ORDER BY id", Long.class, "cliente-" + marca + "-%");
+
+        jdbcTemplate.batchUpdate("INSERT INTO direcciones_envio (nombre, apellido, telefono, direccion, ciudad, " +
+                        "distrito, es_principal, usuario_id) VALUES ('Cliente', 'Prueba', '999999999', ?, 'Lima', " +
+                        "'Lima', true, ?)",
+                usuarios, TAMANO_LOTE, (ps, usuarioId) -> {
+                    ps.setString(1, marca);
+                    ps.setLong(2, usuarioId);
+                });
+        List<Long> direcciones = jdbcTemplate.queryForList(
+                "SELECT id FROM direcciones_envio WHERE direccion = ? ORDER BY usuario_id", Long.class, marca);
+
+        return IntStream.range(0, usuarios.size())
+                .mapToObj(i -> new Cliente(usuarios.get(i), direcciones.get(i)))
+                .toList();
+    }
+
+    public Long idUsuario(String email) {
+        return jdbcTemplate.queryForObject("SELECT id FROM usuarios WHERE email = ?", Long.class, email);
+    }
+
+    // Inserta los pedidos (con una dirección de envío cada uno) y devuelve sus ids en el mismo orden
+    public List<Long> insertarPedidos(Long usuarioId, List<PedidoSemilla> pedidos) {
+        String marca = UUID.randomUUID().toString().replace("-", "");
+
+        jdbcTemplate.batchUpdate("INSERT INTO direcciones_envio (nombre, apellido, telefono, direccion, ciudad, " +
+                        "distrito, es_principal, usuario_id) VALUES ('Prueba', 'Semilla', '999999999', ?, 'Lima', " +
+                        "'Lima', false, ?)",
+                pedidos, TAMANO_LOTE, (ps, pedido) -> {
+                    ps.setString(1, marca);
+                    ps.setLong(2, usuarioId);
+                });
+        List<Long> direcciones = jdbcTemplate.queryForList(
+                "SELECT id FROM direcciones_envio WHERE direccion = ? ORDER BY id", Long.class, marca);
+
+        int[] indice = {0};
+        jdbcTemplate.batchUpdate("INSERT INTO pedidos (numero_pedido, fecha_pedido, estado, subtotal, descuento, " +
+                        "costo_envio, total, metodo_pago, estado_pago, usuario_id, direccion_envio_id) " +
+                        "VALUES (?, ?, ?, ?, 0, 0, ?, ?, ?, ?, ?)",
+                pedidos, TAMANO_LOTE, (ps, pedido) -> {
+                    int i = indice[0]++;
+                    ps.setString(1, "SEM-" + marca.substring(0, 12) + "-" + i);
+                    ps.setTimestamp(2, Timestamp.valueOf(pedido.fecha()));
+                    ps.setString(3, pedido.estado().name());
+                    ps.setBigDecimal(4, pedido.total());
+                    ps.setBigDecimal(5, pedido.total());
+                    ps.setString(6, pedido.metodoPago().name());
+                    ps.setString(7, pedido.estadoPago().name());
+                    ps.setLong(8, usuarioId);
+                    ps.setLong(9, direcciones.get(i));
+                });
+        return jdbcTemplate.queryForList(
+                "SELECT p.id FROM pedidos p JOIN direcciones_envio d ON d.id = p.direccion_envio_id " +
+                        "WHERE d.direccion = ? ORDER BY d.id", Long.class, marca);
+    }
+}
@@ -0,0 +1,31 @@
+package com.cuymarket.backend.soporte;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+public final class LectorExcel {
+
+    private LectorExcel() {
+    }
+
+    // Valor numérico a la derecha de la etiqueta (por ejemplo "Cantidad:") en la primera hoja
+    public static long valorDeEtiqueta(byte[] archivo, String etiqueta) throws IOException {
+        try (XSSFWorkbook libro = new XSSFWorkbook(new ByteArrayInputStream(archivo))) {
+            Sheet hoja = libro.getSheetAt(0);
+            for (Row fila : hoja) {
+                for (Cell celda : fila) {
+                    if (celda.getCellType() == CellType.STRING && etiqueta.equals(celda.getStringCellValue())) {
+                        return (long) fila.getCell(celda.getColumnIndex() + 1).getNumericCellValue();
+                    }
+                }
+            }
+        }
+        throw new IllegalStateException("No se encontró la etiqueta " + etiqueta);
+    }
+}